@@ -0,0 +1,98 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.Level12Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 压测公共工具：临时目录、消息构造
+ */
+final class BenchSupport {
+
+    /**
+     * 压测用 CommitLog 文件大小：256MB，避免单轮压测写出多个 1GB 文件
+     */
+    static final int BENCH_COMMITLOG_FILE_SIZE = Integer.getInteger("bench.commitlog.fileSize", 256 * 1024 * 1024);
+
+    /**
+     * 压测数据根目录，默认系统临时目录，可通过 -Dbench.dir 指定到真实磁盘
+     */
+    private static final Path BENCH_ROOT = Paths.get(
+        System.getProperty("bench.dir", System.getProperty("java.io.tmpdir")), "level12-bench");
+
+    private static final AtomicLong MESSAGE_SEQ = new AtomicLong();
+
+    private BenchSupport() {
+    }
+
+    /**
+     * 创建一个新的临时存储目录
+     */
+    static Path newStoreDir(String name) {
+        try {
+            Files.createDirectories(BENCH_ROOT);
+            return Files.createTempDirectory(BENCH_ROOT, name + "-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 递归删除目录
+     */
+    static void deleteDir(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 生成指定大小的消息体（与 Level12TestController 一致，小写字母）
+     */
+    static String randomBody(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 构造消息
+     *
+     * MessageId 使用自增序号而不是 UUID：UUID.randomUUID() 内部的 SecureRandom 在多线程下会互相竞争，
+     * 压测结果会被它主导
+     */
+    static Level12Message newMessage(String topic, int queueId, String tag, String body) {
+        long seq = MESSAGE_SEQ.incrementAndGet();
+        Level12Message message = new Level12Message();
+        message.setMessageId("BENCH-" + seq);
+        message.setTopic(topic);
+        message.setTag(tag);
+        message.setKey("KEY-" + seq);
+        message.setBody(body);
+        message.setCreateTime(System.currentTimeMillis());
+        message.setQueueId(queueId);
+        return message;
+    }
+}
@@ -0,0 +1,132 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.CommitLog;
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.Level12Message;
+import one.demo.challenge.level12.MessageCodec;
+import one.demo.challenge.level12.StoreIoBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommitLog.appendMessage / getMessage 压测（按消息大小）
+ *
+ * CommitLog 在所有线程间共享，多线程数反映写锁竞争与并发读的扩展性。
+ * CommitLog 只在 Best 引擎中存在，不区分引擎。
+ * ioBackend 对比 CommitLog 文件的 I/O 方式：写入看锁内的拷贝 / 系统调用开销，读取看 mmap 切片与定位读的差别。
+ * putRingBufferSize 对比写入方式：0 为各线程自己加写入锁，大于 0 为单写线程 + 环形缓冲区（CommitLogAppendRing），
+ * 需要用 64 以上的线程数才能看出锁排队的差别。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitLogBenchmark {
+
+    /**
+     * 写入压测状态：每轮迭代使用新的 CommitLog，避免磁盘占用持续增长
+     */
+    @State(Scope.Benchmark)
+    public static class AppendState {
+
+        @Param({"256", "1024", "4096"})
+        public int messageSize;
+
+        @Param({"MMAP", "CHANNEL", "HYBRID"})
+        public StoreIoBackend.Type ioBackend;
+
+        @Param({"0", "1024"})
+        public int putRingBufferSize;
+
+        @Param({"256"})
+        public int putRingMaxBatch;
+
+        Path dir;
+        CommitLog commitLog;
+        String body;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            dir = BenchSupport.newStoreDir("commitlog-append");
+            commitLog = new CommitLog(dir.toString(), BenchSupport.BENCH_COMMITLOG_FILE_SIZE, new MessageCodec(), ioBackend);
+            if (putRingBufferSize > 0) {
+                commitLog.startAppendRing(putRingBufferSize, putRingMaxBatch);
+            }
+            body = BenchSupport.randomBody(messageSize, messageSize);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            commitLog.shutdown();
+            BenchSupport.deleteDir(dir);
+        }
+    }
+
+    /**
+     * 读取压测状态：预先写入 prefillCount 条消息，随机读取
+     */
+    @State(Scope.Benchmark)
+    public static class ReadState {
+
+        @Param({"256", "1024", "4096"})
+        public int messageSize;
+
+        @Param({"100000"})
+        public int prefillCount;
+
+        @Param({"MMAP", "CHANNEL", "HYBRID"})
+        public StoreIoBackend.Type ioBackend;
+
+        Path dir;
+        CommitLog commitLog;
+        long[] offsets;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            dir = BenchSupport.newStoreDir("commitlog-read");
+            commitLog = new CommitLog(dir.toString(), BenchSupport.BENCH_COMMITLOG_FILE_SIZE, new MessageCodec(), ioBackend);
+            String body = BenchSupport.randomBody(messageSize, messageSize);
+            offsets = new long[prefillCount];
+            for (int i = 0; i < prefillCount; i++) {
+                Level12Message message = BenchSupport.newMessage(
+                    Level12Constants.TEST_TOPICS[i % Level12Constants.TEST_TOPICS.length], i % 4, "bench", body);
+                offsets[i] = commitLog.appendMessage(message).getPhysicalOffset();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            commitLog.shutdown();
+            BenchSupport.deleteDir(dir);
+        }
+    }
+
+    @Benchmark
+    public CommitLog.AppendMessageResult appendMessage(AppendState state) {
+        Level12Message message = BenchSupport.newMessage(
+            Level12Constants.TEST_TOPICS[0], 0, "bench", state.body);
+        return state.commitLog.appendMessage(message);
+    }
+
+    @Benchmark
+    public Level12Message getMessage(ReadState state) {
+        long offset = state.offsets[ThreadLocalRandom.current().nextInt(state.offsets.length)];
+        return state.commitLog.getMessage(offset);
+    }
+}
@@ -0,0 +1,79 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.ConsumeQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConsumeQueue.getIndexList / filterByTag 压测
+ *
+ * 预先写入 prefillCount 条索引（默认跨越多个 6MB 文件），从随机位置批量扫描。
+ * ConsumeQueue 只在 Best 引擎中存在，不区分引擎。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumeQueueBenchmark {
+
+    private static final int TAG_COUNT = 8;
+
+    @Param({"32", "256"})
+    public int batchSize;
+
+    @Param({"1000000"})
+    public int prefillCount;
+
+    private Path dir;
+    private ConsumeQueue consumeQueue;
+    private long targetTagsCode;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dir = BenchSupport.newStoreDir("consumequeue");
+        consumeQueue = new ConsumeQueue(dir.toString(), "bench-topic", 0);
+        for (int i = 0; i < prefillCount; i++) {
+            consumeQueue.putMessagePositionInfo((long) i * 1024, 1024, ("tag-" + i % TAG_COUNT).hashCode());
+        }
+        targetTagsCode = "tag-3".hashCode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        consumeQueue.shutdown();
+        BenchSupport.deleteDir(dir);
+    }
+
+    @Benchmark
+    public List<ConsumeQueue.CQUnit> getIndexList() {
+        return consumeQueue.getIndexList(randomStart(batchSize), batchSize);
+    }
+
+    @Benchmark
+    public List<ConsumeQueue.CQUnit> filterByTag() {
+        // 命中率 1/TAG_COUNT，凑满一批平均需要扫描 batchSize * TAG_COUNT 条索引
+        return consumeQueue.filterByTag(randomStart(batchSize * TAG_COUNT), batchSize, targetTagsCode);
+    }
+
+    private long randomStart(int window) {
+        return ThreadLocalRandom.current().nextInt(Math.max(1, prefillCount - window));
+    }
+}
@@ -0,0 +1,63 @@
+package one.demo.challenge.level12.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Level 12 存储压测入口
+ *
+ * JMH 的线程数不能作为 @Param，这里按线程数逐轮运行，每轮结果写入一个 JSON 文件：
+ * {resultDir}/level12-{label}-t{threads}.json
+ *
+ * 系统属性：
+ * - bench.threads   线程数列表，默认 1,4,16
+ * - bench.include   压测类正则，默认全部
+ * - bench.label     结果文件标签，默认 current（对比改动前后时分别用 before / after）
+ * - bench.resultDir 结果目录，默认 target/jmh-results
+ *
+ * 其余参数原样交给 JMH，例如 -p messageSize=1024 -wi 1 -i 3
+ */
+public class Level12BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        int[] threads = Arrays.stream(System.getProperty("bench.threads", "1,4,16").split(","))
+            .map(String::trim)
+            .mapToInt(Integer::parseInt)
+            .toArray();
+        String include = System.getProperty("bench.include", Level12BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+        String label = System.getProperty("bench.label", "current");
+        Path resultDir = Paths.get(System.getProperty("bench.resultDir", "target/jmh-results"));
+        Files.createDirectories(resultDir);
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        for (int t : threads) {
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .include(include)
+                .threads(t)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultDir.resolve("level12-" + label + "-t" + t + ".json").toString());
+
+            // reput 是单线程服务，多线程轮次跳过
+            if (t > 1) {
+                builder.exclude(ReputBenchmark.class.getSimpleName());
+            }
+
+            try {
+                new Runner(builder.build()).run();
+            } catch (NoBenchmarksException e) {
+                System.out.printf("threads=%d 没有匹配的压测，跳过%n", t);
+            }
+        }
+    }
+}
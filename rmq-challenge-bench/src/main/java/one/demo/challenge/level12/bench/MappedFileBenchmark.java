@@ -0,0 +1,92 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.MappedFile;
+import one.demo.challenge.level12.StoreIoBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MappedFile.appendMessage 压测
+ *
+ * MappedFile 本身不是线程安全的（CommitLog 在锁内调用它），
+ * 所以这里每个线程持有独立的 MappedFile，多线程数反映的是 mmap 写入在 PageCache 上的扩展性。
+ * MappedFile 只在 Best 引擎中存在，不区分引擎。
+ *
+ * ioBackend × messageSize × 线程数（Level12BenchmarkRunner）组成 I/O 方式的对比矩阵，
+ * 用实测结果决定 Level12StoreConfig.commitLogIoBackend。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MappedFileBenchmark {
+
+    private static final int FILE_SIZE = 128 * 1024 * 1024;
+
+    @Param({"128", "1024", "4096"})
+    public int messageSize;
+
+    @Param({"MMAP", "CHANNEL", "HYBRID"})
+    public StoreIoBackend.Type ioBackend;
+
+    private Path dir;
+    private MappedFile mappedFile;
+    private long nextFileOffset;
+    private byte[] data;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        dir = BenchSupport.newStoreDir("mappedfile");
+        data = new byte[messageSize];
+        Arrays.fill(data, (byte) 'x');
+        nextFileOffset = 0;
+        roll();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        mappedFile.shutdown();
+        BenchSupport.deleteDir(dir);
+    }
+
+    @Benchmark
+    public long appendMessage() throws IOException {
+        long offset = mappedFile.appendMessage(data);
+        if (offset == -1) {
+            roll();
+            offset = mappedFile.appendMessage(data);
+        }
+        return offset;
+    }
+
+    /**
+     * 当前文件写满后换一个新文件，旧文件直接删除，避免压测占满磁盘
+     */
+    private void roll() throws IOException {
+        if (mappedFile != null) {
+            mappedFile.shutdown();
+            new File(mappedFile.getFileName()).delete();
+        }
+        mappedFile = new MappedFile(dir + File.separator + String.format("%020d", nextFileOffset), FILE_SIZE, ioBackend);
+        nextFileOffset += FILE_SIZE;
+    }
+}
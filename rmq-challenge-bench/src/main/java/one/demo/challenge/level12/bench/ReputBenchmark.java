@@ -0,0 +1,77 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.Level12MessageStoreBest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReputMessageService 索引构建吞吐压测
+ *
+ * 每轮迭代：先停掉 reput，写入 MESSAGE_COUNT 条消息（5 个 Topic × 4 个 Queue），
+ * 计时部分为启动 reput 到追上 CommitLog 最大偏移量的耗时。
+ * reput 是单线程服务，固定 1 个压测线程（Level12BenchmarkRunner 也不会对它做线程数扩展）。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class ReputBenchmark {
+
+    private static final int MESSAGE_COUNT = 100_000;
+
+    @Param({"256", "1024"})
+    public int messageSize;
+
+    private Path dir;
+    private Level12MessageStoreBest store;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        dir = BenchSupport.newStoreDir("reput");
+        store = new Level12MessageStoreBest(dir.toString(), BenchSupport.BENCH_COMMITLOG_FILE_SIZE);
+        store.getReputMessageService().shutdown();
+
+        String body = BenchSupport.randomBody(messageSize, messageSize);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            store.putMessage(BenchSupport.newMessage(
+                Level12Constants.TEST_TOPICS[i % Level12Constants.TEST_TOPICS.length], i % 4, "bench", body));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        store.shutdown();
+        BenchSupport.deleteDir(dir);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_COUNT)
+    public long reput() {
+        long maxOffset = store.getCommitLog().getMaxOffset();
+        store.getReputMessageService().start();
+        while (store.getReputMessageService().getReputFromOffset() < maxOffset) {
+            Thread.onSpinWait();
+        }
+        return store.getReputMessageService().getReputFromOffset();
+    }
+}
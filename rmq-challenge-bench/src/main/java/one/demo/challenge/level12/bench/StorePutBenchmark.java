@@ -0,0 +1,65 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.loadgen.EngineType;
+import one.demo.challenge.level12.loadgen.StoreEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储引擎写入压测：Buggy vs Fixed vs Best
+ *
+ * 与 Level12TestController.batchSend 一样轮流写入多个 Topic，每轮迭代使用新的存储目录。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorePutBenchmark {
+
+    @Param({"BUGGY", "FIXED", "BEST"})
+    public EngineType engine;
+
+    @Param({"256", "1024", "4096"})
+    public int messageSize;
+
+    private Path dir;
+    private StoreEngine store;
+    private String body;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        dir = BenchSupport.newStoreDir("put-" + engine.name().toLowerCase());
+        store = engine.open(dir, BenchSupport.BENCH_COMMITLOG_FILE_SIZE);
+        body = BenchSupport.randomBody(messageSize, messageSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        store.close();
+        BenchSupport.deleteDir(dir);
+    }
+
+    @Benchmark
+    public boolean putMessage() {
+        int i = ThreadLocalRandom.current().nextInt(Level12Constants.TEST_TOPICS.length);
+        return store.put(BenchSupport.newMessage(Level12Constants.TEST_TOPICS[i], i % 4, "bench", body));
+    }
+}
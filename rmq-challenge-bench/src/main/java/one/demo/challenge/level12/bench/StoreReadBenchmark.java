@@ -0,0 +1,99 @@
+package one.demo.challenge.level12.bench;
+
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.Level12Message;
+import one.demo.challenge.level12.loadgen.EngineType;
+import one.demo.challenge.level12.loadgen.StoreEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 存储引擎读取压测：getMessage / queryByMessageId / queryByTag，Buggy vs Fixed vs Best
+ *
+ * 预先写入 prefillCount 条消息：轮流写入 5 个 Topic，每个 Topic 只用 queue 0，
+ * 这样第 i 条消息在 Best 版本中的队列偏移量就是 i / Topic 数量。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreReadBenchmark {
+
+    private static final String[] TAGS = {"urgent", "normal", "low"};
+
+    @Param({"BUGGY", "FIXED", "BEST"})
+    public EngineType engine;
+
+    @Param({"256", "1024", "4096"})
+    public int messageSize;
+
+    @Param({"20000"})
+    public int prefillCount;
+
+    private Path dir;
+    private StoreEngine store;
+    private Level12Message[] written;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dir = BenchSupport.newStoreDir("read-" + engine.name().toLowerCase());
+        store = engine.open(dir, BenchSupport.BENCH_COMMITLOG_FILE_SIZE);
+
+        String body = BenchSupport.randomBody(messageSize, messageSize);
+        int topics = Level12Constants.TEST_TOPICS.length;
+        written = new Level12Message[prefillCount];
+        for (int i = 0; i < prefillCount; i++) {
+            Level12Message message = BenchSupport.newMessage(
+                Level12Constants.TEST_TOPICS[i % topics], 0, TAGS[i % TAGS.length], body);
+            message.setQueueOffset(i / topics);
+            if (!store.put(message)) {
+                throw new IllegalStateException("预写入失败: " + message.getMessageId());
+            }
+            written[i] = message;
+        }
+        store.awaitDispatched();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchSupport.deleteDir(dir);
+    }
+
+    @Benchmark
+    public Level12Message getMessage() {
+        return store.get(randomWritten());
+    }
+
+    @Benchmark
+    public Level12Message queryByMessageId() {
+        return store.queryByMessageId(randomWritten().getMessageId());
+    }
+
+    @Benchmark
+    public int queryByTag() {
+        Level12Message message = randomWritten();
+        return store.queryByTag(message.getTopic(), 0, message.getTag(), 32);
+    }
+
+    private Level12Message randomWritten() {
+        return written[ThreadLocalRandom.current().nextInt(written.length)];
+    }
+}
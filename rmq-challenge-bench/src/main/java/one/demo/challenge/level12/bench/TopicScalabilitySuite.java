@@ -0,0 +1,268 @@
+package one.demo.challenge.level12.bench;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+import one.demo.challenge.level12.loadgen.EngineType;
+import one.demo.challenge.level12.loadgen.LoadGenerator;
+import one.demo.challenge.level12.loadgen.LoadProfile;
+import one.demo.challenge.level12.loadgen.LoadReport;
+import one.demo.challenge.level12.loadgen.StoreEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Topic 数量扩展性压测：逐步增加 Topic 数和每个 Topic 的队列数，找出每个引擎在哪一步撑不住
+ *
+ * Level12TestController 和 JMH 压测只用 5 个 Topic，看不出"每个 Topic 一个文件"的问题。
+ * 这里对每个 (引擎, Topic 数, 队列数) 组合：
+ * 1. 在新目录打开引擎，每个队列预先写入 messagesPerQueue 条消息（保证每个 Topic / 队列都建出文件和索引）
+ * 2. 按固定速率开环读写（LoadGenerator），记录写入 / 读取 p99（从计划时间算起）
+ * 3. 引擎仍然打开时记录：磁盘文件数，以及与打开前相比的文件句柄、内存映射大小和个数、Full GC 后的堆内存增量
+ * 4. 关闭后在同一目录重新打开（Best 版本等到索引构建完成），记录启动耗时
+ *
+ * 某一步失败（文件句柄耗尽、mmap 数量超过 vm.max_map_count、内存不足等）时记录失败原因，
+ * 这个引擎不再尝试更大的 Topic 数。结果输出到控制台，并写入 {resultDir}/level12-topics-{label}.csv
+ *
+ * 系统属性：
+ * - bench.topics                     Topic 数列表，默认 10,100,1000,10000,100000
+ * - bench.queuesPerTopic             每个 Topic 的队列数列表，默认 1,4
+ * - bench.engines                    引擎列表，默认 BUGGY,FIXED,BEST
+ * - bench.scaling.messagesPerQueue   每个队列预先写入的消息数，默认 1
+ * - bench.scaling.rate               开环读写速率（次/秒），默认 2000
+ * - bench.scaling.duration           开环读写时长（秒），默认 5
+ * - bench.scaling.messageSizes       消息大小分布，默认 256:70,1024:25,4096:5
+ * - bench.label / bench.resultDir    同 Level12BenchmarkRunner
+ */
+public class TopicScalabilitySuite {
+
+    private static final String CSV_HEADER = "engine,topics,queuesPerTopic,queues,files,fdDelta,mappedMB,mappedBuffers,"
+        + "heapMB,putP99Ms,getP99Ms,achievedRate,dropped,startupMs,status";
+
+    public static void main(String[] args) throws Exception {
+        int[] topicSteps = intList("bench.topics", "10,100,1000,10000,100000");
+        int[] queueSteps = intList("bench.queuesPerTopic", "1,4");
+        List<EngineType> engines = Arrays.stream(System.getProperty("bench.engines", "BUGGY,FIXED,BEST").split(","))
+            .map(name -> EngineType.valueOf(name.trim().toUpperCase()))
+            .collect(Collectors.toList());
+        String label = System.getProperty("bench.label", "current");
+        Path resultDir = Paths.get(System.getProperty("bench.resultDir", "target/jmh-results"));
+        Files.createDirectories(resultDir);
+        Path csv = resultDir.resolve("level12-topics-" + label + ".csv");
+
+        List<StepResult> results = new ArrayList<>();
+        try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER + "\n");
+            for (EngineType engine : engines) {
+                for (int queuesPerTopic : queueSteps) {
+                    for (int topics : topicSteps) {
+                        StepResult result = runStep(engine, topics, queuesPerTopic);
+                        results.add(result);
+                        System.out.println(result.format());
+                        writer.write(result.toCsv() + "\n");
+                        writer.flush();
+                        // 撑不住之后更大的 Topic 数也不用再试
+                        if (!result.ok) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.println(StepResult.header());
+        results.forEach(result -> System.out.println(result.format()));
+        System.out.printf("%n结果已写入 %s%n", csv.toAbsolutePath());
+    }
+
+    /**
+     * 运行一个 (引擎, Topic 数, 队列数) 组合
+     */
+    private static StepResult runStep(EngineType engine, int topics, int queuesPerTopic) throws InterruptedException {
+        StepResult result = new StepResult(engine.name(), topics, queuesPerTopic);
+        Path dir = BenchSupport.newStoreDir("topics-" + engine.name().toLowerCase() + "-" + topics + "x" + queuesPerTopic);
+
+        LoadProfile profile = new LoadProfile();
+        profile.setTopics(topics);
+        profile.setQueuesPerTopic(queuesPerTopic);
+        profile.setPrefillCount(topics * queuesPerTopic * Integer.getInteger("bench.scaling.messagesPerQueue", 1));
+        profile.setTargetRate(Integer.getInteger("bench.scaling.rate", 2000));
+        profile.setDurationSeconds(Integer.getInteger("bench.scaling.duration", 5));
+        profile.setWarmupSeconds(1);
+        profile.setMessageSizes(System.getProperty("bench.scaling.messageSizes", "256:70,1024:25,4096:5"));
+
+        long heapBefore = usedHeapAfterGc();
+        long fdBefore = openFileDescriptors();
+        BufferPoolMXBean mapped = mappedBufferPool();
+        long mappedBytesBefore = mapped == null ? 0 : mapped.getMemoryUsed();
+        long mappedBuffersBefore = mapped == null ? 0 : mapped.getCount();
+        StoreEngine store = null;
+        try {
+            // 1. 预写入 + 开环读写
+            store = engine.open(dir, BenchSupport.BENCH_COMMITLOG_FILE_SIZE);
+            LoadReport report = new LoadGenerator(profile).run(engine.name(), store);
+            result.putP99Nanos = report.getPutLatency().getValueAtPercentile(99);
+            result.getP99Nanos = report.getGetLatency().getValueAtPercentile(99);
+            result.achievedRate = report.getAchievedRate();
+            result.dropped = report.getDroppedOps();
+
+            // 2. 引擎打开时的资源占用
+            result.files = countFiles(dir);
+            result.fdDelta = openFileDescriptors() - fdBefore;
+            result.heapBytes = usedHeapAfterGc() - heapBefore;
+            result.mappedBytes = mapped == null ? -1 : mapped.getMemoryUsed() - mappedBytesBefore;
+            result.mappedBuffers = mapped == null ? -1 : mapped.getCount() - mappedBuffersBefore;
+            store.close();
+            store = null;
+
+            // 3. 重新打开的耗时
+            long startTime = System.nanoTime();
+            store = engine.open(dir, BenchSupport.BENCH_COMMITLOG_FILE_SIZE);
+            store.awaitDispatched();
+            result.startupNanos = System.nanoTime() - startTime;
+            result.ok = true;
+        } catch (Throwable e) {
+            // 文件句柄、mmap 数量、堆内存耗尽都在这里记录，作为这个引擎的上限
+            result.status = e.getClass().getSimpleName() + ": " + rootMessage(e);
+        } finally {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (Throwable e) {
+                    System.err.printf("关闭 %s 失败: %s%n", engine, e);
+                }
+            }
+            try {
+                BenchSupport.deleteDir(dir);
+            } catch (UncheckedIOException e) {
+                System.err.printf("删除 %s 失败: %s%n", dir, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static int[] intList(String property, String defaultValue) {
+        return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+            .map(String::trim)
+            .mapToInt(Integer::parseInt)
+            .toArray();
+    }
+
+    /**
+     * Full GC 后的已用堆内存
+     *
+     * 关闭的存储不会主动解除内存映射，MappedByteBuffer 要等 GC 后由 Cleaner 异步释放，
+     * 这里反复 GC 直到映射个数连续几轮不再变化（单核环境 Cleaner 线程可能要等一会儿才轮到），上一步留下的映射不计入这一步
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        BufferPoolMXBean mapped = mappedBufferPool();
+        long lastCount = -1;
+        int stableRounds = 0;
+        for (int i = 0; i < 20 && stableRounds < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+            long count = mapped == null ? 0 : mapped.getCount();
+            stableRounds = count == lastCount ? stableRounds + 1 : 0;
+            lastCount = count;
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * 进程打开的文件句柄数，非 Unix 系统返回 -1
+     */
+    private static long openFileDescriptors() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof UnixOperatingSystemMXBean unix ? unix.getOpenFileDescriptorCount() : -1;
+    }
+
+    private static BufferPoolMXBean mappedBufferPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("mapped".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Set<Throwable> seen = new HashSet<>();
+        Throwable root = e;
+        while (root.getCause() != null && seen.add(root)) {
+            root = root.getCause();
+        }
+        return String.valueOf(root.getMessage()).replace(',', ';').replace('\n', ' ');
+    }
+
+    /**
+     * 一步的结果
+     */
+    private static final class StepResult {
+        private final String engine;
+        private final int topics;
+        private final int queuesPerTopic;
+        private long files = -1;
+        private long fdDelta = -1;
+        private long mappedBytes = -1;
+        private long mappedBuffers = -1;
+        private long heapBytes = -1;
+        private long putP99Nanos = -1;
+        private long getP99Nanos = -1;
+        private double achievedRate = -1;
+        private long dropped = -1;
+        private long startupNanos = -1;
+        private boolean ok;
+        private String status = "OK";
+
+        StepResult(String engine, int topics, int queuesPerTopic) {
+            this.engine = engine;
+            this.topics = topics;
+            this.queuesPerTopic = queuesPerTopic;
+        }
+
+        static String header() {
+            return String.format("%-6s %8s %4s %8s %8s %10s %8s %9s %10s %10s %10s %s",
+                "引擎", "Topic", "队列", "文件数", "句柄增量", "mmap(MB)", "mmap数", "堆(MB)",
+                "写p99(ms)", "读p99(ms)", "启动(ms)", "状态");
+        }
+
+        String format() {
+            return String.format("%-6s %,8d %4d %,8d %,8d %,10.1f %,8d %,9.1f %10.3f %10.3f %,10.0f %s",
+                engine, topics, queuesPerTopic, files, fdDelta, mappedBytes / 1024.0 / 1024.0, mappedBuffers,
+                heapBytes / 1024.0 / 1024.0, putP99Nanos / 1_000_000.0, getP99Nanos / 1_000_000.0,
+                startupNanos / 1_000_000.0, ok && dropped > 0 ? "OK（跟不上目标速率，未发出 " + dropped + " 个操作）" : status);
+        }
+
+        String toCsv() {
+            return String.join(",",
+                engine, String.valueOf(topics), String.valueOf(queuesPerTopic), String.valueOf((long) topics * queuesPerTopic),
+                String.valueOf(files), String.valueOf(fdDelta),
+                String.format("%.1f", mappedBytes / 1024.0 / 1024.0), String.valueOf(mappedBuffers),
+                String.format("%.1f", heapBytes / 1024.0 / 1024.0),
+                String.format("%.3f", putP99Nanos / 1_000_000.0), String.format("%.3f", getP99Nanos / 1_000_000.0),
+                String.format("%.0f", achievedRate), String.valueOf(dropped),
+                String.format("%.0f", startupNanos / 1_000_000.0), status);
+        }
+    }
+}
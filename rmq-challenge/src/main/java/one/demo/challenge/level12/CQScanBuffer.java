@@ -0,0 +1,134 @@
+package one.demo.challenge.level12;
+
+import java.util.Arrays;
+
+/**
+ * CQ Scan Buffer - ConsumeQueue 扫描结果（结构数组）
+ *
+ * getIndexList / filterByTag 每条索引创建一个 CQUnit 和一个 ArrayList 元素，调用方马上又拆开使用，
+ * 拉取量大时年轻代 GC 频率与扫描量成正比。这里用平行的基本类型数组保存扫描结果：
+ * 1. ConsumeQueue.scan 原地填充，不创建任何对象
+ * 2. 数组只增不减，按线程复用（threadLocal），稳定运行后每条消息的索引读取不再分配内存
+ * 3. size 字段原样保存（高位是批量帧内序号），读取时与 CQUnit 一样拆开
+ *
+ * 线程内复用的约束：同一个线程在用完一次扫描结果之前，不能再用 threadLocal() 发起另一次扫描
+ */
+public final class CQScanBuffer {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final ThreadLocal<CQScanBuffer> THREAD_LOCAL = ThreadLocal.withInitial(CQScanBuffer::new);
+
+    // 队列索引
+    private long[] queueOffsets;
+
+    // CommitLog 物理偏移量
+    private long[] commitLogOffsets;
+
+    // 记录长度 | 批量帧内序号 << 24
+    private int[] sizes;
+
+    // Tag HashCode
+    private long[] tagsCodes;
+
+    // 有效条数
+    private int count;
+
+    // 扫描停止的位置（下次从这里继续，过滤时可能大于最后一条的索引 + 1）
+    private long nextIndex;
+
+    public CQScanBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CQScanBuffer(int capacity) {
+        this.queueOffsets = new long[capacity];
+        this.commitLogOffsets = new long[capacity];
+        this.sizes = new int[capacity];
+        this.tagsCodes = new long[capacity];
+    }
+
+    /**
+     * 当前线程复用的缓冲区（已清空）
+     */
+    public static CQScanBuffer threadLocal() {
+        CQScanBuffer buffer = THREAD_LOCAL.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 清空（不释放数组）
+     */
+    public void clear() {
+        count = 0;
+        nextIndex = 0;
+    }
+
+    /**
+     * 追加一条索引
+     */
+    void add(long queueOffset, long commitLogOffset, int size, long tagsCode) {
+        if (count == commitLogOffsets.length) {
+            int capacity = commitLogOffsets.length * 2;
+            queueOffsets = Arrays.copyOf(queueOffsets, capacity);
+            commitLogOffsets = Arrays.copyOf(commitLogOffsets, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            tagsCodes = Arrays.copyOf(tagsCodes, capacity);
+        }
+        queueOffsets[count] = queueOffset;
+        commitLogOffsets[count] = commitLogOffset;
+        sizes[count] = size;
+        tagsCodes[count] = tagsCode;
+        count++;
+    }
+
+    void setNextIndex(long nextIndex) {
+        this.nextIndex = nextIndex;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getNextIndex() {
+        return nextIndex;
+    }
+
+    public long getQueueOffset(int i) {
+        return queueOffsets[i];
+    }
+
+    public long getCommitLogOffset(int i) {
+        return commitLogOffsets[i];
+    }
+
+    /**
+     * 记录长度（批量帧为整帧长度）
+     */
+    public int getSize(int i) {
+        return sizes[i] & ConsumeQueue.SIZE_MASK;
+    }
+
+    /**
+     * 批量帧内的序号，单条消息为 0
+     */
+    public int getBatchIndex(int i) {
+        return sizes[i] >>> ConsumeQueue.BATCH_INDEX_SHIFT;
+    }
+
+    public long getTagsCode(int i) {
+        return tagsCodes[i];
+    }
+
+    /**
+     * 转换为 CQUnit（兼容按对象使用的调用方）
+     */
+    public ConsumeQueue.CQUnit toUnit(int i) {
+        return new ConsumeQueue.CQUnit(commitLogOffsets[i], sizes[i], tagsCodes[i]);
+    }
+}
@@ -0,0 +1,535 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cold Tier Store - CommitLog 冷数据分层存储
+ *
+ * 核心流程：
+ * 1. 后台线程把封存超过 coldSegmentAgeMs 的 CommitLog 文件按 coldChunkSize 切块、逐块压缩，
+ *    写入冷存储目录（另一块盘 / 另一种存储介质），写完后删除热数据文件
+ * 2. 读取已归档的偏移量时，MappedFileQueue 找不到热数据文件，转到这里读取：
+ *    按块索引定位、解压需要的块，经 LRU 块缓存拼出请求的数据，对上层透明
+ * 3. 冷读在独立的 IO 线程池中执行，慢盘上的读取只会占用这几个线程，不会拖住写入和热数据读取
+ *
+ * 目录结构：
+ * {coldStorePath}/commitlog/
+ *   ├── 00000000000000000000.data    # 压缩块依次拼接
+ *   └── 00000000000000000000.index   # 块索引（最后写入，存在即表示该文件归档完整）
+ *
+ * 块索引格式：魔数(4) + 文件起始偏移量(8) + 有效数据长度(4) + 块大小(4) + 块数(4)，
+ * 之后每块：块在 .data 中的位置(8) + 压缩后长度(4)
+ */
+@Slf4j
+public class ColdTierStore {
+
+    private static final int INDEX_MAGIC = 0xC01DC01D;
+
+    private static final int INDEX_HEADER_SIZE = 4 + 8 + 4 + 4 + 4;
+
+    private static final int INDEX_ENTRY_SIZE = 8 + 4;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 消息存储（判断文件是否已分发完）
+    private final Level12MessageStoreBest messageStore;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 冷存储目录
+    private final String coldPath;
+
+    // 已归档的文件：起始偏移量 -> 文件
+    private final ConcurrentSkipListMap<Long, ColdSegment> segmentTable = new ConcurrentSkipListMap<>();
+
+    // 解压后的块缓存（key 为块的全局起始偏移量）
+    private final ChunkCache chunkCache;
+
+    // 冷读线程池
+    private final ExecutorService coldReadExecutor;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 后台归档线程
+    private Thread archiveThread;
+
+    // 统计
+    private final AtomicLong archivedSegmentCount = new AtomicLong(0);
+    private final AtomicLong archivedRawBytes = new AtomicLong(0);
+    private final AtomicLong archivedStoredBytes = new AtomicLong(0);
+    private final AtomicLong coldReadCount = new AtomicLong(0);
+    private final AtomicLong chunkCacheHitCount = new AtomicLong(0);
+    private final AtomicLong chunkLoadCount = new AtomicLong(0);
+
+    /**
+     * 构造函数（需要调用 load 加载已归档的文件）
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置（coldStorePath 不能为空）
+     */
+    public ColdTierStore(Level12MessageStoreBest messageStore, CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+        this.coldPath = storeConfig.getColdStorePath() + "/commitlog";
+        this.chunkCache = new ChunkCache(storeConfig.getColdChunkCacheSize());
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.coldReadExecutor = new ThreadPoolExecutor(storeConfig.getColdReadThreads(), storeConfig.getColdReadThreads(),
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "ColdTierRead-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    }
+
+    /**
+     * 加载已归档的文件，并接管 CommitLog 热数据之外的读取（第一次读取 CommitLog 之前调用）
+     */
+    public void load() {
+        new File(coldPath).mkdirs();
+        loadSegments();
+
+        commitLog.getMappedFileQueue().setFallbackReader(this::read);
+    }
+
+    /**
+     * 启动后台归档
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ ColdTierStore 已经在运行中");
+            return;
+        }
+
+        running = true;
+
+        archiveThread = new Thread(this::doArchive, "ColdTierArchive");
+        archiveThread.setDaemon(true);
+        archiveThread.start();
+
+        log.info("✅ ColdTierStore 已启动: path={}, segmentAge={} ms, chunkSize={}",
+            coldPath, storeConfig.getColdSegmentAgeMs(), storeConfig.getColdChunkSize());
+    }
+
+    /**
+     * 停止服务
+     */
+    public void shutdown() {
+        running = false;
+
+        if (archiveThread != null) {
+            try {
+                archiveThread.interrupt();
+                archiveThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 ColdTierStore 失败", e);
+            }
+        }
+
+        coldReadExecutor.shutdownNow();
+        for (ColdSegment segment : segmentTable.values()) {
+            segment.close();
+        }
+        segmentTable.clear();
+        chunkCache.clear();
+
+        log.info("✅ ColdTierStore 已停止: segments={}, coldReads={}", archivedSegmentCount.get(), coldReadCount.get());
+    }
+
+    private void doArchive() {
+        while (running) {
+            try {
+                Thread.sleep(storeConfig.getColdArchiveIntervalMs());
+                archive(storeConfig.getColdSegmentAgeMs());
+            } catch (InterruptedException e) {
+                log.info("ColdTierStore 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ ColdTierStore 归档失败", e);
+            }
+        }
+
+        log.info("🧊 ColdTierStore 已退出");
+    }
+
+    // ==================== 归档 ====================
+
+    /**
+     * 归档封存时间超过 minAgeMs 的 CommitLog 文件（也可手动触发）
+     *
+     * 按文件顺序归档，正在写入的文件和还没分发完的文件不归档
+     *
+     * @param minAgeMs 最小封存时长（毫秒），以下一个文件第一条消息的存储时间作为封存时间
+     * @return 归档的文件数
+     */
+    public synchronized int archive(long minAgeMs) throws IOException {
+        MappedFileQueue mappedFileQueue = commitLog.getMappedFileQueue();
+        int archived = 0;
+
+        while (true) {
+            MappedFile first = mappedFileQueue.getFirstMappedFile();
+            MappedFile last = mappedFileQueue.getLastMappedFileIfExists();
+            if (first == null || first == last || !first.isFull()) {
+                break;
+            }
+
+            long nextFileOffset = first.getFileFromOffset() + first.getFileSize();
+            if (messageStore.getReputMessageService().getReputFromOffset() < nextFileOffset) {
+                break;
+            }
+
+            Level12Message nextFirstMessage = commitLog.getMessage(nextFileOffset);
+            if (nextFirstMessage == null
+                || System.currentTimeMillis() - nextFirstMessage.getStoreTime() < minAgeMs) {
+                break;
+            }
+
+            // 上次归档写完后没来得及删热数据文件（崩溃），直接删除
+            if (!segmentTable.containsKey(first.getFileFromOffset())) {
+                segmentTable.put(first.getFileFromOffset(), writeSegment(first));
+            }
+            mappedFileQueue.deleteFirstMappedFile();
+            archived++;
+        }
+
+        return archived;
+    }
+
+    private ColdSegment writeSegment(MappedFile mappedFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        long fileFromOffset = mappedFile.getFileFromOffset();
+        int validSize = mappedFile.getWrotePosition();
+        int chunkSize = storeConfig.getColdChunkSize();
+        int chunkCount = (validSize + chunkSize - 1) / chunkSize;
+
+        ByteBuffer source = mappedFile.sliceWholeFile();
+        long[] positions = new long[chunkCount];
+        int[] lengths = new int[chunkCount];
+
+        Path dataPath = Paths.get(coldPath, segmentName(fileFromOffset) + ".data");
+        long storedBytes = 0;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < chunkCount; i++) {
+                int from = i * chunkSize;
+                byte[] raw = new byte[Math.min(chunkSize, validSize - from)];
+                source.get(from, raw);
+
+                byte[] compressed = MessageCodec.deflate(raw, storeConfig.getColdCompressLevel());
+                positions[i] = storedBytes;
+                lengths[i] = compressed.length;
+
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                storedBytes += compressed.length;
+            }
+            channel.force(true);
+        }
+
+        // 块索引最后写入（先写临时文件再原子替换），存在即表示 .data 完整
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_SIZE + chunkCount * INDEX_ENTRY_SIZE);
+        index.putInt(INDEX_MAGIC);
+        index.putLong(fileFromOffset);
+        index.putInt(validSize);
+        index.putInt(chunkSize);
+        index.putInt(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            index.putLong(positions[i]);
+            index.putInt(lengths[i]);
+        }
+        index.flip();
+
+        Path indexPath = Paths.get(coldPath, segmentName(fileFromOffset) + ".index");
+        Path tmp = Paths.get(coldPath, segmentName(fileFromOffset) + ".index.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        archivedSegmentCount.incrementAndGet();
+        archivedRawBytes.addAndGet(validSize);
+        archivedStoredBytes.addAndGet(storedBytes);
+
+        log.info("🧊 CommitLog 文件已归档: offset={}, size={}, stored={}, chunks={}, 耗时: {} ms",
+            fileFromOffset, validSize, storedBytes, chunkCount, System.currentTimeMillis() - startTime);
+
+        return new ColdSegment(fileFromOffset, validSize, chunkSize, positions, lengths,
+            FileChannel.open(dataPath, StandardOpenOption.READ));
+    }
+
+    private void loadSegments() {
+        File[] files = new File(coldPath).listFiles((dir, name) -> name.endsWith(".index"));
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            try {
+                ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+                if (index.getInt() != INDEX_MAGIC) {
+                    log.warn("⚠️ 跳过无效的块索引: {}", file.getName());
+                    continue;
+                }
+                long fileFromOffset = index.getLong();
+                int validSize = index.getInt();
+                int chunkSize = index.getInt();
+                int chunkCount = index.getInt();
+                long[] positions = new long[chunkCount];
+                int[] lengths = new int[chunkCount];
+                for (int i = 0; i < chunkCount; i++) {
+                    positions[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                }
+
+                Path dataPath = Paths.get(coldPath, segmentName(fileFromOffset) + ".data");
+                segmentTable.put(fileFromOffset, new ColdSegment(fileFromOffset, validSize, chunkSize,
+                    positions, lengths, FileChannel.open(dataPath, StandardOpenOption.READ)));
+            } catch (IOException e) {
+                throw new IllegalStateException("加载冷存储文件失败: " + file, e);
+            }
+        }
+
+        archivedSegmentCount.set(segmentTable.size());
+        log.info("✅ 冷存储加载完成: path={}, segments={}", coldPath, segmentTable.size());
+    }
+
+    private static String segmentName(long fileFromOffset) {
+        return String.format("%020d", fileFromOffset);
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取已归档的数据（在冷读线程中执行，调用方等待结果）
+     *
+     * @param offset 全局物理偏移量
+     * @param size 读取大小
+     * @return 数据，不在冷存储中或读取超时返回 null
+     */
+    public ByteBuffer read(long offset, int size) {
+        Map.Entry<Long, ColdSegment> entry = segmentTable.floorEntry(offset);
+        if (entry == null || !entry.getValue().contains(offset, size)) {
+            return null;
+        }
+
+        try {
+            return readAsync(entry.getValue(), offset, size)
+                .get(storeConfig.getColdReadTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("⚠️ 冷存储读取超时: offset={}, size={}", offset, size);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.error("❌ 冷存储读取失败: offset={}, size={}", offset, size, e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<ByteBuffer> readAsync(ColdSegment segment, long offset, int size) {
+        coldReadCount.incrementAndGet();
+
+        // 整个请求都在缓存中时不用切换线程
+        ByteBuffer cached = segment.readCached(offset, size);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return segment.read(offset, size);
+            } catch (IOException e) {
+                throw new IllegalStateException("读取冷存储文件失败: offset=" + offset, e);
+            }
+        }, coldReadExecutor);
+    }
+
+    // Getters
+
+    public int getSegmentCount() {
+        return segmentTable.size();
+    }
+
+    public long getArchivedSegmentCount() {
+        return archivedSegmentCount.get();
+    }
+
+    public long getArchivedRawBytes() {
+        return archivedRawBytes.get();
+    }
+
+    public long getArchivedStoredBytes() {
+        return archivedStoredBytes.get();
+    }
+
+    public long getColdReadCount() {
+        return coldReadCount.get();
+    }
+
+    public long getChunkCacheHitCount() {
+        return chunkCacheHitCount.get();
+    }
+
+    public long getChunkLoadCount() {
+        return chunkLoadCount.get();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 一个已归档的 CommitLog 文件
+     */
+    private class ColdSegment {
+        private final long fileFromOffset;
+        private final int validSize;
+        private final int chunkSize;
+        private final long[] positions;
+        private final int[] lengths;
+        private final FileChannel dataChannel;
+
+        ColdSegment(long fileFromOffset, int validSize, int chunkSize, long[] positions, int[] lengths,
+                    FileChannel dataChannel) {
+            this.fileFromOffset = fileFromOffset;
+            this.validSize = validSize;
+            this.chunkSize = chunkSize;
+            this.positions = positions;
+            this.lengths = lengths;
+            this.dataChannel = dataChannel;
+        }
+
+        boolean contains(long offset, int size) {
+            return offset >= fileFromOffset && offset + size <= fileFromOffset + validSize;
+        }
+
+        /**
+         * 只从缓存读取，有块不在缓存中返回 null
+         */
+        ByteBuffer readCached(long offset, int size) {
+            int pos = (int) (offset - fileFromOffset);
+            ByteBuffer result = ByteBuffer.allocate(size);
+            while (result.hasRemaining()) {
+                int chunkIndex = (pos + result.position()) / chunkSize;
+                byte[] chunk = chunkCache.get(chunkKey(chunkIndex));
+                if (chunk == null) {
+                    return null;
+                }
+                copy(chunk, chunkIndex, pos, result);
+            }
+            chunkCacheHitCount.incrementAndGet();
+            return result.flip();
+        }
+
+        ByteBuffer read(long offset, int size) throws IOException {
+            int pos = (int) (offset - fileFromOffset);
+            ByteBuffer result = ByteBuffer.allocate(size);
+            while (result.hasRemaining()) {
+                int chunkIndex = (pos + result.position()) / chunkSize;
+                copy(loadChunk(chunkIndex), chunkIndex, pos, result);
+            }
+            return result.flip();
+        }
+
+        private void copy(byte[] chunk, int chunkIndex, int pos, ByteBuffer result) {
+            int from = pos + result.position() - chunkIndex * chunkSize;
+            int length = Math.min(result.remaining(), chunk.length - from);
+            result.put(chunk, from, length);
+        }
+
+        private byte[] loadChunk(int chunkIndex) throws IOException {
+            long key = chunkKey(chunkIndex);
+            byte[] chunk = chunkCache.get(key);
+            if (chunk != null) {
+                return chunk;
+            }
+
+            ByteBuffer compressed = ByteBuffer.allocate(lengths[chunkIndex]);
+            long position = positions[chunkIndex];
+            while (compressed.hasRemaining()) {
+                int n = dataChannel.read(compressed, position + compressed.position());
+                if (n < 0) {
+                    throw new IOException("冷存储文件不完整: offset=" + fileFromOffset);
+                }
+            }
+
+            chunk = MessageCodec.inflate(compressed.array());
+            chunkCache.put(key, chunk);
+            chunkLoadCount.incrementAndGet();
+            return chunk;
+        }
+
+        private long chunkKey(int chunkIndex) {
+            return fileFromOffset + (long) chunkIndex * chunkSize;
+        }
+
+        void close() {
+            try {
+                dataChannel.close();
+            } catch (IOException e) {
+                log.warn("⚠️ 关闭冷存储文件失败: offset={}", fileFromOffset, e);
+            }
+        }
+    }
+
+    /**
+     * 解压后的块缓存（LRU）
+     */
+    private static class ChunkCache {
+        private final LinkedHashMap<Long, byte[]> chunks;
+
+        ChunkCache(int maxChunks) {
+            this.chunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                    return size() > maxChunks;
+                }
+            };
+        }
+
+        synchronized byte[] get(long key) {
+            return chunks.get(key);
+        }
+
+        synchronized void put(long key, byte[] chunk) {
+            chunks.put(key, chunk);
+        }
+
+        synchronized void clear() {
+            chunks.clear();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package one.demo.challenge.level12;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * CommitLog - 所有消息统一存储
@@ -14,10 +19,14 @@ import java.nio.charset.StandardCharsets;
  * 1. 所有 Topic 的消息都写入同一个 CommitLog
  * 2. 顺序追加写入（Append Only），性能最优
  * 3. 使用 MappedFileQueue 管理多个 1GB 文件
- * 4. 消息格式：消息长度(4) + 消息体(JSON)
+ * 4. 记录格式见 MessageCodec：消息长度(4) + 头部 + 消息体（可压缩） + 元数据 JSON
+ * 5. 支持批量帧：一批消息整体压缩后作为一条记录写入
+ * 6. 记录写入锁的持有时长和排队线程数，供存储层判断 PageCache 是否繁忙（写入背压）
+ * 7. 隔离区：CrcScrubService 发现的损坏区间，读取时直接失败，不再交给反序列化
+ * 8. 可选单写线程：写入线程多时由 CommitLogAppendRing 批量写入，避免锁排队
  */
 @Slf4j
-public class CommitLog {
+public final class CommitLog {
 
     // 单个文件大小：1GB
     private static final int MAPPED_FILE_SIZE = 1024 * 1024 * 1024;
@@ -28,8 +37,29 @@ public class CommitLog {
     // MappedFile 队列
     private final MappedFileQueue mappedFileQueue;
 
-    // JSON 序列化
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 记录编解码
+    private final MessageCodec messageCodec;
+
+    // 写入锁：序列化在锁外完成，锁内只做追加，保证多线程写入时位置不会交错
+    private final ReentrantLock putMessageLock = new ReentrantLock();
+
+    // 当前持有写入锁的开始时间，0 表示没有线程持有
+    private volatile long beginTimeInLock = 0;
+
+    // 正在等待写入锁的线程数
+    private final AtomicInteger putQueueDepth = new AtomicInteger(0);
+
+    // 单写线程（开启后 appendMessage / appendMessages 由它写入），null 表示各线程自己加锁写入
+    private volatile CommitLogAppendRing appendRing;
+
+    // 最近一次写入（获得写入锁）的时间，0 表示启动后还没有写入
+    private volatile long lastAppendTime = 0;
+
+    // 隔离的损坏区间：起始偏移量 -> 结束偏移量（不含）
+    private final ConcurrentSkipListMap<Long, Long> quarantinedRanges = new ConcurrentSkipListMap<>();
+
+    // 落在隔离区间内被拒绝的读取次数
+    private final AtomicLong quarantinedReadCount = new AtomicLong(0);
 
     /**
      * 构造函数
@@ -37,10 +67,44 @@ public class CommitLog {
      * @param storePath 存储路径
      */
     public CommitLog(String storePath) {
+        this(storePath, MAPPED_FILE_SIZE);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param mappedFileSize 单个文件大小（测试、压测时可以调小，便于观察文件滚动）
+     */
+    public CommitLog(String storePath, int mappedFileSize) {
+        this(storePath, mappedFileSize, new MessageCodec());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param mappedFileSize 单个文件大小
+     * @param messageCodec 记录编解码（决定是否压缩消息体）
+     */
+    public CommitLog(String storePath, int mappedFileSize, MessageCodec messageCodec) {
+        this(storePath, mappedFileSize, messageCodec, StoreIoBackend.Type.MMAP);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param mappedFileSize 单个文件大小
+     * @param messageCodec 记录编解码（决定是否压缩消息体）
+     * @param ioBackendType 文件的 I/O 方式
+     */
+    public CommitLog(String storePath, int mappedFileSize, MessageCodec messageCodec, StoreIoBackend.Type ioBackendType) {
         this.storePath = storePath + "/commitlog";
-        this.mappedFileQueue = new MappedFileQueue(this.storePath, MAPPED_FILE_SIZE);
+        this.mappedFileQueue = new MappedFileQueue(this.storePath, mappedFileSize, ioBackendType);
+        this.messageCodec = messageCodec;
 
-        log.info("✅ CommitLog 初始化完成: {}", this.storePath);
+        log.info("✅ CommitLog 初始化完成: {}, fileSize={}, io={}", this.storePath, mappedFileSize, ioBackendType);
     }
 
     /**
@@ -50,22 +114,36 @@ public class CommitLog {
      * @return 追加结果
      */
     public AppendMessageResult appendMessage(Level12Message message) {
+        return appendMessage(message, 0);
+    }
+
+    /**
+     * 追加消息，最多等待 lockWaitMs 获取写入锁
+     *
+     * @param message 消息
+     * @param lockWaitMs 获取写入锁的最长等待时间（毫秒），<= 0 表示一直等待
+     * @return 追加结果，等待超时返回 LOCK_WAIT_TIMEOUT
+     */
+    public AppendMessageResult appendMessage(Level12Message message, long lockWaitMs) {
         long startTime = System.currentTimeMillis();
 
         try {
-            // 1. 序列化消息
-            String json = objectMapper.writeValueAsString(message);
-            byte[] bodyBytes = json.getBytes(StandardCharsets.UTF_8);
+            // 存储时间在序列化前设置，随消息一起持久化（压缩等后台任务依赖它）
+            message.setStoreTime(System.currentTimeMillis());
 
-            // 2. 构建消息格式：消息长度(4) + 消息体
-            int totalLength = 4 + bodyBytes.length;
-            ByteBuffer buffer = ByteBuffer.allocate(totalLength);
-            buffer.putInt(bodyBytes.length);
-            buffer.put(bodyBytes);
-            buffer.flip();
+            // 1. 编码消息（消息体超过阈值时压缩）
+            ByteBuffer buffer = messageCodec.encode(message);
+            int totalLength = buffer.remaining();
+            if (totalLength > MessageCodec.MAX_RECORD_SIZE) {
+                log.error("❌ 消息过大: messageId={}, size={}", message.getMessageId(), totalLength);
+                return new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED);
+            }
 
             // 3. 写入 CommitLog（顺序追加）
-            long physicalOffset = mappedFileQueue.append(buffer);
+            long physicalOffset = appendRecord(buffer, lockWaitMs);
+            if (physicalOffset == CommitLogAppendRing.WAIT_TIMEOUT) {
+                return new AppendMessageResult(AppendMessageStatus.LOCK_WAIT_TIMEOUT);
+            }
 
             if (physicalOffset == -1) {
                 log.error("❌ CommitLog 写入失败");
@@ -74,7 +152,8 @@ public class CommitLog {
 
             // 4. 更新消息的物理偏移量
             message.setPhysicalOffset(physicalOffset);
-            message.setStoreTime(System.currentTimeMillis());
+            message.setLen(totalLength);
+            message.setBatchIndex(0);
 
             long costTime = System.currentTimeMillis() - startTime;
 
@@ -94,6 +173,291 @@ public class CommitLog {
         }
     }
 
+    /**
+     * 批量追加消息：整批编码为一个批量帧（整体压缩），只占一次写入锁
+     *
+     * 写入后每条消息的 physicalOffset 为帧的偏移量，batchIndex 为帧内序号
+     *
+     * @param messages 消息列表（不超过 MessageCodec.MAX_BATCH_MESSAGES 条）
+     * @return 追加结果
+     */
+    public AppendMessageResult appendMessages(List<Level12Message> messages) {
+        return appendMessages(messages, 0);
+    }
+
+    /**
+     * 批量追加消息，最多等待 lockWaitMs 获取写入锁
+     *
+     * @param messages 消息列表（不超过 MessageCodec.MAX_BATCH_MESSAGES 条）
+     * @param lockWaitMs 获取写入锁的最长等待时间（毫秒），<= 0 表示一直等待
+     * @return 追加结果，等待超时返回 LOCK_WAIT_TIMEOUT
+     */
+    public AppendMessageResult appendMessages(List<Level12Message> messages, long lockWaitMs) {
+        try {
+            long storeTime = System.currentTimeMillis();
+            for (Level12Message message : messages) {
+                message.setStoreTime(storeTime);
+            }
+
+            ByteBuffer buffer = messageCodec.encodeBatch(messages);
+            int totalLength = buffer.remaining();
+            if (totalLength > MessageCodec.MAX_RECORD_SIZE) {
+                log.error("❌ 批量消息过大: count={}, size={}", messages.size(), totalLength);
+                return new AppendMessageResult(AppendMessageStatus.MESSAGE_SIZE_EXCEEDED);
+            }
+
+            long physicalOffset = appendRecord(buffer, lockWaitMs);
+            if (physicalOffset == CommitLogAppendRing.WAIT_TIMEOUT) {
+                return new AppendMessageResult(AppendMessageStatus.LOCK_WAIT_TIMEOUT);
+            }
+
+            if (physicalOffset == -1) {
+                log.error("❌ CommitLog 批量写入失败");
+                return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+            }
+
+            for (int i = 0; i < messages.size(); i++) {
+                Level12Message message = messages.get(i);
+                message.setPhysicalOffset(physicalOffset);
+                message.setLen(totalLength);
+                message.setBatchIndex(i);
+            }
+
+            log.debug("📝 CommitLog 批量写入成功: offset={}, count={}, size={}",
+                physicalOffset, messages.size(), totalLength);
+
+            return new AppendMessageResult(
+                AppendMessageStatus.PUT_OK,
+                physicalOffset,
+                totalLength,
+                messages.get(0).getMessageId()
+            );
+
+        } catch (Exception e) {
+            log.error("❌ CommitLog 批量追加消息失败", e);
+            return new AppendMessageResult(AppendMessageStatus.UNKNOWN_ERROR);
+        }
+    }
+
+    /**
+     * 追加一条编码好的记录：开启了单写线程时交给写入线程，否则在写入锁内追加
+     *
+     * @return 物理偏移量，-1 表示失败，CommitLogAppendRing.WAIT_TIMEOUT 表示等待超时
+     */
+    private long appendRecord(ByteBuffer buffer, long lockWaitMs) {
+        CommitLogAppendRing ring = appendRing;
+        if (ring != null) {
+            return ring.append(buffer, lockWaitMs);
+        }
+
+        if (!lockForPut(lockWaitMs)) {
+            return CommitLogAppendRing.WAIT_TIMEOUT;
+        }
+        try {
+            return mappedFileQueue.append(buffer);
+        } finally {
+            unlockForPut();
+        }
+    }
+
+    /**
+     * 在一次写入锁内依次追加多条编码好的记录（单写线程批量写入使用）
+     *
+     * @param records 记录
+     * @param offsets 每条记录的物理偏移量，-1 表示失败
+     * @param count 记录数
+     */
+    void appendRecords(ByteBuffer[] records, long[] offsets, int count) {
+        lockForPut(0);
+        try {
+            for (int i = 0; i < count; i++) {
+                offsets[i] = mappedFileQueue.append(records[i]);
+            }
+        } finally {
+            unlockForPut();
+        }
+    }
+
+    /**
+     * 开启单写线程（见 CommitLogAppendRing），需要在第一次写入之前调用
+     *
+     * @param bufferSize 环形缓冲区槽位数
+     * @param maxBatch 每批最多写入的记录数
+     */
+    public void startAppendRing(int bufferSize, int maxBatch) {
+        if (appendRing != null) {
+            throw new IllegalStateException("单写线程已开启");
+        }
+        CommitLogAppendRing ring = new CommitLogAppendRing(this, bufferSize, maxBatch);
+        ring.start();
+        appendRing = ring;
+    }
+
+    /**
+     * 单写线程，没有开启时返回 null
+     */
+    public CommitLogAppendRing getAppendRing() {
+        return appendRing;
+    }
+
+    /**
+     * 追加从主节点复制过来的数据（原样写入，偏移量与主节点一致）
+     *
+     * @param offset 数据在主节点上的物理偏移量
+     * @param data 数据
+     * @return 是否成功，偏移量对不上返回 false
+     */
+    public boolean appendReplicated(long offset, ByteBuffer data) {
+        lockForPut(0);
+        try {
+            return mappedFileQueue.appendAt(offset, data);
+        } finally {
+            unlockForPut();
+        }
+    }
+
+    /**
+     * 追加一条已编码的原始记录（长度(4) + 消息体），不重新序列化
+     *
+     * @param record 原始记录
+     * @return 物理偏移量，-1 表示失败
+     */
+    public long appendRawRecord(ByteBuffer record) {
+        lockForPut(0);
+        try {
+            return mappedFileQueue.append(record);
+        } finally {
+            unlockForPut();
+        }
+    }
+
+    /**
+     * 批量追加已编码的原始记录（导入使用），一次写入锁内完成
+     *
+     * 记录不能跨文件：当前文件放不下的部分从下一个文件开头继续写，切分点总在记录边界上
+     *
+     * @param records 依次拼接的完整记录（长度(4) + 记录内容）
+     * @return 第一条记录的物理偏移量，-1 表示失败
+     */
+    public long appendRawRecords(ByteBuffer records) {
+        lockForPut(0);
+        try {
+            long firstOffset = -1;
+            ByteBuffer remaining = records.slice();
+            while (remaining.hasRemaining()) {
+                MappedFile mappedFile = mappedFileQueue.getLastMappedFile(0);
+                if (mappedFile == null) {
+                    return -1;
+                }
+
+                // 当前文件能放下的完整记录
+                int available = mappedFile.getAvailableSpace();
+                int fit = 0;
+                while (fit < remaining.remaining()) {
+                    int recordSize = 4 + remaining.getInt(fit);
+                    if (fit + recordSize > available) {
+                        break;
+                    }
+                    fit += recordSize;
+                }
+
+                if (fit == 0) {
+                    if (mappedFile.getWrotePosition() == 0) {
+                        log.error("❌ 记录大于 CommitLog 文件大小: size={}", 4 + remaining.getInt(0));
+                        return -1;
+                    }
+                    mappedFile.markFull();
+                    continue;
+                }
+
+                ByteBuffer part = remaining.slice();
+                part.limit(fit);
+                long offset = mappedFile.appendMessage(part);
+                if (offset < 0) {
+                    return -1;
+                }
+                if (firstOffset < 0) {
+                    firstOffset = offset;
+                }
+                remaining.position(remaining.position() + fit);
+                remaining = remaining.slice();
+            }
+            return firstOffset;
+        } finally {
+            unlockForPut();
+        }
+    }
+
+    /**
+     * 获取写入锁并记录开始持有的时间
+     *
+     * @param lockWaitMs 最长等待时间（毫秒），<= 0 表示一直等待
+     * @return 是否获取成功
+     */
+    private boolean lockForPut(long lockWaitMs) {
+        putQueueDepth.incrementAndGet();
+        try {
+            if (lockWaitMs <= 0) {
+                putMessageLock.lock();
+            } else if (!putMessageLock.tryLock(lockWaitMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            putQueueDepth.decrementAndGet();
+        }
+
+        beginTimeInLock = System.currentTimeMillis();
+        return true;
+    }
+
+    private void unlockForPut() {
+        lastAppendTime = beginTimeInLock;
+        beginTimeInLock = 0;
+        putMessageLock.unlock();
+    }
+
+    /**
+     * 当前这次写入已持有写入锁多久（毫秒），没有线程持有返回 0
+     *
+     * 正常追加只是一次内存拷贝，持有时间长说明遇到了缺页、脏页回写阻塞等 PageCache 问题
+     */
+    public long getLockHeldMs() {
+        long begin = beginTimeInLock;
+        return begin == 0 ? 0 : Math.max(0, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 最近一次写入的时间（毫秒），启动后还没有写入返回 0
+     */
+    public long getLastAppendTime() {
+        return lastAppendTime;
+    }
+
+    /**
+     * 正在等待写入的线程数：等待写入锁的线程，加上开启单写线程时还没写完的记录
+     */
+    public int getPutQueueDepth() {
+        CommitLogAppendRing ring = appendRing;
+        return putQueueDepth.get() + (ring == null ? 0 : ring.getPendingCount());
+    }
+
+    /**
+     * 读取一条原始记录（长度(4) + 消息体），不反序列化
+     *
+     * @param offset 物理偏移量
+     * @return 记录切片，读取失败返回 null
+     */
+    public ByteBuffer selectRawRecord(long offset) {
+        ByteBuffer lengthBuffer = mappedFileQueue.getData(offset, 4);
+        if (lengthBuffer == null) {
+            return null;
+        }
+        return mappedFileQueue.getData(offset, 4 + lengthBuffer.getInt());
+    }
+
     /**
      * 读取消息
      *
@@ -101,29 +465,37 @@ public class CommitLog {
      * @return 消息
      */
     public Level12Message getMessage(long offset) {
+        return getMessage(offset, 0);
+    }
+
+    /**
+     * 读取消息（压缩的消息体不在这里解压，第一次访问 body 时才解压）
+     *
+     * @param offset 物理偏移量
+     * @param batchIndex 批量帧内的序号，单条消息为 0
+     * @return 消息
+     */
+    public Level12Message getMessage(long offset, int batchIndex) {
+        if (rejectQuarantined(offset)) {
+            return null;
+        }
+
         try {
-            // 1. 读取消息长度（4 字节）
-            ByteBuffer lengthBuffer = mappedFileQueue.getData(offset, 4);
-            if (lengthBuffer == null) {
-                log.error("❌ 读取消息长度失败: offset={}", offset);
+            ByteBuffer record = selectRawRecord(offset);
+            if (record == null) {
+                log.error("❌ 读取消息失败: offset={}", offset);
                 return null;
             }
 
-            int length = lengthBuffer.getInt();
-
-            // 2. 读取消息体
-            ByteBuffer bodyBuffer = mappedFileQueue.getData(offset + 4, length);
-            if (bodyBuffer == null) {
-                log.error("❌ 读取消息体失败: offset={}, length={}", offset, length);
+            Level12Message message = messageCodec.decode(record, batchIndex);
+            if (message == null) {
+                log.error("❌ 批量帧内没有该消息: offset={}, batchIndex={}", offset, batchIndex);
                 return null;
             }
 
-            // 3. 反序列化
-            byte[] bodyBytes = new byte[length];
-            bodyBuffer.get(bodyBytes);
-            String json = new String(bodyBytes, StandardCharsets.UTF_8);
-
-            Level12Message message = objectMapper.readValue(json, Level12Message.class);
+            // 物理偏移量在写入后才确定，序列化内容里没有，这里以实际读取位置为准
+            message.setPhysicalOffset(offset);
+            message.setLen(record.limit());
 
             log.debug("📖 CommitLog 读取成功: offset={}, messageId={}", offset, message.getMessageId());
 
@@ -135,6 +507,87 @@ public class CommitLog {
         }
     }
 
+    /**
+     * 读取一条记录中的全部消息（批量帧只解压一次），单条消息返回一个元素
+     *
+     * @param offset 物理偏移量
+     * @return 消息列表，读取失败返回 null
+     */
+    public List<Level12Message> getMessages(long offset) {
+        if (rejectQuarantined(offset)) {
+            return null;
+        }
+
+        try {
+            ByteBuffer record = selectRawRecord(offset);
+            if (record == null) {
+                log.error("❌ 读取消息失败: offset={}", offset);
+                return null;
+            }
+
+            List<Level12Message> messages = messageCodec.decodeAll(record);
+            for (Level12Message message : messages) {
+                message.setPhysicalOffset(offset);
+                message.setLen(record.limit());
+            }
+            return messages;
+
+        } catch (Exception e) {
+            log.error("❌ CommitLog 读取消息失败: offset={}", offset, e);
+            return null;
+        }
+    }
+
+    // ==================== 隔离区 ====================
+
+    /**
+     * 隔离 [startOffset, endOffset) 区间，之后落在区间内的读取直接返回 null
+     */
+    public void quarantine(long startOffset, long endOffset) {
+        quarantinedRanges.merge(startOffset, endOffset, Math::max);
+    }
+
+    /**
+     * 解除隔离（文件修复后）
+     *
+     * @return 是否存在该区间
+     */
+    public boolean releaseQuarantine(long startOffset) {
+        return quarantinedRanges.remove(startOffset) != null;
+    }
+
+    /**
+     * 偏移量是否落在隔离区间内
+     */
+    public boolean isQuarantined(long offset) {
+        Map.Entry<Long, Long> range = quarantinedRanges.floorEntry(offset);
+        return range != null && offset < range.getValue();
+    }
+
+    /**
+     * 包含该偏移量的隔离区间的结束位置
+     *
+     * @return 区间结束位置（不含），不在隔离区间内时返回 -1
+     */
+    public long getQuarantineEnd(long offset) {
+        Map.Entry<Long, Long> range = quarantinedRanges.floorEntry(offset);
+        return range != null && offset < range.getValue() ? range.getValue() : -1;
+    }
+
+    private boolean rejectQuarantined(long offset) {
+        if (quarantinedRanges.isEmpty() || !isQuarantined(offset)) {
+            return false;
+        }
+        if (quarantinedReadCount.incrementAndGet() % 1000 == 1) {
+            log.warn("⚠️ 读取落在隔离的损坏区间内: offset={}, rejected={}", offset, quarantinedReadCount.get());
+        }
+        return true;
+    }
+
+    public long getQuarantinedReadCount() {
+        return quarantinedReadCount.get();
+    }
+
     /**
      * 刷盘
      */
@@ -146,10 +599,22 @@ public class CommitLog {
      * 关闭
      */
     public void shutdown() {
+        CommitLogAppendRing ring = appendRing;
+        if (ring != null) {
+            ring.shutdown();
+        }
         mappedFileQueue.shutdown();
         log.info("✅ CommitLog 已关闭");
     }
 
+    public MappedFileQueue getMappedFileQueue() {
+        return mappedFileQueue;
+    }
+
+    public MessageCodec getMessageCodec() {
+        return messageCodec;
+    }
+
     /**
      * 获取最大偏移量
      */
@@ -164,6 +629,61 @@ public class CommitLog {
         return mappedFileQueue.getMinOffset();
     }
 
+    /**
+     * 已封存文件的最大偏移量（即当前写入文件的起始偏移量），之前的数据不会再被写入
+     */
+    public long getSealedMaxOffset() {
+        MappedFile lastMappedFile = mappedFileQueue.getLastMappedFileIfExists();
+        return lastMappedFile == null ? 0 : lastMappedFile.getFileFromOffset();
+    }
+
+    /**
+     * 恢复写入位置（重启后调用）
+     *
+     * @param maxOffset 有效数据的最大偏移量
+     */
+    public void recoverTo(long maxOffset) {
+        mappedFileQueue.recoverTo(maxOffset);
+    }
+
+    /**
+     * 扫描文件恢复写入位置（重启后调用）
+     *
+     * 一条有效记录：长度 > 0、整条记录在文件范围内、结尾完整（见 MessageCodec.checkRecord），
+     * 崩溃时写了一半的记录会被截掉
+     *
+     * @return 有效数据的最大偏移量
+     */
+    public long recover() {
+        long maxOffset = mappedFileQueue.recover(MessageCodec::checkRecord);
+
+        log.info("✅ CommitLog 恢复完成: minOffset={}, maxOffset={}", getMinOffset(), maxOffset);
+
+        return maxOffset;
+    }
+
+    /**
+     * 是否已读到一个已写满文件的末尾（文件尾部的空闲空间不包含消息）
+     *
+     * @param offset 物理偏移量
+     */
+    public boolean isEndOfFile(long offset) {
+        MappedFile mappedFile = mappedFileQueue.findMappedFileByOffset(offset);
+        return mappedFile != null
+            && mappedFile.isFull()
+            && offset >= mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+    }
+
+    /**
+     * 下一个文件的起始偏移量
+     *
+     * @param offset 物理偏移量
+     */
+    public long rollNextFile(long offset) {
+        int mappedFileSize = mappedFileQueue.getMappedFileSize();
+        return offset + mappedFileSize - offset % mappedFileSize;
+    }
+
     // ==================== 内部类 ====================
 
     /**
@@ -201,6 +721,7 @@ public class CommitLog {
         END_OF_FILE,
         MESSAGE_SIZE_EXCEEDED,
         PROPERTIES_SIZE_EXCEEDED,
+        LOCK_WAIT_TIMEOUT,
         UNKNOWN_ERROR
     }
 }
@@ -0,0 +1,306 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CommitLog Append Ring - 单写线程 + 多生产者环形缓冲区
+ *
+ * 默认每个写入线程自己抢 CommitLog 写入锁，几十个线程同时写入时大部分时间花在锁排队和线程切换上（lock convoy）。
+ * 开启后（Level12StoreConfig.putRingBufferSize > 0）写入分两段：
+ * 1. 生产者线程在锁外编码，CAS 占用环中的一个槽位，放入编码好的记录后发布序号
+ * 2. 唯一的写入线程按序号顺序取出连续已发布的记录（最多 maxBatch 条），一次写入锁内全部追加，
+ *    写完按序号通知对应的生产者
+ *
+ * 槽位按序号复用（有界 MPMC 队列的做法）：slot.sequence == 序号时可以被占用，
+ * 生产者取走结果后把它加上容量，下一圈的生产者才能占用。环满时生产者等待，最多等 waitMs。
+ *
+ * 追加结果与加锁写入完全一致（物理偏移量连续、批量帧不拆分），只是写入线程变成了一个；
+ * 写入锁仍然保留，复制、导入等原始记录写入可以和写入线程交替进行。
+ */
+@Slf4j
+public final class CommitLogAppendRing {
+
+    /**
+     * 等待空闲槽位超时
+     */
+    public static final long WAIT_TIMEOUT = -2;
+
+    // 写入线程没有新记录时的最长休眠时间（生产者发布后会直接唤醒）
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 等待写入完成时先让出 CPU 的次数
+    private static final int YIELD_SPINS = 64;
+
+    // 环满 / 等待写入完成时每次休眠的时间
+    private static final long WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 槽位（容量为 2 的幂）
+    private final Slot[] slots;
+
+    private final int mask;
+
+    // 每批最多写入的记录数
+    private final int maxBatch;
+
+    // 下一个待占用的序号
+    private final AtomicLong claimSequence = new AtomicLong(0);
+
+    // 写入线程下一个要写入的序号（之前的都已写完）
+    private volatile long writeSequence = 0;
+
+    // 写入线程是否在休眠（生产者发布后据此决定是否唤醒）
+    private volatile boolean writerParked = false;
+
+    // 写入线程
+    private Thread writerThread;
+
+    // 运行标志
+    private volatile boolean running = false;
+
+    // 写入线程已退出，之后占用的序号不会再被写入
+    private volatile boolean stopped = false;
+
+    // 写入批次数 / 写入记录数
+    private final AtomicLong batchCount = new AtomicLong(0);
+    private final AtomicLong recordCount = new AtomicLong(0);
+
+    // 等待空闲槽位超时次数
+    private final AtomicLong waitTimeoutCount = new AtomicLong(0);
+
+    /**
+     * 构造函数
+     *
+     * @param commitLog CommitLog
+     * @param bufferSize 槽位数（向上取整为 2 的幂）
+     * @param maxBatch 每批最多写入的记录数
+     */
+    public CommitLogAppendRing(CommitLog commitLog, int bufferSize, int maxBatch) {
+        if (bufferSize <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("bufferSize 和 maxBatch 必须大于 0");
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.commitLog = commitLog;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+        this.maxBatch = Math.min(maxBatch, capacity);
+    }
+
+    /**
+     * 启动写入线程（启动前 append 直接返回 -1）
+     */
+    public void start() {
+        running = true;
+
+        writerThread = new Thread(this::writeLoop, "CommitLogAppendRing");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("✅ CommitLog 单写线程已启动: bufferSize={}, maxBatch={}", slots.length, maxBatch);
+    }
+
+    /**
+     * 追加一条已编码的记录，写入完成后返回
+     *
+     * @param record 完整记录（长度(4) + 记录内容）
+     * @param waitMs 环满时等待空闲槽位的最长时间（毫秒），<= 0 表示一直等待
+     * @return 物理偏移量；-1 表示写入失败或已关闭；WAIT_TIMEOUT 表示等待空闲槽位超时
+     */
+    public long append(ByteBuffer record, long waitMs) {
+        // 1. 占用槽位
+        long deadline = waitMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs) : 0;
+        long sequence;
+        Slot slot;
+        while (true) {
+            if (!running) {
+                return -1;
+            }
+            sequence = claimSequence.get();
+            slot = slots[(int) (sequence & mask)];
+            long available = slot.sequence;
+            if (available == sequence) {
+                if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            } else if (available < sequence) {
+                // 环满：上一圈的记录还没写完或者结果还没取走
+                if (deadline > 0 && System.nanoTime() >= deadline) {
+                    waitTimeoutCount.incrementAndGet();
+                    return WAIT_TIMEOUT;
+                }
+                LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+            }
+            // available > sequence：被其他生产者抢先，重新读取序号
+        }
+
+        // 2. 放入记录并发布
+        slot.record = record;
+        slot.waiter = Thread.currentThread();
+        slot.published = sequence;
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+
+        // 3. 等待写入线程写完这个序号：先让出 CPU 几次（写入通常只要几微秒），还没写完再休眠
+        int spins = 0;
+        while (slot.completed != sequence) {
+            if (stopped && slot.completed != sequence) {
+                return -1;
+            }
+            if (++spins <= YIELD_SPINS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+            }
+        }
+        long offset = slot.offset;
+
+        // 4. 释放槽位给下一圈
+        slot.sequence = sequence + slots.length;
+        return offset;
+    }
+
+    /**
+     * 写入线程：按序号取出连续已发布的记录，一次写入锁内批量追加
+     */
+    private void writeLoop() {
+        ByteBuffer[] records = new ByteBuffer[maxBatch];
+        long[] offsets = new long[maxBatch];
+        long next = 0;
+
+        while (true) {
+            int count = 0;
+            while (count < maxBatch) {
+                Slot slot = slots[(int) ((next + count) & mask)];
+                if (slot.published != next + count) {
+                    break;
+                }
+                records[count++] = slot.record;
+            }
+
+            if (count == 0) {
+                if (!running && next == claimSequence.get()) {
+                    break;
+                }
+                // 休眠前再检查一次，避免错过休眠标志设置之前发布的记录
+                writerParked = true;
+                if (slots[(int) (next & mask)].published != next) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+                continue;
+            }
+
+            try {
+                commitLog.appendRecords(records, offsets, count);
+            } catch (Throwable e) {
+                log.error("❌ CommitLog 单写线程批量写入失败: count={}", count, e);
+                for (int i = 0; i < count; i++) {
+                    offsets[i] = -1;
+                }
+            }
+
+            // 按序号通知生产者
+            for (int i = 0; i < count; i++) {
+                Slot slot = slots[(int) ((next + i) & mask)];
+                Thread waiter = slot.waiter;
+                slot.offset = offsets[i];
+                slot.record = null;
+                slot.waiter = null;
+                records[i] = null;
+                slot.completed = next + i;
+                LockSupport.unpark(waiter);
+            }
+            next += count;
+            writeSequence = next;
+            batchCount.incrementAndGet();
+            recordCount.addAndGet(count);
+        }
+
+        stopped = true;
+        log.info("✅ CommitLog 单写线程已停止: batches={}, records={}", batchCount.get(), recordCount.get());
+    }
+
+    /**
+     * 停止：已占用槽位的记录全部写完后写入线程退出
+     */
+    public void shutdown() {
+        running = false;
+        if (writerThread == null) {
+            stopped = true;
+            return;
+        }
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Getters
+
+    /**
+     * 已占用槽位、还没写完的记录数
+     */
+    public int getPendingCount() {
+        return (int) Math.max(0, claimSequence.get() - writeSequence);
+    }
+
+    public int getBufferSize() {
+        return slots.length;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /**
+     * 平均每批写入的记录数
+     */
+    public double getAvgBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) recordCount.get() / batches;
+    }
+
+    public long getWaitTimeoutCount() {
+        return waitTimeoutCount.get();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 槽位
+     *
+     * record / waiter 在发布（published）之前写入，offset 在完成（completed）之前写入，由 volatile 字段保证可见性
+     */
+    private static final class Slot {
+        // 可以被这个序号的生产者占用
+        private volatile long sequence;
+        // 已发布的序号
+        private volatile long published = -1;
+        // 已写入的序号
+        private volatile long completed = -1;
+        private ByteBuffer record;
+        private Thread waiter;
+        private long offset;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * 压缩队列 - 单个 Topic-Queue 的 Key 压缩结果
+ *
+ * 核心思路：
+ * 1. CommitLog 被所有 Topic 共享，不能原地改写，压缩结果写入独立的“代”（generation）目录
+ * 2. 每一代 = 上一代的结果 + 新封存的 CommitLog 数据，按 Key 只保留最新一条，重新写成紧凑的 CommitLog + ConsumeQueue
+ *    （只在内存中保存新增记录的 Key -> 最后出现的索引，上一代和新增记录都流式读取、流式写出）
+ * 3. body 为 null 的消息是删除标记（tombstone），保留 tombstoneRetentionMs 后连同 Key 一起清除
+ * 4. 保留上一代，正在分页读取旧快照的消费者不会因为新一代生成而读失败
+ *
+ * 目录结构：
+ * compaction/{topic}/{queueId}/{generation}/
+ *   ├── commitlog/           # 压缩后的消息
+ *   ├── consumequeue/        # 压缩后的索引
+ *   └── checkpoint           # 压缩进度（写完才生成，没有 checkpoint 的目录视为不完整）
+ */
+@Slf4j
+public class CompactedQueue {
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // 每次从原始 ConsumeQueue 读取的索引数量
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    private final String topic;
+
+    private final int queueId;
+
+    // compaction/{topic}/{queueId}
+    private final String queueDir;
+
+    private final int compactedFileSize;
+
+    // 当前代
+    private volatile Generation current;
+
+    // 上一代（保留给正在读取旧快照的消费者）
+    private volatile Generation previous;
+
+    public CompactedQueue(String storePath, String topic, int queueId, int compactedFileSize) {
+        this.topic = topic;
+        this.queueId = queueId;
+        this.queueDir = storePath + "/compaction/" + topic + "/" + queueId;
+        this.compactedFileSize = compactedFileSize;
+
+        load();
+    }
+
+    /**
+     * 执行一次压缩
+     *
+     * @param commitLog 原始 CommitLog
+     * @param consumeQueue 原始 ConsumeQueue
+     * @param sealedMaxOffset 已封存的最大物理偏移量，只压缩这之前的数据
+     * @param tombstoneRetentionMs 删除标记保留时长
+     * @return 是否生成了新的一代
+     */
+    public synchronized boolean compact(CommitLog commitLog, ConsumeQueue consumeQueue,
+                                        long sealedMaxOffset, long tombstoneRetentionMs) {
+        long startTime = System.currentTimeMillis();
+        Generation base = current;
+
+        // 1. 扫描原始 ConsumeQueue 中新封存的部分，记录每个 Key 最后一次出现的索引
+        //    （只保存新增记录的 Key，上一代的结果和消息内容都不进堆内存）
+        Map<String, Long> lastIndexByKey = new HashMap<>();
+        long fromIndex = base != null ? base.getCompactedToIndex() : consumeQueue.getMinIndex();
+        long toIndex = scan(commitLog, consumeQueue, fromIndex, Long.MAX_VALUE, sealedMaxOffset,
+            (index, unit, message) -> {
+                if (message.getKey() != null) {
+                    lastIndexByKey.put(message.getKey(), index);
+                }
+            });
+
+        if (toIndex == fromIndex) {
+            log.debug("ℹ️ 没有新封存的数据需要压缩: topic={}, queueId={}", topic, queueId);
+            return false;
+        }
+
+        // 2. 写入新的一代：上一代的结果（去掉被新增记录覆盖的 Key）+ 新增记录（每个 Key 只保留最后一条），保持写入顺序
+        long generationId = base != null ? base.getId() + 1 : 0;
+        String dir = queueDir + File.separator + String.format("%020d", generationId);
+        Generation generation = new Generation(generationId, dir,
+            new CommitLog(dir, compactedFileSize), new ConsumeQueue(dir, topic, queueId), toIndex, 0);
+
+        long now = System.currentTimeMillis();
+        CompactStats stats = new CompactStats();
+        if (base != null) {
+            scan(base.getCommitLog(), base.getConsumeQueue(), 0, Long.MAX_VALUE, Long.MAX_VALUE,
+                (index, unit, message) -> {
+                    stats.baseInput++;
+                    // 上一代中每个 Key 只有一条，新增记录里出现过就被覆盖
+                    if (message.getKey() == null || !lastIndexByKey.containsKey(message.getKey())) {
+                        copy(base.getCommitLog(), unit, message, generation, now, tombstoneRetentionMs, stats);
+                    }
+                });
+        }
+        scan(commitLog, consumeQueue, fromIndex, toIndex, Long.MAX_VALUE,
+            (index, unit, message) -> {
+                stats.newInput++;
+                if (message.getKey() == null || lastIndexByKey.get(message.getKey()) == index) {
+                    copy(commitLog, unit, message, generation, now, tombstoneRetentionMs, stats);
+                }
+            });
+
+        generation.setCount(stats.output);
+        generation.getCommitLog().flush();
+        generation.getConsumeQueue().flush();
+        writeCheckpoint(generation);
+
+        // 3. 切换到新的一代，删除上上代
+        Generation expired = previous;
+        previous = base;
+        current = generation;
+        if (expired != null) {
+            destroy(expired);
+        }
+
+        log.info("🗜️ 压缩完成: topic={}, queueId={}, generation={}, 输入={}(上一代 {} + 新增 {}), 输出={}(删除标记 {}), 耗时={} ms",
+            topic, queueId, generationId, stats.baseInput + stats.newInput, stats.baseInput, stats.newInput,
+            stats.output, stats.tombstones, System.currentTimeMillis() - startTime);
+
+        return true;
+    }
+
+    /**
+     * 按索引顺序扫描 ConsumeQueue，逐条读出消息交给 visitor（分批读取索引，不缓存消息）
+     *
+     * 落在隔离区间内的记录跳过，两次扫描跳过的记录相同
+     *
+     * @param toIndex 扫描到的索引位置（不含）
+     * @param maxPhysicalOffset 遇到物理偏移量不小于它的记录时停止
+     * @return 扫描结束时的索引位置（第一个未扫描的索引）
+     */
+    private long scan(CommitLog commitLog, ConsumeQueue consumeQueue, long fromIndex, long toIndex,
+                      long maxPhysicalOffset, RecordVisitor visitor) {
+        long index = fromIndex;
+        long maxIndex = Math.min(consumeQueue.getMaxIndex(), toIndex);
+
+        while (index < maxIndex) {
+            List<ConsumeQueue.CQUnit> units = consumeQueue.getIndexList(index,
+                (int) Math.min(SCAN_BATCH_SIZE, maxIndex - index));
+            if (units.isEmpty()) {
+                break;
+            }
+
+            for (ConsumeQueue.CQUnit unit : units) {
+                if (unit.getCommitLogOffset() >= maxPhysicalOffset) {
+                    return index;
+                }
+
+                Level12Message message = commitLog.getMessage(unit.getCommitLogOffset());
+                if (message == null) {
+                    if (!commitLog.isQuarantined(unit.getCommitLogOffset())) {
+                        throw new IllegalStateException("压缩时读取消息失败: offset=" + unit.getCommitLogOffset());
+                    }
+                    // 隔离的损坏记录不参与压缩（与 Reput 一致），否则这个队列再也无法压缩
+                    log.error("❌ 压缩跳过隔离的记录: topic={}, queueId={}, index={}, offset={}",
+                        topic, queueId, index, unit.getCommitLogOffset());
+                    index++;
+                    continue;
+                }
+
+                visitor.visit(index, unit, message);
+                index++;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * 把一条保留的记录原样写入新的一代（超过保留时长的删除标记直接丢弃）
+     */
+    private void copy(CommitLog source, ConsumeQueue.CQUnit unit, Level12Message message, Generation generation,
+                      long now, long tombstoneRetentionMs, CompactStats stats) {
+        if (message.getBody() == null) {
+            if (now - message.getStoreTime() > tombstoneRetentionMs) {
+                return;
+            }
+            stats.tombstones++;
+        }
+
+        ByteBuffer record = source.selectRawRecord(unit.getCommitLogOffset());
+        long offset = generation.getCommitLog().appendRawRecord(record);
+        if (offset == -1) {
+            throw new IllegalStateException("写入压缩文件失败: " + generation.getDir());
+        }
+        generation.getConsumeQueue().putMessagePositionInfo(offset, unit.getSize(), unit.getTagsCode());
+        stats.output++;
+    }
+
+    /**
+     * 获取当前快照
+     *
+     * @return 快照，还没有压缩过返回 null
+     */
+    public Snapshot getSnapshot() {
+        Generation generation = current;
+        if (generation == null) {
+            return null;
+        }
+        return new Snapshot(topic, queueId, generation.getId(), generation.getCount(), generation.getCompactedToIndex());
+    }
+
+    /**
+     * 分页读取快照
+     *
+     * @param snapshot 快照
+     * @param index 快照内的位置（从 0 开始）
+     * @param maxMsgNums 最大消息数量
+     * @return 消息列表（physicalOffset 为压缩文件中的位置）
+     */
+    public List<Level12Message> read(Snapshot snapshot, long index, int maxMsgNums) {
+        Generation generation = findGeneration(snapshot.getGeneration());
+        if (generation == null) {
+            throw new IllegalStateException("快照已过期，请重新获取: generation=" + snapshot.getGeneration());
+        }
+
+        List<Level12Message> messages = new ArrayList<>();
+        for (ConsumeQueue.CQUnit unit : generation.getConsumeQueue().getIndexList(index, maxMsgNums)) {
+            Level12Message message = generation.getCommitLog().getMessage(unit.getCommitLogOffset());
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private Generation findGeneration(long generationId) {
+        Generation generation = current;
+        if (generation != null && generation.getId() == generationId) {
+            return generation;
+        }
+        generation = previous;
+        if (generation != null && generation.getId() == generationId) {
+            return generation;
+        }
+        return null;
+    }
+
+    /**
+     * 加载已有的压缩结果：取最新的完整代，其余目录删除
+     */
+    private void load() {
+        File[] dirs = new File(queueDir).listFiles(File::isDirectory);
+        if (dirs == null || dirs.length == 0) {
+            return;
+        }
+
+        Arrays.sort(dirs, Comparator.comparing(File::getName));
+
+        for (int i = dirs.length - 1; i >= 0; i--) {
+            File dir = dirs[i];
+            if (current == null && new File(dir, CHECKPOINT_FILE).exists()) {
+                try {
+                    current = openGeneration(dir);
+                    log.info("📂 加载压缩结果: topic={}, queueId={}, generation={}, count={}",
+                        topic, queueId, current.getId(), current.getCount());
+                    continue;
+                } catch (IOException e) {
+                    log.error("❌ 加载压缩结果失败: {}", dir, e);
+                }
+            }
+            deleteDir(dir.toPath());
+        }
+    }
+
+    private Generation openGeneration(File dir) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(dir.toPath().resolve(CHECKPOINT_FILE), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        long generationId = Long.parseLong(dir.getName());
+        long count = Long.parseLong(properties.getProperty("count"));
+        long commitLogMaxOffset = Long.parseLong(properties.getProperty("commitLogMaxOffset"));
+        long compactedToIndex = Long.parseLong(properties.getProperty("compactedToIndex"));
+
+        CommitLog commitLog = new CommitLog(dir.getPath(), compactedFileSize);
+        commitLog.recoverTo(commitLogMaxOffset);
+        ConsumeQueue consumeQueue = new ConsumeQueue(dir.getPath(), topic, queueId);
+        consumeQueue.recoverTo(count);
+
+        return new Generation(generationId, dir.getPath(), commitLog, consumeQueue, compactedToIndex, count);
+    }
+
+    /**
+     * 写入 checkpoint（先写临时文件再原子替换）
+     */
+    private void writeCheckpoint(Generation generation) {
+        Properties properties = new Properties();
+        properties.setProperty("count", String.valueOf(generation.getCount()));
+        properties.setProperty("commitLogMaxOffset", String.valueOf(generation.getCommitLog().getMaxOffset()));
+        properties.setProperty("compactedToIndex", String.valueOf(generation.getCompactedToIndex()));
+
+        Path target = Paths.get(generation.getDir(), CHECKPOINT_FILE);
+        Path tmp = Paths.get(generation.getDir(), CHECKPOINT_FILE + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "compaction checkpoint");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入压缩 checkpoint 失败: " + target, e);
+        }
+    }
+
+    private void destroy(Generation generation) {
+        generation.getCommitLog().shutdown();
+        generation.getConsumeQueue().shutdown();
+        deleteDir(Paths.get(generation.getDir()));
+    }
+
+    private void deleteDir(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            log.warn("⚠️ 删除压缩目录失败: {}", dir, e);
+        }
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        Generation generation = current;
+        if (generation != null) {
+            generation.getCommitLog().shutdown();
+            generation.getConsumeQueue().shutdown();
+        }
+        generation = previous;
+        if (generation != null) {
+            generation.getCommitLog().shutdown();
+            generation.getConsumeQueue().shutdown();
+        }
+    }
+
+    // Getters
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getQueueId() {
+        return queueId;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 压缩快照
+     *
+     * 消费者先分页读完快照（[0, count)），再从原始 ConsumeQueue 的 resumeQueueOffset 开始正常消费
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Snapshot {
+        private String topic;
+        private int queueId;
+        private long generation;
+        private long count;
+        private long resumeQueueOffset;
+    }
+
+    /**
+     * 一代压缩结果
+     */
+    @Data
+    @AllArgsConstructor
+    private static class Generation {
+        private long id;
+        private String dir;
+        private CommitLog commitLog;
+        private ConsumeQueue consumeQueue;
+        // 已压缩到的原始 ConsumeQueue 索引位置（不含）
+        private long compactedToIndex;
+        private long count;
+    }
+
+    /**
+     * 一次压缩的计数
+     */
+    private static class CompactStats {
+        // 上一代的记录数
+        private long baseInput;
+        // 新封存的记录数
+        private long newInput;
+        // 写入新一代的记录数
+        private long output;
+        // 写入新一代的删除标记数
+        private long tombstones;
+    }
+
+    /**
+     * 扫描 ConsumeQueue 时逐条处理记录
+     */
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(long index, ConsumeQueue.CQUnit unit, Level12Message message);
+    }
+}
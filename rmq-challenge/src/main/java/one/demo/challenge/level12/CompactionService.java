@@ -0,0 +1,145 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compaction Service - 后台 Key 压缩服务
+ *
+ * 核心职责：
+ * 1. 定期扫描开启了压缩的 Topic
+ * 2. 对每个 Queue 把已封存的 CommitLog 数据压缩成“每个 Key 最新一条”
+ * 3. 新消费者先读压缩快照，再从快照对应的位置接着消费，不需要回放全部历史
+ */
+@Slf4j
+public class CompactionService {
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 压缩队列表：Topic -> QueueId -> CompactedQueue
+    private final Map<String, Map<Integer, CompactedQueue>> compactedQueueTable = new ConcurrentHashMap<>();
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 后台线程
+    private Thread compactionThread;
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public CompactionService(Level12MessageStoreBest messageStore, CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+    }
+
+    /**
+     * 启动服务
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ CompactionService 已经在运行中");
+            return;
+        }
+
+        running = true;
+
+        compactionThread = new Thread(this::doCompaction, "CompactionService");
+        compactionThread.setDaemon(true);
+        compactionThread.start();
+
+        log.info("✅ CompactionService 已启动: interval={} ms, topics={}",
+            storeConfig.getCompactionIntervalMs(), storeConfig.getCompactedTopics());
+    }
+
+    /**
+     * 停止服务
+     */
+    public void shutdown() {
+        running = false;
+
+        if (compactionThread != null) {
+            try {
+                compactionThread.interrupt();
+                compactionThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 CompactionService 失败", e);
+            }
+        }
+
+        for (Map<Integer, CompactedQueue> queueMap : compactedQueueTable.values()) {
+            for (CompactedQueue compactedQueue : queueMap.values()) {
+                compactedQueue.shutdown();
+            }
+        }
+        compactedQueueTable.clear();
+
+        log.info("✅ CompactionService 已停止");
+    }
+
+    private void doCompaction() {
+        while (running) {
+            try {
+                Thread.sleep(storeConfig.getCompactionIntervalMs());
+                compactAll();
+            } catch (InterruptedException e) {
+                log.info("CompactionService 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ CompactionService 处理失败", e);
+            }
+        }
+
+        log.info("🗜️ CompactionService 已退出");
+    }
+
+    /**
+     * 压缩所有开启了压缩的 Topic（也可手动触发）
+     *
+     * @return 生成新一代压缩结果的 Queue 数量
+     */
+    public synchronized int compactAll() {
+        // 只压缩已封存的文件，正在写入的文件不动
+        long sealedMaxOffset = commitLog.getSealedMaxOffset();
+        int compacted = 0;
+
+        for (String topic : storeConfig.getCompactedTopics()) {
+            for (ConsumeQueue consumeQueue : messageStore.getConsumeQueues(topic)) {
+                CompactedQueue compactedQueue = findCompactedQueue(topic, consumeQueue.getQueueId());
+                if (compactedQueue.compact(commitLog, consumeQueue, sealedMaxOffset, storeConfig.getTombstoneRetentionMs())) {
+                    compacted++;
+                }
+            }
+        }
+
+        return compacted;
+    }
+
+    /**
+     * 查找或创建压缩队列（创建时会加载磁盘上已有的压缩结果）
+     */
+    public CompactedQueue findCompactedQueue(String topic, int queueId) {
+        return compactedQueueTable
+            .computeIfAbsent(topic, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(queueId, qid -> new CompactedQueue(
+                messageStore.getStorePath(), topic, qid, storeConfig.getCompactedFileSize()));
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
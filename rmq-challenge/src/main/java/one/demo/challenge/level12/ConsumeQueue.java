@@ -14,6 +14,8 @@ import java.util.List;
  * 2. 只存储索引信息，不存储消息体
  * 3. 每条索引固定 20 字节：CommitLog Offset(8) + Size(4) + Tag HashCode(8)
  * 4. 支持按 Tag 快速过滤
+ * 5. 批量帧内的消息共用帧的物理偏移量，帧内序号存放在 size 字段的高 7 位
+ * 6. 可选的扩展文件（ConsumeQueueExt）保存 SQL92 过滤位图，与索引一一对应
  */
 @Slf4j
 public class ConsumeQueue {
@@ -21,9 +23,17 @@ public class ConsumeQueue {
     // 每条索引的大小：20 字节
     public static final int CQ_STORE_UNIT_SIZE = 20;
 
+    // size 字段低 24 位是记录长度，高位是批量帧内的序号
+    public static final int SIZE_MASK = (1 << 24) - 1;
+    public static final int BATCH_INDEX_SHIFT = 24;
+    public static final int MAX_BATCH_INDEX = 127;
+
     // 单个文件大小：30 万条索引 = 6MB
     private static final int MAPPED_FILE_SIZE = 300000 * CQ_STORE_UNIT_SIZE;
 
+    // 扫描时一次读取的索引条数
+    private static final int SCAN_CHUNK_UNITS = 256;
+
     // Topic 名称
     private final String topic;
 
@@ -33,9 +43,15 @@ public class ConsumeQueue {
     // 存储路径
     private final String storePath;
 
+    // 存储根路径（扩展文件在 consumequeue_ext 下）
+    private final String rootPath;
+
     // MappedFile 队列
     private final MappedFileQueue mappedFileQueue;
 
+    // 过滤位图扩展文件，Topic 注册 SQL 过滤后才创建
+    private volatile ConsumeQueueExt ext;
+
     /**
      * 构造函数
      *
@@ -46,9 +62,15 @@ public class ConsumeQueue {
     public ConsumeQueue(String storePath, String topic, int queueId) {
         this.topic = topic;
         this.queueId = queueId;
+        this.rootPath = storePath;
         this.storePath = storePath + "/consumequeue/" + topic + "/" + queueId;
         this.mappedFileQueue = new MappedFileQueue(this.storePath, MAPPED_FILE_SIZE);
 
+        // 重启时加载已有的扩展文件
+        if (ConsumeQueueExt.exists(storePath, topic, queueId)) {
+            this.ext = new ConsumeQueueExt(storePath, topic, queueId);
+        }
+
         log.info("✅ ConsumeQueue 初始化完成: topic={}, queueId={}", topic, queueId);
     }
 
@@ -60,7 +82,31 @@ public class ConsumeQueue {
      * @param tagsCode Tag HashCode
      */
     public void putMessagePositionInfo(long commitLogOffset, int size, long tagsCode) {
+        putMessagePositionInfo(commitLogOffset, size, tagsCode, 0, 0);
+    }
+
+    /**
+     * 添加索引，同时写入过滤位图（没有扩展文件时忽略位图）
+     *
+     * 调用方是单线程的 ReputMessageService，扩展记录先于索引写入，
+     * 读到索引时对应的位图一定已经可见
+     *
+     * @param commitLogOffset CommitLog 物理偏移量
+     * @param size 消息大小
+     * @param tagsCode Tag HashCode
+     * @param filterVersion 计算位图时 Topic 的过滤版本
+     * @param filterBitMap 匹配位图
+     */
+    public void putMessagePositionInfo(long commitLogOffset, int size, long tagsCode,
+                                       long filterVersion, long filterBitMap) {
         try {
+            ConsumeQueueExt ext = this.ext;
+            long index = getMaxIndex();
+            if (ext != null) {
+                padExt(ext, index);
+                ext.append(filterVersion, filterBitMap);
+            }
+
             // 构建索引：CommitLog Offset(8) + Size(4) + Tag HashCode(8)
             ByteBuffer buffer = ByteBuffer.allocate(CQ_STORE_UNIT_SIZE);
             buffer.putLong(commitLogOffset);
@@ -73,6 +119,10 @@ public class ConsumeQueue {
 
             if (offset == -1) {
                 log.error("❌ ConsumeQueue 写入失败: topic={}, queueId={}", topic, queueId);
+                if (ext != null) {
+                    // 索引没写进去，扩展记录回退，保持一一对应
+                    ext.truncate(index);
+                }
             } else {
                 log.debug("📝 ConsumeQueue 写入成功: topic={}, queueId={}, offset={}",
                     topic, queueId, offset);
@@ -83,6 +133,104 @@ public class ConsumeQueue {
         }
     }
 
+    /**
+     * 批量添加索引（并行重建 ConsumeQueue 使用），每个文件一次追加
+     *
+     * filterVersions / filterBitMaps 为 null 表示没有过滤位图
+     *
+     * @return 是否全部写入
+     */
+    public boolean putMessagePositionInfos(long[] commitLogOffsets, int[] sizes, long[] tagsCodes,
+                                           long[] filterVersions, long[] filterBitMaps, int count) {
+        try {
+            ConsumeQueueExt ext = this.ext;
+            if (ext != null) {
+                padExt(ext, getMaxIndex());
+                for (int i = 0; i < count; i++) {
+                    ext.append(filterVersions == null ? 0 : filterVersions[i], filterBitMaps == null ? 0 : filterBitMaps[i]);
+                }
+            }
+
+            for (int i = 0; i < count; ) {
+                // 索引按 20 字节对齐，一次只写当前文件剩余的空间，不在文件尾部留空洞
+                long maxOffset = mappedFileQueue.getMaxOffset();
+                int room = (int) ((MAPPED_FILE_SIZE - maxOffset % MAPPED_FILE_SIZE) / CQ_STORE_UNIT_SIZE);
+                int n = Math.min(room, count - i);
+
+                ByteBuffer buffer = ByteBuffer.allocate(n * CQ_STORE_UNIT_SIZE);
+                for (int j = i; j < i + n; j++) {
+                    buffer.putLong(commitLogOffsets[j]);
+                    buffer.putInt(sizes[j]);
+                    buffer.putLong(tagsCodes[j]);
+                }
+                buffer.flip();
+
+                if (mappedFileQueue.append(buffer) == -1) {
+                    log.error("❌ ConsumeQueue 批量写入失败: topic={}, queueId={}", topic, queueId);
+                    if (ext != null) {
+                        ext.truncate(getMaxIndex());
+                    }
+                    return false;
+                }
+                i += n;
+            }
+            return true;
+
+        } catch (Exception e) {
+            log.error("❌ ConsumeQueue 批量添加索引失败: topic={}, queueId={}", topic, queueId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 编码 size 字段
+     *
+     * @param size 记录长度（批量帧为整帧长度）
+     * @param batchIndex 批量帧内的序号，单条消息为 0
+     */
+    public static int encodeSize(int size, int batchIndex) {
+        return (batchIndex << BATCH_INDEX_SHIFT) | size;
+    }
+
+    /**
+     * 开启过滤位图扩展文件（幂等）
+     */
+    public void enableExt() {
+        if (ext != null) {
+            return;
+        }
+        synchronized (this) {
+            if (ext == null) {
+                ext = new ConsumeQueueExt(rootPath, topic, queueId);
+                log.info("✅ ConsumeQueue 开启过滤位图: topic={}, queueId={}", topic, queueId);
+            }
+        }
+    }
+
+    /**
+     * 读取过滤位图
+     *
+     * @param index 索引位置
+     * @return 扩展记录，没有扩展文件或尚未写入返回 null
+     */
+    public ConsumeQueueExt.Unit getExtUnit(long index) {
+        ConsumeQueueExt ext = this.ext;
+        return ext == null ? null : ext.get(index);
+    }
+
+    /**
+     * 扩展文件落后于索引时（开启前已有的索引、重启后截断）补空记录
+     */
+    private void padExt(ConsumeQueueExt ext, long index) {
+        long extMaxIndex = ext.getMaxIndex();
+        if (extMaxIndex > index) {
+            ext.truncate(index);
+        }
+        for (long i = extMaxIndex; i < index; i++) {
+            ext.append(0, 0);
+        }
+    }
+
     /**
      * 读取索引
      *
@@ -98,31 +246,56 @@ public class ConsumeQueue {
     }
 
     /**
-     * 批量读取索引
+     * 扫描索引，结果原地填充到 buffer（不为每条索引创建对象）
+     *
+     * 每次读取一段连续的索引（不跨文件，最多 SCAN_CHUNK_UNITS 条），再按绝对位置逐条取字段
      *
      * @param startIndex 起始索引
-     * @param maxCount 最大数量
-     * @return 索引列表
+     * @param maxCount 最多返回的条数（过滤时为匹配的条数）
+     * @param tagsCode Tag HashCode（0 表示不过滤）
+     * @param buffer 结果缓冲区（先清空），nextIndex 为扫描停止的位置
+     * @return 返回的条数
      */
-    public List<CQUnit> getIndexList(long startIndex, int maxCount) {
-        List<CQUnit> result = new ArrayList<>();
+    public int scan(long startIndex, int maxCount, long tagsCode, CQScanBuffer buffer) {
+        buffer.clear();
 
         long maxIndex = getMaxIndex();
-
-        for (long i = startIndex; i < maxIndex && result.size() < maxCount; i++) {
-            ByteBuffer buffer = getIndexBuffer(i);
-            if (buffer == null) {
+        long index = startIndex;
+        while (index < maxIndex && buffer.getCount() < maxCount) {
+            long position = index * CQ_STORE_UNIT_SIZE;
+            long unitsToFileEnd = (MAPPED_FILE_SIZE - position % MAPPED_FILE_SIZE) / CQ_STORE_UNIT_SIZE;
+            int want = tagsCode == 0 ? maxCount - buffer.getCount() : SCAN_CHUNK_UNITS;
+            int units = (int) Math.min(Math.min(want, SCAN_CHUNK_UNITS), Math.min(unitsToFileEnd, maxIndex - index));
+
+            ByteBuffer chunk = mappedFileQueue.getData(position, units * CQ_STORE_UNIT_SIZE);
+            if (chunk == null) {
                 break;
             }
 
-            long commitLogOffset = buffer.getLong();
-            int size = buffer.getInt();
-            long tagsCode = buffer.getLong();
-
-            result.add(new CQUnit(commitLogOffset, size, tagsCode));
+            for (int i = 0; i < units && buffer.getCount() < maxCount; i++) {
+                int base = i * CQ_STORE_UNIT_SIZE;
+                long tag = chunk.getLong(base + 12);
+                // Tag 过滤
+                if (tagsCode == 0 || tag == tagsCode) {
+                    buffer.add(index, chunk.getLong(base), chunk.getInt(base + 8), tag);
+                }
+                index++;
+            }
         }
 
-        return result;
+        buffer.setNextIndex(index);
+        return buffer.getCount();
+    }
+
+    /**
+     * 批量读取索引
+     *
+     * @param startIndex 起始索引
+     * @param maxCount 最大数量
+     * @return 索引列表
+     */
+    public List<CQUnit> getIndexList(long startIndex, int maxCount) {
+        return toUnits(startIndex, maxCount, 0);
     }
 
     /**
@@ -134,26 +307,20 @@ public class ConsumeQueue {
      * @return 索引列表
      */
     public List<CQUnit> filterByTag(long startIndex, int maxCount, long tagsCode) {
-        List<CQUnit> result = new ArrayList<>();
-
-        long maxIndex = getMaxIndex();
-
-        for (long i = startIndex; i < maxIndex && result.size() < maxCount; i++) {
-            ByteBuffer buffer = getIndexBuffer(i);
-            if (buffer == null) {
-                break;
-            }
+        return toUnits(startIndex, maxCount, tagsCode);
+    }
 
-            long commitLogOffset = buffer.getLong();
-            int size = buffer.getInt();
-            long tag = buffer.getLong();
+    /**
+     * 扫描结果转换为 CQUnit 列表（用独立的缓冲区，不影响调用方正在使用的线程内缓冲区）
+     */
+    private List<CQUnit> toUnits(long startIndex, int maxCount, long tagsCode) {
+        CQScanBuffer buffer = new CQScanBuffer(Math.max(1, Math.min(maxCount, SCAN_CHUNK_UNITS)));
+        scan(startIndex, maxCount, tagsCode, buffer);
 
-            // Tag 过滤
-            if (tagsCode == 0 || tag == tagsCode) {
-                result.add(new CQUnit(commitLogOffset, size, tag));
-            }
+        List<CQUnit> result = new ArrayList<>(buffer.getCount());
+        for (int i = 0; i < buffer.getCount(); i++) {
+            result.add(buffer.toUnit(i));
         }
-
         return result;
     }
 
@@ -173,11 +340,70 @@ public class ConsumeQueue {
         return minOffset / CQ_STORE_UNIT_SIZE;
     }
 
+    /**
+     * 恢复写入位置（重启后调用）
+     *
+     * @param maxIndex 有效索引条数
+     */
+    public void recoverTo(long maxIndex) {
+        mappedFileQueue.recoverTo(maxIndex * CQ_STORE_UNIT_SIZE);
+        ConsumeQueueExt ext = this.ext;
+        if (ext != null && ext.getMaxIndex() > maxIndex) {
+            ext.truncate(maxIndex);
+        }
+    }
+
+    /**
+     * 扫描文件恢复写入位置（重启后调用），消息大小为 0 的位置视为索引结束
+     *
+     * @return 有效索引条数
+     */
+    public long recover() {
+        long maxOffset = mappedFileQueue.recover((buffer, position) -> {
+            if (position + CQ_STORE_UNIT_SIZE > buffer.capacity() || buffer.getInt(position + 8) <= 0) {
+                return -1;
+            }
+            return CQ_STORE_UNIT_SIZE;
+        });
+        long maxIndex = maxOffset / CQ_STORE_UNIT_SIZE;
+
+        // 扩展文件比索引多出来的部分是崩溃前没写完的，截掉；少的部分下次写入时补齐
+        ConsumeQueueExt ext = this.ext;
+        if (ext != null && ext.recover() > maxIndex) {
+            ext.truncate(maxIndex);
+        }
+        return maxIndex;
+    }
+
+    /**
+     * 最后一条索引对应消息在 CommitLog 中的结束位置，没有索引返回 -1
+     *
+     * 用于重启后确定 ReputMessageService 的起始位置
+     */
+    public long getMaxPhysicalOffset() {
+        long maxIndex = getMaxIndex();
+        if (maxIndex <= getMinIndex()) {
+            return -1;
+        }
+
+        ByteBuffer buffer = getIndexBuffer(maxIndex - 1);
+        if (buffer == null) {
+            return -1;
+        }
+        long commitLogOffset = buffer.getLong();
+        int size = buffer.getInt() & SIZE_MASK;
+        return commitLogOffset + size;
+    }
+
     /**
      * 刷盘
      */
     public void flush() {
         mappedFileQueue.flush();
+        ConsumeQueueExt ext = this.ext;
+        if (ext != null) {
+            ext.flush();
+        }
     }
 
     /**
@@ -185,6 +411,10 @@ public class ConsumeQueue {
      */
     public void shutdown() {
         mappedFileQueue.shutdown();
+        ConsumeQueueExt ext = this.ext;
+        if (ext != null) {
+            ext.shutdown();
+        }
         log.info("✅ ConsumeQueue 已关闭: topic={}, queueId={}", topic, queueId);
     }
 
@@ -222,8 +452,18 @@ public class ConsumeQueue {
             return commitLogOffset;
         }
 
+        /**
+         * 记录长度（批量帧为整帧长度）
+         */
         public int getSize() {
-            return size;
+            return size & SIZE_MASK;
+        }
+
+        /**
+         * 批量帧内的序号，单条消息为 0
+         */
+        public int getBatchIndex() {
+            return size >>> BATCH_INDEX_SHIFT;
         }
 
         public long getTagsCode() {
@@ -234,7 +474,8 @@ public class ConsumeQueue {
         public String toString() {
             return "CQUnit{" +
                 "commitLogOffset=" + commitLogOffset +
-                ", size=" + size +
+                ", size=" + getSize() +
+                ", batchIndex=" + getBatchIndex() +
                 ", tagsCode=" + tagsCode +
                 '}';
         }
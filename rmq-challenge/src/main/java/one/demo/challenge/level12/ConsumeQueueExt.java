@@ -0,0 +1,167 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * ConsumeQueue 扩展文件 - SQL92 过滤位图
+ *
+ * 核心特性：
+ * 1. 与 ConsumeQueue 一一对应：第 N 条扩展记录对应第 N 条索引
+ * 2. 每条记录固定 16 字节：过滤版本(8) + 匹配位图(8)
+ * 3. 位图的每一位对应 Topic 下一个注册了 SQL 表达式的消费组，Reput 时计算
+ * 4. 过滤版本最高位是写入标记，用来在重启恢复时区分“已写入的空记录”和“未写入”
+ *
+ * 只有注册过 SQL 过滤的 Topic 才会创建扩展文件，创建前已有的索引用空记录补齐
+ */
+@Slf4j
+public class ConsumeQueueExt {
+
+    // 每条记录的大小：16 字节
+    public static final int UNIT_SIZE = 16;
+
+    // 单个文件大小：与 ConsumeQueue 一样 30 万条
+    private static final int MAPPED_FILE_SIZE = 300000 * UNIT_SIZE;
+
+    // 写入标记
+    private static final long WRITTEN_FLAG = 1L << 63;
+
+    // MappedFile 队列
+    private final MappedFileQueue mappedFileQueue;
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储根路径
+     * @param topic Topic 名称
+     * @param queueId Queue ID
+     */
+    public ConsumeQueueExt(String storePath, String topic, int queueId) {
+        this.mappedFileQueue = new MappedFileQueue(extPath(storePath, topic, queueId), MAPPED_FILE_SIZE);
+    }
+
+    /**
+     * 扩展文件是否已存在（重启时用来决定是否加载）
+     */
+    public static boolean exists(String storePath, String topic, int queueId) {
+        File[] files = new File(extPath(storePath, topic, queueId)).listFiles();
+        return files != null && files.length > 0;
+    }
+
+    private static String extPath(String storePath, String topic, int queueId) {
+        return storePath + "/consumequeue_ext/" + topic + "/" + queueId;
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param filterVersion 计算位图时 Topic 的过滤版本，0 表示没有计算
+     * @param filterBitMap 匹配位图
+     * @return 是否成功
+     */
+    public boolean append(long filterVersion, long filterBitMap) {
+        ByteBuffer buffer = ByteBuffer.allocate(UNIT_SIZE);
+        buffer.putLong(filterVersion | WRITTEN_FLAG);
+        buffer.putLong(filterBitMap);
+        buffer.flip();
+
+        return mappedFileQueue.append(buffer) != -1;
+    }
+
+    /**
+     * 读取记录
+     *
+     * @param index 索引位置
+     * @return 记录，不存在返回 null
+     */
+    public Unit get(long index) {
+        if (index >= getMaxIndex()) {
+            return null;
+        }
+
+        ByteBuffer buffer = mappedFileQueue.getData(index * UNIT_SIZE, UNIT_SIZE);
+        if (buffer == null) {
+            return null;
+        }
+
+        return new Unit(buffer.getLong() & ~WRITTEN_FLAG, buffer.getLong());
+    }
+
+    /**
+     * 扫描文件恢复写入位置
+     *
+     * @return 有效记录条数
+     */
+    public long recover() {
+        long maxOffset = mappedFileQueue.recover((buffer, position) -> {
+            if (position + UNIT_SIZE > buffer.capacity() || (buffer.getLong(position) & WRITTEN_FLAG) == 0) {
+                return -1;
+            }
+            return UNIT_SIZE;
+        });
+        return maxOffset / UNIT_SIZE;
+    }
+
+    /**
+     * 截断到指定条数（与 ConsumeQueue 对齐）
+     */
+    public void truncate(long maxIndex) {
+        mappedFileQueue.recoverTo(maxIndex * UNIT_SIZE);
+    }
+
+    public long getMaxIndex() {
+        return mappedFileQueue.getMaxOffset() / UNIT_SIZE;
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        mappedFileQueue.flush();
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        mappedFileQueue.shutdown();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 扩展记录
+     */
+    public static class Unit {
+        private final long filterVersion;
+        private final long filterBitMap;
+
+        public Unit(long filterVersion, long filterBitMap) {
+            this.filterVersion = filterVersion;
+            this.filterBitMap = filterBitMap;
+        }
+
+        public long getFilterVersion() {
+            return filterVersion;
+        }
+
+        public long getFilterBitMap() {
+            return filterBitMap;
+        }
+
+        /**
+         * 位图是否包含指定消费组的计算结果
+         *
+         * 消费组在 bornVersion 注册，之后（版本 >= bornVersion）写入的记录才计算过它的表达式
+         */
+        public boolean isComputed(long bornVersion) {
+            return filterVersion != 0 && filterVersion >= bornVersion;
+        }
+
+        public boolean isMatched(int bitIndex) {
+            return (filterBitMap & (1L << bitIndex)) != 0;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConsumeQueue Rebuild Service - 并行重建 ConsumeQueue
+ *
+ * ReputMessageService 单线程逐条解码元数据 JSON，从头重建大量数据时很慢。并行重建：
+ * 1. 切分：主线程只读每条记录的长度前缀，在记录边界上把 [from, to) 切成约 rebuildSegmentSize 的分段（分段不跨文件）
+ * 2. 解析：工作线程并行解码分段内记录的元数据（不读消息体），按 Topic-Queue 生成索引片段，
+ *    同时计算 SQL 过滤位图、挑出未到投递时间的定时消息（与 Reput 的分发规则一致）
+ * 3. 合并：主线程按分段顺序（即物理偏移量顺序）把每个片段批量追加到 ConsumeQueue，保证队列内的顺序与 Reput 一致
+ *
+ * 同时在途的分段数限制为线程数的两倍，内存占用与 CommitLog 大小无关
+ *
+ * 调用方保证重建期间 Reput 没有运行；重建结束后 Reput 从返回的位置继续
+ */
+@Slf4j
+public class ConsumeQueueRebuildService {
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 最近一次重建的结果
+    private volatile RebuildResult lastResult;
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public ConsumeQueueRebuildService(Level12MessageStoreBest messageStore, CommitLog commitLog,
+                                      Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+    }
+
+    /**
+     * 并行分发 [fromOffset, toOffset) 的消息，追加到现有的 ConsumeQueue 之后
+     *
+     * @param fromOffset 起始物理偏移量（记录边界）
+     * @param toOffset 结束物理偏移量
+     * @return 重建结果，nextOffset 为 Reput 继续分发的位置
+     */
+    public synchronized RebuildResult rebuild(long fromOffset, long toOffset) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        int threads = Math.max(1, storeConfig.getConsumeQueueRebuildThreads());
+        // 已经在时间轮中的定时消息不重复入轮
+        long timerDispatchedOffset = messageStore.getTimerMessageStore().getMaxDispatchedPhysicalOffset();
+
+        log.info("🔨 开始并行重建 ConsumeQueue: from={}, to={}, threads={}, segmentSize={}",
+            fromOffset, toOffset, threads, storeConfig.getConsumeQueueRebuildSegmentSize());
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "ConsumeQueueRebuild-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+        MergeStats stats = new MergeStats();
+        Deque<Future<SegmentResult>> inflight = new ArrayDeque<>();
+        long offset = fromOffset;
+        try {
+            while (offset < toOffset) {
+                Segment segment = nextSegment(offset, toOffset);
+                if (segment.getEndOffset() > segment.getStartOffset()) {
+                    inflight.add(executor.submit(() -> parseSegment(segment)));
+                    stats.segmentCount++;
+                }
+                if (segment.getNextOffset() == offset) {
+                    // 后面不是有效记录，交给 Reput 处理
+                    break;
+                }
+                offset = segment.getNextOffset();
+
+                while (inflight.size() >= threads * 2) {
+                    merge(inflight.poll().get(), timerDispatchedOffset, stats);
+                }
+            }
+            while (!inflight.isEmpty()) {
+                merge(inflight.poll().get(), timerDispatchedOffset, stats);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("并行重建 ConsumeQueue 失败", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long nextOffset = Math.min(offset, toOffset);
+        long costTime = System.currentTimeMillis() - startTime;
+        RebuildResult result = new RebuildResult(fromOffset, nextOffset, threads, stats.segmentCount,
+            stats.recordCount, stats.messageCount, stats.timerCount, stats.skippedRecordCount,
+            stats.queueKeys.size(), costTime);
+        lastResult = result;
+
+        log.info("✅ 并行重建 ConsumeQueue 完成: {} -> {}, segments={}, records={}, messages={}, timers={}, skipped={}, queues={}, 耗时: {} ms",
+            fromOffset, nextOffset, stats.segmentCount, stats.recordCount, stats.messageCount, stats.timerCount,
+            stats.skippedRecordCount, stats.queueKeys.size(), costTime);
+        return result;
+    }
+
+    // ==================== 切分 ====================
+
+    /**
+     * 从 offset 开始沿长度前缀走到约 rebuildSegmentSize 处的记录边界
+     *
+     * 文件有效数据结束后跳到下一个文件；遇到无效记录时分段在此结束，nextOffset 停在无效记录处
+     */
+    private Segment nextSegment(long offset, long toOffset) {
+        MappedFile mappedFile = commitLog.getMappedFileQueue().findMappedFileByOffset(offset);
+        if (mappedFile == null || !mappedFile.hold()) {
+            return new Segment(offset, offset, offset);
+        }
+        try {
+            return nextSegment(mappedFile, offset, toOffset);
+        } finally {
+            mappedFile.release();
+        }
+    }
+
+    private Segment nextSegment(MappedFile mappedFile, long offset, long toOffset) {
+
+        long fileEnd = Math.min(toOffset, mappedFile.getFileFromOffset() + mappedFile.getWrotePosition());
+        long limit = offset + storeConfig.getConsumeQueueRebuildSegmentSize();
+        long position = offset;
+        while (position < fileEnd && position < limit) {
+            // 隔离的损坏区间不解析（与 Reput 一致）：分段在区间前结束，区间本身作为空分段跳过
+            long quarantineEnd = commitLog.getQuarantineEnd(position);
+            if (quarantineEnd >= 0) {
+                if (position > offset) {
+                    return new Segment(offset, position, position);
+                }
+                log.error("❌ 重建 ConsumeQueue 跳过隔离区间: [{}, {}), bytes={}", position, quarantineEnd, quarantineEnd - position);
+                return new Segment(offset, offset, quarantineEnd);
+            }
+
+            ByteBuffer lengthBuffer = position + 4 <= fileEnd ? mappedFile.selectMappedBuffer(position, 4) : null;
+            int length = lengthBuffer == null ? -1 : lengthBuffer.getInt(0);
+            if (length <= 0 || position + 4 + length > fileEnd) {
+                log.warn("⚠️ 重建 ConsumeQueue 遇到无效记录，停止切分: offset={}, length={}", position, length);
+                return new Segment(offset, position, position);
+            }
+            position += 4 + length;
+        }
+
+        // 已写满的文件尾部空闲空间跳过
+        boolean endOfFile = position >= mappedFile.getFileFromOffset() + mappedFile.getWrotePosition() && mappedFile.isFull();
+        return new Segment(offset, position, endOfFile ? commitLog.rollNextFile(position) : position);
+    }
+
+    // ==================== 解析 ====================
+
+    /**
+     * 解码分段内全部记录的元数据，按 Topic-Queue 生成索引片段（工作线程执行）
+     */
+    private SegmentResult parseSegment(Segment segment) {
+        SegmentResult result = new SegmentResult();
+        ByteBuffer data = commitLog.getMappedFileQueue().getData(segment.getStartOffset(),
+            (int) (segment.getEndOffset() - segment.getStartOffset()));
+        if (data == null) {
+            throw new IllegalStateException("读取分段失败: " + segment);
+        }
+
+        MessageCodec messageCodec = commitLog.getMessageCodec();
+        ConsumerFilterManager consumerFilterManager = messageStore.getConsumerFilterManager();
+        int position = 0;
+        while (position < data.limit()) {
+            int recordSize = 4 + data.getInt(position);
+            long physicalOffset = segment.getStartOffset() + position;
+            ByteBuffer record = data.slice(position, recordSize);
+            position += recordSize;
+            result.recordCount++;
+
+            if (commitLog.isQuarantined(physicalOffset)) {
+                // 切分之后才被隔离的记录
+                log.error("❌ 重建 ConsumeQueue 跳过隔离的记录: offset={}, size={}", physicalOffset, recordSize);
+                result.skippedRecordCount++;
+                continue;
+            }
+
+            List<Level12Message> messages;
+            try {
+                messages = messageCodec.decodeAll(record, false);
+            } catch (Exception e) {
+                log.error("❌ 重建 ConsumeQueue 解码失败，跳过该记录: offset={}, size={}", physicalOffset, recordSize, e);
+                result.skippedRecordCount++;
+                continue;
+            }
+
+            for (Level12Message message : messages) {
+                message.setPhysicalOffset(physicalOffset);
+                message.setLen(recordSize);
+                result.messageCount++;
+
+                if (ReputMessageService.isTimerPending(message)) {
+                    result.timers.add(message);
+                    continue;
+                }
+
+                QueueRun run = result.runs
+                    .computeIfAbsent(message.getTopic(), k -> new HashMap<>())
+                    .computeIfAbsent(message.getQueueId(), k -> new QueueRun());
+                long tagsCode = message.getTag() != null ? message.getTag().hashCode() : 0;
+                int size = ConsumeQueue.encodeSize(recordSize, message.getBatchIndex());
+
+                ConsumerFilterManager.TopicFilters topicFilters = consumerFilterManager.getTopicFilters(message.getTopic());
+                if (topicFilters != null && !topicFilters.getFilters().isEmpty()) {
+                    run.add(physicalOffset, size, tagsCode, topicFilters.getVersion(), topicFilters.computeBitMap(message));
+                } else {
+                    run.add(physicalOffset, size, tagsCode, 0, 0);
+                }
+            }
+        }
+        return result;
+    }
+
+    // ==================== 合并 ====================
+
+    /**
+     * 按分段顺序把索引片段追加到 ConsumeQueue（主线程执行）
+     */
+    private void merge(SegmentResult result, long timerDispatchedOffset, MergeStats stats) {
+        for (Map.Entry<String, Map<Integer, QueueRun>> topicEntry : result.runs.entrySet()) {
+            for (Map.Entry<Integer, QueueRun> queueEntry : topicEntry.getValue().entrySet()) {
+                QueueRun run = queueEntry.getValue();
+                ConsumeQueue consumeQueue = messageStore.findConsumeQueue(topicEntry.getKey(), queueEntry.getKey());
+                if (run.filterVersions != null) {
+                    consumeQueue.enableExt();
+                }
+                if (!consumeQueue.putMessagePositionInfos(run.commitLogOffsets, run.sizes, run.tagsCodes,
+                    run.filterVersions, run.filterBitMaps, run.count)) {
+                    throw new IllegalStateException("写入 ConsumeQueue 失败: topic=" + topicEntry.getKey()
+                        + ", queueId=" + queueEntry.getKey());
+                }
+                stats.queueKeys.add(topicEntry.getKey() + "#" + queueEntry.getKey());
+            }
+        }
+
+        for (Level12Message timer : result.timers) {
+            if (timer.getPhysicalOffset() >= timerDispatchedOffset) {
+                messageStore.getTimerMessageStore().putTimer(timer);
+                stats.timerCount++;
+            }
+        }
+
+        stats.recordCount += result.recordCount;
+        stats.messageCount += result.messageCount;
+        stats.skippedRecordCount += result.skippedRecordCount;
+    }
+
+    // Getters
+
+    public RebuildResult getLastResult() {
+        return lastResult;
+    }
+
+    // ==================== 内部类 ====================
+
+    @Data
+    @AllArgsConstructor
+    private static class Segment {
+        private long startOffset;
+        private long endOffset;
+        // 下一个分段的起始位置（跳过文件尾部空闲空间）
+        private long nextOffset;
+    }
+
+    private static class SegmentResult {
+        private final Map<String, Map<Integer, QueueRun>> runs = new HashMap<>();
+        private final List<Level12Message> timers = new ArrayList<>();
+        private long recordCount;
+        private long messageCount;
+        private long skippedRecordCount;
+    }
+
+    private static class MergeStats {
+        private final Set<String> queueKeys = new HashSet<>();
+        private int segmentCount;
+        private long recordCount;
+        private long messageCount;
+        private long timerCount;
+        private long skippedRecordCount;
+    }
+
+    /**
+     * 一个分段内某个 Topic-Queue 的索引片段
+     */
+    private static class QueueRun {
+        private long[] commitLogOffsets = new long[64];
+        private int[] sizes = new int[64];
+        private long[] tagsCodes = new long[64];
+        // 有 SQL 过滤时才分配
+        private long[] filterVersions;
+        private long[] filterBitMaps;
+        private int count;
+
+        void add(long commitLogOffset, int size, long tagsCode, long filterVersion, long filterBitMap) {
+            if (count == commitLogOffsets.length) {
+                int capacity = count * 2;
+                commitLogOffsets = Arrays.copyOf(commitLogOffsets, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                tagsCodes = Arrays.copyOf(tagsCodes, capacity);
+                if (filterVersions != null) {
+                    filterVersions = Arrays.copyOf(filterVersions, capacity);
+                    filterBitMaps = Arrays.copyOf(filterBitMaps, capacity);
+                }
+            }
+            if (filterVersion != 0 && filterVersions == null) {
+                filterVersions = new long[commitLogOffsets.length];
+                filterBitMaps = new long[commitLogOffsets.length];
+            }
+
+            commitLogOffsets[count] = commitLogOffset;
+            sizes[count] = size;
+            tagsCodes[count] = tagsCode;
+            if (filterVersions != null) {
+                filterVersions[count] = filterVersion;
+                filterBitMaps[count] = filterBitMap;
+            }
+            count++;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class RebuildResult {
+        private long fromOffset;
+        private long nextOffset;
+        private int threads;
+        private int segmentCount;
+        private long recordCount;
+        private long messageCount;
+        private long timerCount;
+        private long skippedRecordCount;
+        private int queueCount;
+        private long costTime;
+    }
+}
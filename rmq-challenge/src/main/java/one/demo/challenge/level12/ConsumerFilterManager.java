@@ -0,0 +1,242 @@
+package one.demo.challenge.level12;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Consumer Filter Manager - SQL92 过滤表达式管理
+ *
+ * 核心特性：
+ * 1. 消费组订阅时编译一次表达式，Reput 时对每条消息求值，结果写入 ConsumeQueueExt 位图
+ * 2. 每个 Topic 最多 64 个 SQL 消费组，每个消费组占位图中的一位
+ * 3. Topic 的过滤配置每变化一次版本号 +1，消费组记录注册时的版本（bornVersion）：
+ *    位图版本 >= bornVersion 才包含该消费组的计算结果，否则回退到读消息现场求值，
+ *    所以注销后空出的位可以直接复用给新的消费组
+ * 4. 配置持久化到 config/consumerFilter.json，重启后重新编译
+ *
+ * 读路径（Reput 线程、拉消息线程）只读取不可变的 TopicFilters 快照，修改时整体替换
+ */
+@Slf4j
+public class ConsumerFilterManager {
+
+    // 每个 Topic 最多的 SQL 消费组数（位图 64 位）
+    public static final int MAX_FILTERS_PER_TOPIC = 64;
+
+    private static final String CONFIG_FILE = "consumerFilter.json";
+
+    // 配置目录
+    private final String configPath;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Topic -> 过滤配置快照
+    private final Map<String, TopicFilters> filterTable = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储根路径
+     */
+    public ConsumerFilterManager(String storePath) {
+        this.configPath = storePath + "/config";
+        load();
+    }
+
+    /**
+     * 注册（或更新）消费组的 SQL 表达式
+     *
+     * @param group 消费组
+     * @param topic Topic 名称
+     * @param expression SQL92 表达式
+     * @return 注册后的过滤配置
+     * @throws IllegalArgumentException 表达式不合法
+     * @throws IllegalStateException Topic 的 SQL 消费组已满
+     */
+    public synchronized ConsumerFilterData register(String group, String topic, String expression) {
+        SqlExpression compiled = SqlExpression.compile(expression);
+
+        TopicFilters current = filterTable.get(topic);
+        List<ConsumerFilterData> filters = current == null ? new ArrayList<>() : new ArrayList<>(current.getFilters());
+        long version = current == null ? 0 : current.getVersion();
+
+        ConsumerFilterData existing = current == null ? null : current.getFilter(group);
+        if (existing != null && existing.getExpression().equals(compiled.getExpression())) {
+            return existing;
+        }
+
+        int bitIndex;
+        if (existing != null) {
+            // 表达式变了：沿用原来的位，bornVersion 更新后旧位图自动失效
+            filters.remove(existing);
+            bitIndex = existing.getBitIndex();
+        } else {
+            bitIndex = allocateBitIndex(filters);
+            if (bitIndex < 0) {
+                throw new IllegalStateException("Topic 的 SQL 消费组已达上限 " + MAX_FILTERS_PER_TOPIC + ": " + topic);
+            }
+        }
+
+        long newVersion = version + 1;
+        ConsumerFilterData filterData = new ConsumerFilterData(group, topic, compiled.getExpression(), bitIndex, newVersion, compiled);
+        filters.add(filterData);
+        filterTable.put(topic, new TopicFilters(newVersion, filters));
+        persist();
+
+        log.info("🔍 注册 SQL 过滤: group={}, topic={}, bit={}, version={}, expression={}",
+            group, topic, bitIndex, newVersion, compiled.getExpression());
+        return filterData;
+    }
+
+    /**
+     * 注销消费组的 SQL 表达式
+     *
+     * @return 是否存在
+     */
+    public synchronized boolean unregister(String group, String topic) {
+        TopicFilters current = filterTable.get(topic);
+        ConsumerFilterData existing = current == null ? null : current.getFilter(group);
+        if (existing == null) {
+            return false;
+        }
+
+        List<ConsumerFilterData> filters = new ArrayList<>(current.getFilters());
+        filters.remove(existing);
+        filterTable.put(topic, new TopicFilters(current.getVersion() + 1, filters));
+        persist();
+
+        log.info("🔍 注销 SQL 过滤: group={}, topic={}, bit={}", group, topic, existing.getBitIndex());
+        return true;
+    }
+
+    /**
+     * 获取 Topic 的过滤配置快照，没有返回 null
+     */
+    public TopicFilters getTopicFilters(String topic) {
+        return filterTable.get(topic);
+    }
+
+    /**
+     * 获取消费组的过滤配置，没有返回 null
+     */
+    public ConsumerFilterData get(String topic, String group) {
+        TopicFilters topicFilters = filterTable.get(topic);
+        return topicFilters == null ? null : topicFilters.getFilter(group);
+    }
+
+    private int allocateBitIndex(List<ConsumerFilterData> filters) {
+        long used = 0;
+        for (ConsumerFilterData filter : filters) {
+            used |= 1L << filter.getBitIndex();
+        }
+        for (int i = 0; i < MAX_FILTERS_PER_TOPIC; i++) {
+            if ((used & (1L << i)) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void load() {
+        Path path = Paths.get(configPath, CONFIG_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Map<String, TopicFilters> loaded = objectMapper.readValue(path.toFile(),
+                new TypeReference<Map<String, TopicFilters>>() {});
+            for (Map.Entry<String, TopicFilters> entry : loaded.entrySet()) {
+                for (ConsumerFilterData filter : entry.getValue().getFilters()) {
+                    filter.setCompiled(SqlExpression.compile(filter.getExpression()));
+                }
+                filterTable.put(entry.getKey(), entry.getValue());
+            }
+            log.info("✅ SQL 过滤配置加载完成: topics={}", filterTable.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("读取 SQL 过滤配置失败: " + path, e);
+        }
+    }
+
+    /**
+     * 持久化（先写临时文件再原子替换）
+     */
+    private void persist() {
+        Path target = Paths.get(configPath, CONFIG_FILE);
+        Path tmp = Paths.get(configPath, CONFIG_FILE + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), new HashMap<>(filterTable));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入 SQL 过滤配置失败: " + target, e);
+        }
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * Topic 的过滤配置快照（创建后不再修改）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TopicFilters {
+        private long version;
+        private List<ConsumerFilterData> filters;
+
+        public ConsumerFilterData getFilter(String group) {
+            for (ConsumerFilterData filter : filters) {
+                if (filter.getGroup().equals(group)) {
+                    return filter;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 计算消息的匹配位图
+         */
+        public long computeBitMap(Level12Message message) {
+            long bitMap = 0;
+            for (ConsumerFilterData filter : filters) {
+                if (filter.getCompiled().match(message)) {
+                    bitMap |= 1L << filter.getBitIndex();
+                }
+            }
+            return bitMap;
+        }
+    }
+
+    /**
+     * 消费组的过滤配置
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ConsumerFilterData {
+        private String group;
+        private String topic;
+        private String expression;
+        private int bitIndex;
+        private long bornVersion;
+
+        @JsonIgnore
+        private SqlExpression compiled;
+    }
+}
@@ -0,0 +1,218 @@
+package one.demo.challenge.level12;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Consumer Offset Manager - 消费进度管理
+ *
+ * 核心特性：
+ * 1. 消费组按 Topic-Queue 提交消费进度（下一条要消费的队列索引），内存中直接覆盖
+ * 2. 后台线程定期持久化到 config/consumerOffset.json（有变化才写），关闭时再写一次
+ * 3. 进度表同时是消费堆积（lag）指标的数据来源：lag = 队列最大索引 - 已提交进度
+ *
+ * 持久化间隔内的提交在宕机后会丢失，消费组从上一次持久化的进度重新消费（至少一次）
+ */
+@Slf4j
+public class ConsumerOffsetManager {
+
+    private static final String CONFIG_FILE = "consumerOffset.json";
+
+    private static final String KEY_SEPARATOR = "@";
+
+    // 配置目录
+    private final String configPath;
+
+    private final Level12StoreConfig storeConfig;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Topic@Group -> QueueId -> 已提交进度
+    private final ConcurrentMap<String, ConcurrentMap<Integer, Long>> offsetTable = new ConcurrentHashMap<>();
+
+    // 上一次持久化之后是否有新的提交
+    private volatile boolean dirty = false;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 后台持久化线程
+    private Thread persistThread;
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储根路径
+     * @param storeConfig 存储配置
+     */
+    public ConsumerOffsetManager(String storePath, Level12StoreConfig storeConfig) {
+        this.configPath = storePath + "/config";
+        this.storeConfig = storeConfig;
+        load();
+    }
+
+    /**
+     * 启动后台持久化
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ ConsumerOffsetManager 已经在运行中");
+            return;
+        }
+
+        running = true;
+
+        persistThread = new Thread(this::doPersist, "ConsumerOffsetPersist");
+        persistThread.setDaemon(true);
+        persistThread.start();
+
+        log.info("✅ ConsumerOffsetManager 已启动: interval={}ms", storeConfig.getConsumerOffsetPersistIntervalMs());
+    }
+
+    /**
+     * 停止后台持久化，并写入最后一次进度
+     */
+    public void shutdown() {
+        running = false;
+
+        if (persistThread != null) {
+            try {
+                persistThread.interrupt();
+                persistThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 ConsumerOffsetManager 失败", e);
+            }
+        }
+
+        persist();
+        log.info("✅ ConsumerOffsetManager 已停止");
+    }
+
+    private void doPersist() {
+        while (running) {
+            try {
+                Thread.sleep(storeConfig.getConsumerOffsetPersistIntervalMs());
+                persist();
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("❌ 消费进度持久化失败", e);
+            }
+        }
+    }
+
+    /**
+     * 提交消费进度
+     *
+     * @param group 消费组
+     * @param topic Topic 名称
+     * @param queueId Queue ID
+     * @param offset 下一条要消费的队列索引
+     */
+    public void commitOffset(String group, String topic, int queueId, long offset) {
+        offsetTable.computeIfAbsent(topic + KEY_SEPARATOR + group, k -> new ConcurrentHashMap<>())
+            .put(queueId, offset);
+        dirty = true;
+    }
+
+    /**
+     * 查询消费进度
+     *
+     * @return 已提交的进度，没有提交过返回 -1
+     */
+    public long queryOffset(String group, String topic, int queueId) {
+        Map<Integer, Long> queueOffsets = offsetTable.get(topic + KEY_SEPARATOR + group);
+        if (queueOffsets == null) {
+            return -1;
+        }
+        Long offset = queueOffsets.get(queueId);
+        return offset == null ? -1 : offset;
+    }
+
+    /**
+     * 删除消费组在 Topic 上的进度
+     *
+     * @return 是否存在
+     */
+    public boolean removeOffset(String group, String topic) {
+        boolean removed = offsetTable.remove(topic + KEY_SEPARATOR + group) != null;
+        if (removed) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    /**
+     * 进度表（Topic@Group -> QueueId -> 进度），只读
+     */
+    public Map<String, ConcurrentMap<Integer, Long>> getOffsetTable() {
+        return offsetTable;
+    }
+
+    /**
+     * 从 Topic@Group 中取出 Topic
+     */
+    public static String topicOf(String key) {
+        return key.substring(0, key.lastIndexOf(KEY_SEPARATOR));
+    }
+
+    /**
+     * 从 Topic@Group 中取出消费组
+     */
+    public static String groupOf(String key) {
+        return key.substring(key.lastIndexOf(KEY_SEPARATOR) + 1);
+    }
+
+    private void load() {
+        Path path = Paths.get(configPath, CONFIG_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Map<String, ConcurrentHashMap<Integer, Long>> loaded = objectMapper.readValue(path.toFile(),
+                new TypeReference<Map<String, ConcurrentHashMap<Integer, Long>>>() {});
+            offsetTable.putAll(loaded);
+            log.info("✅ 消费进度加载完成: groups={}", offsetTable.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("读取消费进度失败: " + path, e);
+        }
+    }
+
+    /**
+     * 持久化（先写临时文件再原子替换）
+     */
+    private synchronized void persist() {
+        if (!dirty) {
+            return;
+        }
+        // 先清标记再拷贝，拷贝期间的提交会留到下一次
+        dirty = false;
+
+        Path target = Paths.get(configPath, CONFIG_FILE);
+        Path tmp = Paths.get(configPath, CONFIG_FILE + ".tmp");
+        try {
+            Map<String, Map<Integer, Long>> snapshot = new HashMap<>();
+            for (Map.Entry<String, ConcurrentMap<Integer, Long>> entry : offsetTable.entrySet()) {
+                snapshot.put(entry.getKey(), new HashMap<>(entry.getValue()));
+            }
+            Files.createDirectories(target.getParent());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), snapshot);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            log.error("❌ 写入消费进度失败: {}", target, e);
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package one.demo.challenge.level12;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CRC Scrub Service - 已封存 CommitLog 文件的后台校验
+ *
+ * 核心流程：
+ * 1. 每隔 scrubIntervalMs 按偏移量顺序扫描一遍已封存的热数据文件（当前写入文件不扫描），
+ *    逐条记录做结构校验（MessageCodec.checkRecord）和 CRC32C 校验
+ * 2. 用独立的 FileChannel 读到自己的缓冲区，不经过 MappedFile 的映射；默认带 O_DIRECT 绕过 PageCache，
+ *    扫描冷文件不会把热数据挤出 PageCache（文件系统不支持时退回普通读取）
+ * 3. 按 scrubRateMBps 限速，每读一块按累计字节数计算应耗时间，读快了就睡眠补齐
+ * 4. 发现损坏：校验和不一致隔离这一条记录继续扫描；结构损坏无法定位下一条记录，隔离到文件有效数据末尾
+ * 5. 损坏区间持久化到 config/scrubQuarantine.json，重启后重新隔离，CommitLog 读取落在区间内直接返回 null
+ *
+ * 没有校验和的旧记录只做结构校验，计入 unverifiedRecords；已归档到冷存储的文件不扫描
+ */
+@Slf4j
+public class CrcScrubService {
+
+    private static final String QUARANTINE_FILE = "scrubQuarantine.json";
+
+    // O_DIRECT 要求读取位置、长度和缓冲区地址按块对齐
+    private static final int DIRECT_IO_ALIGNMENT = 4096;
+
+    // com.sun.nio.file.ExtendedOpenOption.DIRECT：JDK 内部 API，运行时按名称查找，找不到时为 null（只能普通读取）
+    private static final OpenOption DIRECT_OPEN_OPTION = lookupDirectOpenOption();
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 配置目录
+    private final String configPath;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 发现的损坏区间：起始偏移量 -> 区间
+    private final ConcurrentSkipListMap<Long, CorruptRange> corruptRanges = new ConcurrentSkipListMap<>();
+
+    // 读取缓冲区（O_DIRECT 时按块对齐）
+    private final ByteBuffer readBuffer;
+
+    // 解析窗口：读取的数据拼到这里，跨块的记录留到下一块补齐
+    private ByteBuffer window;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 是否已停止（中断正在进行的扫描）
+    private volatile boolean stopped = false;
+
+    // 后台校验线程
+    private Thread scrubThread;
+
+    // O_DIRECT 不可用时只提示一次
+    private volatile boolean directIoUnsupported = false;
+
+    // 当前扫描位置（-1 表示空闲）
+    private volatile long scrubOffset = -1;
+
+    // 当前这轮的限速基准
+    private long passStartNanos;
+    private long passReadBytes;
+
+    // 统计
+    private final AtomicLong passCount = new AtomicLong(0);
+    private final AtomicLong scannedBytes = new AtomicLong(0);
+    private final AtomicLong verifiedRecords = new AtomicLong(0);
+    private final AtomicLong unverifiedRecords = new AtomicLong(0);
+    private final AtomicLong corruptRecords = new AtomicLong(0);
+    private volatile long lastPassTime;
+    private volatile long lastPassCostMs;
+
+    /**
+     * 构造函数：加载已发现的损坏区间并重新隔离
+     *
+     * @param storePath 存储路径
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public CrcScrubService(String storePath, CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+        this.configPath = storePath + "/config";
+
+        int readSize = alignUp(storeConfig.getScrubReadSize());
+        this.readBuffer = ByteBuffer.allocateDirect(readSize + DIRECT_IO_ALIGNMENT).alignedSlice(DIRECT_IO_ALIGNMENT);
+        this.window = ByteBuffer.allocate(readSize * 2);
+
+        load();
+    }
+
+    /**
+     * 启动后台校验
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ CrcScrubService 已经在运行中");
+            return;
+        }
+        if (storeConfig.getScrubIntervalMs() <= 0) {
+            log.info("CrcScrubService 未开启后台校验");
+            return;
+        }
+
+        running = true;
+
+        scrubThread = new Thread(this::doScrub, "CrcScrubService");
+        scrubThread.setDaemon(true);
+        scrubThread.start();
+
+        log.info("✅ CrcScrubService 已启动: interval={} ms, rate={} MB/s, directIo={}",
+            storeConfig.getScrubIntervalMs(), storeConfig.getScrubRateMBps(), storeConfig.isScrubDirectIo());
+    }
+
+    /**
+     * 停止服务
+     */
+    public void shutdown() {
+        running = false;
+        stopped = true;
+
+        if (scrubThread != null) {
+            try {
+                scrubThread.interrupt();
+                scrubThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 CrcScrubService 失败", e);
+            }
+        }
+
+        log.info("✅ CrcScrubService 已停止: passes={}, scanned={} bytes, corruptRanges={}",
+            passCount.get(), scannedBytes.get(), corruptRanges.size());
+    }
+
+    private void doScrub() {
+        while (running) {
+            try {
+                Thread.sleep(storeConfig.getScrubIntervalMs());
+                scrub();
+            } catch (InterruptedException e) {
+                log.info("CrcScrubService 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ CrcScrubService 校验失败", e);
+            }
+        }
+
+        log.info("🔍 CrcScrubService 已退出");
+    }
+
+    /**
+     * 扫描一遍全部已封存的热数据文件
+     *
+     * @return 本轮新发现的损坏区间数
+     */
+    public synchronized int scrub() throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        int before = corruptRanges.size();
+        long sealedMaxOffset = commitLog.getSealedMaxOffset();
+        MappedFileQueue mappedFileQueue = commitLog.getMappedFileQueue();
+
+        passStartNanos = System.nanoTime();
+        passReadBytes = 0;
+
+        int fileCount = 0;
+        long offset = commitLog.getMinOffset();
+        while (!stopped && offset < sealedMaxOffset) {
+            MappedFile mappedFile = mappedFileQueue.findMappedFileByOffset(offset);
+            if (mappedFile == null) {
+                // 刚被归档删除
+                offset = commitLog.rollNextFile(offset);
+                continue;
+            }
+            if (mappedFile.getFileFromOffset() >= sealedMaxOffset || !mappedFile.isFull()) {
+                break;
+            }
+
+            try {
+                scrubFile(mappedFile);
+                fileCount++;
+            } catch (NoSuchFileException e) {
+                log.info("文件已删除，跳过校验: {}", mappedFile.getFileName());
+            } catch (IOException e) {
+                log.error("❌ 校验文件失败: {}", mappedFile.getFileName(), e);
+            }
+            offset = mappedFile.getFileFromOffset() + mappedFile.getFileSize();
+        }
+        scrubOffset = -1;
+
+        int found = corruptRanges.size() - before;
+        if (found > 0) {
+            persist();
+        }
+
+        passCount.incrementAndGet();
+        lastPassTime = System.currentTimeMillis();
+        lastPassCostMs = lastPassTime - startTime;
+
+        if (found > 0) {
+            log.error("❌ CRC 校验发现损坏: files={}, newRanges={}, totalRanges={}, 耗时: {} ms",
+                fileCount, found, corruptRanges.size(), lastPassCostMs);
+        } else {
+            log.info("🔍 CRC 校验完成: files={}, scanned={} bytes, 耗时: {} ms",
+                fileCount, scannedBytes.get(), lastPassCostMs);
+        }
+        return found;
+    }
+
+    private void scrubFile(MappedFile mappedFile) throws IOException, InterruptedException {
+        long fileFromOffset = mappedFile.getFileFromOffset();
+        int validEnd = mappedFile.getWrotePosition();
+
+        Path path = Paths.get(mappedFile.getFileName());
+        FileChannel directChannel = openDirect(path);
+        boolean directIo = directChannel != null;
+
+        try (FileChannel channel = directIo ? directChannel : FileChannel.open(path, StandardOpenOption.READ)) {
+            window.clear();
+            // window[0] 对应的文件内位置、下一次读取的文件内位置、当前记录在 window 中的位置
+            int windowStart = 0;
+            int readPosition = 0;
+            int position = 0;
+
+            while (!stopped && windowStart + position < validEnd) {
+                scrubOffset = fileFromOffset + windowStart + position;
+                ByteBuffer view = window.duplicate();
+                view.flip();
+                view = view.slice();
+                int filled = view.capacity();
+
+                long recordSize = filled - position >= 4 ? 4L + view.getInt(position) : -1;
+                if (recordSize > 0 && (recordSize <= 5 || recordSize > 4L + MessageCodec.MAX_RECORD_SIZE
+                    || windowStart + position + recordSize > validEnd)) {
+                    reportCorrupt(fileFromOffset + windowStart + position, fileFromOffset + validEnd, "记录长度越界");
+                    break;
+                }
+                if (recordSize < 0 || position + recordSize > filled) {
+                    if (readPosition >= validEnd) {
+                        reportCorrupt(fileFromOffset + windowStart + position, fileFromOffset + validEnd, "记录不完整");
+                        break;
+                    }
+                    window.position(position);
+                    window.limit(filled);
+                    window.compact();
+                    windowStart += position;
+                    position = 0;
+                    ensureWindow(Math.max(recordSize, 4) + readBuffer.capacity());
+
+                    int read = readChunk(channel, readPosition, validEnd, mappedFile.getFileSize(), directIo);
+                    readPosition += read;
+                    throttle(read);
+                    continue;
+                }
+
+                int checked = MessageCodec.checkRecord(view, position);
+                long recordOffset = fileFromOffset + windowStart + position;
+                if (checked < 0) {
+                    // 结构损坏，无法确定下一条记录的位置
+                    reportCorrupt(recordOffset, fileFromOffset + validEnd, "记录结构损坏");
+                    break;
+                }
+
+                MessageCodec.ChecksumResult result = MessageCodec.verifyChecksum(view, position, checked);
+                if (result == MessageCodec.ChecksumResult.MISMATCH) {
+                    reportCorrupt(recordOffset, recordOffset + checked, "CRC 校验失败");
+                    corruptRecords.incrementAndGet();
+                } else if (result == MessageCodec.ChecksumResult.OK) {
+                    verifiedRecords.incrementAndGet();
+                } else {
+                    unverifiedRecords.incrementAndGet();
+                }
+                position += checked;
+            }
+        }
+    }
+
+    /**
+     * 从 readPosition 读一块追加到 window
+     *
+     * @return 读到的有效字节数（不超过 validEnd）
+     */
+    private int readChunk(FileChannel channel, int readPosition, int validEnd, int fileSize, boolean directIo) throws IOException {
+        int wanted = Math.min(readBuffer.capacity(), validEnd - readPosition);
+        // O_DIRECT 读取长度按块对齐，多读的部分丢弃
+        int readSize = directIo ? Math.min(alignUp(wanted), fileSize - readPosition) : wanted;
+
+        readBuffer.clear();
+        readBuffer.limit(readSize);
+        while (readBuffer.hasRemaining()) {
+            if (channel.read(readBuffer, readPosition + readBuffer.position()) < 0) {
+                throw new IOException("读取超出文件末尾: position=" + readPosition + ", size=" + readSize);
+            }
+        }
+        readBuffer.flip();
+        readBuffer.limit(wanted);
+        window.put(readBuffer);
+
+        scannedBytes.addAndGet(wanted);
+        return wanted;
+    }
+
+    /**
+     * 以 O_DIRECT 打开文件，未开启或不支持时返回 null
+     */
+    private FileChannel openDirect(Path path) throws IOException {
+        if (!isDirectIo()) {
+            return null;
+        }
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPEN_OPTION);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            directIoUnsupported = true;
+            log.warn("⚠️ 文件系统不支持 O_DIRECT，校验退回普通读取: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void ensureWindow(long capacity) {
+        if (window.capacity() < capacity) {
+            ByteBuffer larger = ByteBuffer.allocate((int) Math.min(capacity, Integer.MAX_VALUE - 8));
+            window.flip();
+            larger.put(window);
+            window = larger;
+        }
+    }
+
+    /**
+     * 按累计读取字节数限速
+     */
+    private void throttle(int bytes) throws InterruptedException {
+        int rateMBps = storeConfig.getScrubRateMBps();
+        if (rateMBps <= 0) {
+            return;
+        }
+        passReadBytes += bytes;
+        long expectedNanos = passReadBytes * 1_000_000_000L / (rateMBps * 1024L * 1024L);
+        long aheadNanos = expectedNanos - (System.nanoTime() - passStartNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    private static OpenOption lookupDirectOpenOption() {
+        try {
+            Class<?> type = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            for (Object option : type.getEnumConstants()) {
+                if ("DIRECT".equals(((Enum<?>) option).name())) {
+                    return (OpenOption) option;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            log.debug("当前 JDK 没有 ExtendedOpenOption，校验使用普通读取");
+        }
+        return null;
+    }
+
+    private static int alignUp(int size) {
+        return (size + DIRECT_IO_ALIGNMENT - 1) / DIRECT_IO_ALIGNMENT * DIRECT_IO_ALIGNMENT;
+    }
+
+    // ==================== 损坏区间 ====================
+
+    private void reportCorrupt(long startOffset, long endOffset, String reason) {
+        CorruptRange existing = corruptRanges.get(startOffset);
+        if (existing != null && existing.getEndOffset() >= endOffset) {
+            return;
+        }
+
+        CorruptRange range = new CorruptRange(startOffset, endOffset, reason, System.currentTimeMillis());
+        corruptRanges.put(startOffset, range);
+        if (storeConfig.isScrubQuarantine()) {
+            commitLog.quarantine(startOffset, endOffset);
+        }
+
+        log.error("❌ 发现损坏区间: [{}, {}), bytes={}, reason={}, quarantined={}",
+            startOffset, endOffset, endOffset - startOffset, reason, storeConfig.isScrubQuarantine());
+    }
+
+    /**
+     * 解除隔离并移除损坏记录（文件修复后调用）
+     *
+     * @return 是否存在该区间
+     */
+    public boolean release(long startOffset) {
+        CorruptRange range = corruptRanges.remove(startOffset);
+        if (range == null) {
+            return false;
+        }
+        commitLog.releaseQuarantine(startOffset);
+        persist();
+
+        log.info("✅ 已解除隔离: [{}, {})", range.getStartOffset(), range.getEndOffset());
+        return true;
+    }
+
+    public List<CorruptRange> getCorruptRanges() {
+        return new ArrayList<>(corruptRanges.values());
+    }
+
+    private void load() {
+        Path path = Paths.get(configPath, QUARANTINE_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try {
+            List<CorruptRange> loaded = objectMapper.readValue(path.toFile(), new TypeReference<List<CorruptRange>>() {});
+            for (CorruptRange range : loaded) {
+                corruptRanges.put(range.getStartOffset(), range);
+                if (storeConfig.isScrubQuarantine()) {
+                    commitLog.quarantine(range.getStartOffset(), range.getEndOffset());
+                }
+            }
+            log.info("✅ 损坏区间加载完成: ranges={}", corruptRanges.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("读取损坏区间失败: " + path, e);
+        }
+    }
+
+    private synchronized void persist() {
+        Path target = Paths.get(configPath, QUARANTINE_FILE);
+        Path tmp = Paths.get(configPath, QUARANTINE_FILE + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), getCorruptRanges());
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入损坏区间失败: " + target, e);
+        }
+    }
+
+    // Getters
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isDirectIo() {
+        return storeConfig.isScrubDirectIo() && DIRECT_OPEN_OPTION != null && !directIoUnsupported;
+    }
+
+    public long getScrubOffset() {
+        return scrubOffset;
+    }
+
+    public long getPassCount() {
+        return passCount.get();
+    }
+
+    public long getScannedBytes() {
+        return scannedBytes.get();
+    }
+
+    public long getVerifiedRecords() {
+        return verifiedRecords.get();
+    }
+
+    public long getUnverifiedRecords() {
+        return unverifiedRecords.get();
+    }
+
+    public long getCorruptRecords() {
+        return corruptRecords.get();
+    }
+
+    public int getCorruptRangeCount() {
+        return corruptRanges.size();
+    }
+
+    public long getLastPassTime() {
+        return lastPassTime;
+    }
+
+    public long getLastPassCostMs() {
+        return lastPassCostMs;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 损坏区间 [startOffset, endOffset)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CorruptRange {
+        private long startOffset;
+        private long endOffset;
+        private String reason;
+        private long detectTime;
+    }
+}
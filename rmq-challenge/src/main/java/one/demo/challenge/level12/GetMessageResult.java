@@ -0,0 +1,38 @@
+package one.demo.challenge.level12;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带过滤的拉取结果
+ */
+@Data
+public class GetMessageResult {
+
+    /**
+     * 匹配的消息
+     */
+    private final List<Level12Message> messages = new ArrayList<>();
+
+    /**
+     * 下次拉取的起始偏移量（已扫描到的位置，不是最后一条匹配消息的位置）
+     */
+    private long nextBeginOffset;
+
+    /**
+     * 扫描的索引条数
+     */
+    private int scannedCount;
+
+    /**
+     * 位图判定不匹配、没有读取 CommitLog 就跳过的条数
+     */
+    private int bitMapFilteredCount;
+
+    /**
+     * 位图不可用（Reput 时还没注册、表达式已变更），读取 CommitLog 现场求值的条数
+     */
+    private int evaluatedCount;
+}
@@ -0,0 +1,238 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Group Commit Service - CommitLog 刷盘服务
+ *
+ * 所有 Topic 共享一个 CommitLog，但持久化要求按 Topic 不同（见 Level12StoreConfig.DurabilityClass）：
+ * 1. SYNC_FLUSH / SYNC_REPLICA 的写入追加到 CommitLog 后登记等待偏移量（记录结尾），不在写入锁内刷盘
+ * 2. 刷盘线程发现有等待者就立即刷盘，一次 fsync 覆盖刷盘开始前写入的所有记录，
+ *    刷盘期间新登记的等待者由下一次刷盘一起完成（组提交）
+ * 3. 没有等待者时每 flushIntervalMs 刷一次，ASYNC 的写入不登记、不等待，宕机最多丢这段时间的数据
+ *
+ * ASYNC 写入追加完就返回，不会排在别的 Topic 的 fsync 后面
+ */
+@Slf4j
+public class GroupCommitService {
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 同步刷盘等待：等待的偏移量 -> 结果
+    private final ConcurrentSkipListMap<Long, CompletableFuture<PutMessageResult.PutMessageStatus>> waitingRequests =
+        new ConcurrentSkipListMap<>();
+
+    // 有新的等待者时唤醒刷盘线程
+    private final Object flushNotifier = new Object();
+
+    // 已刷盘到的偏移量
+    private final AtomicLong flushedOffset = new AtomicLong(0);
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 刷盘线程
+    private Thread flushThread;
+
+    // 统计
+    private final AtomicLong flushCount = new AtomicLong(0);
+    private final AtomicLong syncFlushCount = new AtomicLong(0);
+    private final AtomicLong completedRequestCount = new AtomicLong(0);
+    private final AtomicLong timeoutRequestCount = new AtomicLong(0);
+    private final AtomicLong totalFlushNanos = new AtomicLong(0);
+
+    /**
+     * 构造函数
+     *
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public GroupCommitService(CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+    }
+
+    /**
+     * 启动刷盘线程（启动前的数据由恢复流程确认已在磁盘上）
+     */
+    public void start() {
+        flushedOffset.set(commitLog.getMaxOffset());
+        running = true;
+
+        flushThread = new Thread(this::doFlushLoop, "GroupCommitService");
+        flushThread.setDaemon(true);
+        flushThread.start();
+
+        log.info("✅ GroupCommitService 已启动: flushInterval={} ms, syncFlushTimeout={} ms",
+            storeConfig.getFlushIntervalMs(), storeConfig.getSyncFlushTimeoutMs());
+    }
+
+    /**
+     * 停止服务：最后刷一次盘，还在等待的写入随之完成
+     */
+    public void shutdown() {
+        running = false;
+        synchronized (flushNotifier) {
+            flushNotifier.notifyAll();
+        }
+
+        try {
+            if (flushThread != null) {
+                flushThread.join(5000);
+            }
+        } catch (InterruptedException e) {
+            log.error("❌ 停止 GroupCommitService 失败", e);
+        }
+
+        doFlush();
+        for (CompletableFuture<PutMessageResult.PutMessageStatus> request : waitingRequests.values()) {
+            request.complete(PutMessageResult.PutMessageStatus.FLUSH_DISK_TIMEOUT);
+        }
+        waitingRequests.clear();
+
+        log.info("✅ GroupCommitService 已停止: flushCount={}, syncFlushCount={}, completedRequests={}",
+            flushCount.get(), syncFlushCount.get(), completedRequestCount.get());
+    }
+
+    /**
+     * 等待刷盘到指定偏移量（同步刷盘）
+     *
+     * @param offset 消息在 CommitLog 中的结束位置
+     * @return PUT_OK / FLUSH_DISK_TIMEOUT
+     */
+    public CompletableFuture<PutMessageResult.PutMessageStatus> waitForFlush(long offset) {
+        if (flushedOffset.get() >= offset) {
+            return CompletableFuture.completedFuture(PutMessageResult.PutMessageStatus.PUT_OK);
+        }
+        if (!running) {
+            return CompletableFuture.completedFuture(PutMessageResult.PutMessageStatus.FLUSH_DISK_TIMEOUT);
+        }
+
+        CompletableFuture<PutMessageResult.PutMessageStatus> request = new CompletableFuture<>();
+        waitingRequests.put(offset, request);
+        request.completeOnTimeout(PutMessageResult.PutMessageStatus.FLUSH_DISK_TIMEOUT,
+            storeConfig.getSyncFlushTimeoutMs(), TimeUnit.MILLISECONDS);
+        request.whenComplete((status, e) -> {
+            waitingRequests.remove(offset, request);
+            if (status == PutMessageResult.PutMessageStatus.FLUSH_DISK_TIMEOUT) {
+                timeoutRequestCount.incrementAndGet();
+            }
+        });
+
+        // 登记期间刷盘可能已经完成
+        if (flushedOffset.get() >= offset) {
+            request.complete(PutMessageResult.PutMessageStatus.PUT_OK);
+        }
+        synchronized (flushNotifier) {
+            flushNotifier.notifyAll();
+        }
+        return request;
+    }
+
+    private void doFlushLoop() {
+        while (running) {
+            try {
+                synchronized (flushNotifier) {
+                    if (waitingRequests.isEmpty() && running) {
+                        long intervalMs = storeConfig.getFlushIntervalMs();
+                        // 不定时刷盘时只等同步刷盘的写入唤醒
+                        flushNotifier.wait(intervalMs > 0 ? intervalMs : 0);
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                if (!waitingRequests.isEmpty() || storeConfig.getFlushIntervalMs() > 0) {
+                    doFlush();
+                }
+            } catch (InterruptedException e) {
+                log.info("GroupCommitService 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ GroupCommitService 刷盘失败", e);
+            }
+        }
+
+        log.info("💾 GroupCommitService 已退出");
+    }
+
+    /**
+     * 刷盘并完成已覆盖的等待者
+     *
+     * 先取最大偏移量再刷盘：在此之前追加的记录都在本次刷盘范围内
+     */
+    private void doFlush() {
+        boolean sync = !waitingRequests.isEmpty();
+        long target = commitLog.getMaxOffset();
+        if (target > flushedOffset.get()) {
+            long startNanos = System.nanoTime();
+            commitLog.flush();
+            totalFlushNanos.addAndGet(System.nanoTime() - startNanos);
+            flushCount.incrementAndGet();
+            if (sync) {
+                syncFlushCount.incrementAndGet();
+            }
+            flushedOffset.accumulateAndGet(target, Math::max);
+        }
+
+        Map<Long, CompletableFuture<PutMessageResult.PutMessageStatus>> flushed =
+            waitingRequests.headMap(flushedOffset.get(), true);
+        for (CompletableFuture<PutMessageResult.PutMessageStatus> request : flushed.values()) {
+            if (request.complete(PutMessageResult.PutMessageStatus.PUT_OK)) {
+                completedRequestCount.incrementAndGet();
+            }
+        }
+    }
+
+    // Getters
+
+    public long getFlushedOffset() {
+        return flushedOffset.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getSyncFlushCount() {
+        return syncFlushCount.get();
+    }
+
+    public long getCompletedRequestCount() {
+        return completedRequestCount.get();
+    }
+
+    public long getTimeoutRequestCount() {
+        return timeoutRequestCount.get();
+    }
+
+    public int getWaitingRequestCount() {
+        return waitingRequests.size();
+    }
+
+    /**
+     * 平均每次同步刷盘完成的写入数（组提交的合并程度）
+     */
+    public double getAvgGroupSize() {
+        long count = syncFlushCount.get();
+        return count == 0 ? 0 : (double) completedRequestCount.get() / count;
+    }
+
+    /**
+     * 平均每次刷盘耗时（毫秒）
+     */
+    public double getAvgFlushMs() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : totalFlushNanos.get() / 1_000_000.0 / count;
+    }
+}
@@ -0,0 +1,274 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HA Client - 从节点复制客户端
+ *
+ * 核心特性：
+ * 1. 连接主节点后上报本地 CommitLog 最大偏移量，主节点从该位置开始推送
+ * 2. 主节点按字节推送，一批数据的末尾可能是半条记录：只追加完整的记录，剩余部分等下一批补齐，
+ *    保证从节点的 CommitLog 任何时候都只包含完整记录，Reput 和重启恢复不需要特殊处理
+ * 3. 每追加一批上报一次偏移量，主节点据此完成同步复制的等待
+ * 4. 连接断开或数据对不上时丢弃未追加的部分，重连后从本地最大偏移量重新开始
+ */
+@Slf4j
+public class HAClient {
+
+    // 重连间隔（毫秒）
+    private static final long RECONNECT_INTERVAL_MS = 1000;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 主节点地址
+    private final InetSocketAddress masterAddress;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 复制线程
+    private Thread clientThread;
+
+    // 当前连接
+    private volatile SocketChannel socketChannel;
+
+    // 未追加的半条记录（pendingOffset 是 pending 第一个字节对应的物理偏移量）
+    private ByteBuffer pending;
+    private long pendingOffset;
+
+    // 统计
+    private volatile boolean connected = false;
+    private volatile long lastReceiveTime;
+    private final AtomicLong receivedBytes = new AtomicLong(0);
+    private final AtomicLong reconnectCount = new AtomicLong(0);
+
+    /**
+     * 构造函数
+     *
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public HAClient(CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+
+        String address = storeConfig.getHaMasterAddress();
+        int index = address.lastIndexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException("主节点地址格式应为 host:port: " + address);
+        }
+        this.masterAddress = new InetSocketAddress(address.substring(0, index),
+            Integer.parseInt(address.substring(index + 1)));
+    }
+
+    /**
+     * 启动复制
+     */
+    public void start() {
+        running = true;
+
+        clientThread = new Thread(this::doReplicate, "HAClientService");
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        log.info("✅ HAClient 已启动: master={}", masterAddress);
+    }
+
+    /**
+     * 停止复制
+     */
+    public void shutdown() {
+        running = false;
+        closeChannel();
+
+        if (clientThread != null) {
+            clientThread.interrupt();
+            try {
+                clientThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 HAClient 失败", e);
+            }
+        }
+
+        log.info("✅ HAClient 已停止: received={} bytes, offset={}", receivedBytes.get(), commitLog.getMaxOffset());
+    }
+
+    private void doReplicate() {
+        while (running) {
+            try {
+                connectAndReplicate();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("⚠️ 与主节点的连接断开: {}, {}", masterAddress, e.getMessage());
+                }
+            } catch (Exception e) {
+                log.error("❌ HAClient 复制失败", e);
+            } finally {
+                closeChannel();
+            }
+
+            if (!running) {
+                break;
+            }
+            reconnectCount.incrementAndGet();
+            try {
+                Thread.sleep(RECONNECT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        log.info("🔌 HAClientService 已退出");
+    }
+
+    private void connectAndReplicate() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        socketChannel = channel;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.connect(masterAddress);
+
+        // 连接时丢弃上次没追加完的半条记录，从本地最大偏移量重新开始
+        pendingOffset = commitLog.getMaxOffset();
+        pending = null;
+
+        ByteBuffer report = ByteBuffer.allocate(HAService.REPORT_SIZE);
+        reportOffset(channel, report, pendingOffset);
+        connected = true;
+        log.info("🔗 已连接主节点: {}, offset={}", masterAddress, pendingOffset);
+
+        ByteBuffer header = ByteBuffer.allocate(HAService.TRANSFER_HEADER_SIZE);
+        while (running) {
+            header.clear();
+            readFully(channel, header);
+            long offset = header.getLong(0);
+            int size = header.getInt(8);
+            lastReceiveTime = System.currentTimeMillis();
+
+            if (size == 0) {
+                // 心跳
+                reportOffset(channel, report, commitLog.getMaxOffset());
+                continue;
+            }
+
+            int pendingSize = pending == null ? 0 : pending.position();
+            if (pendingSize == 0) {
+                // 没有半条记录时，新数据可以从当前位置开始，也可以是下一个文件的开头
+                pendingOffset = offset;
+            } else if (offset != pendingOffset + pendingSize) {
+                throw new IOException("复制数据不连续: expected=" + (pendingOffset + pendingSize) + ", actual=" + offset);
+            }
+
+            ensureCapacity(pendingSize + size);
+            pending.limit(pendingSize + size);
+            readFully(channel, pending);
+            receivedBytes.addAndGet(size);
+
+            appendCompleteRecords();
+            reportOffset(channel, report, commitLog.getMaxOffset());
+        }
+    }
+
+    /**
+     * 追加 pending 中的完整记录，剩余的半条记录移到开头
+     */
+    private void appendCompleteRecords() throws IOException {
+        int end = pending.position();
+        int complete = 0;
+        while (end - complete >= 4) {
+            int recordSize = 4 + pending.getInt(complete);
+            if (recordSize <= 4 || end - complete < recordSize) {
+                break;
+            }
+            complete += recordSize;
+        }
+        if (complete == 0) {
+            return;
+        }
+
+        ByteBuffer data = pending.duplicate();
+        data.position(0);
+        data.limit(complete);
+        if (!commitLog.appendReplicated(pendingOffset, data)) {
+            throw new IOException("追加复制数据失败: offset=" + pendingOffset + ", localMaxOffset=" + commitLog.getMaxOffset());
+        }
+
+        pendingOffset += complete;
+        pending.limit(end);
+        pending.position(complete);
+        pending.compact();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (pending == null) {
+            pending = ByteBuffer.allocateDirect(Math.max(capacity, storeConfig.getHaTransferBatchSize()));
+        } else if (pending.capacity() < capacity) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void reportOffset(SocketChannel channel, ByteBuffer report, long offset) throws IOException {
+        report.clear();
+        report.putLong(offset);
+        report.flip();
+        while (report.hasRemaining()) {
+            channel.write(report);
+        }
+    }
+
+    private void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("主节点关闭连接");
+            }
+        }
+    }
+
+    private void closeChannel() {
+        connected = false;
+        SocketChannel channel = socketChannel;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("⚠️ 关闭主节点连接失败", e);
+            }
+        }
+    }
+
+    // Getters
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public String getMasterAddress() {
+        return storeConfig.getHaMasterAddress();
+    }
+
+    public long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+}
@@ -0,0 +1,399 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HA Service - 主节点复制服务
+ *
+ * 协议（TCP，阻塞模式）：
+ * 1. 从节点连接后先上报本地 CommitLog 最大偏移量(8)，之后每写完一批数据再上报一次
+ * 2. 主节点从该偏移量开始推送：起始偏移量(8) + 数据长度(4) + 数据，数据长度为 0 是心跳
+ * 3. 数据通过 FileChannel.transferTo 从 CommitLog 文件直接发到 socket（零拷贝），不经过堆内存
+ * 4. 文件尾部的空闲空间不传输，直接从下一个文件的起始偏移量继续，从节点据此滚动文件
+ *
+ * 同步复制：写入 CommitLog 后登记等待偏移量，从节点确认的偏移量越过它时完成
+ */
+@Slf4j
+public class HAService {
+
+    // 起始偏移量(8) + 数据长度(4)
+    public static final int TRANSFER_HEADER_SIZE = 12;
+
+    // 上报偏移量(8)
+    public static final int REPORT_SIZE = 8;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 从节点连接
+    private final List<HAConnection> connections = new CopyOnWriteArrayList<>();
+
+    // 从节点确认的最大偏移量
+    private final AtomicLong push2SlaveMaxOffset = new AtomicLong(0);
+
+    // 同步复制等待：等待的偏移量 -> 结果
+    private final ConcurrentSkipListMap<Long, CompletableFuture<PutMessageResult.PutMessageStatus>> waitingRequests =
+        new ConcurrentSkipListMap<>();
+
+    // 有新数据时唤醒传输线程
+    private final Object transferNotifier = new Object();
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 监听
+    private ServerSocketChannel serverSocketChannel;
+
+    // 接受连接的线程
+    private Thread acceptThread;
+
+    // 统计
+    private final AtomicLong transferredBytes = new AtomicLong(0);
+
+    /**
+     * 构造函数
+     *
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public HAService(CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+    }
+
+    /**
+     * 启动监听
+     */
+    public void start() {
+        try {
+            serverSocketChannel = ServerSocketChannel.open();
+            serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverSocketChannel.bind(new InetSocketAddress(storeConfig.getHaListenPort()));
+        } catch (IOException e) {
+            throw new IllegalStateException("HA 监听端口绑定失败: " + storeConfig.getHaListenPort(), e);
+        }
+
+        running = true;
+
+        acceptThread = new Thread(this::doAccept, "HAAcceptService");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        log.info("✅ HAService 已启动: port={}, mode={}", storeConfig.getHaListenPort(), storeConfig.getHaReplicaMode());
+    }
+
+    /**
+     * 停止服务
+     */
+    public void shutdown() {
+        running = false;
+
+        try {
+            if (serverSocketChannel != null) {
+                serverSocketChannel.close();
+            }
+            if (acceptThread != null) {
+                acceptThread.join(5000);
+            }
+        } catch (IOException | InterruptedException e) {
+            log.error("❌ 停止 HAService 失败", e);
+        }
+
+        for (HAConnection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+
+        for (CompletableFuture<PutMessageResult.PutMessageStatus> request : waitingRequests.values()) {
+            request.complete(PutMessageResult.PutMessageStatus.SLAVE_NOT_AVAILABLE);
+        }
+        waitingRequests.clear();
+
+        log.info("✅ HAService 已停止: transferred={} bytes", transferredBytes.get());
+    }
+
+    private void doAccept() {
+        while (running) {
+            try {
+                SocketChannel socketChannel = serverSocketChannel.accept();
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                HAConnection connection = new HAConnection(socketChannel);
+                connections.add(connection);
+                connection.start();
+
+            } catch (IOException e) {
+                if (running) {
+                    log.error("❌ HAService 接受连接失败", e);
+                }
+            }
+        }
+
+        log.info("🔗 HAAcceptService 已退出");
+    }
+
+    /**
+     * 有新数据写入 CommitLog，唤醒传输线程
+     */
+    public void wakeup() {
+        if (connections.isEmpty()) {
+            return;
+        }
+        synchronized (transferNotifier) {
+            transferNotifier.notifyAll();
+        }
+    }
+
+    /**
+     * 等待从节点复制到指定偏移量（同步复制）
+     *
+     * @param offset 消息在 CommitLog 中的结束位置
+     * @return PUT_OK / FLUSH_SLAVE_TIMEOUT / SLAVE_NOT_AVAILABLE
+     */
+    public CompletableFuture<PutMessageResult.PutMessageStatus> waitForReplica(long offset) {
+        if (push2SlaveMaxOffset.get() >= offset) {
+            return CompletableFuture.completedFuture(PutMessageResult.PutMessageStatus.PUT_OK);
+        }
+        if (!isSlaveOK(offset)) {
+            return CompletableFuture.completedFuture(PutMessageResult.PutMessageStatus.SLAVE_NOT_AVAILABLE);
+        }
+
+        CompletableFuture<PutMessageResult.PutMessageStatus> request = new CompletableFuture<>();
+        waitingRequests.put(offset, request);
+        request.completeOnTimeout(PutMessageResult.PutMessageStatus.FLUSH_SLAVE_TIMEOUT,
+            storeConfig.getHaSyncTimeoutMs(), TimeUnit.MILLISECONDS);
+        request.whenComplete((status, e) -> waitingRequests.remove(offset, request));
+
+        // 登记期间确认可能已经到达
+        if (push2SlaveMaxOffset.get() >= offset) {
+            request.complete(PutMessageResult.PutMessageStatus.PUT_OK);
+        }
+        wakeup();
+        return request;
+    }
+
+    /**
+     * 从节点是否可用：已连接，且落后不超过 haMaxFallBehindBytes
+     */
+    public boolean isSlaveOK(long masterOffset) {
+        return !connections.isEmpty()
+            && masterOffset - push2SlaveMaxOffset.get() < storeConfig.getHaMaxFallBehindBytes();
+    }
+
+    private void onSlaveAck(long ackOffset) {
+        long current;
+        do {
+            current = push2SlaveMaxOffset.get();
+            if (ackOffset <= current) {
+                return;
+            }
+        } while (!push2SlaveMaxOffset.compareAndSet(current, ackOffset));
+
+        Map<Long, CompletableFuture<PutMessageResult.PutMessageStatus>> acked = waitingRequests.headMap(ackOffset, true);
+        for (CompletableFuture<PutMessageResult.PutMessageStatus> request : acked.values()) {
+            request.complete(PutMessageResult.PutMessageStatus.PUT_OK);
+        }
+    }
+
+    // Getters
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public long getPush2SlaveMaxOffset() {
+        return push2SlaveMaxOffset.get();
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    public int getWaitingRequestCount() {
+        return waitingRequests.size();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 一个从节点连接：写线程推送数据，读线程接收确认
+     */
+    private class HAConnection {
+        private final SocketChannel socketChannel;
+        private final String remoteAddress;
+        private volatile boolean connected = true;
+
+        // 下一次推送的起始偏移量
+        private long nextTransferOffset;
+
+        // 从节点确认的偏移量
+        private volatile long slaveAckOffset;
+
+        HAConnection(SocketChannel socketChannel) throws IOException {
+            this.socketChannel = socketChannel;
+            this.remoteAddress = String.valueOf(socketChannel.getRemoteAddress());
+        }
+
+        void start() {
+            Thread writeThread = new Thread(this::doTransfer, "HAWriteService-" + remoteAddress);
+            writeThread.setDaemon(true);
+            writeThread.start();
+        }
+
+        private void doTransfer() {
+            try {
+                // 从节点先上报本地最大偏移量，比主节点最早的热数据还早时从最早的热数据开始
+                slaveAckOffset = readReport();
+                nextTransferOffset = Math.max(slaveAckOffset, commitLog.getMinOffset());
+                onSlaveAck(slaveAckOffset);
+                log.info("🔗 从节点已连接: {}, slaveOffset={}, transferFrom={}",
+                    remoteAddress, slaveAckOffset, nextTransferOffset);
+
+                Thread readThread = new Thread(this::doReadAck, "HAReadService-" + remoteAddress);
+                readThread.setDaemon(true);
+                readThread.start();
+
+                ByteBuffer header = ByteBuffer.allocate(TRANSFER_HEADER_SIZE);
+                long lastWriteTime = System.currentTimeMillis();
+                while (running && connected) {
+                    if (transferOnce(header)) {
+                        lastWriteTime = System.currentTimeMillis();
+                        continue;
+                    }
+
+                    if (System.currentTimeMillis() - lastWriteTime >= storeConfig.getHaHeartbeatIntervalMs()) {
+                        writeHeader(header, nextTransferOffset, 0);
+                        lastWriteTime = System.currentTimeMillis();
+                    }
+
+                    synchronized (transferNotifier) {
+                        if (commitLog.getMaxOffset() <= nextTransferOffset) {
+                            transferNotifier.wait(storeConfig.getHaHeartbeatIntervalMs());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.info("HAWriteService 被中断: {}", remoteAddress);
+            } catch (IOException e) {
+                if (running && connected) {
+                    log.warn("⚠️ 从节点连接断开: {}, {}", remoteAddress, e.getMessage());
+                }
+            } catch (Exception e) {
+                log.error("❌ HAWriteService 处理失败: {}", remoteAddress, e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * 推送一批数据
+         *
+         * @return 是否推送了数据
+         */
+        private boolean transferOnce(ByteBuffer header) throws IOException {
+            if (nextTransferOffset >= commitLog.getMaxOffset()) {
+                return false;
+            }
+
+            MappedFile mappedFile = commitLog.getMappedFileQueue().findMappedFileByOffset(nextTransferOffset);
+            if (mappedFile == null) {
+                throw new IOException("数据已不在热存储中，无法复制: offset=" + nextTransferOffset);
+            }
+
+            long wroteEnd = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+            if (nextTransferOffset >= wroteEnd) {
+                if (mappedFile.isFull()) {
+                    // 文件尾部的空闲空间，跳到下一个文件
+                    nextTransferOffset = mappedFile.getFileFromOffset() + mappedFile.getFileSize();
+                    return true;
+                }
+                return false;
+            }
+
+            int size = (int) Math.min(wroteEnd - nextTransferOffset, storeConfig.getHaTransferBatchSize());
+            if (!mappedFile.hold()) {
+                throw new IOException("数据已不在热存储中，无法复制: offset=" + nextTransferOffset);
+            }
+            try {
+                writeHeader(header, nextTransferOffset, size);
+                mappedFile.transferTo(nextTransferOffset, size, socketChannel);
+            } finally {
+                mappedFile.release();
+            }
+
+            nextTransferOffset += size;
+            transferredBytes.addAndGet(size);
+            return true;
+        }
+
+        private void writeHeader(ByteBuffer header, long offset, int size) throws IOException {
+            header.clear();
+            header.putLong(offset);
+            header.putInt(size);
+            header.flip();
+            while (header.hasRemaining()) {
+                socketChannel.write(header);
+            }
+        }
+
+        private void doReadAck() {
+            try {
+                while (running && connected) {
+                    slaveAckOffset = readReport();
+                    onSlaveAck(slaveAckOffset);
+                }
+            } catch (IOException e) {
+                if (running && connected) {
+                    log.warn("⚠️ 从节点连接断开: {}, {}", remoteAddress, e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private long readReport() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(REPORT_SIZE);
+            while (buffer.hasRemaining()) {
+                if (socketChannel.read(buffer) < 0) {
+                    throw new EOFException("从节点关闭连接");
+                }
+            }
+            return buffer.getLong(0);
+        }
+
+        void close() {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            connections.remove(this);
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                log.warn("⚠️ 关闭从节点连接失败: {}", remoteAddress, e);
+            }
+            synchronized (transferNotifier) {
+                transferNotifier.notifyAll();
+            }
+            log.info("🔌 从节点连接已关闭: {}, ackOffset={}", remoteAddress, slaveAckOffset);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Idempotency Key Table - 按生产者幂等键去重写入
+ *
+ * 核心特性：
+ * 1. 两代时间窗口：当前代写满 dedupWindowMs（或装满）后切换，上一代清空后成为新的当前代，
+ *    因此一个幂等键至少在一个窗口内有效，最多两个窗口
+ * 2. 每代一个布隆过滤器（堆内位图）：两代都判定"一定不存在"时直接写入，绝大多数新消息只做几次位运算
+ * 3. 布隆过滤器判定"可能存在"时查每代的键表：开放寻址哈希表，放在 mmap 文件中（堆外，重启后保留），
+ *    槽位只存 64 位指纹和消息位置；指纹命中后读出原消息比较 Topic 和幂等键，确认是重复才返回
+ * 4. 重复消息不再追加，返回原消息的物理偏移量（PutMessageStatus.DUPLICATE_MESSAGE）
+ *
+ * 并发：同一个幂等键的检查和追加由分段锁串行化（不同键互不影响）；键表插入串行，查询不加锁
+ * （开放寻址不删除槽位，探测链上的槽位写入后不会再变空）；切换代时持有写锁
+ *
+ * 幂等键只对生产者的写入生效：重试、定时投递、事务提交等重新写入的副本不带幂等键（见 Level12Message.copy）
+ *
+ * 键表文件格式：魔数(4) + 槽位数(4) + 已用槽位数(4) + 保留(4) + 代开始时间(8) + 保留(8)，
+ * 之后每个槽位：指纹(8) + 物理偏移量(8) + 批量帧内序号(4) + 保留(4)，指纹为 0 表示空槽位
+ */
+@Slf4j
+public class IdempotencyKeyTable {
+
+    private static final int FILE_MAGIC = 0x1DE70000;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int SLOT_SIZE = 24;
+
+    // 布隆过滤器每个键占用的位数和哈希函数个数（误判率约 1%）
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    // 分段锁个数
+    private static final int LOCK_STRIPES = 64;
+
+    // CommitLog（读取原消息做精确比较）
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 两代：current 为当前写入的代
+    private final Generation[] generations = new Generation[2];
+    private volatile int current;
+
+    // 分段锁：同一个幂等键的检查和追加串行化
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    // 切换代时持有写锁
+    private final ReentrantReadWriteLock rotateLock = new ReentrantReadWriteLock();
+
+    // 统计
+    private final AtomicLong bloomNegativeCount = new AtomicLong(0);
+    private final AtomicLong bloomFalsePositiveCount = new AtomicLong(0);
+    private final AtomicLong duplicateCount = new AtomicLong(0);
+    private final AtomicLong rotateCount = new AtomicLong(0);
+
+    /**
+     * 构造函数：加载（或创建）两代键表，按键表重建布隆过滤器
+     *
+     * @param storePath 存储路径
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public IdempotencyKeyTable(String storePath, CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+
+        String dedupPath = storePath + "/dedup";
+        new File(dedupPath).mkdirs();
+        int capacity = Integer.highestOneBit(Math.max(storeConfig.getDedupMaxKeysPerWindow(), 1024) * 2 - 1) * 2;
+        try {
+            for (int i = 0; i < 2; i++) {
+                generations[i] = new Generation(dedupPath + "/" + i, capacity, storeConfig.getDedupMaxKeysPerWindow());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("加载幂等键表失败: " + dedupPath, e);
+        }
+
+        // 较新的一代为当前代；超过两个窗口的代已经没有意义
+        long now = System.currentTimeMillis();
+        current = generations[0].getBeginTime() >= generations[1].getBeginTime() ? 0 : 1;
+        for (Generation generation : generations) {
+            if (now - generation.getBeginTime() >= storeConfig.getDedupWindowMs() * 2) {
+                generation.reset(now);
+            }
+        }
+
+        log.info("✅ 幂等键表加载完成: keys={}/{}, capacity={}, window={} ms",
+            generations[current].getCount(), generations[1 - current].getCount(), capacity, storeConfig.getDedupWindowMs());
+    }
+
+    /**
+     * 去掉重复的消息后写入
+     *
+     * 没有幂等键的消息不检查；同一批内幂等键相同的消息只保留第一条
+     *
+     * @param messages 待写入的消息（单条写入为一个元素）
+     * @param appender 追加剩余消息，返回写入结果
+     * @return 全部重复时返回 DUPLICATE_MESSAGE（第一条重复消息的原位置），否则为 appender 的结果
+     */
+    public PutMessageResult putIfAbsent(List<Level12Message> messages,
+                                        Function<List<Level12Message>, PutMessageResult> appender) {
+        Map<Integer, ReentrantLock> locks = new TreeMap<>();
+        for (Level12Message message : messages) {
+            if (message.getIdempotencyKey() != null) {
+                int stripe = (int) (fingerprint(message) >>> 32) & (LOCK_STRIPES - 1);
+                locks.put(stripe, stripes[stripe]);
+            }
+        }
+
+        // 按序号加锁，多个分段时不会死锁
+        for (ReentrantLock lock : locks.values()) {
+            lock.lock();
+        }
+        rotateLock.readLock().lock();
+        try {
+            List<Level12Message> remaining = new ArrayList<>(messages.size());
+            List<Long> remainingFingerprints = new ArrayList<>(messages.size());
+            CommitLog.AppendMessageResult firstDuplicate = null;
+
+            for (Level12Message message : messages) {
+                if (message.getIdempotencyKey() == null) {
+                    remaining.add(message);
+                    remainingFingerprints.add(0L);
+                    continue;
+                }
+
+                long fingerprint = fingerprint(message);
+                if (remainingFingerprints.contains(fingerprint)) {
+                    // 同一批内重复
+                    duplicateCount.incrementAndGet();
+                    continue;
+                }
+                CommitLog.AppendMessageResult original = lookup(message, fingerprint);
+                if (original == null) {
+                    remaining.add(message);
+                    remainingFingerprints.add(fingerprint);
+                    continue;
+                }
+
+                duplicateCount.incrementAndGet();
+                message.setPhysicalOffset(original.getPhysicalOffset());
+                if (firstDuplicate == null) {
+                    firstDuplicate = original;
+                }
+                log.debug("🔁 重复消息，不再写入: topic={}, idempotencyKey={}", message.getTopic(), message.getIdempotencyKey());
+            }
+
+            if (remaining.isEmpty()) {
+                return new PutMessageResult(PutMessageResult.PutMessageStatus.DUPLICATE_MESSAGE, firstDuplicate);
+            }
+
+            PutMessageResult result = appender.apply(remaining);
+            if (result.getStatus() == PutMessageResult.PutMessageStatus.PUT_OK) {
+                for (int i = 0; i < remaining.size(); i++) {
+                    long fingerprint = remainingFingerprints.get(i);
+                    if (fingerprint != 0) {
+                        Level12Message message = remaining.get(i);
+                        insert(fingerprint, message.getPhysicalOffset(), message.getBatchIndex());
+                    }
+                }
+            }
+            return result;
+
+        } finally {
+            rotateLock.readLock().unlock();
+            for (ReentrantLock lock : locks.values()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 查找幂等键相同的原消息
+     *
+     * @return 原消息位置，不存在返回 null
+     */
+    private CommitLog.AppendMessageResult lookup(Level12Message message, long fingerprint) {
+        Generation newer = generations[current];
+        Generation older = generations[1 - current];
+        if (!newer.mightContain(fingerprint) && !older.mightContain(fingerprint)) {
+            bloomNegativeCount.incrementAndGet();
+            return null;
+        }
+
+        for (Generation generation : new Generation[]{newer, older}) {
+            int slot = generation.find(fingerprint);
+            while (slot >= 0) {
+                CommitLog.AppendMessageResult original = verify(message, generation.getOffset(slot), generation.getBatchIndex(slot));
+                if (original != null) {
+                    return original;
+                }
+                slot = generation.findNext(fingerprint, slot);
+            }
+        }
+
+        bloomFalsePositiveCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 读出原消息比较 Topic 和幂等键（指纹相同的不同键不算重复）
+     */
+    private CommitLog.AppendMessageResult verify(Level12Message message, long offset, int batchIndex) {
+        if (offset >= commitLog.getMaxOffset()) {
+            // 崩溃恢复时被截掉的记录
+            return null;
+        }
+
+        Level12Message original = commitLog.getMessage(offset, batchIndex);
+        if (original == null) {
+            // 读不出原消息（隔离、冷存储不可用）时以 64 位指纹为准
+            return new CommitLog.AppendMessageResult(CommitLog.AppendMessageStatus.PUT_OK, offset, 0, null);
+        }
+        if (!message.getIdempotencyKey().equals(original.getIdempotencyKey())
+            || !message.getTopic().equals(original.getTopic())) {
+            return null;
+        }
+        return new CommitLog.AppendMessageResult(CommitLog.AppendMessageStatus.PUT_OK, offset, 0, original.getMessageId());
+    }
+
+    private void insert(long fingerprint, long offset, int batchIndex) {
+        Generation generation = generations[current];
+        if (generation.isExpired(storeConfig.getDedupWindowMs()) || generation.isFull()) {
+            rotate();
+            generation = generations[current];
+        }
+        generation.insert(fingerprint, offset, batchIndex);
+    }
+
+    /**
+     * 切换代：清空上一代作为新的当前代
+     *
+     * 调用方持有读锁，这里先释放读锁再获取写锁（写锁内再次检查，避免重复切换）
+     */
+    private void rotate() {
+        rotateLock.readLock().unlock();
+        rotateLock.writeLock().lock();
+        try {
+            Generation generation = generations[current];
+            if (generation.isExpired(storeConfig.getDedupWindowMs()) || generation.isFull()) {
+                int next = 1 - current;
+                generations[next].reset(System.currentTimeMillis());
+                current = next;
+                rotateCount.incrementAndGet();
+
+                log.info("🔄 幂等键表切换代: previousKeys={}, full={}", generation.getCount(), generation.isFull());
+            }
+        } finally {
+            rotateLock.readLock().lock();
+            rotateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        for (Generation generation : generations) {
+            generation.flush();
+        }
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        flush();
+        log.info("✅ 幂等键表已关闭: duplicates={}, keys={}/{}",
+            duplicateCount.get(), generations[current].getCount(), generations[1 - current].getCount());
+    }
+
+    /**
+     * Topic + 幂等键的 64 位指纹（FNV-1a + MurmurHash3 fmix64），不为 0
+     */
+    static long fingerprint(Level12Message message) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, message.getTopic().getBytes(StandardCharsets.UTF_8));
+        hash = (hash ^ 0xFF) * 0x100000001b3L;
+        hash = fnv(hash, message.getIdempotencyKey().getBytes(StandardCharsets.UTF_8));
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long fnv(long hash, byte[] data) {
+        for (byte b : data) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Getters
+
+    public int getCurrentKeyCount() {
+        return generations[current].getCount();
+    }
+
+    public int getPreviousKeyCount() {
+        return generations[1 - current].getCount();
+    }
+
+    public long getCurrentBeginTime() {
+        return generations[current].getBeginTime();
+    }
+
+    public long getBloomNegativeCount() {
+        return bloomNegativeCount.get();
+    }
+
+    public long getBloomFalsePositiveCount() {
+        return bloomFalsePositiveCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    public long getRotateCount() {
+        return rotateCount.get();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 一代：布隆过滤器 + 堆外键表
+     */
+    private static class Generation {
+        private final int capacity;
+        private final int maxKeys;
+        private final MappedByteBuffer table;
+        private final AtomicLongArray bloom;
+        private final int bloomBits;
+        private final AtomicInteger count = new AtomicInteger(0);
+        private volatile long beginTime;
+
+        Generation(String fileName, int capacity, int maxKeys) throws IOException {
+            this.capacity = capacity;
+            this.maxKeys = maxKeys;
+            this.bloomBits = Math.max(64, maxKeys * BLOOM_BITS_PER_KEY);
+            this.bloom = new AtomicLongArray((bloomBits + 63) / 64);
+
+            long fileSize = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                boolean reusable = file.length() == fileSize;
+                file.setLength(fileSize);
+                this.table = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+                if (reusable && table.getInt(0) == FILE_MAGIC && table.getInt(4) == capacity) {
+                    load();
+                } else {
+                    // 新文件或槽位数变了：作废旧数据
+                    reset(0);
+                }
+            }
+        }
+
+        private void load() {
+            beginTime = table.getLong(16);
+            int used = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                long fingerprint = table.getLong(position(slot));
+                if (fingerprint != 0) {
+                    addToBloom(fingerprint);
+                    used++;
+                }
+            }
+            count.set(used);
+        }
+
+        void reset(long time) {
+            for (int position = HEADER_SIZE; position < table.capacity(); position += SLOT_SIZE) {
+                table.putLong(position, 0);
+            }
+            for (int i = 0; i < bloom.length(); i++) {
+                bloom.set(i, 0);
+            }
+            count.set(0);
+            beginTime = time;
+
+            table.putInt(0, FILE_MAGIC);
+            table.putInt(4, capacity);
+            table.putInt(8, 0);
+            table.putLong(16, time);
+        }
+
+        boolean mightContain(long fingerprint) {
+            long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) Long.remainderUnsigned(fingerprint + i * h2, bloomBits);
+                if ((bloom.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void addToBloom(long fingerprint) {
+            long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (int) Long.remainderUnsigned(fingerprint + i * h2, bloomBits);
+                long mask = 1L << bit;
+                bloom.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+            }
+        }
+
+        /**
+         * 第一个指纹相同的槽位，不存在返回 -1
+         */
+        int find(long fingerprint) {
+            return probe(fingerprint, home(fingerprint));
+        }
+
+        /**
+         * slot 之后下一个指纹相同的槽位（64 位指纹相同的不同键），不存在返回 -1
+         */
+        int findNext(long fingerprint, int slot) {
+            return probe(fingerprint, (slot + 1) & (capacity - 1));
+        }
+
+        private int probe(long fingerprint, int from) {
+            for (int i = 0, slot = from; i < capacity; i++, slot = (slot + 1) & (capacity - 1)) {
+                long stored = table.getLong(position(slot));
+                if (stored == 0) {
+                    return -1;
+                }
+                if (stored == fingerprint) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        synchronized void insert(long fingerprint, long offset, int batchIndex) {
+            int slot = home(fingerprint);
+            while (table.getLong(position(slot)) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+
+            // 先写位置再写指纹：指纹可见时位置已经写好
+            int position = position(slot);
+            table.putLong(position + 8, offset);
+            table.putInt(position + 16, batchIndex);
+            table.putLong(position, fingerprint);
+            addToBloom(fingerprint);
+            table.putInt(8, count.incrementAndGet());
+        }
+
+        long getOffset(int slot) {
+            return table.getLong(position(slot) + 8);
+        }
+
+        int getBatchIndex(int slot) {
+            return table.getInt(position(slot) + 16);
+        }
+
+        boolean isExpired(long windowMs) {
+            return System.currentTimeMillis() - beginTime >= windowMs;
+        }
+
+        boolean isFull() {
+            return count.get() >= maxKeys;
+        }
+
+        int getCount() {
+            return count.get();
+        }
+
+        long getBeginTime() {
+            return beginTime;
+        }
+
+        void flush() {
+            table.force();
+        }
+
+        private int home(long fingerprint) {
+            return (int) fingerprint & (capacity - 1);
+        }
+
+        private static int position(int slot) {
+            return HEADER_SIZE + slot * SLOT_SIZE;
+        }
+    }
+}
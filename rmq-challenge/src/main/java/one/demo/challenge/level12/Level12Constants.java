@@ -22,6 +22,30 @@ public class Level12Constants {
     public static final String FIXED_STORE_PATH = "store/level12/fixed";
     public static final String BEST_STORE_PATH = "store/level12/best";
 
+    // 冷存储路径（本地演示用另一个目录代替另一种存储介质）
+    public static final String BEST_COLD_STORE_PATH = "store/level12/best-cold";
+
+    // 主从复制：进程内演示的从节点存储路径、主节点 HA 端口
+    public static final String BEST_SLAVE_STORE_PATH = "store/level12/best-slave";
+    public static final int BEST_HA_PORT = 10912;
+
+    // 进程内 Broker（embedded profile）的存储路径
+    public static final String EMBEDDED_STORE_PATH = "store/level12/embedded";
+
+    // 导出文件目录
+    public static final String BEST_EXPORT_PATH = "store/level12/export";
+
+    // 开环压测的临时存储目录（每次压测新建，结束后删除）
+    public static final String LOADGEN_STORE_PATH = "store/level12/loadgen";
+
+    // 事务消息内部 Topic：半消息、op 记录（提交/回滚）
+    public static final String TRANS_HALF_TOPIC = "RMQ_SYS_TRANS_HALF_TOPIC";
+    public static final String TRANS_OP_HALF_TOPIC = "RMQ_SYS_TRANS_OP_HALF_TOPIC";
+
+    // 消费重试、死信 Topic 前缀（按消费组区分）
+    public static final String RETRY_GROUP_TOPIC_PREFIX = "%RETRY%";
+    public static final String DLQ_GROUP_TOPIC_PREFIX = "%DLQ%";
+
     // 文件大小配置
     public static final int COMMITLOG_FILE_SIZE = 1024 * 1024 * 1024; // 1GB
     public static final int CONSUMEQUEUE_FILE_SIZE = 6000000; // 约 300MB (每条索引 20 字节)
@@ -32,4 +56,19 @@ public class Level12Constants {
     // 性能测试配置
     public static final int DEFAULT_MESSAGE_SIZE = 1024; // 1KB
     public static final int DEFAULT_TEST_COUNT = 10000;
+
+    public static String getRetryTopic(String group) {
+        return RETRY_GROUP_TOPIC_PREFIX + group;
+    }
+
+    public static String getDLQTopic(String group) {
+        return DLQ_GROUP_TOPIC_PREFIX + group;
+    }
+
+    /**
+     * 是否是消费重试 / 死信 Topic
+     */
+    public static boolean isRetryOrDLQTopic(String topic) {
+        return topic != null && (topic.startsWith(RETRY_GROUP_TOPIC_PREFIX) || topic.startsWith(DLQ_GROUP_TOPIC_PREFIX));
+    }
 }
@@ -1,10 +1,20 @@
 package one.demo.challenge.level12;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Level 12 消息实体
@@ -64,5 +74,156 @@ public class Level12Message implements Serializable {
      */
     private long physicalOffset;
 
+    /**
+     * 定时投递时间（毫秒时间戳），0 表示立即投递
+     *
+     * 晚于存储时间（秒级比较）的消息先进入时间轮，到期后才写入真实 Topic 的 ConsumeQueue
+     */
+    private long deliverTime;
+
+    /**
+     * 事务 ID（半消息、提交后的消息、op 记录共用）
+     */
+    private String transactionId;
+
+    /**
+     * 半消息的真实 Topic
+     */
+    private String realTopic;
+
+    /**
+     * 半消息的真实 Queue ID
+     */
+    private int realQueueId;
+
+    /**
+     * 事务回查次数
+     */
+    private int transactionCheckTimes;
+
+    /**
+     * 重试次数（每次 sendMessageBack 加 1）
+     */
+    private int reconsumeTimes;
+
+    /**
+     * 重试、死信消息的原始 Topic
+     */
+    private String originTopic;
+
+    /**
+     * 生产者幂等键（可选）：同一 Topic 下幂等键相同的消息在去重窗口内只写入一次
+     *
+     * 只对生产者的写入生效，重新投递的副本不带（见 copy）
+     */
+    private String idempotencyKey;
+
+    /**
+     * 用户属性（SQL92 过滤使用）
+     *
+     * 声明为 Map 接口，putProperty、copy 创建的都是可序列化的 HashMap
+     */
+    @SuppressWarnings("serial")
+    private Map<String, String> properties;
+
     private int len;
+
+    /**
+     * 批量帧内的序号（单条消息为 0），与 physicalOffset 一起定位消息
+     */
+    private int batchIndex;
+
+    /**
+     * 从 CommitLog 读出、尚未解压的消息体，第一次 getBody 时解压
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile byte[] compressedBody;
+
+    /**
+     * 读取消息体（压缩存储的消息体在这里才解压）
+     */
+    public String getBody() {
+        byte[] compressed = compressedBody;
+        if (compressed != null) {
+            try {
+                body = new String(MessageCodec.inflate(compressed), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("消息体解压失败: messageId=" + messageId, e);
+            }
+            compressedBody = null;
+        }
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+        this.compressedBody = null;
+    }
+
+    /**
+     * 压缩的消息体，已解压或本来就没压缩返回 null
+     */
+    byte[] getCompressedBody() {
+        return compressedBody;
+    }
+
+    void setCompressedBody(byte[] compressedBody) {
+        this.body = null;
+        this.compressedBody = compressedBody;
+    }
+
+    /**
+     * 设置用户属性
+     */
+    public Level12Message putProperty(String name, String value) {
+        if (properties == null) {
+            properties = new HashMap<>();
+        }
+        properties.put(name, value);
+        return this;
+    }
+
+    /**
+     * 读取用户属性
+     */
+    public String getProperty(String name) {
+        return properties == null ? null : properties.get(name);
+    }
+
+    /**
+     * 复制一份消息（重新投递到其他 Topic 时使用，不影响原消息）
+     *
+     * MessageId 保持不变，消费者据此识别同一条消息；重试 / 死信副本不进入存储的 MessageId 索引
+     *
+     * 不复制幂等键：副本是存储自己写入的，不能被当成原消息的重复
+     */
+    public Level12Message copy() {
+        Level12Message message = new Level12Message();
+        message.setMessageId(messageId);
+        message.setTopic(topic);
+        message.setTag(tag);
+        message.setKey(key);
+        // 压缩的消息体原样带过去，重新写入时不用解压再压缩
+        message.body = body;
+        message.compressedBody = compressedBody;
+        message.setCreateTime(createTime);
+        message.setStoreTime(storeTime);
+        message.setQueueId(queueId);
+        message.setQueueOffset(queueOffset);
+        message.setPhysicalOffset(physicalOffset);
+        message.setDeliverTime(deliverTime);
+        message.setTransactionId(transactionId);
+        message.setRealTopic(realTopic);
+        message.setRealQueueId(realQueueId);
+        message.setTransactionCheckTimes(transactionCheckTimes);
+        message.setReconsumeTimes(reconsumeTimes);
+        message.setOriginTopic(originTopic);
+        message.setProperties(properties == null ? null : new HashMap<>(properties));
+        message.setLen(len);
+        message.setBatchIndex(batchIndex);
+        return message;
+    }
 }
@@ -2,11 +2,19 @@ package one.demo.challenge.level12;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Level 12 消息存储 - Best 版本
@@ -19,6 +27,16 @@ import java.util.concurrent.ConcurrentHashMap;
  * 3. 使用 MappedByteBuffer 实现零拷贝
  * 4. 异步构建索引，不阻塞写入
  * 5. 支持按 Tag 快速过滤
+ * 6. 支持定时消息（两级时间轮，秒级精度）
+ * 7. 支持事务消息（半消息 + op 记录，后台回查）
+ * 8. 支持消费失败重试（%RETRY%、%DLQ%）
+ * 9. 支持 SQL92 属性过滤（Reput 时预计算位图，拉取时跳过不匹配的消息）
+ * 10. 消息体超过阈值时压缩存储，批量写入整批压缩，读取时按需解压
+ * 11. 支持冷热分层：旧的 CommitLog 文件归档到冷存储目录，读取时透明回源
+ * 12. 支持主从复制：从节点按字节复制 CommitLog 并自己构建索引，同步复制时等待从节点确认
+ * 13. 写入背压：写入持锁过久或排队过长时快速失败（OS_PAGE_CACHE_BUSY），不让调用方全部堵在写入锁上
+ * 14. 支持按 Topic / Queue 区间导出导入：CommitLog 记录原样经 transferTo 导出，导入时批量追加
+ * 15. 按 Topic 选择持久化级别：ASYNC 写入即返回，SYNC_FLUSH 组提交刷盘，SYNC_REPLICA 等待从节点确认
  *
  * 性能提升：
  * - 写入 TPS：5,000 → 50,000（10x）
@@ -32,15 +50,72 @@ public class Level12MessageStoreBest {
     // 存储路径
     private final String storePath;
 
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
     // CommitLog：所有消息统一存储
     private final CommitLog commitLog;
 
     // ConsumeQueue 表：Topic -> QueueId -> ConsumeQueue
     private final Map<String, Map<Integer, ConsumeQueue>> consumeQueueTable = new ConcurrentHashMap<>();
 
+    // 保护 ConsumeQueue 表的查找 / 创建（读锁）与整体重建（写锁），重建期间查找等待重建完成
+    private final ReadWriteLock consumeQueueTableLock = new ReentrantReadWriteLock();
+
     // 异步构建索引服务
     private final ReputMessageService reputMessageService;
 
+    // Key 压缩服务
+    private final CompactionService compactionService;
+
+    // 定时消息
+    private final TimerMessageStore timerMessageStore;
+
+    // 事务消息
+    private final TransactionalMessageService transactionalMessageService;
+
+    // 消费失败重试
+    private final SendMessageBackService sendMessageBackService;
+
+    // SQL92 过滤配置
+    private final ConsumerFilterManager consumerFilterManager;
+
+    // 消费进度
+    private final ConsumerOffsetManager consumerOffsetManager;
+
+    // 分发堆积 / 消费堆积指标
+    private final StoreLagMetrics storeLagMetrics;
+
+    // 冷存储（未配置 coldStorePath 时为 null）
+    private final ColdTierStore coldTierStore;
+
+    // CommitLog 刷盘（同步刷盘组提交 + 定时刷盘）
+    private final GroupCommitService groupCommitService;
+
+    // 主节点复制服务（未配置 haListenPort 时为 null）
+    private final HAService haService;
+
+    // 从节点复制客户端（未配置 haMasterAddress 时为 null）
+    private final HAClient haClient;
+
+    // 导出导入
+    private final TopicExportService topicExportService;
+
+    // 流式输出
+    private final QueueStreamService queueStreamService;
+
+    // 多队列拉取
+    private final MultiQueuePullService multiQueuePullService;
+
+    // 并行重建 ConsumeQueue
+    private final ConsumeQueueRebuildService consumeQueueRebuildService;
+
+    // 已封存文件的 CRC 校验
+    private final CrcScrubService crcScrubService;
+
+    // 幂等键去重
+    private final IdempotencyKeyTable idempotencyKeyTable;
+
     // 统计信息
     private final Level12StoreStats stats = new Level12StoreStats();
 
@@ -53,43 +128,242 @@ public class Level12MessageStoreBest {
      * @param storePath 存储路径
      */
     public Level12MessageStoreBest(String storePath) {
+        this(storePath, new Level12StoreConfig());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param commitLogFileSize 单个 CommitLog 文件大小
+     */
+    public Level12MessageStoreBest(String storePath, int commitLogFileSize) {
+        this(storePath, commitLogConfig(commitLogFileSize));
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param storeConfig 存储配置
+     */
+    public Level12MessageStoreBest(String storePath, Level12StoreConfig storeConfig) {
         this.storePath = storePath;
+        this.storeConfig = storeConfig;
+
+        // 初始化 CommitLog，并恢复已有数据的写入位置
+        this.commitLog = new CommitLog(storePath, storeConfig.getCommitLogFileSize(),
+            new MessageCodec(storeConfig.getBodyCompressThreshold(), storeConfig.getBodyCompressLevel()),
+            storeConfig.getCommitLogIoBackend());
+        this.commitLog.recover();
+        if (storeConfig.getPutRingBufferSize() > 0) {
+            this.commitLog.startAppendRing(storeConfig.getPutRingBufferSize(), storeConfig.getPutRingMaxBatch());
+        }
+        this.groupCommitService = new GroupCommitService(commitLog, storeConfig);
+        this.groupCommitService.start();
+
+        // 加载幂等键表
+        this.idempotencyKeyTable = new IdempotencyKeyTable(storePath, commitLog, storeConfig);
+
+        // 加载已发现的损坏区间（第一次读取之前隔离）
+        this.crcScrubService = new CrcScrubService(storePath, commitLog, storeConfig);
+
+        // 初始化冷存储，接管已归档偏移量的读取
+        this.coldTierStore = storeConfig.getColdStorePath() == null
+            ? null : new ColdTierStore(this, commitLog, storeConfig);
+        if (this.coldTierStore != null) {
+            this.coldTierStore.load();
+        }
+
+        // 加载 SQL 过滤配置（Reput 启动前，保证位图按持久化的配置计算）
+        this.consumerFilterManager = new ConsumerFilterManager(storePath);
+
+        // 加载消费进度
+        this.consumerOffsetManager = new ConsumerOffsetManager(storePath, storeConfig);
+        this.storeLagMetrics = new StoreLagMetrics(this, consumerOffsetManager);
 
-        // 初始化 CommitLog
-        this.commitLog = new CommitLog(storePath);
+        // 加载已有的 ConsumeQueue
+        loadConsumeQueues();
+
+        // 初始化定时消息（恢复 TimerLog 和时间轮）
+        this.timerMessageStore = new TimerMessageStore(this, commitLog, storeConfig);
 
         // 初始化异步索引构建服务
         this.reputMessageService = new ReputMessageService(this, commitLog);
 
-        // 启动异步索引构建
-        this.reputMessageService.start();
+        // 初始化 Key 压缩服务
+        this.compactionService = new CompactionService(this, commitLog, storeConfig);
+
+        // 初始化事务消息服务
+        this.transactionalMessageService = new TransactionalMessageService(this, commitLog, storeConfig);
+
+        // 初始化消费重试服务
+        this.sendMessageBackService = new SendMessageBackService(this, storeConfig);
+
+        // 初始化导出导入
+        this.topicExportService = new TopicExportService(this, commitLog);
+        this.queueStreamService = new QueueStreamService(this, commitLog);
+        this.multiQueuePullService = new MultiQueuePullService(this, commitLog);
+
+        // 启动异步索引构建（从已分发到的位置继续）；落后较多时先并行重建
+        this.consumeQueueRebuildService = new ConsumeQueueRebuildService(this, commitLog, storeConfig);
+        long reputFromOffset = computeReputFromOffset();
+        // ConsumeQueue 文件全部丢失：时间轮的分发位置不能代表 ConsumeQueue，从头重建（已入轮的定时消息不会重复入轮）
+        boolean consumeQueueLost = consumeQueueTable.isEmpty() && commitLog.getMaxOffset() > commitLog.getMinOffset();
+        long behindBytes = commitLog.getMaxOffset() - reputFromOffset;
+        if (consumeQueueLost
+            || storeConfig.getConsumeQueueRebuildMinBytes() > 0 && behindBytes >= storeConfig.getConsumeQueueRebuildMinBytes()) {
+            long rebuildFromOffset = consumeQueueLost ? commitLog.getMinOffset() : reputFromOffset;
+            try {
+                reputFromOffset = consumeQueueRebuildService.rebuild(rebuildFromOffset, commitLog.getMaxOffset()).getNextOffset();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("启动时并行重建 ConsumeQueue 被中断", e);
+            }
+        }
+        this.reputMessageService.start(reputFromOffset);
+
+        // 启动后台压缩
+        this.compactionService.start();
+
+        // 从节点只读：到期的定时消息、事务回查结果都由主节点写入后复制过来
+        if (!isSlave()) {
+            // 启动时间轮扫描
+            this.timerMessageStore.start();
+
+            // 启动事务回查
+            this.transactionalMessageService.start();
+        }
 
-        log.info("✅ [Best] 消息存储初始化完成: {}", storePath);
+        // 启动冷存储归档
+        if (this.coldTierStore != null) {
+            this.coldTierStore.start();
+        }
+
+        // 启动后台 CRC 校验
+        this.crcScrubService.start();
+
+        // 启动消费进度持久化
+        this.consumerOffsetManager.start();
+
+        // 启动主从复制
+        this.haService = storeConfig.getHaListenPort() > 0 && !isSlave()
+            ? new HAService(commitLog, storeConfig) : null;
+        this.haClient = isSlave() ? new HAClient(commitLog, storeConfig) : null;
+        if (this.haService != null) {
+            this.haService.start();
+        }
+        if (this.haClient != null) {
+            this.haClient.start();
+        }
+
+        log.info("✅ [Best] 消息存储初始化完成: {}, role={}", storePath, isSlave() ? "SLAVE" : "MASTER");
     }
 
     /**
      * 存储消息
      *
+     * 按 Topic 的持久化级别等待刷盘或从节点确认后返回
+     *
+     * @param message 消息
+     * @return 写入结果
+     */
+    public PutMessageResult putMessage(Level12Message message) {
+        return asyncPutMessage(message).join();
+    }
+
+    /**
+     * 存储内部的再投递：定时消息到期、事务提交与 op 记录、消费重试、死信
+     *
+     * 这些消息已经向客户端确认过，写入繁忙时不能快速失败丢弃：不做 OS_PAGE_CACHE_BUSY 检查，一直等到拿到写入锁。
+     * 追加到 CommitLog 后立即返回 PUT_OK，不按目标 Topic 的持久化级别等待刷盘 / 复制（由后台刷盘和复制跟上），
+     * 因此非 PUT_OK 一定表示没有写入（从节点、消息非法等），调用方可以放心重试
+     *
+     * @param message 消息
+     * @return 写入结果
+     */
+    public PutMessageResult putMessageInternal(Level12Message message) {
+        return asyncPutMessage(message, false).join();
+    }
+
+    /**
+     * 异步存储消息：写入 CommitLog 后立即返回 Future，
+     * SYNC_FLUSH 的 Topic 刷盘（或超时）后完成，SYNC_REPLICA 的 Topic 从节点确认（或超时）后完成
+     *
+     * 带幂等键的消息先查重，重复时不再写入，返回 DUPLICATE_MESSAGE 和原消息的位置
+     *
      * @param message 消息
+     * @return 写入结果
+     */
+    public CompletableFuture<PutMessageResult> asyncPutMessage(Level12Message message) {
+        return asyncPutMessage(message, true);
+    }
+
+    /**
+     * @param clientPut 客户端写入：繁忙时快速失败，等待写入锁不超过 putLockWaitMs；内部再投递一直等待
+     */
+    private CompletableFuture<PutMessageResult> asyncPutMessage(Level12Message message, boolean clientPut) {
+        if (isSlave()) {
+            log.warn("⚠️ [Best] 从节点不接受写入: topic={}", message.getTopic());
+            return CompletableFuture.completedFuture(
+                new PutMessageResult(PutMessageResult.PutMessageStatus.SERVICE_NOT_AVAILABLE, null));
+        }
+        if (clientPut && isWriteBusy()) {
+            return CompletableFuture.completedFuture(rejectBusy(null));
+        }
+
+        long lockWaitMs = clientPut ? storeConfig.getPutLockWaitMs() : 0;
+        PutMessageResult result = message.getIdempotencyKey() == null
+            ? appendMessage(message, lockWaitMs)
+            : idempotencyKeyTable.putIfAbsent(Collections.singletonList(message),
+                messages -> appendMessage(message, lockWaitMs));
+        if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        if (!clientPut) {
+            // 内部再投递不等待刷盘 / 复制：记录已经在 CommitLog 中，Reput 会分发它，
+            // 等待超时返回非 PUT_OK 会让调用方当作没写入而重复写入
+            if (haService != null) {
+                haService.wakeup();
+            }
+            return CompletableFuture.completedFuture(result);
+        }
+
+        // 按持久化级别等待刷盘 / 复制
+        return handleDurability(message.getTopic(), result.getAppendResult());
+    }
+
+    /**
+     * 写入 CommitLog 并更新内存索引
+     *
+     * @param lockWaitMs 获取写入锁的最长等待时间（毫秒），<= 0 表示一直等待
      */
-    public void putMessage(Level12Message message) {
+    private PutMessageResult appendMessage(Level12Message message, long lockWaitMs) {
         long startTime = System.currentTimeMillis();
 
         try {
             // 1. 写入 CommitLog（顺序写，所有 Topic 共享）
-            CommitLog.AppendMessageResult result = commitLog.appendMessage(message);
+            CommitLog.AppendMessageResult result = commitLog.appendMessage(message, lockWaitMs);
 
+            if (result.getStatus() == CommitLog.AppendMessageStatus.LOCK_WAIT_TIMEOUT) {
+                return rejectBusy(result);
+            }
             if (!result.isOk()) {
                 log.error("❌ [Best] 写入 CommitLog 失败: {}", result.getStatus());
-                return;
+                return new PutMessageResult(toPutMessageStatus(result), result);
             }
 
             // 2. 更新内存索引（用于快速查询）
-            messageIndex.put(message.getMessageId(), new MessageLocation(
-                message.getTopic(),
-                message.getQueueId(),
-                result.getPhysicalOffset()
-            ));
+            // 重试 / 死信副本沿用原消息的 MessageId（消费者按它去重），不覆盖原消息的位置
+            if (!Level12Constants.isRetryOrDLQTopic(message.getTopic())) {
+                messageIndex.put(message.getMessageId(), new MessageLocation(
+                    message.getTopic(),
+                    message.getQueueId(),
+                    result.getPhysicalOffset(),
+                    0
+                ));
+            }
 
             // 3. 异步构建 ConsumeQueue 索引（由 ReputMessageService 处理）
             // 注意：这里不需要同步构建，异步服务会自动处理
@@ -104,15 +378,200 @@ public class Level12MessageStoreBest {
             log.debug("📝 [Best] 消息已存储 - Topic: {}, MessageId: {}, Offset: {}, 耗时: {} ms",
                 message.getTopic(), message.getMessageId(), result.getPhysicalOffset(), costTime);
 
+            return new PutMessageResult(PutMessageResult.PutMessageStatus.PUT_OK, result);
+
         } catch (Exception e) {
             log.error("❌ [Best] 存储消息失败", e);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 批量存储消息：整批作为一个批量帧写入 CommitLog（超过阈值时整体压缩）
+     *
+     * 限制与 Broker 的批量消息一致：同一个 Topic-Queue，不支持定时、事务消息；
+     * 开启了 Key 压缩的 Topic 按单条记录整理，也不支持批量写入
+     *
+     * @param messages 消息列表（最多 MessageCodec.MAX_BATCH_MESSAGES 条）
+     * @return 写入结果
+     * @throws IllegalArgumentException 不满足批量写入条件
+     */
+    public PutMessageResult putMessages(List<Level12Message> messages) {
+        checkBatch(messages);
+
+        if (isSlave()) {
+            log.warn("⚠️ [Best] 从节点不接受写入: topic={}", messages.get(0).getTopic());
+            return new PutMessageResult(PutMessageResult.PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        }
+        if (isWriteBusy()) {
+            return rejectBusy(null);
+        }
+
+        // 带幂等键的消息先去掉重复的，剩下的作为一个批量帧写入
+        boolean hasIdempotencyKey = messages.stream().anyMatch(message -> message.getIdempotencyKey() != null);
+        PutMessageResult result = hasIdempotencyKey
+            ? idempotencyKeyTable.putIfAbsent(messages, this::appendMessages)
+            : appendMessages(messages);
+        if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+            return result;
+        }
+
+        return handleDurability(messages.get(0).getTopic(), result.getAppendResult()).join();
+    }
+
+    /**
+     * 批量帧写入 CommitLog 并更新内存索引
+     */
+    private PutMessageResult appendMessages(List<Level12Message> messages) {
+        long startTime = System.currentTimeMillis();
+
+        CommitLog.AppendMessageResult result = commitLog.appendMessages(messages, storeConfig.getPutLockWaitMs());
+        if (result.getStatus() == CommitLog.AppendMessageStatus.LOCK_WAIT_TIMEOUT) {
+            return rejectBusy(result);
+        }
+        if (!result.isOk()) {
+            log.error("❌ [Best] 批量写入 CommitLog 失败: {}", result.getStatus());
+            return new PutMessageResult(toPutMessageStatus(result), result);
+        }
+
+        for (Level12Message message : messages) {
+            messageIndex.put(message.getMessageId(), new MessageLocation(
+                message.getTopic(),
+                message.getQueueId(),
+                result.getPhysicalOffset(),
+                message.getBatchIndex()
+            ));
+        }
+
+        stats.getFileHandleCount().set(1);
+        stats.getDiskUsage().addAndGet(result.getWroteBytes());
+
+        long costTime = System.currentTimeMillis() - startTime;
+        stats.recordPut(costTime);
+
+        log.debug("📝 [Best] 批量消息已存储 - Topic: {}, count: {}, Offset: {}, size: {}, 耗时: {} ms",
+            messages.get(0).getTopic(), messages.size(), result.getPhysicalOffset(), result.getWroteBytes(), costTime);
+
+        return new PutMessageResult(PutMessageResult.PutMessageStatus.PUT_OK, result);
+    }
+
+    /**
+     * 通知复制服务有新数据，再按 Topic 的持久化级别登记到对应的等待队列，等到这条记录的结尾：
+     * - ASYNC：不等待，由后台定时刷盘
+     * - SYNC_FLUSH：等待刷盘（组提交）
+     * - SYNC_REPLICA：等待从节点确认；未开启主从复制时退化为等待刷盘
+     *
+     * 不同级别的写入各自等待，ASYNC 写入不会排在同步刷盘后面
+     */
+    private CompletableFuture<PutMessageResult> handleDurability(String topic, CommitLog.AppendMessageResult result) {
+        if (haService != null) {
+            haService.wakeup();
+        }
+
+        long endOffset = result.getPhysicalOffset() + result.getWroteBytes();
+        CompletableFuture<PutMessageResult.PutMessageStatus> waiting;
+        switch (storeConfig.getDurability(topic)) {
+            case SYNC_FLUSH:
+                waiting = groupCommitService.waitForFlush(endOffset);
+                break;
+            case SYNC_REPLICA:
+                waiting = haService != null ? haService.waitForReplica(endOffset) : groupCommitService.waitForFlush(endOffset);
+                break;
+            default:
+                return CompletableFuture.completedFuture(new PutMessageResult(PutMessageResult.PutMessageStatus.PUT_OK, result));
+        }
+
+        return waiting.thenApply(status -> {
+            if (status != PutMessageResult.PutMessageStatus.PUT_OK) {
+                log.warn("⚠️ [Best] 持久化等待未完成: topic={}, offset={}, status={}", topic, result.getPhysicalOffset(), status);
+            }
+            return new PutMessageResult(status, result);
+        });
+    }
+
+    private PutMessageResult.PutMessageStatus toPutMessageStatus(CommitLog.AppendMessageResult result) {
+        return result.getStatus() == CommitLog.AppendMessageStatus.MESSAGE_SIZE_EXCEEDED
+            || result.getStatus() == CommitLog.AppendMessageStatus.PROPERTIES_SIZE_EXCEEDED
+            ? PutMessageResult.PutMessageStatus.MESSAGE_ILLEGAL
+            : PutMessageResult.PutMessageStatus.UNKNOWN_ERROR;
+    }
+
+    /**
+     * 写入是否繁忙：当前写入持有写入锁过久（缺页、脏页回写阻塞），或者等待写入锁的线程过多
+     *
+     * 繁忙时新的写入直接返回 OS_PAGE_CACHE_BUSY，调用方可以据此降级，而不是排在后面一起超时
+     */
+    public boolean isWriteBusy() {
+        long busyTimeoutMs = storeConfig.getOsPageCacheBusyTimeoutMs();
+        if (busyTimeoutMs > 0 && commitLog.getLockHeldMs() > busyTimeoutMs) {
+            return true;
+        }
+        int maxQueueDepth = storeConfig.getMaxPutQueueDepth();
+        return maxQueueDepth > 0 && commitLog.getPutQueueDepth() >= maxQueueDepth;
+    }
+
+    private PutMessageResult rejectBusy(CommitLog.AppendMessageResult result) {
+        long rejected = stats.getPutBusyRejectCount().incrementAndGet();
+        if (rejected % 1000 == 1) {
+            log.warn("⚠️ [Best] 写入繁忙，拒绝写入: lockHeld={} ms, queueDepth={}, rejected={}",
+                commitLog.getLockHeldMs(), commitLog.getPutQueueDepth(), rejected);
+        }
+        return new PutMessageResult(PutMessageResult.PutMessageStatus.OS_PAGE_CACHE_BUSY, result);
+    }
+
+    /**
+     * 是否是从节点（配置了主节点地址）
+     */
+    public boolean isSlave() {
+        return storeConfig.getHaMasterAddress() != null;
+    }
+
+    private void checkBatch(List<Level12Message> messages) {
+        if (messages.isEmpty() || messages.size() > MessageCodec.MAX_BATCH_MESSAGES) {
+            throw new IllegalArgumentException("批量消息条数必须在 1 ~ " + MessageCodec.MAX_BATCH_MESSAGES + " 之间: " + messages.size());
+        }
+
+        Level12Message first = messages.get(0);
+        if (storeConfig.getCompactedTopics().contains(first.getTopic())) {
+            throw new IllegalArgumentException("开启 Key 压缩的 Topic 不支持批量写入: " + first.getTopic());
+        }
+        for (Level12Message message : messages) {
+            if (!first.getTopic().equals(message.getTopic()) || first.getQueueId() != message.getQueueId()) {
+                throw new IllegalArgumentException("批量消息必须属于同一个 Topic-Queue: " + message.getMessageId());
+            }
+            if (message.getDeliverTime() > 0 || message.getTransactionId() != null) {
+                throw new IllegalArgumentException("批量消息不支持定时、事务消息: " + message.getMessageId());
+            }
+        }
+    }
+
+    /**
+     * 按索引读取消息，同一个批量帧只解码一次
+     *
+     * 同一个批量帧的索引在队列里是连续的，只缓存上一个帧即可
+     *
+     * @param commitLogOffset 物理偏移量
+     * @param batchIndex 帧内序号
+     * @param frameCache 上一个已解码的帧
+     */
+    private Level12Message readMessage(long commitLogOffset, int batchIndex, FrameCache frameCache) {
+        if (frameCache.commitLogOffset != commitLogOffset) {
+            frameCache.frame = commitLog.getMessages(commitLogOffset);
+            frameCache.commitLogOffset = commitLogOffset;
+        }
+        List<Level12Message> frame = frameCache.frame;
+        if (frame == null || batchIndex >= frame.size()) {
+            return null;
+        }
+        return frame.get(batchIndex);
+    }
+
     /**
      * 消费消息（从 ConsumeQueue 读取）
      *
+     * 读不出来的记录（隔离、已删除）跳过，不返回也不阻塞后面的消息，与 pullMulti 的处理一致；
+     * 返回的消息带有队列索引，消费者按最后一条消息的索引 + 1 继续拉取
+     *
      * @param topic Topic
      * @param queueId Queue ID
      * @param offset 逻辑偏移量（ConsumeQueue 中的索引位置）
@@ -132,14 +591,20 @@ public class Level12MessageStoreBest {
                 return messages;
             }
 
-            // 2. 从 ConsumeQueue 读取索引
-            List<ConsumeQueue.CQUnit> cqUnits = consumeQueue.getIndexList(offset, maxMsgNums);
+            // 2. 从 ConsumeQueue 读取索引（线程内复用的结构数组，不为每条索引创建对象）
+            CQScanBuffer cqUnits = CQScanBuffer.threadLocal();
+            consumeQueue.scan(offset, maxMsgNums, 0, cqUnits);
 
-            // 3. 根据索引从 CommitLog 读取消息体
-            for (ConsumeQueue.CQUnit cqUnit : cqUnits) {
-                Level12Message message = commitLog.getMessage(cqUnit.getCommitLogOffset());
+            // 3. 根据索引从 CommitLog 读取消息体（带上队列索引，消费者据此提交进度）
+            FrameCache frameCache = new FrameCache();
+            for (int i = 0; i < cqUnits.getCount(); i++) {
+                Level12Message message = readMessage(cqUnits.getCommitLogOffset(i), cqUnits.getBatchIndex(i), frameCache);
                 if (message != null) {
+                    message.setQueueOffset(cqUnits.getQueueOffset(i));
                     messages.add(message);
+                } else {
+                    log.warn("⚠️ [Best] 读取消息失败，跳过该记录: topic={}, queueId={}, queueOffset={}",
+                        topic, queueId, cqUnits.getQueueOffset(i));
                 }
             }
 
@@ -157,6 +622,19 @@ public class Level12MessageStoreBest {
         }
     }
 
+    /**
+     * 一次调用拉取多个队列：按权重轮流分配额度，按物理偏移量顺序读取 CommitLog
+     *
+     * @param requests 每个队列的起始索引和权重
+     * @param totalMax 所有队列合计最多返回的消息数
+     * @param maxBytes 所有队列合计最多读取的字节数，<= 0 表示不限制
+     * @return 与 requests 一一对应的结果
+     */
+    public MultiQueuePullService.PullMultiResult pullMulti(List<MultiQueuePullService.QueueRequest> requests,
+                                                           int totalMax, int maxBytes) {
+        return multiQueuePullService.pullMulti(requests, totalMax, maxBytes);
+    }
+
     /**
      * 按 MessageId 查询消息
      *
@@ -175,7 +653,7 @@ public class Level12MessageStoreBest {
             }
 
             // 从 CommitLog 读取消息
-            Level12Message message = commitLog.getMessage(location.getPhysicalOffset());
+            Level12Message message = commitLog.getMessage(location.getPhysicalOffset(), location.getBatchIndex());
 
             long costTime = System.currentTimeMillis() - startTime;
             stats.recordQuery(costTime);
@@ -215,11 +693,13 @@ public class Level12MessageStoreBest {
 
             // 2. 按 Tag 过滤索引
             long tagsCode = tag != null ? tag.hashCode() : 0;
-            List<ConsumeQueue.CQUnit> cqUnits = consumeQueue.filterByTag(offset, maxMsgNums, tagsCode);
+            CQScanBuffer cqUnits = CQScanBuffer.threadLocal();
+            consumeQueue.scan(offset, maxMsgNums, tagsCode, cqUnits);
 
             // 3. 从 CommitLog 读取消息体
-            for (ConsumeQueue.CQUnit cqUnit : cqUnits) {
-                Level12Message message = commitLog.getMessage(cqUnit.getCommitLogOffset());
+            FrameCache frameCache = new FrameCache();
+            for (int i = 0; i < cqUnits.getCount(); i++) {
+                Level12Message message = readMessage(cqUnits.getCommitLogOffset(i), cqUnits.getBatchIndex(i), frameCache);
                 if (message != null && (tag == null || tag.equals(message.getTag()))) {
                     messages.add(message);
                 }
@@ -239,6 +719,448 @@ public class Level12MessageStoreBest {
         }
     }
 
+    /**
+     * 注册消费组的 SQL92 过滤表达式
+     *
+     * 注册之后 Reput 的消息会预计算位图；注册之前已经分发的消息在拉取时现场求值
+     *
+     * @param group 消费组
+     * @param topic Topic
+     * @param expression SQL92 表达式，例如 region = 'EU' AND amount > 100
+     * @throws IllegalArgumentException 表达式不合法
+     * @throws IllegalStateException Topic 的 SQL 消费组已满
+     */
+    public void subscribeSql(String group, String topic, String expression) {
+        consumerFilterManager.register(group, topic, expression);
+    }
+
+    /**
+     * 注销消费组的 SQL92 过滤表达式
+     *
+     * @return 是否存在
+     */
+    public boolean unsubscribeSql(String group, String topic) {
+        return consumerFilterManager.unregister(group, topic);
+    }
+
+    /**
+     * 提交消费进度
+     *
+     * @param group 消费组
+     * @param topic Topic
+     * @param queueId Queue ID
+     * @param offset 下一条要消费的队列索引
+     */
+    public void commitConsumerOffset(String group, String topic, int queueId, long offset) {
+        consumerOffsetManager.commitOffset(group, topic, queueId, offset);
+    }
+
+    /**
+     * 查询消费进度
+     *
+     * @return 已提交的进度，没有提交过返回 -1
+     */
+    public long queryConsumerOffset(String group, String topic, int queueId) {
+        return consumerOffsetManager.queryOffset(group, topic, queueId);
+    }
+
+    /**
+     * 采集分发堆积、队列水位和消费堆积指标（只读内存水位）
+     */
+    public StoreLagMetrics.LagSnapshot collectLagMetrics() {
+        return storeLagMetrics.collect();
+    }
+
+    /**
+     * 按消费组的 SQL92 表达式拉取消息
+     *
+     * 位图可用时不匹配的消息直接跳过，不读取 CommitLog；位图不可用时读取消息现场求值。
+     * 单次最多扫描 filterMaxScanUnits 条索引，匹配率低时返回的消息可能少于 maxMsgNums，
+     * 消费者从 nextBeginOffset 继续拉取即可
+     *
+     * @param group 消费组（没有注册表达式时不过滤）
+     * @param topic Topic
+     * @param queueId Queue ID
+     * @param offset 逻辑偏移量
+     * @param maxMsgNums 最大消息数量
+     * @return 拉取结果
+     */
+    public GetMessageResult getMessageByFilter(String group, String topic, int queueId, long offset, int maxMsgNums) {
+        long startTime = System.currentTimeMillis();
+
+        GetMessageResult result = new GetMessageResult();
+        result.setNextBeginOffset(offset);
+
+        ConsumeQueue consumeQueue = findConsumeQueue(topic, queueId);
+        ConsumerFilterManager.ConsumerFilterData filterData = consumerFilterManager.get(topic, group);
+
+        FrameCache frameCache = new FrameCache();
+        CQScanBuffer cqUnits = CQScanBuffer.threadLocal();
+        long index = Math.max(offset, consumeQueue.getMinIndex());
+        int maxScanUnits = storeConfig.getFilterMaxScanUnits();
+        while (result.getMessages().size() < maxMsgNums && result.getScannedCount() < maxScanUnits) {
+            int batch = Math.min(maxMsgNums, maxScanUnits - result.getScannedCount());
+            if (consumeQueue.scan(index, batch, 0, cqUnits) == 0) {
+                break;
+            }
+
+            for (int i = 0; i < cqUnits.getCount(); i++) {
+                long currentIndex = index++;
+                long commitLogOffset = cqUnits.getCommitLogOffset(i);
+                int batchIndex = cqUnits.getBatchIndex(i);
+                result.setScannedCount(result.getScannedCount() + 1);
+
+                Level12Message message;
+                if (filterData == null) {
+                    message = readMessage(commitLogOffset, batchIndex, frameCache);
+                } else {
+                    ConsumeQueueExt.Unit extUnit = consumeQueue.getExtUnit(currentIndex);
+                    if (extUnit != null && extUnit.isComputed(filterData.getBornVersion())) {
+                        if (!extUnit.isMatched(filterData.getBitIndex())) {
+                            result.setBitMapFilteredCount(result.getBitMapFilteredCount() + 1);
+                            continue;
+                        }
+                        message = readMessage(commitLogOffset, batchIndex, frameCache);
+                    } else {
+                        message = readMessage(commitLogOffset, batchIndex, frameCache);
+                        result.setEvaluatedCount(result.getEvaluatedCount() + 1);
+                        if (message != null && !filterData.getCompiled().match(message)) {
+                            continue;
+                        }
+                    }
+                }
+
+                if (message != null) {
+                    message.setQueueOffset(currentIndex);
+                    result.getMessages().add(message);
+                    if (result.getMessages().size() >= maxMsgNums) {
+                        break;
+                    }
+                }
+            }
+        }
+        result.setNextBeginOffset(index);
+
+        long costTime = System.currentTimeMillis() - startTime;
+        stats.recordGet(costTime);
+
+        log.debug("📖 [Best] SQL 过滤拉取: group={}, topic={}, queueId={}, offset={}, scanned={}, matched={}, 耗时: {} ms",
+            group, topic, queueId, offset, result.getScannedCount(), result.getMessages().size(), costTime);
+
+        return result;
+    }
+
+    /**
+     * 写入事务半消息，提交前对消费者不可见
+     *
+     * @param message 消息（topic、queueId 为真实值）
+     * @return 半消息，physicalOffset 用于 commitTransaction / rollbackTransaction
+     * @throws IllegalStateException 半消息写入失败
+     */
+    public Level12Message prepareMessage(Level12Message message) {
+        return transactionalMessageService.prepareMessage(message);
+    }
+
+    /**
+     * 提交事务
+     *
+     * @param halfOffset 半消息的物理偏移量
+     * @return 半消息是否存在
+     */
+    public boolean commitTransaction(long halfOffset) {
+        return transactionalMessageService.endTransaction(halfOffset, LocalTransactionChecker.Resolution.COMMIT);
+    }
+
+    /**
+     * 回滚事务
+     *
+     * @param halfOffset 半消息的物理偏移量
+     * @return 半消息是否存在
+     */
+    public boolean rollbackTransaction(long halfOffset) {
+        return transactionalMessageService.endTransaction(halfOffset, LocalTransactionChecker.Resolution.ROLLBACK);
+    }
+
+    /**
+     * 注册本地事务回查
+     */
+    public void setTransactionChecker(LocalTransactionChecker checker) {
+        transactionalMessageService.setChecker(checker);
+    }
+
+    /**
+     * 消费失败，把消息回退到 %RETRY%{group}（延迟投递），超过最大重试次数进入 %DLQ%{group}
+     *
+     * 异步执行，不阻塞消费线程，原队列的消费进度照常推进
+     *
+     * @param group 消费组
+     * @param message 消费失败的消息
+     * @return true 表示进入重试队列，false 表示进入死信队列；写入失败时异常完成
+     */
+    public CompletableFuture<Boolean> sendMessageBack(String group, Level12Message message) {
+        return sendMessageBackService.sendMessageBack(group, message);
+    }
+
+    /**
+     * 写入删除标记（body 为 null）
+     *
+     * 对开启了压缩的 Topic，压缩后该 Key 只剩这条删除标记，保留期过后被彻底清除
+     *
+     * @param topic Topic
+     * @param queueId Queue ID
+     * @param key 消息 Key
+     * @param messageId 消息 ID
+     * @return 写入结果
+     */
+    public PutMessageResult deleteKey(String topic, int queueId, String key, String messageId) {
+        Level12Message tombstone = new Level12Message();
+        tombstone.setMessageId(messageId);
+        tombstone.setTopic(topic);
+        tombstone.setQueueId(queueId);
+        tombstone.setKey(key);
+        tombstone.setCreateTime(System.currentTimeMillis());
+        return putMessage(tombstone);
+    }
+
+    /**
+     * 获取压缩快照
+     *
+     * 新消费者先用 readCompacted 分页读完快照，再从 snapshot.resumeQueueOffset 开始调用 getMessage 正常消费
+     *
+     * @param topic Topic
+     * @param queueId Queue ID
+     * @return 快照，Topic 未开启压缩或还没有压缩过返回 null
+     */
+    public CompactedQueue.Snapshot getCompactedSnapshot(String topic, int queueId) {
+        if (!storeConfig.getCompactedTopics().contains(topic)) {
+            return null;
+        }
+        return compactionService.findCompactedQueue(topic, queueId).getSnapshot();
+    }
+
+    /**
+     * 分页读取压缩快照
+     *
+     * @param snapshot 快照
+     * @param index 快照内的位置（从 0 开始）
+     * @param maxMsgNums 最大消息数量
+     * @return 消息列表
+     */
+    public List<Level12Message> readCompacted(CompactedQueue.Snapshot snapshot, long index, int maxMsgNums) {
+        long startTime = System.currentTimeMillis();
+
+        List<Level12Message> messages = compactionService
+            .findCompactedQueue(snapshot.getTopic(), snapshot.getQueueId())
+            .read(snapshot, index, maxMsgNums);
+
+        long costTime = System.currentTimeMillis() - startTime;
+        stats.recordGet(costTime);
+
+        return messages;
+    }
+
+    /**
+     * 开启 Topic 的 Key 压缩
+     */
+    public void enableCompaction(String topic) {
+        storeConfig.getCompactedTopics().add(topic);
+        log.info("🗜️ [Best] 开启 Key 压缩: topic={}", topic);
+    }
+
+    /**
+     * 立即执行一次压缩
+     *
+     * @return 生成新一代压缩结果的 Queue 数量
+     */
+    public int compactNow() {
+        return compactionService.compactAll();
+    }
+
+    /**
+     * 立即归档封存时间超过 minAgeMs 的 CommitLog 文件
+     *
+     * @param minAgeMs 最小封存时长（毫秒）
+     * @return 归档的文件数，未开启分层存储返回 0
+     */
+    public int archiveColdSegments(long minAgeMs) throws IOException {
+        return coldTierStore == null ? 0 : coldTierStore.archive(minAgeMs);
+    }
+
+    /**
+     * 导出 Topic 的 ConsumeQueue 区间到 {target}.data / {target}.index
+     *
+     * @param topic Topic 名称
+     * @param queueId Queue ID，< 0 表示全部 Queue
+     * @param fromIndex 起始索引（包含）
+     * @param toIndex 结束索引（不包含），< 0 表示到队列末尾
+     * @param target 导出文件路径（不含扩展名）
+     * @return 导出结果
+     */
+    public TopicExportService.ExportResult exportTopic(String topic, int queueId, long fromIndex, long toIndex,
+                                                       String target) throws IOException {
+        return topicExportService.export(topic, queueId, fromIndex, toIndex, target);
+    }
+
+    /**
+     * 把 Queue 的 [fromOffset, toOffset) 区间流式写到输出流，内存占用与区间大小无关
+     *
+     * @param topic Topic 名称
+     * @param queueId Queue ID
+     * @param fromOffset 起始索引（包含）
+     * @param toOffset 结束索引（不包含），< 0 表示到当前队列末尾
+     * @param maxCount 最多输出的消息数，<= 0 表示不限制
+     * @param format 输出格式
+     * @param rateMBps 输出速率上限（MB/s），<= 0 表示不限速
+     * @param out 输出流（不会被关闭）
+     * @return 输出结果，nextOffset 为下次续传的起始索引
+     */
+    public QueueStreamService.StreamResult streamQueue(String topic, int queueId, long fromOffset, long toOffset,
+                                                       long maxCount, QueueStreamService.Format format, int rateMBps,
+                                                       OutputStream out) throws IOException {
+        return queueStreamService.stream(topic, queueId, fromOffset, toOffset, maxCount, format, rateMBps, out);
+    }
+
+    /**
+     * 导入 exportTopic 导出的文件，消息由 Reput 分发到原来的 Topic-Queue
+     *
+     * @param source 导出文件路径（不含扩展名）
+     * @return 导入结果
+     * @throws IllegalStateException 从节点不接受写入
+     */
+    public TopicExportService.ImportResult importTopic(String source) throws IOException {
+        if (isSlave()) {
+            throw new IllegalStateException("从节点不接受写入");
+        }
+
+        TopicExportService.ImportResult result = topicExportService.importSegment(source);
+        if (haService != null) {
+            haService.wakeup();
+        }
+        return result;
+    }
+
+    /**
+     * 获取已有的 ConsumeQueue，不存在时返回 null（不创建）
+     */
+    public ConsumeQueue getConsumeQueue(String topic, int queueId) {
+        consumeQueueTableLock.readLock().lock();
+        try {
+            Map<Integer, ConsumeQueue> queueMap = consumeQueueTable.get(topic);
+            return queueMap == null ? null : queueMap.get(queueId);
+        } finally {
+            consumeQueueTableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取 Topic 下已有的 ConsumeQueue
+     */
+    public Collection<ConsumeQueue> getConsumeQueues(String topic) {
+        consumeQueueTableLock.readLock().lock();
+        try {
+            Map<Integer, ConsumeQueue> queueMap = consumeQueueTable.get(topic);
+            return queueMap == null ? Collections.emptyList() : queueMap.values();
+        } finally {
+            consumeQueueTableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 加载已有的 ConsumeQueue：consumequeue/{topic}/{queueId}
+     */
+    private void loadConsumeQueues() {
+        File[] topicDirs = new File(storePath, "consumequeue").listFiles(File::isDirectory);
+        if (topicDirs == null) {
+            return;
+        }
+
+        for (File topicDir : topicDirs) {
+            File[] queueDirs = topicDir.listFiles(File::isDirectory);
+            if (queueDirs == null) {
+                continue;
+            }
+            for (File queueDir : queueDirs) {
+                int queueId;
+                try {
+                    queueId = Integer.parseInt(queueDir.getName());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                long maxIndex = findConsumeQueue(topicDir.getName(), queueId).recover();
+                log.info("📂 [Best] 加载 ConsumeQueue: topic={}, queueId={}, maxIndex={}",
+                    topicDir.getName(), queueId, maxIndex);
+            }
+        }
+    }
+
+    /**
+     * 丢弃全部 ConsumeQueue，从 CommitLog 并行重建（例如索引文件丢失、分发规则变化后）
+     *
+     * 重建期间 Reput 暂停，查找 ConsumeQueue（拉取、定时、事务等）等待重建完成，不会在删除过程中创建新的队列；
+     * 重建后 Reput 从重建结束的位置继续分发期间写入的消息。
+     *
+     * 重建只能读取热数据，队列偏移量从 CommitLog 起点重新编号：CommitLog 头部已经归档到冷存储（起点不为 0）时，
+     * 重建会丢掉已归档的消息并让所有消费进度、压缩 checkpoint 失效，直接拒绝
+     *
+     * @return 重建结果
+     * @throws IllegalStateException CommitLog 头部已归档
+     */
+    public synchronized ConsumeQueueRebuildService.RebuildResult rebuildConsumeQueues() throws InterruptedException {
+        long minOffset = commitLog.getMinOffset();
+        if (minOffset > 0) {
+            throw new IllegalStateException("CommitLog 头部已归档（minOffset=" + minOffset
+                + "），重建会丢失已归档的消息并改变队列偏移量");
+        }
+
+        reputMessageService.shutdown();
+
+        consumeQueueTableLock.writeLock().lock();
+        try {
+            for (Map<Integer, ConsumeQueue> queueMap : consumeQueueTable.values()) {
+                for (ConsumeQueue consumeQueue : queueMap.values()) {
+                    consumeQueue.shutdown();
+                }
+            }
+            consumeQueueTable.clear();
+            deleteDirectory(new File(storePath, "consumequeue"));
+            deleteDirectory(new File(storePath, "consumequeue_ext"));
+
+            // 重建在当前线程合并索引，通过 findConsumeQueue 创建队列（写锁可重入读锁）
+            ConsumeQueueRebuildService.RebuildResult result =
+                consumeQueueRebuildService.rebuild(minOffset, commitLog.getMaxOffset());
+            reputMessageService.start(result.getNextOffset());
+            return result;
+        } finally {
+            consumeQueueTableLock.writeLock().unlock();
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteDirectory(child);
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            log.warn("⚠️ 删除失败: {}", dir);
+        }
+    }
+
+    /**
+     * 计算重启后 Reput 的起始位置：ConsumeQueue 和时间轮中已分发消息的最大结束位置
+     */
+    private long computeReputFromOffset() {
+        long reputFromOffset = commitLog.getMinOffset();
+        for (Map<Integer, ConsumeQueue> queueMap : consumeQueueTable.values()) {
+            for (ConsumeQueue consumeQueue : queueMap.values()) {
+                reputFromOffset = Math.max(reputFromOffset, consumeQueue.getMaxPhysicalOffset());
+            }
+        }
+        reputFromOffset = Math.max(reputFromOffset, timerMessageStore.getMaxDispatchedPhysicalOffset());
+        return Math.min(reputFromOffset, commitLog.getMaxOffset());
+    }
+
     /**
      * 查找或创建 ConsumeQueue
      *
@@ -247,15 +1169,20 @@ public class Level12MessageStoreBest {
      * @return ConsumeQueue
      */
     public ConsumeQueue findConsumeQueue(String topic, int queueId) {
-        Map<Integer, ConsumeQueue> queueMap = consumeQueueTable.computeIfAbsent(
-            topic, k -> new ConcurrentHashMap<>()
-        );
-
-        return queueMap.computeIfAbsent(queueId, qid -> {
-            ConsumeQueue cq = new ConsumeQueue(storePath, topic, qid);
-            log.info("📂 [Best] 创建 ConsumeQueue: topic={}, queueId={}", topic, qid);
-            return cq;
-        });
+        consumeQueueTableLock.readLock().lock();
+        try {
+            Map<Integer, ConsumeQueue> queueMap = consumeQueueTable.computeIfAbsent(
+                topic, k -> new ConcurrentHashMap<>()
+            );
+
+            return queueMap.computeIfAbsent(queueId, qid -> {
+                ConsumeQueue cq = new ConsumeQueue(storePath, topic, qid);
+                log.info("📂 [Best] 创建 ConsumeQueue: topic={}, queueId={}", topic, qid);
+                return cq;
+            });
+        } finally {
+            consumeQueueTableLock.readLock().unlock();
+        }
     }
 
     /**
@@ -295,11 +1222,44 @@ public class Level12MessageStoreBest {
      */
     public void shutdown() {
         try {
+            // 停止后台压缩
+            compactionService.shutdown();
+
+            // 停止事务回查
+            transactionalMessageService.shutdown();
+
+            // 停止消费重试（执行完已提交的回退请求）
+            sendMessageBackService.shutdown();
+
             // 停止异步索引构建服务
             reputMessageService.shutdown();
 
-            // 刷盘
+            // 停止时间轮（之后到期写入 CommitLog 的消息在下次启动时分发）
+            timerMessageStore.shutdown();
+
+            // 停止冷存储归档
+            if (coldTierStore != null) {
+                coldTierStore.shutdown();
+            }
+
+            // 停止 CRC 校验
+            crcScrubService.shutdown();
+
+            // 持久化消费进度
+            consumerOffsetManager.shutdown();
+
+            // 停止主从复制（等待中的同步复制请求返回 SLAVE_NOT_AVAILABLE）
+            if (haService != null) {
+                haService.shutdown();
+            }
+            if (haClient != null) {
+                haClient.shutdown();
+            }
+
+            // 刷盘（等待中的同步刷盘请求随最后一次刷盘完成）
+            groupCommitService.shutdown();
             flush();
+            idempotencyKeyTable.shutdown();
 
             // 关闭 CommitLog
             commitLog.shutdown();
@@ -344,8 +1304,88 @@ public class Level12MessageStoreBest {
         return count;
     }
 
+    private static Level12StoreConfig commitLogConfig(int commitLogFileSize) {
+        Level12StoreConfig storeConfig = new Level12StoreConfig();
+        storeConfig.setCommitLogFileSize(commitLogFileSize);
+        return storeConfig;
+    }
+
+    // Getters
+
+    public String getStorePath() {
+        return storePath;
+    }
+
+    public Level12StoreConfig getStoreConfig() {
+        return storeConfig;
+    }
+
+    public CommitLog getCommitLog() {
+        return commitLog;
+    }
+
+    public ReputMessageService getReputMessageService() {
+        return reputMessageService;
+    }
+
+    public TimerMessageStore getTimerMessageStore() {
+        return timerMessageStore;
+    }
+
+    public TransactionalMessageService getTransactionalMessageService() {
+        return transactionalMessageService;
+    }
+
+    public SendMessageBackService getSendMessageBackService() {
+        return sendMessageBackService;
+    }
+
+    public ConsumerFilterManager getConsumerFilterManager() {
+        return consumerFilterManager;
+    }
+
+    public ConsumerOffsetManager getConsumerOffsetManager() {
+        return consumerOffsetManager;
+    }
+
+    public ColdTierStore getColdTierStore() {
+        return coldTierStore;
+    }
+
+    public GroupCommitService getGroupCommitService() {
+        return groupCommitService;
+    }
+
+    public HAService getHaService() {
+        return haService;
+    }
+
+    public HAClient getHaClient() {
+        return haClient;
+    }
+
+    public CrcScrubService getCrcScrubService() {
+        return crcScrubService;
+    }
+
+    public ConsumeQueueRebuildService getConsumeQueueRebuildService() {
+        return consumeQueueRebuildService;
+    }
+
+    public IdempotencyKeyTable getIdempotencyKeyTable() {
+        return idempotencyKeyTable;
+    }
+
     // ==================== 内部类 ====================
 
+    /**
+     * 一次读取内上一个已解码的 CommitLog 记录
+     */
+    private static class FrameCache {
+        private long commitLogOffset = -1;
+        private List<Level12Message> frame;
+    }
+
     /**
      * 消息位置信息
      */
@@ -353,11 +1393,13 @@ public class Level12MessageStoreBest {
         private final String topic;
         private final int queueId;
         private final long physicalOffset;
+        private final int batchIndex;
 
-        public MessageLocation(String topic, int queueId, long physicalOffset) {
+        public MessageLocation(String topic, int queueId, long physicalOffset, int batchIndex) {
             this.topic = topic;
             this.queueId = queueId;
             this.physicalOffset = physicalOffset;
+            this.batchIndex = batchIndex;
         }
 
         public String getTopic() {
@@ -371,5 +1413,9 @@ public class Level12MessageStoreBest {
         public long getPhysicalOffset() {
             return physicalOffset;
         }
+
+        public int getBatchIndex() {
+            return batchIndex;
+        }
     }
 }
@@ -47,6 +47,9 @@ public class Level12MessageStoreFixed {
 
     private final ReentrantReadWriteLock commitLogLock = new ReentrantReadWriteLock();
 
+    // CommitLog 文件通道（整个存储只打开一次）
+    private volatile FileChannel commitLogChannel;
+
     // 消息索引（内存中维护，用于快速查询）
     private final Map<String, Level12Message> messageIndex = new ConcurrentHashMap<>();
 
@@ -91,16 +94,22 @@ public class Level12MessageStoreFixed {
 
             commitLogLock.writeLock().lock();
             try {
-                // 设置存储时间和物理偏移量
+                // 设置存储时间和物理偏移量（追加到文件末尾）
+                long position = commitLogChannel.size();
                 message.setStoreTime(System.currentTimeMillis());
-                message.setPhysicalOffset(commitLogChannel.position());
+                message.setPhysicalOffset(position);
 
                 // 序列化消息
                 String json = objectMapper.writeValueAsString(message);
                 byte[] data = json.getBytes();
+                message.setLen(data.length);
 
-                // 写入消息内容
-                commitLogChannel.write(java.nio.ByteBuffer.wrap(data));
+                // 写入消息长度 + 消息内容（按位置写，不依赖通道的共享 position）
+                java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(4 + data.length);
+                buffer.putInt(data.length).put(data).flip();
+                while (buffer.hasRemaining()) {
+                    position += commitLogChannel.write(buffer, position);
+                }
                 commitLogChannel.force(false); // 强制刷盘
 
                 EXECUTOR_SERVICE.execute(() -> {
@@ -140,20 +149,32 @@ public class Level12MessageStoreFixed {
     }
 
     private FileChannel getOrCreateCommitLog() {
-        try {
-            Path filePath = Paths.get(storePath, "commitlog.log");
+        FileChannel channel = commitLogChannel;
+        if (channel != null) {
+            return channel;
+        }
 
-            FileChannel channel = FileChannel.open(filePath,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.WRITE);
+        synchronized (this) {
+            if (commitLogChannel != null) {
+                return commitLogChannel;
+            }
 
-            log.info("📂 [Fixed] 创建 commitlog 文件: {}", filePath);
-            return channel;
+            try {
+                Path filePath = Paths.get(storePath, "commitlog.log");
 
-        } catch (IOException e) {
-            log.error("❌ [Fixed] 创建 commitlog 文件失败: ", e);
-            throw new RuntimeException(e);
+                channel = FileChannel.open(filePath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+
+                log.info("📂 [Fixed] 创建 commitlog 文件: {}", filePath);
+                commitLogChannel = channel;
+                return channel;
+
+            } catch (IOException e) {
+                log.error("❌ [Fixed] 创建 commitlog 文件失败: ", e);
+                throw new RuntimeException(e);
+            }
         }
     }
 
@@ -193,19 +214,16 @@ public class Level12MessageStoreFixed {
 
             commitLogLock.readLock().lock();
             try {
-                // 定位到指定偏移量
-                channel.position(offset);
-
-                // 读取消息长度
+                // 读取消息长度（按位置读，多个读线程不会互相移动通道的 position）
                 Level12Message level12Message = messageIndex.get(messageKey);
                 java.nio.ByteBuffer lengthBuffer = java.nio.ByteBuffer.allocate(4);
-                channel.read(lengthBuffer);
+                channel.read(lengthBuffer, offset);
                 lengthBuffer.flip();
                 int length = level12Message.getLen();
 
                 // 读取消息内容
                 java.nio.ByteBuffer dataBuffer = java.nio.ByteBuffer.allocate(length);
-                channel.read(dataBuffer);
+                channel.read(dataBuffer, offset + 4);
                 dataBuffer.flip();
 
                 String json = new String(dataBuffer.array());
@@ -375,6 +393,10 @@ public class Level12MessageStoreFixed {
                 channel.close();
             }
             topicChannels.clear();
+            if (commitLogChannel != null) {
+                commitLogChannel.close();
+                commitLogChannel = null;
+            }
             log.info("✅ [Fixed] 存储已关闭");
         } catch (IOException e) {
             log.error("❌ [Fixed] 关闭存储失败", e);
@@ -0,0 +1,371 @@
+package one.demo.challenge.level12;
+
+import lombok.Data;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Level 12 存储配置（Best 版本）
+ */
+@Data
+public class Level12StoreConfig {
+
+    /**
+     * 单个 CommitLog 文件大小
+     */
+    private int commitLogFileSize = Level12Constants.COMMITLOG_FILE_SIZE;
+
+    /**
+     * CommitLog 文件的 I/O 方式：MMAP / CHANNEL / HYBRID（见 StoreIoBackend）
+     *
+     * ConsumeQueue 等索引文件每次只写 20 字节左右，固定使用 mmap
+     */
+    private StoreIoBackend.Type commitLogIoBackend = StoreIoBackend.Type.MMAP;
+
+    // ==================== Back-pressure ====================
+
+    /**
+     * 当前写入持有写入锁超过该时长（毫秒）时，新的写入直接返回 OS_PAGE_CACHE_BUSY，<= 0 表示不检查
+     */
+    private long osPageCacheBusyTimeoutMs = 1000;
+
+    /**
+     * 等待写入锁的线程数达到该值时，新的写入直接返回 OS_PAGE_CACHE_BUSY，<= 0 表示不限制
+     */
+    private int maxPutQueueDepth = 1024;
+
+    /**
+     * 获取写入锁的最长等待时间（毫秒），超时返回 OS_PAGE_CACHE_BUSY，<= 0 表示一直等待
+     */
+    private long putLockWaitMs = 0;
+
+    // ==================== Append Ring ====================
+
+    /**
+     * 单写线程的环形缓冲区槽位数（向上取整为 2 的幂），<= 0 表示不开启，各写入线程自己加锁写入（见 CommitLogAppendRing）
+     *
+     * 开启后 putLockWaitMs 变为等待空闲槽位的最长时间
+     */
+    private int putRingBufferSize = 0;
+
+    /**
+     * 单写线程每批最多写入的记录数
+     */
+    private int putRingMaxBatch = 256;
+
+    // ==================== Durability ====================
+
+    /**
+     * 按 Topic 指定持久化级别，未指定的 Topic 使用 defaultDurability（见 getDurability）
+     *
+     * 例如支付类 Topic 配置 SYNC_FLUSH，监控上报类 Topic 保持 ASYNC
+     */
+    private Map<String, DurabilityClass> topicDurability = new ConcurrentHashMap<>();
+
+    /**
+     * 未单独指定的 Topic 的持久化级别
+     */
+    private DurabilityClass defaultDurability = DurabilityClass.ASYNC;
+
+    /**
+     * 后台定时刷盘间隔（毫秒），ASYNC 写入宕机最多丢失这段时间的数据，<= 0 表示只在同步刷盘、关闭时刷盘
+     */
+    private long flushIntervalMs = 500;
+
+    /**
+     * 同步刷盘等待超时（毫秒），超时返回 FLUSH_DISK_TIMEOUT
+     */
+    private long syncFlushTimeoutMs = 5000;
+
+    // ==================== ConsumeQueue Rebuild ====================
+
+    /**
+     * 并行重建 ConsumeQueue 的解析线程数
+     */
+    private int consumeQueueRebuildThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 并行重建时每个分段的大小（在记录边界上切分，分段不跨文件）
+     */
+    private int consumeQueueRebuildSegmentSize = 32 * 1024 * 1024;
+
+    /**
+     * 启动时待分发的 CommitLog 超过该字节数就先并行重建，再交给 Reput，<= 0 表示启动时不并行重建
+     */
+    private long consumeQueueRebuildMinBytes = 64 * 1024 * 1024;
+
+    // ==================== Consumer Offset ====================
+
+    /**
+     * 消费进度持久化间隔（毫秒），间隔内的提交在宕机后会丢失（重复消费）
+     */
+    private long consumerOffsetPersistIntervalMs = 5 * 1000;
+
+    // ==================== Dedup ====================
+
+    /**
+     * 幂等键去重窗口（毫秒）：幂等键相同的消息在一个窗口内一定能被识别为重复，最多两个窗口
+     */
+    private long dedupWindowMs = 10 * 60 * 1000;
+
+    /**
+     * 每个窗口最多记录的幂等键数，超过后提前切换窗口（键表文件和布隆过滤器按该值分配）
+     */
+    private int dedupMaxKeysPerWindow = 256 * 1024;
+
+    /**
+     * 消息体（批量帧为整批载荷）超过该字节数才压缩，<= 0 表示不压缩
+     *
+     * 小消息压缩收益低，还要多一次 CPU 开销
+     */
+    private int bodyCompressThreshold = 1024;
+
+    /**
+     * Deflate 压缩级别：1 最快（默认），9 压缩率最高
+     */
+    private int bodyCompressLevel = 1;
+
+    // ==================== Compaction ====================
+
+    /**
+     * 开启 Key 压缩的 Topic：只保留每个 Key 的最新一条消息
+     */
+    private Set<String> compactedTopics = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 压缩执行间隔（毫秒）
+     */
+    private long compactionIntervalMs = 60 * 1000;
+
+    /**
+     * 压缩后单个文件大小
+     */
+    private int compactedFileSize = 64 * 1024 * 1024;
+
+    /**
+     * 删除标记（body 为 null 的消息）在压缩结果中保留的时长（毫秒），
+     * 超过后连同 Key 一起被清除
+     */
+    private long tombstoneRetentionMs = 24 * 60 * 60 * 1000L;
+
+    // ==================== Timer ====================
+
+    /**
+     * 单个 TimerLog 文件大小（每条记录 32 字节，默认 200 万条）
+     */
+    private int timerLogFileSize = 64 * 1024 * 1024;
+
+    /**
+     * 小时级时间轮的槽位数，即小时轮覆盖的时长（小时）
+     *
+     * 秒级时间轮固定 3600 个槽位覆盖当前小时，更远的消息先挂在小时轮上，
+     * 超过小时轮覆盖范围的消息挂在最后一个槽位，到点后再次降级
+     */
+    private int timerWheelHours = 24 * 7;
+
+    // ==================== Transaction ====================
+
+    /**
+     * 半消息写入后多久开始回查（毫秒），在此之前等待生产者主动提交或回滚
+     */
+    private long transactionTimeoutMs = 6 * 1000;
+
+    /**
+     * 回查扫描间隔（毫秒）
+     */
+    private long transactionCheckIntervalMs = 5 * 1000;
+
+    /**
+     * 最大回查次数，超过后按回滚处理
+     */
+    private int transactionCheckMaxTimes = 15;
+
+    /**
+     * 回查返回 UNKNOWN 后的首次退避时间（毫秒），之后每次翻倍
+     */
+    private long transactionCheckBackoffMs = 5 * 1000;
+
+    /**
+     * 回查退避时间上限（毫秒）
+     */
+    private long transactionCheckMaxBackoffMs = 5 * 60 * 1000;
+
+    /**
+     * 找不到对应半消息的 op 记录在内存中保留的时长（毫秒）
+     */
+    private long transactionOpRetentionMs = 60 * 60 * 1000;
+
+    // ==================== Retry ====================
+
+    /**
+     * 最大重试次数，超过后进入死信队列
+     */
+    private int maxReconsumeTimes = 16;
+
+    /**
+     * 第 N 次重试的延迟（毫秒），超出表长度时使用最后一档
+     *
+     * 与 Broker 默认的 10s 30s 1m 2m ... 2h 一致
+     */
+    private long[] retryDelayLevelsMs = {
+        10_000, 30_000, 60_000, 120_000, 180_000, 240_000, 300_000, 360_000,
+        420_000, 480_000, 540_000, 600_000, 1_200_000, 1_800_000, 3_600_000, 7_200_000
+    };
+
+    // ==================== Cold Tier ====================
+
+    /**
+     * 冷存储目录（另一块盘 / 另一种存储介质），为空表示不开启分层存储
+     */
+    private String coldStorePath;
+
+    /**
+     * CommitLog 文件封存超过该时长（毫秒）后归档到冷存储，删除热数据文件
+     */
+    private long coldSegmentAgeMs = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 归档检查间隔（毫秒）
+     */
+    private long coldArchiveIntervalMs = 60 * 1000;
+
+    /**
+     * 归档时的切块大小，读取时以块为单位解压
+     */
+    private int coldChunkSize = 1024 * 1024;
+
+    /**
+     * 归档压缩级别（只写一次，默认用压缩率更高的级别）
+     */
+    private int coldCompressLevel = 6;
+
+    /**
+     * 解压后的块缓存个数
+     */
+    private int coldChunkCacheSize = 64;
+
+    /**
+     * 冷读线程数
+     */
+    private int coldReadThreads = 2;
+
+    /**
+     * 冷读超时（毫秒）
+     */
+    private long coldReadTimeoutMs = 3000;
+
+    // ==================== Scrub ====================
+
+    /**
+     * 两轮后台校验之间的间隔（毫秒），<= 0 表示不开启后台校验（仍可手动触发）
+     */
+    private long scrubIntervalMs = 6 * 60 * 60 * 1000L;
+
+    /**
+     * 校验读取速率上限（MB/s），<= 0 表示不限速
+     */
+    private int scrubRateMBps = 32;
+
+    /**
+     * 每次读取的字节数
+     */
+    private int scrubReadSize = 1024 * 1024;
+
+    /**
+     * 校验读取使用 O_DIRECT 绕过 PageCache，文件系统不支持时退回普通读取
+     */
+    private boolean scrubDirectIo = true;
+
+    /**
+     * 发现损坏后是否隔离该区间（读取直接失败），false 只上报
+     */
+    private boolean scrubQuarantine = true;
+
+    // ==================== HA ====================
+
+    /**
+     * 主节点监听从节点连接的端口，<= 0 表示不开启
+     */
+    private int haListenPort;
+
+    /**
+     * 主节点地址（host:port），不为空表示当前节点是从节点（只读，从主节点复制 CommitLog）
+     */
+    private String haMasterAddress;
+
+    /**
+     * 复制模式：异步复制写入主节点即返回；同步复制等待从节点确认
+     */
+    private ReplicaMode haReplicaMode = ReplicaMode.ASYNC_REPLICA;
+
+    /**
+     * 同步复制等待从节点确认的超时（毫秒）
+     */
+    private long haSyncTimeoutMs = 3000;
+
+    /**
+     * 从节点落后超过该字节数时视为不可用，同步复制直接返回 SLAVE_NOT_AVAILABLE
+     */
+    private long haMaxFallBehindBytes = 256 * 1024 * 1024;
+
+    /**
+     * 每次传输的最大字节数
+     */
+    private int haTransferBatchSize = 1024 * 1024;
+
+    /**
+     * 空闲时的心跳间隔（毫秒）
+     */
+    private long haHeartbeatIntervalMs = 1000;
+
+    // ==================== Filter ====================
+
+    /**
+     * SQL 过滤拉取时单次最多扫描的索引条数，避免匹配率很低时一次拉取扫完整个队列
+     */
+    private int filterMaxScanUnits = 16 * 1024;
+
+    /**
+     * Topic 的持久化级别
+     *
+     * 未单独指定的 Topic：开启了主从复制（haListenPort > 0）且 haReplicaMode 为 SYNC_REPLICA 时按 SYNC_REPLICA 处理
+     * （兼容全局同步复制开关），否则为 defaultDurability。没有开启复制时全局开关不生效，与之前一样写入即返回
+     */
+    public DurabilityClass getDurability(String topic) {
+        DurabilityClass durability = topicDurability.get(topic);
+        if (durability != null) {
+            return durability;
+        }
+        return haReplicaMode == ReplicaMode.SYNC_REPLICA && haListenPort > 0 ? DurabilityClass.SYNC_REPLICA : defaultDurability;
+    }
+
+    /**
+     * 复制模式
+     */
+    public enum ReplicaMode {
+        ASYNC_REPLICA,
+        SYNC_REPLICA
+    }
+
+    /**
+     * 持久化级别
+     */
+    public enum DurabilityClass {
+        /**
+         * 写入 PageCache 即返回，由后台定时刷盘
+         */
+        ASYNC,
+
+        /**
+         * 等待刷盘完成后返回（组提交，多个写入共用一次 fsync）
+         */
+        SYNC_FLUSH,
+
+        /**
+         * 等待从节点确认后返回，不等本地刷盘（数据在两台机器的 PageCache 中）；未开启主从复制时按 SYNC_FLUSH 处理
+         */
+        SYNC_REPLICA
+    }
+}
@@ -40,6 +40,11 @@ public class Level12StoreStats {
      */
     private final AtomicLong queryMessageTotalTime = new AtomicLong(0);
 
+    /**
+     * 写入繁忙被拒绝的次数（OS_PAGE_CACHE_BUSY）
+     */
+    private final AtomicLong putBusyRejectCount = new AtomicLong(0);
+
     /**
      * 文件句柄数
      */
@@ -127,6 +132,7 @@ public class Level12StoreStats {
         getMessageTotalTime.set(0);
         queryMessageCount.set(0);
         queryMessageTotalTime.set(0);
+        putBusyRejectCount.set(0);
     }
 
     /**
@@ -140,6 +146,7 @@ public class Level12StoreStats {
                   - 消息数量: %,d
                   - 平均延迟: %.2f ms
                   - 总耗时: %,d ms
+                  - 繁忙拒绝: %,d
 
                 读取统计：
                   - 消息数量: %,d
@@ -159,6 +166,7 @@ public class Level12StoreStats {
                 putMessageCount.get(),
                 getAvgPutLatency(),
                 putMessageTotalTime.get(),
+                putBusyRejectCount.get(),
                 getMessageCount.get(),
                 getAvgGetLatency(),
                 getMessageTotalTime.get(),
@@ -3,18 +3,39 @@ package one.demo.challenge.level12;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import one.demo.challenge.level12.loadgen.EngineType;
+import one.demo.challenge.level12.loadgen.LatencyHistogram;
+import one.demo.challenge.level12.loadgen.LoadGenerator;
+import one.demo.challenge.level12.loadgen.LoadProfile;
+import one.demo.challenge.level12.loadgen.LoadReport;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Level 12 测试控制器
@@ -27,7 +48,11 @@ public class Level12TestController {
     private Level12MessageStoreBuggy buggyStore;
     private Level12MessageStoreFixed storeFixed;
     private Level12MessageStoreBest bestStore;
+    // 进程内演示用的从节点（/best/ha/startSlave 启动）
+    private volatile Level12MessageStoreBest slaveStore;
     private final Random random = new Random();
+    // 模拟本地事务表：事务 ID -> 是否提交（供事务回查使用）
+    private final Map<String, Boolean> localTransactionTable = new ConcurrentHashMap<>();
     private long testStartTime;
     private long bestTestStartTime;
 
@@ -35,7 +60,17 @@ public class Level12TestController {
     public void init() {
         buggyStore = new Level12MessageStoreBuggy(Level12Constants.BUGGY_STORE_PATH);
         storeFixed = new Level12MessageStoreFixed(Level12Constants.FIXED_STORE_PATH);
-        bestStore = new Level12MessageStoreBest(Level12Constants.BEST_STORE_PATH);
+        Level12StoreConfig bestStoreConfig = new Level12StoreConfig();
+        bestStoreConfig.setColdStorePath(Level12Constants.BEST_COLD_STORE_PATH);
+        bestStoreConfig.setHaListenPort(Level12Constants.BEST_HA_PORT);
+        bestStore = new Level12MessageStoreBest(Level12Constants.BEST_STORE_PATH, bestStoreConfig);
+        bestStore.setTransactionChecker(halfMessage -> {
+            Boolean committed = localTransactionTable.get(halfMessage.getTransactionId());
+            if (committed == null) {
+                return LocalTransactionChecker.Resolution.UNKNOWN;
+            }
+            return committed ? LocalTransactionChecker.Resolution.COMMIT : LocalTransactionChecker.Resolution.ROLLBACK;
+        });
         testStartTime = System.currentTimeMillis();
         bestTestStartTime = System.currentTimeMillis();
         log.info("✅ Level 12 测试控制器初始化完成");
@@ -49,6 +84,9 @@ public class Level12TestController {
         if (storeFixed != null) {
             storeFixed.shutdown();
         }
+        if (slaveStore != null) {
+            slaveStore.shutdown();
+        }
         if (bestStore != null) {
             bestStore.shutdown();
         }
@@ -752,6 +790,9 @@ public class Level12TestController {
                     - 理论吞吐量（顺序写）: ~50,000 msg/s
                     - 实际吞吐量（Best）: ~%.0f msg/s
                     - 性能达成率: %.1f%%
+
+                    ⚠️ 这是闭环压测（线程尽快发送），平均延迟偏乐观，
+                    按固定速率压测、看尾延迟请用 /challenge/level12/loadgen/run
                     """,
                     count, threads, countPerThread,
                     successCount.get(), failCount.get(), duration,
@@ -1010,9 +1051,1426 @@ public class Level12TestController {
         return "✅ Best 版本已重置";
     }
 
+    // ==================== 定时消息（Timer）测试接口 ====================
+
+    /**
+     * 发送定时消息
+     */
+    @GetMapping("/best/timer/send")
+    public String sendTimerMessage(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "10") int delaySeconds,
+            @RequestParam(defaultValue = "1") int count) {
+
+        long deliverTime = System.currentTimeMillis() + delaySeconds * 1000L;
+        for (int i = 0; i < count; i++) {
+            Level12Message message = new Level12Message();
+            message.setMessageId(UUID.randomUUID().toString());
+            message.setTopic(topic);
+            message.setTag("timer");
+            message.setKey("TIMER-" + i);
+            message.setBody("order timeout check " + i);
+            message.setCreateTime(System.currentTimeMillis());
+            message.setQueueId(0);
+            message.setDeliverTime(deliverTime);
+
+            bestStore.putMessage(message);
+        }
+
+        return String.format("""
+                ✅ 定时消息已发送
+
+                - Topic: %s
+                - 数量: %,d
+                - 延迟: %d 秒
+
+                💡 测试建议：
+                - 到期前 ConsumeQueue 中看不到这些消息
+                  curl "http://localhost:8086/challenge/level12/best/stats"
+                - 查看时间轮状态
+                  curl "http://localhost:8086/challenge/level12/best/timer/stats"
+                """, topic, count, delaySeconds);
+    }
+
+    /**
+     * 时间轮状态
+     */
+    @GetMapping("/best/timer/stats")
+    public String timerStats() {
+        TimerMessageStore timerStore = bestStore.getTimerMessageStore();
+        return String.format("""
+                ⏰ 时间轮状态
+
+                - 等待投递: %,d
+                - 本次启动入轮: %,d
+                - 本次启动投递: %,d
+                - 小时轮降级: %,d
+                - 已投递到: %d 秒（落后当前时间 %d 秒）
+                - TimerLog 文件数: %d
+                """,
+                timerStore.getPendingCount(),
+                timerStore.getEnqueueCount(),
+                timerStore.getDeliverCount(),
+                timerStore.getCascadeCount(),
+                timerStore.getCommittedReadTimeSec(),
+                System.currentTimeMillis() / 1000 - timerStore.getCommittedReadTimeSec(),
+                timerStore.getTimerLogFileCount()
+        );
+    }
+
+    // ==================== 事务消息（Transaction）测试接口 ====================
+
+    /**
+     * 发送事务消息
+     *
+     * action:
+     * - commit：本地事务成功，主动提交
+     * - rollback：本地事务失败，主动回滚
+     * - crash：本地事务成功，但生产者在提交前宕机，由回查补偿提交
+     */
+    @GetMapping("/best/tx/send")
+    public String sendTransactionMessage(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "commit") String action,
+            @RequestParam(defaultValue = "1") int count) {
+
+        for (int i = 0; i < count; i++) {
+            Level12Message message = new Level12Message();
+            message.setMessageId(UUID.randomUUID().toString());
+            message.setTopic(topic);
+            message.setTag("tx");
+            message.setKey("ORDER-" + i);
+            message.setBody("order created " + i);
+            message.setCreateTime(System.currentTimeMillis());
+            message.setQueueId(0);
+
+            Level12Message halfMessage;
+            try {
+                halfMessage = bestStore.prepareMessage(message);
+            } catch (IllegalStateException e) {
+                return "❌ " + e.getMessage() + "（已发送 " + i + " 条）";
+            }
+
+            // 模拟执行本地事务
+            boolean localCommitted = !"rollback".equals(action);
+            localTransactionTable.put(halfMessage.getTransactionId(), localCommitted);
+
+            if ("commit".equals(action)) {
+                bestStore.commitTransaction(halfMessage.getPhysicalOffset());
+            } else if ("rollback".equals(action)) {
+                bestStore.rollbackTransaction(halfMessage.getPhysicalOffset());
+            }
+        }
+
+        return String.format("""
+                ✅ 事务消息已发送
+
+                - Topic: %s
+                - 数量: %,d
+                - 动作: %s
+
+                💡 测试建议：
+                - crash 模式下消息暂时不可见，约 %d 秒后由回查提交
+                  curl "http://localhost:8086/challenge/level12/best/tx/stats"
+                """, topic, count, action,
+                bestStore.getStoreConfig().getTransactionTimeoutMs() / 1000
+                    + bestStore.getStoreConfig().getTransactionCheckIntervalMs() / 1000);
+    }
+
+    /**
+     * 事务消息统计
+     */
+    @GetMapping("/best/tx/stats")
+    public String transactionStats() {
+        TransactionalMessageService service = bestStore.getTransactionalMessageService();
+        return String.format("""
+                🔁 事务消息统计
+
+                - 半消息: %,d
+                - 提交: %,d
+                - 回滚: %,d
+                - 回查次数: %,d
+                - 半消息扫描位置: %,d
+                """,
+                service.getPrepareCount(),
+                service.getCommitCount(),
+                service.getRollbackCount(),
+                service.getCheckCount(),
+                service.getHalfCheckOffset()
+        );
+    }
+
+    // ==================== 消费重试（Retry / DLQ）测试接口 ====================
+
+    /**
+     * 模拟消费失败：从 Topic（或重试 Topic）读取消息，全部回退重试
+     */
+    @GetMapping("/best/retry/consumeFail")
+    public String consumeFail(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "level12-consumer-group") String group,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "100") int count) {
+
+        List<Level12Message> messages = bestStore.getMessage(topic, 0, offset, count);
+
+        // 回退是异步的，消费线程只负责提交请求
+        long startTime = System.nanoTime();
+        for (Level12Message message : messages) {
+            bestStore.sendMessageBack(group, message);
+        }
+        long costMicros = (System.nanoTime() - startTime) / 1000;
+
+        return String.format("""
+                ✅ 已回退 %,d 条消息，消费线程耗时 %,d μs
+
+                💡 测试建议：
+                - 重试消息按退避表延迟投递，到期后出现在重试 Topic
+                  curl "http://localhost:8086/challenge/level12/best/retry/consumeFail?topic=%s&group=%s"
+                - 查看重试、死信数量
+                  curl "http://localhost:8086/challenge/level12/best/retry/stats?group=%s"
+                """, messages.size(), costMicros,
+                Level12Constants.getRetryTopic(group), group, group);
+    }
+
+    /**
+     * 重试、死信统计
+     */
+    @GetMapping("/best/retry/stats")
+    public String retryStats(@RequestParam(defaultValue = "level12-consumer-group") String group) {
+        SendMessageBackService service = bestStore.getSendMessageBackService();
+        return String.format("""
+                🔁 消费重试统计（%s）
+
+                - 回退到重试队列: %,d
+                - 进入死信队列: %,d
+                - 回退失败（未推进消费进度）: %,d
+                - 重试 Topic 已到期消息: %,d
+                - 死信 Topic 消息: %,d
+                - 等待到期的定时消息（含重试）: %,d
+                """, group,
+                service.getRetryCount(),
+                service.getDlqCount(),
+                service.getFailCount(),
+                bestStore.getTopicMessageCount(Level12Constants.getRetryTopic(group)),
+                bestStore.getTopicMessageCount(Level12Constants.getDLQTopic(group)),
+                bestStore.getTimerMessageStore().getPendingCount()
+        );
+    }
+
+    // ==================== SQL92 属性过滤测试接口 ====================
+
+    /**
+     * 注册消费组的 SQL92 表达式
+     */
+    @GetMapping("/best/filter/subscribe")
+    public String subscribeSql(
+            @RequestParam(defaultValue = "level12-filter-topic") String topic,
+            @RequestParam(defaultValue = "level12-eu-group") String group,
+            @RequestParam(defaultValue = "region = 'EU' AND amount > 500") String sql) {
+
+        try {
+            bestStore.subscribeSql(group, topic, sql);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return "❌ 注册失败: " + e.getMessage();
+        }
+
+        return String.format("""
+                ✅ SQL 过滤已注册
+
+                - Topic: %s
+                - 消费组: %s
+                - 表达式: %s
+
+                💡 测试建议：
+                - 发送带属性的订单消息
+                  curl "http://localhost:8086/challenge/level12/best/filter/sendOrders?topic=%s"
+                - 按表达式拉取，对比扫描条数和读取 CommitLog 的条数
+                  curl "http://localhost:8086/challenge/level12/best/filter/pull?topic=%s&group=%s"
+                """, topic, group, sql, topic, topic, group);
+    }
+
+    /**
+     * 发送带 region / amount 属性的订单消息
+     */
+    @GetMapping("/best/filter/sendOrders")
+    public String sendFilterOrders(
+            @RequestParam(defaultValue = "level12-filter-topic") String topic,
+            @RequestParam(defaultValue = "10000") int count) {
+
+        String[] regions = {"EU", "US", "APAC", "LATAM"};
+        for (int i = 0; i < count; i++) {
+            Level12Message message = new Level12Message();
+            message.setMessageId(UUID.randomUUID().toString());
+            message.setTopic(topic);
+            message.setTag("order");
+            message.setKey("ORDER-" + i);
+            message.setBody("order " + i);
+            message.setCreateTime(System.currentTimeMillis());
+            message.setQueueId(0);
+            message.putProperty("region", regions[random.nextInt(regions.length)]);
+            message.putProperty("amount", String.valueOf(random.nextInt(1000)));
+
+            bestStore.putMessage(message);
+        }
+
+        return String.format("✅ 已发送 %,d 条订单消息（region 随机 EU/US/APAC/LATAM，amount 随机 0~999）", count);
+    }
+
+    /**
+     * 按消费组的表达式拉取
+     */
+    @GetMapping("/best/filter/pull")
+    public String pullByFilter(
+            @RequestParam(defaultValue = "level12-filter-topic") String topic,
+            @RequestParam(defaultValue = "level12-eu-group") String group,
+            @RequestParam(defaultValue = "0") long offset,
+            @RequestParam(defaultValue = "32") int count) {
+
+        long startTime = System.nanoTime();
+        GetMessageResult result = bestStore.getMessageByFilter(group, topic, 0, offset, count);
+        long costMicros = (System.nanoTime() - startTime) / 1000;
+
+        int commitLogReads = result.getScannedCount() - result.getBitMapFilteredCount();
+        return String.format("""
+                🔍 SQL 过滤拉取结果
+
+                - 匹配消息: %,d
+                - 扫描索引: %,d
+                - 位图跳过（未读 CommitLog）: %,d
+                - 现场求值（位图不可用）: %,d
+                - 读取 CommitLog: %,d
+                - 下次拉取位置: %,d
+                - 耗时: %,d μs
+                """,
+                result.getMessages().size(),
+                result.getScannedCount(),
+                result.getBitMapFilteredCount(),
+                result.getEvaluatedCount(),
+                commitLogReads,
+                result.getNextBeginOffset(),
+                costMicros
+        );
+    }
+
+    // ==================== 消息体压缩测试接口 ====================
+
+    /**
+     * 发送重复度较高的 JSON 订单消息，观察压缩效果
+     */
+    @GetMapping("/best/compress/send")
+    public String sendCompressibleMessages(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "10000") int count,
+            @RequestParam(defaultValue = "20") int itemsPerOrder,
+            @RequestParam(defaultValue = "0") int batchSize) {
+
+        MessageCodec codec = bestStore.getCommitLog().getMessageCodec();
+        long rawBefore = codec.getRawBodyBytes();
+        long storedBefore = codec.getStoredBodyBytes();
+        long commitLogBefore = bestStore.getCommitLog().getMaxOffset();
+
+        long startTime = System.currentTimeMillis();
+        List<Level12Message> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Level12Message message = new Level12Message();
+            message.setMessageId(UUID.randomUUID().toString());
+            message.setTopic(topic);
+            message.setTag("order");
+            message.setKey("ORDER-" + i);
+            message.setBody(generateOrderJson(i, itemsPerOrder));
+            message.setCreateTime(System.currentTimeMillis());
+            message.setQueueId(0);
+
+            if (batchSize <= 1) {
+                bestStore.putMessage(message);
+                continue;
+            }
+            batch.add(message);
+            if (batch.size() == batchSize) {
+                bestStore.putMessages(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            bestStore.putMessages(batch);
+        }
+        long costTime = System.currentTimeMillis() - startTime;
+
+        long raw = codec.getRawBodyBytes() - rawBefore;
+        long stored = codec.getStoredBodyBytes() - storedBefore;
+        long wrote = bestStore.getCommitLog().getMaxOffset() - commitLogBefore;
+        return String.format("""
+                ✅ 已发送 %,d 条订单消息（%s）
+
+                - 消息体原始大小: %,d 字节
+                - 消息体存储大小: %,d 字节（%.1f%%）
+                - CommitLog 写入: %,d 字节
+                - 耗时: %,d ms
+
+                💡 测试建议：
+                - 对比单条和批量写入的压缩率
+                  curl "http://localhost:8086/challenge/level12/best/compress/send?batchSize=64"
+                - 读取时才解压消息体
+                  curl "http://localhost:8086/challenge/level12/best/compress/stats"
+                """,
+                count, batchSize <= 1 ? "单条写入" : "批量写入，每批 " + batchSize + " 条",
+                raw, stored, raw == 0 ? 0.0 : stored * 100.0 / raw, wrote, costTime);
+    }
+
+    /**
+     * 压缩统计
+     */
+    @GetMapping("/best/compress/stats")
+    public String compressStats() {
+        MessageCodec codec = bestStore.getCommitLog().getMessageCodec();
+        Level12StoreConfig storeConfig = bestStore.getStoreConfig();
+        return String.format("""
+                🗜️ 消息体压缩统计
+
+                - 压缩阈值: %,d 字节
+                - 压缩级别: %d
+                - 压缩次数: %,d
+                - 消息体原始大小: %,d 字节
+                - 消息体存储大小: %,d 字节
+                - CommitLog 总大小: %,d 字节
+                """,
+                storeConfig.getBodyCompressThreshold(),
+                storeConfig.getBodyCompressLevel(),
+                codec.getCompressedCount(),
+                codec.getRawBodyBytes(),
+                codec.getStoredBodyBytes(),
+                bestStore.getCommitLog().getMaxOffset()
+        );
+    }
+
+    // ==================== 冷热分层测试接口 ====================
+
+    /**
+     * 立即归档封存时间超过 minAgeSeconds 的 CommitLog 文件
+     */
+    @GetMapping("/best/tier/archive")
+    public String archiveColdSegments(@RequestParam(defaultValue = "0") long minAgeSeconds) {
+        try {
+            int archived = bestStore.archiveColdSegments(minAgeSeconds * 1000);
+            return String.format("""
+                    ✅ 已归档 %d 个 CommitLog 文件到冷存储
+
+                    💡 测试建议：
+                    - 按 Tag 从头查询，已归档的消息透明地从冷存储读出
+                      curl "http://localhost:8086/challenge/level12/best/queryByTag?topic=level12-order-topic&tag=order"
+                    - 查看冷读、块缓存命中情况
+                      curl "http://localhost:8086/challenge/level12/best/tier/stats"
+                    """, archived);
+        } catch (IOException e) {
+            log.error("❌ 归档失败", e);
+            return "❌ 归档失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 冷热分层统计
+     */
+    @GetMapping("/best/tier/stats")
+    public String tierStats() {
+        ColdTierStore coldTierStore = bestStore.getColdTierStore();
+        if (coldTierStore == null) {
+            return "ℹ️ 未开启冷热分层（coldStorePath 为空）";
+        }
+
+        return String.format("""
+                🧊 冷热分层统计
+
+                - 热数据文件: %,d
+                - 热数据最小偏移量: %,d
+                - 冷存储文件: %,d
+                - 归档原始大小: %,d 字节
+                - 归档压缩后大小: %,d 字节
+                - 冷读次数: %,d
+                - 块缓存命中: %,d
+                - 块加载（读盘 + 解压）: %,d
+                """,
+                bestStore.getCommitLog().getMappedFileQueue().getMappedFileCount(),
+                bestStore.getCommitLog().getMinOffset(),
+                coldTierStore.getSegmentCount(),
+                coldTierStore.getArchivedRawBytes(),
+                coldTierStore.getArchivedStoredBytes(),
+                coldTierStore.getColdReadCount(),
+                coldTierStore.getChunkCacheHitCount(),
+                coldTierStore.getChunkLoadCount()
+        );
+    }
+
+    // ==================== 主从复制测试接口 ====================
+
+    /**
+     * 在本进程内启动一个从节点（独立存储目录），连接 Best 存储的 HA 端口
+     */
+    @GetMapping("/best/ha/startSlave")
+    public synchronized String startSlave() {
+        if (slaveStore != null) {
+            return "ℹ️ 从节点已在运行: " + Level12Constants.BEST_SLAVE_STORE_PATH;
+        }
+
+        Level12StoreConfig slaveConfig = new Level12StoreConfig();
+        slaveConfig.setHaMasterAddress("localhost:" + Level12Constants.BEST_HA_PORT);
+        slaveStore = new Level12MessageStoreBest(Level12Constants.BEST_SLAVE_STORE_PATH, slaveConfig);
+
+        return String.format("""
+                ✅ 从节点已启动: %s -> localhost:%d
+
+                💡 测试建议：
+                - 开启同步复制（等待从节点确认后才返回）
+                  curl "http://localhost:8086/challenge/level12/best/ha/mode?mode=SYNC_REPLICA"
+                - 发送消息
+                  curl "http://localhost:8086/challenge/level12/best/ha/send?count=1000"
+                - 对比主从偏移量、索引条数
+                  curl "http://localhost:8086/challenge/level12/best/ha/stats"
+                """, Level12Constants.BEST_SLAVE_STORE_PATH, Level12Constants.BEST_HA_PORT);
+    }
+
+    /**
+     * 停止从节点（之后同步复制返回 SLAVE_NOT_AVAILABLE）
+     */
+    @GetMapping("/best/ha/stopSlave")
+    public synchronized String stopSlave() {
+        if (slaveStore == null) {
+            return "ℹ️ 从节点未运行";
+        }
+        slaveStore.shutdown();
+        slaveStore = null;
+        return "✅ 从节点已停止（数据保留，再次启动时从本地最大偏移量继续复制）";
+    }
+
+    /**
+     * 切换复制模式：ASYNC_REPLICA / SYNC_REPLICA
+     */
+    @GetMapping("/best/ha/mode")
+    public String replicaMode(@RequestParam(defaultValue = "SYNC_REPLICA") String mode) {
+        Level12StoreConfig.ReplicaMode replicaMode;
+        try {
+            replicaMode = Level12StoreConfig.ReplicaMode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            return "❌ 复制模式只能是 ASYNC_REPLICA / SYNC_REPLICA: " + mode;
+        }
+        bestStore.getStoreConfig().setHaReplicaMode(replicaMode);
+        return "✅ 复制模式: " + replicaMode;
+    }
+
+    /**
+     * 异步发送消息，统计各写入状态和耗时
+     */
+    @GetMapping("/best/ha/send")
+    public String haSend(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "1000") int count) {
+
+        long startTime = System.currentTimeMillis();
+        List<CompletableFuture<PutMessageResult>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Level12Message message = new Level12Message();
+            message.setMessageId(UUID.randomUUID().toString());
+            message.setTopic(topic);
+            message.setTag("order");
+            message.setKey("HA-" + i);
+            message.setBody(generateOrderJson(i, 4));
+            message.setCreateTime(System.currentTimeMillis());
+            message.setQueueId(i % 4);
+
+            futures.add(bestStore.asyncPutMessage(message));
+        }
+
+        Map<PutMessageResult.PutMessageStatus, Integer> statusCount = new EnumMap<>(PutMessageResult.PutMessageStatus.class);
+        for (CompletableFuture<PutMessageResult> future : futures) {
+            statusCount.merge(future.join().getStatus(), 1, Integer::sum);
+        }
+
+        return String.format("""
+                ✅ 发送完成
+
+                - 复制模式: %s
+                - 数量: %,d
+                - 耗时: %,d ms
+                - 写入状态: %s
+                """,
+                bestStore.getStoreConfig().getHaReplicaMode(), count,
+                System.currentTimeMillis() - startTime, statusCount);
+    }
+
+    /**
+     * 主从复制状态
+     */
+    @GetMapping("/best/ha/stats")
+    public String haStats() {
+        HAService haService = bestStore.getHaService();
+        if (haService == null) {
+            return "ℹ️ 未开启主从复制（haListenPort 未配置）";
+        }
+
+        Level12MessageStoreBest slave = slaveStore;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("""
+                🔁 主从复制状态
+
+                - 复制模式: %s
+                - 从节点连接数: %d
+                - 主节点 CommitLog 最大偏移量: %,d
+                - 从节点已确认偏移量: %,d
+                - 已传输: %,d 字节
+                - 等待确认的写入: %d
+                """,
+                bestStore.getStoreConfig().getHaReplicaMode(),
+                haService.getConnectionCount(),
+                bestStore.getCommitLog().getMaxOffset(),
+                haService.getPush2SlaveMaxOffset(),
+                haService.getTransferredBytes(),
+                haService.getWaitingRequestCount()));
+
+        if (slave != null) {
+            sb.append(String.format("""
+                    - 从节点 CommitLog 最大偏移量: %,d
+                    - 从节点已接收: %,d 字节，重连次数: %d
+                    """,
+                    slave.getCommitLog().getMaxOffset(),
+                    slave.getHaClient().getReceivedBytes(),
+                    slave.getHaClient().getReconnectCount()));
+
+            sb.append("\n📊 各 Topic 消息数（主 / 从）:\n");
+            for (String topic : bestStore.getAllTopics()) {
+                sb.append(String.format("- %s: %,d / %,d\n",
+                        topic, bestStore.getTopicMessageCount(topic), slave.getTopicMessageCount(topic)));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ==================== 持久化级别测试接口 ====================
+
+    /**
+     * 设置 Topic 的持久化级别：ASYNC / SYNC_FLUSH / SYNC_REPLICA
+     */
+    @GetMapping("/best/durability/set")
+    public String setDurability(
+            @RequestParam(defaultValue = "order-payment") String topic,
+            @RequestParam(defaultValue = "SYNC_FLUSH") String durability) {
+        Level12StoreConfig.DurabilityClass durabilityClass;
+        try {
+            durabilityClass = Level12StoreConfig.DurabilityClass.valueOf(durability);
+        } catch (IllegalArgumentException e) {
+            return "❌ 持久化级别只能是 ASYNC / SYNC_FLUSH / SYNC_REPLICA: " + durability;
+        }
+        bestStore.getStoreConfig().getTopicDurability().put(topic, durabilityClass);
+        return "✅ " + topic + " 持久化级别: " + durabilityClass;
+    }
+
+    /**
+     * 两个 Topic 混合写入（一半线程写 syncTopic，一半写 asyncTopic），按 Topic 统计写入延迟
+     *
+     * syncTopic 未单独设置持久化级别时按 SYNC_FLUSH 处理
+     */
+    @GetMapping("/best/durability/send")
+    public String durabilitySend(
+            @RequestParam(defaultValue = "order-payment") String syncTopic,
+            @RequestParam(defaultValue = "CPULoadInfo") String asyncTopic,
+            @RequestParam(defaultValue = "2000") int count,
+            @RequestParam(defaultValue = "8") int threads) throws InterruptedException {
+
+        if (count > 20000) {
+            return "❌ 写入数量不能超过 20000";
+        }
+        if (threads < 2) {
+            return "❌ 线程数至少为 2（一半写 syncTopic，一半写 asyncTopic）";
+        }
+        if (syncTopic.equals(asyncTopic)) {
+            return "❌ syncTopic 和 asyncTopic 不能相同";
+        }
+
+        Level12StoreConfig storeConfig = bestStore.getStoreConfig();
+        storeConfig.getTopicDurability().putIfAbsent(syncTopic, Level12StoreConfig.DurabilityClass.SYNC_FLUSH);
+        GroupCommitService groupCommitService = bestStore.getGroupCommitService();
+        long syncFlushBefore = groupCommitService.getSyncFlushCount();
+
+        Map<String, LatencyHistogram> latency = Map.of(syncTopic, new LatencyHistogram(), asyncTopic, new LatencyHistogram());
+        Map<PutMessageResult.PutMessageStatus, Integer> statusCount = new ConcurrentHashMap<>();
+        int countPerThread = count / threads;
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int threadId = t;
+                final String topic = t % 2 == 0 ? syncTopic : asyncTopic;
+                executor.submit(() -> {
+                    for (int i = 0; i < countPerThread; i++) {
+                        Level12Message message = new Level12Message();
+                        message.setMessageId(UUID.randomUUID().toString());
+                        message.setTopic(topic);
+                        message.setTag("durability");
+                        message.setKey("DURABILITY-" + threadId + "-" + i);
+                        message.setBody(generateMessageBody(Level12Constants.DEFAULT_MESSAGE_SIZE));
+                        message.setCreateTime(System.currentTimeMillis());
+                        message.setQueueId(threadId % 4);
+
+                        long begin = System.nanoTime();
+                        PutMessageResult result = bestStore.putMessage(message);
+                        latency.get(topic).record(System.nanoTime() - begin);
+                        statusCount.merge(result.getStatus(), 1, Integer::sum);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.MINUTES);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("""
+                ✅ 混合写入完成
+
+                - 数量: %,d，线程数: %d
+                - 耗时: %,d ms
+                - 写入状态: %s
+                - 本次同步刷盘次数: %,d
+
+                """,
+                countPerThread * threads, threads,
+                System.currentTimeMillis() - startTime, statusCount,
+                groupCommitService.getSyncFlushCount() - syncFlushBefore));
+        for (String topic : List.of(syncTopic, asyncTopic)) {
+            sb.append(String.format("📊 %s（%s）写入延迟：%n%s%n",
+                    topic, storeConfig.getDurability(topic), latency.get(topic).formatPercentiles()));
+        }
+        sb.append("💡 ASYNC 写入不等刷盘，延迟不应随同步刷盘的 Topic 一起升高\n");
+        return sb.toString();
+    }
+
+    /**
+     * 刷盘状态和各 Topic 的持久化级别
+     */
+    @GetMapping("/best/durability/stats")
+    public String durabilityStats() {
+        Level12StoreConfig storeConfig = bestStore.getStoreConfig();
+        GroupCommitService groupCommitService = bestStore.getGroupCommitService();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("""
+                💾 刷盘状态
+
+                - 默认持久化级别: %s（复制模式 %s）
+                - 定时刷盘间隔: %,d ms
+                - CommitLog 最大偏移量: %,d
+                - 已刷盘偏移量: %,d
+                - 刷盘次数: %,d（其中同步刷盘 %,d），平均耗时 %.3f ms
+                - 同步刷盘完成的写入: %,d，平均每次刷盘 %.1f 条
+                - 同步刷盘超时: %,d
+                - 等待刷盘的写入: %d
+
+                📋 单独设置的 Topic:
+                """,
+                storeConfig.getDefaultDurability(), storeConfig.getHaReplicaMode(),
+                storeConfig.getFlushIntervalMs(),
+                bestStore.getCommitLog().getMaxOffset(),
+                groupCommitService.getFlushedOffset(),
+                groupCommitService.getFlushCount(), groupCommitService.getSyncFlushCount(),
+                groupCommitService.getAvgFlushMs(),
+                groupCommitService.getCompletedRequestCount(), groupCommitService.getAvgGroupSize(),
+                groupCommitService.getTimeoutRequestCount(),
+                groupCommitService.getWaitingRequestCount()));
+        storeConfig.getTopicDurability().forEach((topic, durability) ->
+                sb.append(String.format("- %s: %s%n", topic, durability)));
+        return sb.toString();
+    }
+
+    // ==================== 导出导入测试接口 ====================
+
+    /**
+     * 导出 Topic（或单个 Queue）的区间到 store/level12/export/{name}.data / .index
+     */
+    @GetMapping("/best/export")
+    public String exportTopic(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "-1") int queueId,
+            @RequestParam(defaultValue = "0") long fromIndex,
+            @RequestParam(defaultValue = "-1") long toIndex,
+            @RequestParam(defaultValue = "order-dump") String name) {
+        try {
+            TopicExportService.ExportResult result = bestStore.exportTopic(topic, queueId, fromIndex, toIndex,
+                    Level12Constants.BEST_EXPORT_PATH + "/" + name);
+            double mbPerSecond = result.getCostTime() == 0 ? 0
+                    : result.getBytes() / 1024.0 / 1024.0 * 1000 / result.getCostTime();
+            return String.format("""
+                    ✅ 导出完成: %s
+
+                    - 记录数: %,d（批量帧算一条）
+                    - 消息数: %,d
+                    - 数据大小: %,d 字节
+                    - 连续区间数（每个区间一次 transferTo）: %,d
+                    - 耗时: %,d ms（%.1f MB/s）
+
+                    💡 测试建议：
+                    - 导入回当前存储（消息重新追加到原 Topic-Queue）
+                      curl "http://localhost:8086/challenge/level12/best/import?name=%s"
+                    """,
+                    result.getTarget(), result.getRecordCount(), result.getMessageCount(), result.getBytes(),
+                    result.getSpanCount(), result.getCostTime(), mbPerSecond, name);
+        } catch (IOException e) {
+            log.error("❌ 导出失败", e);
+            return "❌ 导出失败: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 导入 /best/export 导出的文件
+     */
+    @GetMapping("/best/import")
+    public String importTopic(@RequestParam(defaultValue = "order-dump") String name) {
+        try {
+            TopicExportService.ImportResult result = bestStore.importTopic(Level12Constants.BEST_EXPORT_PATH + "/" + name);
+            return String.format("""
+                    ✅ 导入完成: topic=%s
+
+                    - 记录数: %,d
+                    - 消息数: %,d
+                    - 数据大小: %,d 字节（%,d 次批量追加）
+                    - 耗时: %,d ms
+                    """,
+                    result.getTopic(), result.getRecordCount(), result.getMessageCount(), result.getBytes(),
+                    result.getChunkCount(), result.getCostTime());
+        } catch (IOException | IllegalStateException e) {
+            log.error("❌ 导入失败", e);
+            return "❌ 导入失败: " + e.getMessage();
+        }
+    }
+
+    // ==================== CRC 校验测试接口 ====================
+
+    /**
+     * 立即校验一遍已封存的 CommitLog 文件（按 scrubRateMBps 限速）
+     */
+    @GetMapping("/best/scrub/run")
+    public String runScrub() {
+        try {
+            int found = bestStore.getCrcScrubService().scrub();
+            return String.format("""
+                    %s CRC 校验完成: 新发现损坏区间 %d 个
+
+                    💡 测试建议：
+                    - 查看校验统计和损坏区间
+                      curl "http://localhost:8086/challenge/level12/best/scrub/stats"
+                    """, found == 0 ? "✅" : "❌", found);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "❌ 校验被中断";
+        }
+    }
+
+    /**
+     * CRC 校验统计和损坏区间
+     */
+    @GetMapping("/best/scrub/stats")
+    public String scrubStats() {
+        CrcScrubService scrubService = bestStore.getCrcScrubService();
+        StringBuilder ranges = new StringBuilder();
+        for (CrcScrubService.CorruptRange range : scrubService.getCorruptRanges()) {
+            ranges.append(String.format("  - [%d, %d) %,d 字节, %s%n",
+                    range.getStartOffset(), range.getEndOffset(),
+                    range.getEndOffset() - range.getStartOffset(), range.getReason()));
+        }
+
+        return String.format("""
+                🔍 CRC 校验统计
+
+                - 后台校验: %s（O_DIRECT: %s）
+                - 当前扫描位置: %d
+                - 已完成轮数: %,d（上一轮耗时 %,d ms）
+                - 已扫描: %,d 字节
+                - 校验通过记录: %,d
+                - 无校验和的旧记录: %,d
+                - CRC 不一致记录: %,d
+                - 隔离拒绝的读取: %,d
+                - 损坏区间: %d
+                %s""",
+                scrubService.isRunning() ? "运行中" : "未开启",
+                scrubService.isDirectIo() ? "是" : "否",
+                scrubService.getScrubOffset(),
+                scrubService.getPassCount(),
+                scrubService.getLastPassCostMs(),
+                scrubService.getScannedBytes(),
+                scrubService.getVerifiedRecords(),
+                scrubService.getUnverifiedRecords(),
+                scrubService.getCorruptRecords(),
+                bestStore.getCommitLog().getQuarantinedReadCount(),
+                scrubService.getCorruptRangeCount(),
+                ranges
+        );
+    }
+
+    /**
+     * 文件修复后解除隔离
+     */
+    @GetMapping("/best/scrub/release")
+    public String releaseQuarantine(@RequestParam long startOffset) {
+        return bestStore.getCrcScrubService().release(startOffset)
+                ? "✅ 已解除隔离: " + startOffset
+                : "ℹ️ 没有从该偏移量开始的损坏区间: " + startOffset;
+    }
+
+    // ==================== 幂等键去重测试接口 ====================
+
+    /**
+     * 模拟生产者重试：count 条消息，每条带幂等键发送 retries 次
+     */
+    @GetMapping("/best/dedup/send")
+    public String dedupSend(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "1000") int count,
+            @RequestParam(defaultValue = "3") int retries) {
+
+        long startTime = System.currentTimeMillis();
+        String batchId = UUID.randomUUID().toString();
+        Map<PutMessageResult.PutMessageStatus, Integer> statusCount = new EnumMap<>(PutMessageResult.PutMessageStatus.class);
+        int offsetMismatch = 0;
+        for (int i = 0; i < count; i++) {
+            long firstOffset = -1;
+            for (int attempt = 0; attempt < retries; attempt++) {
+                Level12Message message = new Level12Message();
+                message.setMessageId(UUID.randomUUID().toString());
+                message.setTopic(topic);
+                message.setTag("order");
+                message.setKey("DEDUP-" + i);
+                message.setIdempotencyKey(batchId + "-" + i);
+                message.setBody(generateOrderJson(i, 4));
+                message.setCreateTime(System.currentTimeMillis());
+                message.setQueueId(i % 4);
+
+                PutMessageResult result = bestStore.putMessage(message);
+                statusCount.merge(result.getStatus(), 1, Integer::sum);
+                if (result.isOk()) {
+                    long offset = result.getAppendResult().getPhysicalOffset();
+                    if (firstOffset < 0) {
+                        firstOffset = offset;
+                    } else if (offset != firstOffset) {
+                        offsetMismatch++;
+                    }
+                }
+            }
+        }
+
+        return String.format("""
+                ✅ 发送完成
+
+                - 消息数: %,d（每条发送 %d 次）
+                - 耗时: %,d ms
+                - 写入状态: %s
+                - 重复发送返回的偏移量与第一次不同: %,d
+
+                💡 测试建议：
+                - 查看去重统计
+                  curl "http://localhost:8086/challenge/level12/best/dedup/stats"
+                """,
+                count, retries, System.currentTimeMillis() - startTime, statusCount, offsetMismatch);
+    }
+
+    /**
+     * 幂等键去重统计
+     */
+    @GetMapping("/best/dedup/stats")
+    public String dedupStats() {
+        IdempotencyKeyTable table = bestStore.getIdempotencyKeyTable();
+        return String.format("""
+                🔁 幂等键去重统计
+
+                - 去重窗口: %,d ms（当前代开始于 %s）
+                - 当前代 / 上一代幂等键数: %,d / %,d
+                - 切换代次数: %,d
+                - 布隆过滤器直接判定为新消息: %,d
+                - 布隆过滤器误判（查键表后不是重复）: %,d
+                - 重复消息（未再次写入）: %,d
+                """,
+                bestStore.getStoreConfig().getDedupWindowMs(),
+                new Date(table.getCurrentBeginTime()),
+                table.getCurrentKeyCount(),
+                table.getPreviousKeyCount(),
+                table.getRotateCount(),
+                table.getBloomNegativeCount(),
+                table.getBloomFalsePositiveCount(),
+                table.getDuplicateCount()
+        );
+    }
+
+    // ==================== 流式拉取测试接口 ====================
+
+    /**
+     * 流式拉取 Queue 的一个区间，边读边写，不在内存中拼接结果，区间大小不受限制
+     *
+     * format=binary：每帧 队列索引(8) + 帧内起始序号(4) + 消息数(4) + 原始记录（长度(4) + 记录内容，见 MessageCodec），
+     * 最后一帧的帧内起始序号为 -1，队列索引为下次续传的起始索引，消息数为结束原因序号（见 QueueStreamService.EndReason）
+     *
+     * format=ndjson：每行一条消息，最后一行为 {"nextOffset":..,"end":".."}
+     *
+     * 连接中途断开时，从最后收到的 队列索引 + 消息数 继续拉取即可
+     *
+     * curl -s "http://localhost:8086/challenge/level12/best/stream?format=ndjson&maxCount=10"
+     * curl -s "http://localhost:8086/challenge/level12/best/stream?fromOffset=0&rateMBps=50" -o queue0.bin
+     */
+    @GetMapping("/best/stream")
+    public ResponseEntity<StreamingResponseBody> streamQueue(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "0") int queueId,
+            @RequestParam(defaultValue = "0") long fromOffset,
+            @RequestParam(defaultValue = "-1") long toOffset,
+            @RequestParam(defaultValue = "0") long maxCount,
+            @RequestParam(defaultValue = "binary") String format,
+            @RequestParam(defaultValue = "0") int rateMBps) {
+        QueueStreamService.Format streamFormat;
+        try {
+            streamFormat = QueueStreamService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body(out -> out.write(("❌ 不支持的格式: " + format + "（binary / ndjson）\n").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        StreamingResponseBody body = out -> bestStore.streamQueue(topic, queueId, fromOffset, toOffset, maxCount,
+                streamFormat, rateMBps, out);
+        return ResponseEntity.ok()
+                .contentType(streamFormat == QueueStreamService.Format.NDJSON
+                        ? MediaType.parseMediaType("application/x-ndjson")
+                        : MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    // ==================== 多队列拉取测试接口 ====================
+
+    /**
+     * 一次调用拉取多个 Topic 的全部队列，起始索引为消费组已提交的进度（没有提交过从 0 开始）
+     *
+     * commit=true 时把每个队列的 nextBeginOffset 提交为新的进度，连续调用即可模拟消费者一轮轮拉取；
+     * 同时给出逐个队列调用 getMessage 的耗时做对比
+     *
+     * curl "http://localhost:8086/challenge/level12/best/pullMulti?totalMax=1000&commit=true"
+     */
+    @GetMapping("/best/pullMulti")
+    public String pullMulti(
+            @RequestParam(defaultValue = "level12-order-topic,level12-payment-topic") String topics,
+            @RequestParam(defaultValue = "level12-multi-group") String group,
+            @RequestParam(defaultValue = "1000") int totalMax,
+            @RequestParam(defaultValue = "4194304") int maxBytes,
+            @RequestParam(defaultValue = "false") boolean commit) {
+        List<MultiQueuePullService.QueueRequest> requests = new ArrayList<>();
+        for (String topic : topics.split(",")) {
+            for (ConsumeQueue consumeQueue : bestStore.getConsumeQueues(topic.trim())) {
+                long offset = bestStore.queryConsumerOffset(group, topic.trim(), consumeQueue.getQueueId());
+                requests.add(new MultiQueuePullService.QueueRequest(topic.trim(), consumeQueue.getQueueId(), Math.max(0, offset)));
+            }
+        }
+        if (requests.isEmpty()) {
+            return "❌ 没有找到队列: " + topics;
+        }
+
+        MultiQueuePullService.PullMultiResult result = bestStore.pullMulti(requests, totalMax, maxBytes);
+
+        // 对比：逐个队列调用 getMessage，每个队列分到同样的平均额度
+        int perQueue = Math.max(1, totalMax / requests.size());
+        long loopStart = System.nanoTime();
+        int loopCount = 0;
+        for (MultiQueuePullService.QueueRequest request : requests) {
+            loopCount += bestStore.getMessage(request.getTopic(), request.getQueueId(), request.getOffset(), perQueue).size();
+        }
+        long loopCostMicros = (System.nanoTime() - loopStart) / 1000;
+
+        int minPerQueue = Integer.MAX_VALUE;
+        int maxPerQueue = 0;
+        int servedQueues = 0;
+        for (MultiQueuePullService.QueueResult queue : result.getQueues()) {
+            int size = queue.getMessages().size();
+            minPerQueue = Math.min(minPerQueue, size);
+            maxPerQueue = Math.max(maxPerQueue, size);
+            if (size > 0) {
+                servedQueues++;
+            }
+            if (commit) {
+                bestStore.commitConsumerOffset(group, queue.getTopic(), queue.getQueueId(), queue.getNextBeginOffset());
+            }
+        }
+
+        return String.format("""
+                ✅ 多队列拉取完成
+
+                请求：
+                - 队列数: %,d
+                - 合计条数上限: %,d
+                - 合计字节上限: %,d
+
+                结果：
+                - 消息数: %,d
+                - 读取字节: %,d
+                - 分配轮数: %d
+                - 有消息的队列: %,d
+                - 单队列消息数: 最少 %,d / 最多 %,d
+                - 耗时: %d ms
+                - 进度已提交: %s
+
+                对比（逐个队列 getMessage，每个队列 %,d 条）：
+                - 调用次数: %,d
+                - 消息数: %,d
+                - 耗时: %,d μs
+
+                💡 测试建议：
+                - 连续调用，观察每轮各队列都能分到额度
+                  curl "http://localhost:8086/challenge/level12/best/pullMulti?totalMax=1000&commit=true"
+                - 限制字节数
+                  curl "http://localhost:8086/challenge/level12/best/pullMulti?totalMax=10000&maxBytes=65536"
+                """,
+                requests.size(), totalMax, maxBytes,
+                result.getMessageCount(), result.getReadBytes(), result.getRounds(), servedQueues,
+                minPerQueue, maxPerQueue, result.getCostTime(), commit,
+                perQueue, requests.size(), loopCount, loopCostMicros
+        );
+    }
+
+    // ==================== 堆积指标测试接口 ====================
+
+    /**
+     * 提交消费组在一个 Queue 上的消费进度（下一条要消费的索引）
+     */
+    @GetMapping("/best/offset/commit")
+    public String commitOffset(
+            @RequestParam(defaultValue = "level12-order-group") String group,
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "0") int queueId,
+            @RequestParam long offset) {
+        bestStore.commitConsumerOffset(group, topic, queueId, offset);
+        return String.format("""
+                ✅ 消费进度已提交: group=%s, topic=%s, queueId=%d, offset=%,d
+
+                💡 测试建议：
+                - 查看消费堆积
+                  curl "http://localhost:8086/challenge/level12/best/lag"
+                """, group, topic, queueId, offset);
+    }
+
+    /**
+     * 分发堆积、队列水位、消费堆积（可读格式）
+     */
+    @GetMapping("/best/lag")
+    public String lagStats() {
+        StoreLagMetrics.LagSnapshot snapshot = bestStore.collectLagMetrics();
+
+        StringBuilder groups = new StringBuilder();
+        for (StoreLagMetrics.GroupGauge group : snapshot.getGroups()) {
+            groups.append(String.format("- %s / %s / %d: 进度 %,d / %,d，堆积 %,d，最早未消费 %,d ms%n",
+                    group.getGroup(), group.getTopic(), group.getQueueId(), group.getCommittedOffset(),
+                    group.getMaxOffset(), group.getLag(), group.getOldestUnconsumedAgeMs()));
+        }
+        if (groups.length() == 0) {
+            groups.append("- 还没有消费组提交过进度\n");
+        }
+
+        return String.format("""
+                📈 堆积指标
+
+                分发（Reput）：
+                - CommitLog 最大偏移量: %,d
+                - 已分发偏移量: %,d
+                - 分发堆积: %,d 字节 / %,d ms
+
+                队列数: %,d
+
+                消费组（消费组 / Topic / Queue）：
+                %s
+                💡 测试建议：
+                - Prometheus 抓取格式
+                  curl "http://localhost:8086/challenge/level12/best/metrics"
+                - 提交消费进度后观察堆积变化
+                  curl "http://localhost:8086/challenge/level12/best/offset/commit?offset=100"
+                """,
+                snapshot.getCommitLogMaxOffset(), snapshot.getReputOffset(),
+                snapshot.getReputLagBytes(), snapshot.getReputLagMs(),
+                snapshot.getQueues().size(), groups);
+    }
+
+    /**
+     * 堆积指标（Prometheus 文本格式，可直接配置为抓取目标）
+     */
+    @GetMapping(value = "/best/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String lagMetrics() {
+        return StoreLagMetrics.formatPrometheus(bestStore.collectLagMetrics());
+    }
+
+    // ==================== ConsumeQueue 重建测试接口 ====================
+
+    /**
+     * 丢弃全部 ConsumeQueue，从 CommitLog 并行重建（重建期间 ConsumeQueue 不可读）
+     */
+    @GetMapping("/best/cq/rebuild")
+    public String rebuildConsumeQueues() {
+        try {
+            ConsumeQueueRebuildService.RebuildResult result = bestStore.rebuildConsumeQueues();
+            double mbPerSecond = result.getCostTime() == 0 ? 0
+                    : (result.getNextOffset() - result.getFromOffset()) / 1024.0 / 1024.0 * 1000 / result.getCostTime();
+            return String.format("""
+                    ✅ ConsumeQueue 重建完成: %,d -> %,d
+
+                    - 解析线程: %d
+                    - 分段数: %,d
+                    - 记录数: %,d（批量帧算一条）
+                    - 消息数: %,d（其中定时消息入轮 %,d）
+                    - 跳过的无效记录: %,d
+                    - 队列数: %,d
+                    - 耗时: %,d ms（%.1f MB/s）
+
+                    💡 测试建议：
+                    - 对比线程数：修改 consumeQueueRebuildThreads 后再次重建
+                    - 查看队列水位
+                      curl "http://localhost:8086/challenge/level12/best/lag"
+                    """,
+                    result.getFromOffset(), result.getNextOffset(), result.getThreads(), result.getSegmentCount(),
+                    result.getRecordCount(), result.getMessageCount(), result.getTimerCount(),
+                    result.getSkippedRecordCount(), result.getQueueCount(), result.getCostTime(), mbPerSecond);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "❌ 重建被中断";
+        } catch (IllegalStateException e) {
+            log.error("❌ 重建 ConsumeQueue 失败", e);
+            return "❌ 重建失败: " + e.getMessage();
+        }
+    }
+
+    // ==================== Key 压缩（Compaction）测试接口 ====================
+
+    /**
+     * 开启 Topic 的 Key 压缩
+     */
+    @GetMapping("/best/compaction/enable")
+    public String enableCompaction(@RequestParam(defaultValue = "level12-order-topic") String topic) {
+        bestStore.enableCompaction(topic);
+        return String.format("""
+                ✅ 已开启 Key 压缩: %s
+
+                💡 测试建议：
+                - 用相同 Key 多次发送消息
+                  curl "http://localhost:8086/challenge/level12/best/sendMessage?topic=%s&key=ORDER-001&body=PAID"
+                - 删除 Key（写入删除标记）
+                  curl "http://localhost:8086/challenge/level12/best/compaction/deleteKey?topic=%s&key=ORDER-001"
+                - 手动触发压缩（只压缩已封存的 CommitLog 文件）
+                  curl "http://localhost:8086/challenge/level12/best/compaction/run"
+                """, topic, topic, topic);
+    }
+
+    /**
+     * 写入删除标记
+     */
+    @GetMapping("/best/compaction/deleteKey")
+    public String deleteKey(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "0") int queueId,
+            @RequestParam String key) {
+        PutMessageResult result = bestStore.deleteKey(topic, queueId, key, UUID.randomUUID().toString());
+        if (!result.isOk()) {
+            return String.format("❌ 写入删除标记失败: topic=%s, key=%s, status=%s", topic, key, result.getStatus());
+        }
+        return String.format("✅ 已写入删除标记: topic=%s, queueId=%d, key=%s", topic, queueId, key);
+    }
+
+    /**
+     * 手动触发压缩
+     */
+    @GetMapping("/best/compaction/run")
+    public String runCompaction() {
+        long startTime = System.currentTimeMillis();
+        int compacted = bestStore.compactNow();
+        return String.format("✅ 压缩完成: 生成新快照的 Queue 数量=%d, 耗时=%,d ms",
+                compacted, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 模拟新消费者启动：先读压缩快照，再从快照之后的位置正常消费
+     */
+    @GetMapping("/best/compaction/bootstrap")
+    public String bootstrapCompacted(
+            @RequestParam(defaultValue = "level12-order-topic") String topic,
+            @RequestParam(defaultValue = "0") int queueId) {
+
+        CompactedQueue.Snapshot snapshot = bestStore.getCompactedSnapshot(topic, queueId);
+        if (snapshot == null) {
+            return "❌ Topic 未开启压缩或还没有生成压缩快照: " + topic;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long snapshotCount = 0;
+        long tombstones = 0;
+        for (long index = 0; index < snapshot.getCount(); ) {
+            List<Level12Message> messages = bestStore.readCompacted(snapshot, index, 1000);
+            if (messages.isEmpty()) {
+                break;
+            }
+            for (Level12Message message : messages) {
+                if (message.getBody() == null) {
+                    tombstones++;
+                }
+            }
+            snapshotCount += messages.size();
+            index += messages.size();
+        }
+
+        long liveCount = 0;
+        for (long offset = snapshot.getResumeQueueOffset(); ; ) {
+            List<Level12Message> messages = bestStore.getMessage(topic, queueId, offset, 1000);
+            if (messages.isEmpty()) {
+                break;
+            }
+            liveCount += messages.size();
+            offset += messages.size();
+        }
+
+        long fullHistory = bestStore.findConsumeQueue(topic, queueId).getMaxIndex();
+
+        return String.format("""
+                ✅ 压缩快照读取完成
+
+                快照信息：
+                - Generation: %d
+                - 快照消息数: %,d（其中删除标记 %,d）
+                - 快照之后的增量消息: %,d（从队列偏移量 %,d 开始）
+                - 耗时: %,d ms
+
+                对比：
+                - 完整历史消息数: %,d
+                - 实际读取消息数: %,d
+                """,
+                snapshot.getGeneration(), snapshotCount, tombstones,
+                liveCount, snapshot.getResumeQueueOffset(),
+                System.currentTimeMillis() - startTime,
+                fullHistory, snapshotCount + liveCount
+        );
+    }
+
+    // ==================== 开环压测接口 ====================
+
+    /**
+     * 开环压测：按目标速率和固定节奏读写，延迟从计划发送时间算起（见 LoadGenerator）
+     *
+     * 每个引擎在 store/level12/loadgen 下的新目录中压测，结束后删除，不影响其他接口使用的存储；
+     * 相同参数（含 seed）下各引擎的操作序列完全相同，engine=ALL 依次压测三个引擎并输出对比表
+     *
+     * curl -s "http://localhost:8086/challenge/level12/loadgen/run?engine=BEST&rate=5000&duration=10"
+     * curl -s "http://localhost:8086/challenge/level12/loadgen/run?engine=ALL&rate=2000&readRatio=0.2&sizes=256:90,65536:10"
+     */
+    @GetMapping("/loadgen/run")
+    public String runLoadGenerator(
+            @RequestParam(defaultValue = "BEST") String engine,
+            @RequestParam(defaultValue = "1000") int rate,
+            @RequestParam(defaultValue = "10") int duration,
+            @RequestParam(defaultValue = "2") int warmup,
+            @RequestParam(defaultValue = "16") int threads,
+            @RequestParam(defaultValue = "0.5") double readRatio,
+            @RequestParam(defaultValue = "256:70,1024:25,4096:5") String sizes,
+            @RequestParam(defaultValue = "5") int topics,
+            @RequestParam(defaultValue = "4") int queues,
+            @RequestParam(defaultValue = "10000") int prefill,
+            @RequestParam(defaultValue = "12") long seed) {
+
+        if (duration + warmup > 300) {
+            return "❌ 压测时长（含预热）不能超过 300 秒";
+        }
+
+        List<EngineType> engineTypes = new ArrayList<>();
+        try {
+            if ("ALL".equalsIgnoreCase(engine)) {
+                engineTypes.addAll(List.of(EngineType.values()));
+            } else {
+                engineTypes.add(EngineType.valueOf(engine.toUpperCase()));
+            }
+        } catch (IllegalArgumentException e) {
+            return "❌ 不支持的引擎: " + engine + "（BUGGY / FIXED / BEST / ALL）";
+        }
+
+        LoadProfile profile = new LoadProfile();
+        profile.setTargetRate(rate);
+        profile.setDurationSeconds(duration);
+        profile.setWarmupSeconds(warmup);
+        profile.setThreads(threads);
+        profile.setReadRatio(readRatio);
+        profile.setMessageSizes(sizes);
+        profile.setTopics(topics);
+        profile.setQueuesPerTopic(queues);
+        profile.setPrefillCount(prefill);
+        profile.setSeed(seed);
+
+        LoadGenerator generator;
+        try {
+            generator = new LoadGenerator(profile);
+        } catch (IllegalArgumentException e) {
+            return "❌ 压测参数错误: " + e.getMessage();
+        }
+
+        List<LoadReport> reports = new ArrayList<>();
+        for (EngineType engineType : engineTypes) {
+            Path dir = Paths.get(Level12Constants.LOADGEN_STORE_PATH,
+                    engineType.name().toLowerCase() + "-" + System.currentTimeMillis());
+            try {
+                reports.add(generator.run(engineType, dir));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "❌ 压测被中断";
+            } catch (Exception e) {
+                log.error("❌ 开环压测失败: engine={}", engineType, e);
+                return "❌ 开环压测失败（" + engineType + "）: " + e.getMessage();
+            } finally {
+                deleteDir(dir);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (LoadReport report : reports) {
+            sb.append(report.format()).append('\n');
+        }
+        if (reports.size() > 1) {
+            sb.append("📊 引擎对比（延迟从计划时间算起，单位 ms）：\n\n")
+                    .append(LoadReport.formatComparison(reports))
+                    .append('\n');
+        }
+        sb.append("""
+                💡 测试建议：
+                1. 先用较低速率跑出基线，再逐步加速率，找到 p99 开始陡升的拐点，按拐点而不是平均值规划容量
+                2. "写入延迟" 与 "服务时间" 差得多，说明存储停顿让后续请求排了队（闭环压测看不到这部分）
+                3. 报告提示有未发出的操作时，说明存储跟不上目标速率，结果不可信，请降低速率
+                4. 对比引擎时保持 seed 等参数一致，各引擎的操作序列完全相同
+                """);
+        return sb.toString();
+    }
+
+    /**
+     * 递归删除目录
+     */
+    private void deleteDir(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("⚠️ 删除压测目录失败: {}", dir, e);
+        }
+    }
+
     /**
      * 生成指定大小的消息体
      */
+    private String generateOrderJson(int orderId, int items) {
+        StringBuilder sb = new StringBuilder("{\"orderId\":").append(orderId).append(",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sku\":\"SKU-").append(random.nextInt(1000))
+                .append("\",\"quantity\":").append(1 + random.nextInt(5))
+                .append(",\"price\":").append(random.nextInt(10000))
+                .append(",\"currency\":\"CNY\",\"warehouse\":\"WH-SHANGHAI-01\"}");
+        }
+        return sb.append("]}").toString();
+    }
+
     private String generateMessageBody(int size) {
         StringBuilder sb = new StringBuilder(size);
         for (int i = 0; i < size; i++) {
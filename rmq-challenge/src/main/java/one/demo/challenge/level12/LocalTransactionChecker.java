@@ -0,0 +1,28 @@
+package one.demo.challenge.level12;
+
+/**
+ * 本地事务回查
+ *
+ * 半消息超过 transactionTimeoutMs 仍没有提交或回滚时，由 TransactionalMessageService 调用，
+ * 生产者根据本地事务（通常是数据库里的业务状态）给出结果
+ */
+@FunctionalInterface
+public interface LocalTransactionChecker {
+
+    /**
+     * 回查本地事务状态
+     *
+     * @param halfMessage 半消息（topic 为内部半消息 Topic，真实 Topic 见 realTopic）
+     * @return 事务状态，UNKNOWN 表示稍后再查
+     */
+    Resolution check(Level12Message halfMessage);
+
+    /**
+     * 本地事务状态
+     */
+    enum Resolution {
+        COMMIT,
+        ROLLBACK,
+        UNKNOWN
+    }
+}
@@ -6,9 +6,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 内存映射文件 - 零拷贝实现
@@ -17,6 +19,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 1. 使用 mmap 将文件映射到内存，避免用户态/内核态切换
  * 2. 利用操作系统 PageCache，提高读写性能
  * 3. 固定文件大小，便于管理和定位
+ * 4. 读写方式可选（见 StoreIoBackend）：mmap、FileChannel 定位读写、写 FileChannel + 读 mmap
+ * 5. 引用计数：不加锁的读取方先 hold 再读、读完 release，destroy 之后等最后一个读取方 release 才关闭并删除文件
  */
 @Slf4j
 public class MappedFile {
@@ -33,8 +37,11 @@ public class MappedFile {
     // 文件通道
     private FileChannel fileChannel;
 
-    // 内存映射缓冲区
-    private MappedByteBuffer mappedByteBuffer;
+    // I/O 方式
+    private final StoreIoBackend.Type ioBackendType;
+
+    // 读写实现
+    private StoreIoBackend ioBackend;
 
     // 当前写入位置（相对于文件开头）
     private final AtomicInteger wrotePosition = new AtomicInteger(0);
@@ -45,6 +52,15 @@ public class MappedFile {
     // 是否可用
     private volatile boolean available = true;
 
+    // 是否已写满（剩余空间不足以容纳下一条消息时标记，之后不再写入）
+    private volatile boolean full = false;
+
+    // 引用计数：创建时为 1（文件队列持有），归零后关闭并删除文件，之后不能再 hold
+    private final AtomicLong refCount = new AtomicLong(1);
+
+    // 是否已调用 destroy（文件队列的引用只释放一次）
+    private final AtomicBoolean destroyed = new AtomicBoolean(false);
+
     /**
      * 构造函数
      *
@@ -52,8 +68,20 @@ public class MappedFile {
      * @param fileSize 文件大小
      */
     public MappedFile(String fileName, int fileSize) throws IOException {
+        this(fileName, fileSize, StoreIoBackend.Type.MMAP);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param fileName 文件路径
+     * @param fileSize 文件大小
+     * @param ioBackendType I/O 方式
+     */
+    public MappedFile(String fileName, int fileSize, StoreIoBackend.Type ioBackendType) throws IOException {
         this.fileName = fileName;
         this.fileSize = fileSize;
+        this.ioBackendType = ioBackendType;
 
         // 从文件名解析起始偏移量
         File file = new File(fileName);
@@ -65,7 +93,7 @@ public class MappedFile {
         // 创建文件并映射到内存
         init();
 
-        log.info("✅ MappedFile 创建成功: {}, size: {} bytes", fileName, fileSize);
+        log.info("✅ MappedFile 创建成功: {}, size: {} bytes, io: {}", fileName, fileSize, ioBackendType);
     }
 
     /**
@@ -78,12 +106,8 @@ public class MappedFile {
         RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
         this.fileChannel = randomAccessFile.getChannel();
 
-        // 内存映射（零拷贝）
-        this.mappedByteBuffer = fileChannel.map(
-            FileChannel.MapMode.READ_WRITE,
-            0,
-            fileSize
-        );
+        // 按 I/O 方式映射或预分配文件
+        this.ioBackend = StoreIoBackend.open(ioBackendType, fileChannel, fileSize);
     }
 
     /**
@@ -93,25 +117,7 @@ public class MappedFile {
      * @return 全局物理偏移量，-1 表示文件已满
      */
     public long appendMessage(byte[] data) {
-        int currentPos = wrotePosition.get();
-
-        // 检查空间是否足够
-        if (currentPos + data.length > fileSize) {
-            log.warn("⚠️ MappedFile 空间不足: currentPos={}, dataLen={}, fileSize={}",
-                currentPos, data.length, fileSize);
-            return -1;
-        }
-
-        // 写入数据
-        ByteBuffer buffer = mappedByteBuffer.slice();
-        buffer.position(currentPos);
-        buffer.put(data);
-
-        // 更新写入位置
-        wrotePosition.addAndGet(data.length);
-
-        // 返回全局物理偏移量
-        return fileFromOffset + currentPos;
+        return appendMessage(ByteBuffer.wrap(data));
     }
 
     /**
@@ -132,9 +138,12 @@ public class MappedFile {
         }
 
         // 写入数据
-        ByteBuffer slice = mappedByteBuffer.slice();
-        slice.position(currentPos);
-        slice.put(buffer);
+        try {
+            ioBackend.write(currentPos, buffer);
+        } catch (IOException e) {
+            log.error("❌ MappedFile 写入失败: {}, position={}", fileName, currentPos, e);
+            return -1;
+        }
 
         // 更新写入位置
         wrotePosition.addAndGet(remaining);
@@ -168,12 +177,12 @@ public class MappedFile {
             return null;
         }
 
-        // 创建切片
-        ByteBuffer slice = mappedByteBuffer.slice();
-        slice.position(pos);
-        slice.limit(pos + size);
-
-        return slice.slice();
+        try {
+            return ioBackend.read(pos, size);
+        } catch (IOException e) {
+            log.error("❌ MappedFile 读取失败: {}, position={}, size={}", fileName, position, size, e);
+            return null;
+        }
     }
 
     /**
@@ -202,7 +211,12 @@ public class MappedFile {
         int lastCommittedPos = committedPosition.get();
 
         if (writePos > lastCommittedPos) {
-            mappedByteBuffer.force();
+            try {
+                ioBackend.flush();
+            } catch (IOException e) {
+                log.error("❌ MappedFile 刷盘失败: {}", fileName, e);
+                return;
+            }
             committedPosition.set(writePos);
             log.debug("💾 MappedFile 刷盘: {}, position: {}", fileName, writePos);
         }
@@ -229,6 +243,73 @@ public class MappedFile {
         }
     }
 
+    /**
+     * 持有文件，读取期间文件不会被关闭、删除
+     *
+     * @return 是否持有成功，文件已经销毁时返回 false（调用方按文件已删除处理）
+     */
+    public boolean hold() {
+        while (true) {
+            long count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放 hold 持有的引用，最后一个引用释放时关闭并删除文件
+     */
+    public void release() {
+        if (refCount.decrementAndGet() == 0) {
+            shutdown();
+            if (new File(fileName).delete()) {
+                log.info("🗑️ MappedFile 已删除: {}", fileName);
+            } else {
+                log.warn("⚠️ MappedFile 删除失败: {}", fileName);
+            }
+        }
+    }
+
+    /**
+     * 关闭并删除文件：释放文件队列持有的引用，还有读取方持有时由最后一个 release 完成
+     */
+    public void destroy() {
+        if (destroyed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    /**
+     * 把 [position, position + size) 的数据从文件通道直接发送到目标通道（零拷贝）
+     *
+     * @param position 全局物理偏移量
+     * @param size 发送大小
+     * @param target 目标通道（阻塞模式）
+     */
+    public void transferTo(long position, int size, WritableByteChannel target) throws IOException {
+        long pos = position - fileFromOffset;
+        ioBackend.commit();
+        long transferred = 0;
+        while (transferred < size) {
+            transferred += fileChannel.transferTo(pos + transferred, size - transferred, target);
+        }
+    }
+
+    /**
+     * 整个文件的只读视图（不受写入位置限制，仅用于重启恢复时扫描）
+     */
+    public ByteBuffer sliceWholeFile() {
+        try {
+            return ioBackend.readOnlyView();
+        } catch (IOException e) {
+            throw new IllegalStateException("映射文件失败: " + fileName, e);
+        }
+    }
+
     /**
      * 确保目录存在
      */
@@ -245,7 +326,23 @@ public class MappedFile {
      * 是否已满
      */
     public boolean isFull() {
-        return wrotePosition.get() >= fileSize;
+        return full || wrotePosition.get() >= fileSize;
+    }
+
+    /**
+     * 标记文件已写满
+     *
+     * 剩余空间放不下下一条消息时调用，文件尾部留空，
+     * 读取方读到 wrotePosition 即视为文件结束，需要跳到下一个文件
+     */
+    public void markFull() {
+        this.full = true;
+        try {
+            // 封存前把写入缓冲中的数据写到文件，后台扫描（CRC 巡检、归档）直接读文件
+            ioBackend.commit();
+        } catch (IOException e) {
+            log.error("❌ MappedFile 提交写入缓冲失败: {}", fileName, e);
+        }
     }
 
     /**
@@ -269,10 +366,22 @@ public class MappedFile {
         return fileSize;
     }
 
+    public StoreIoBackend.Type getIoBackendType() {
+        return ioBackendType;
+    }
+
     public int getWrotePosition() {
         return wrotePosition.get();
     }
 
+    /**
+     * 设置写入位置（仅用于重启恢复）
+     */
+    public void setWrotePosition(int position) {
+        wrotePosition.set(position);
+        committedPosition.set(position);
+    }
+
     public boolean isAvailable() {
         return available;
     }
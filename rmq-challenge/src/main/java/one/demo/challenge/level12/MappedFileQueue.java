@@ -5,8 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -17,6 +18,11 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * 1. 管理多个 MappedFile，按文件起始偏移量排序
  * 2. 自动创建新文件（当前文件写满时）
  * 3. 根据全局偏移量定位到具体的 MappedFile
+ * 4. 已删除（归档到冷存储）的偏移量交给 FallbackReader 读取
+ *
+ * 文件列表以不可变快照（Segments）发布：只有创建新文件、删除文件、关闭时在写锁内替换快照，
+ * 读取不加锁，按偏移量定位文件只需要一次除法和一次边界检查，不会和文件切换互相阻塞。
+ * 读取时拿到的文件可能刚从新快照中删除，读取期间 hold 住文件（见 MappedFile.hold），删除等读取结束后才真正关闭文件
  */
 @Slf4j
 public class MappedFileQueue {
@@ -27,14 +33,17 @@ public class MappedFileQueue {
     // 单个文件大小
     private final int mappedFileSize; // 1GB
 
-    // MappedFile 列表（按起始偏移量排序）
-    private final CopyOnWriteArrayList<MappedFile> mappedFiles = new CopyOnWriteArrayList<>();
+    // 文件的 I/O 方式
+    private final StoreIoBackend.Type ioBackendType;
+
+    // MappedFile 列表快照（按起始偏移量排序，最后一个为当前写入的文件），只在写锁内替换
+    private volatile Segments segments = Segments.EMPTY;
 
-    // 读写锁
+    // 读写锁：替换快照、恢复写入位置时持有写锁
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
-    // 当前写入的 MappedFile
-    private volatile MappedFile currentWriteMappedFile;
+    // 热数据文件之前的偏移量的读取（冷存储），没有为 null
+    private volatile FallbackReader fallbackReader;
 
     /**
      * 构造函数
@@ -43,8 +52,20 @@ public class MappedFileQueue {
      * @param mappedFileSize 单个文件大小
      */
     public MappedFileQueue(String storePath, int mappedFileSize) {
+        this(storePath, mappedFileSize, StoreIoBackend.Type.MMAP);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param mappedFileSize 单个文件大小
+     * @param ioBackendType 文件的 I/O 方式
+     */
+    public MappedFileQueue(String storePath, int mappedFileSize, StoreIoBackend.Type ioBackendType) {
         this.storePath = storePath;
         this.mappedFileSize = mappedFileSize;
+        this.ioBackendType = ioBackendType;
 
         // 确保目录存在
         File dir = new File(storePath);
@@ -74,11 +95,12 @@ public class MappedFileQueue {
             });
 
             // 加载每个文件
+            List<MappedFile> loaded = new ArrayList<>(files.length);
             for (File file : files) {
                 if (file.length() == mappedFileSize) {
                     try {
-                        MappedFile mappedFile = new MappedFile(file.getPath(), mappedFileSize);
-                        mappedFiles.add(mappedFile);
+                        MappedFile mappedFile = new MappedFile(file.getPath(), mappedFileSize, ioBackendType);
+                        loaded.add(mappedFile);
                         log.info("📂 加载 MappedFile: {}", file.getName());
                     } catch (IOException e) {
                         log.error("❌ 加载 MappedFile 失败: {}", file.getName(), e);
@@ -90,10 +112,7 @@ public class MappedFileQueue {
                 }
             }
 
-            // 设置当前写入文件
-            if (!mappedFiles.isEmpty()) {
-                currentWriteMappedFile = mappedFiles.get(mappedFiles.size() - 1);
-            }
+            segments = new Segments(loaded.toArray(new MappedFile[0]));
         }
     }
 
@@ -111,34 +130,29 @@ public class MappedFileQueue {
      * @return MappedFile
      */
     public MappedFile getLastMappedFile(long startOffset) {
-        MappedFile mappedFile = currentWriteMappedFile;
+        MappedFile mappedFile = segments.last();
 
         // 如果当前文件为空或已满，创建新文件
         if (mappedFile == null || mappedFile.isFull()) {
             readWriteLock.writeLock().lock();
             try {
                 // 双重检查
-                if (currentWriteMappedFile == null || currentWriteMappedFile.isFull()) {
+                Segments current = segments;
+                mappedFile = current.last();
+                if (mappedFile == null || mappedFile.isFull()) {
                     // 计算新文件的起始偏移量
-                    long newOffset;
-                    if (currentWriteMappedFile == null) {
-                        newOffset = startOffset;
-                    } else {
-                        newOffset = currentWriteMappedFile.getFileFromOffset() + mappedFileSize;
-                    }
+                    long newOffset = mappedFile == null ? startOffset : mappedFile.getFileFromOffset() + mappedFileSize;
 
                     // 创建新文件
                     String fileName = storePath + File.separator + String.format("%020d", newOffset);
-                    MappedFile newMappedFile = new MappedFile(fileName, mappedFileSize);
+                    mappedFile = new MappedFile(fileName, mappedFileSize, ioBackendType);
 
-                    mappedFiles.add(newMappedFile);
-                    currentWriteMappedFile = newMappedFile;
+                    // 文件映射完成后才发布新快照，读取方看到的文件都是可用的
+                    segments = current.append(mappedFile);
 
                     log.info("📝 创建新 MappedFile: offset={}", newOffset);
                 }
 
-                mappedFile = currentWriteMappedFile;
-
             } catch (IOException e) {
                 log.error("❌ 创建 MappedFile 失败", e);
                 throw new RuntimeException(e);
@@ -157,49 +171,45 @@ public class MappedFileQueue {
      * @return MappedFile，如果找不到返回 null
      */
     public MappedFile findMappedFileByOffset(long offset) {
-        readWriteLock.readLock().lock();
-        try {
-            // 二分查找
-            MappedFile firstMappedFile = getFirstMappedFile();
-            MappedFile lastMappedFile = getLastMappedFile();
-
-            if (firstMappedFile == null || lastMappedFile == null) {
-                return null;
-            }
-
-            // 检查范围
-            if (offset < firstMappedFile.getFileFromOffset() ||
-                offset >= lastMappedFile.getFileFromOffset() + mappedFileSize) {
-                log.warn("⚠️ 偏移量超出范围: offset={}, first={}, last={}",
-                    offset, firstMappedFile.getFileFromOffset(),
-                    lastMappedFile.getFileFromOffset() + mappedFileSize);
-                return null;
-            }
+        // 不加锁：读一次快照，之后文件切换、删除都不影响这次查找
+        Segments current = segments;
+        MappedFile[] files = current.files;
+        if (files.length == 0) {
+            return null;
+        }
 
-            // 计算文件索引
-            int index = (int) ((offset - firstMappedFile.getFileFromOffset()) / mappedFileSize);
+        // 检查范围
+        long endOffset = files[files.length - 1].getFileFromOffset() + mappedFileSize;
+        if (offset < current.baseOffset || offset >= endOffset) {
+            log.warn("⚠️ 偏移量超出范围: offset={}, first={}, last={}", offset, current.baseOffset, endOffset);
+            return null;
+        }
 
-            if (index >= 0 && index < mappedFiles.size()) {
-                MappedFile targetFile = mappedFiles.get(index);
-                if (offset >= targetFile.getFileFromOffset() &&
-                    offset < targetFile.getFileFromOffset() + mappedFileSize) {
-                    return targetFile;
-                }
-            }
+        // 文件连续时按下标直接定位
+        int index = (int) ((offset - current.baseOffset) / mappedFileSize);
+        if (index < files.length && contains(files[index], offset)) {
+            return files[index];
+        }
 
-            // 如果计算的索引不对，遍历查找
-            for (MappedFile mappedFile : mappedFiles) {
-                if (offset >= mappedFile.getFileFromOffset() &&
-                    offset < mappedFile.getFileFromOffset() + mappedFileSize) {
-                    return mappedFile;
-                }
+        // 文件不连续（加载时跳过了不完整的文件）时二分查找
+        int low = 0;
+        int high = files.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            MappedFile mappedFile = files[mid];
+            if (offset < mappedFile.getFileFromOffset()) {
+                high = mid - 1;
+            } else if (offset >= mappedFile.getFileFromOffset() + mappedFileSize) {
+                low = mid + 1;
+            } else {
+                return mappedFile;
             }
-
-            return null;
-
-        } finally {
-            readWriteLock.readLock().unlock();
         }
+        return null;
+    }
+
+    private boolean contains(MappedFile mappedFile, long offset) {
+        return offset >= mappedFile.getFileFromOffset() && offset < mappedFile.getFileFromOffset() + mappedFileSize;
     }
 
     /**
@@ -209,13 +219,7 @@ public class MappedFileQueue {
      * @return 全局物理偏移量，-1 表示失败
      */
     public long append(byte[] data) {
-        MappedFile mappedFile = getLastMappedFile(0);
-        if (mappedFile == null) {
-            log.error("❌ 获取 MappedFile 失败");
-            return -1;
-        }
-
-        return mappedFile.appendMessage(data);
+        return append(ByteBuffer.wrap(data));
     }
 
     /**
@@ -233,8 +237,10 @@ public class MappedFileQueue {
 
         long offset = mappedFile.appendMessage(buffer);
 
-        // 如果当前文件已满，尝试创建新文件
+        // 如果当前文件已满，标记后创建新文件重试
+        // （不标记的话 isFull() 仍为 false，getLastMappedFile 会一直返回同一个文件）
         if (offset == -1) {
+            mappedFile.markFull();
             mappedFile = getLastMappedFile(0);
             if (mappedFile != null) {
                 offset = mappedFile.appendMessage(buffer);
@@ -244,6 +250,36 @@ public class MappedFileQueue {
         return offset;
     }
 
+    /**
+     * 在指定偏移量追加数据（从节点复制使用，偏移量与主节点一致）
+     *
+     * offset 必须等于当前最大偏移量，或者是下一个文件的起始偏移量
+     * （主节点文件尾部放不下一条记录时留有空闲空间，从节点也跳过），数据不能跨文件
+     *
+     * @param offset 全局物理偏移量
+     * @param buffer 数据
+     * @return 是否成功
+     */
+    public boolean appendAt(long offset, ByteBuffer buffer) {
+        MappedFile lastMappedFile = getLastMappedFileIfExists();
+        if (lastMappedFile == null) {
+            if (offset % mappedFileSize != 0) {
+                return false;
+            }
+        } else if (offset != getMaxOffset()) {
+            if (offset != lastMappedFile.getFileFromOffset() + mappedFileSize) {
+                return false;
+            }
+            lastMappedFile.markFull();
+        } else if (offset == lastMappedFile.getFileFromOffset() + mappedFileSize) {
+            // 上一个文件正好写满
+            lastMappedFile.markFull();
+        }
+
+        MappedFile mappedFile = getLastMappedFile(offset);
+        return mappedFile != null && mappedFile.appendMessage(buffer) == offset;
+    }
+
     /**
      * 读取数据
      *
@@ -252,26 +288,140 @@ public class MappedFileQueue {
      * @return 数据缓冲区
      */
     public ByteBuffer getData(long offset, int size) {
+        FallbackReader fallbackReader = this.fallbackReader;
+        if (fallbackReader != null && offset < getMinOffset()) {
+            return fallbackReader.read(offset, size);
+        }
+
         MappedFile mappedFile = findMappedFileByOffset(offset);
+        if (mappedFile != null && !mappedFile.hold()) {
+            // 查找之后文件被删除
+            mappedFile = null;
+        }
+        if (mappedFile == null && fallbackReader != null) {
+            // 检查之后文件刚好被归档删除
+            ByteBuffer buffer = fallbackReader.read(offset, size);
+            if (buffer != null) {
+                return buffer;
+            }
+        }
         if (mappedFile == null) {
             log.error("❌ 找不到 MappedFile: offset={}", offset);
             return null;
         }
 
-        return mappedFile.selectMappedBuffer(offset, size);
+        try {
+            return mappedFile.selectMappedBuffer(offset, size);
+        } finally {
+            mappedFile.release();
+        }
     }
 
     /**
-     * 刷盘
+     * 恢复写入位置
+     *
+     * 重启后加载的文件写入位置都是 0，需要根据外部记录的最大偏移量恢复：
+     * maxOffset 之前的文件视为已写满，maxOffset 所在文件从对应位置继续写入
+     *
+     * @param maxOffset 有效数据的最大偏移量
      */
-    public void flush() {
-        readWriteLock.readLock().lock();
+    public void recoverTo(long maxOffset) {
+        readWriteLock.writeLock().lock();
         try {
-            for (MappedFile mappedFile : mappedFiles) {
-                mappedFile.flush();
+            for (MappedFile mappedFile : segments.files) {
+                long fileFromOffset = mappedFile.getFileFromOffset();
+                if (maxOffset >= fileFromOffset + mappedFileSize) {
+                    mappedFile.setWrotePosition(mappedFileSize);
+                    mappedFile.markFull();
+                } else if (maxOffset > fileFromOffset) {
+                    mappedFile.setWrotePosition((int) (maxOffset - fileFromOffset));
+                } else {
+                    mappedFile.setWrotePosition(0);
+                }
             }
+
+            log.info("✅ MappedFileQueue 恢复完成: path={}, maxOffset={}", storePath, maxOffset);
+
         } finally {
-            readWriteLock.readLock().unlock();
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 扫描文件内容恢复写入位置
+     *
+     * 逐个文件从头校验存储单元，遇到第一个无效单元即视为该文件的有效数据结束：
+     * 非最后一个文件标记为已写满（尾部空闲空间被跳过），最后一个文件从有效数据末尾继续写入
+     *
+     * @param checker 存储单元校验器
+     * @return 有效数据的最大偏移量
+     */
+    public long recover(UnitChecker checker) {
+        readWriteLock.writeLock().lock();
+        try {
+            MappedFile[] files = segments.files;
+            long maxOffset = getMinOffset();
+            for (int i = 0; i < files.length; i++) {
+                MappedFile mappedFile = files[i];
+                ByteBuffer buffer = mappedFile.sliceWholeFile();
+
+                int position = 0;
+                while (position < mappedFileSize) {
+                    int unitSize = checker.check(buffer, position);
+                    if (unitSize <= 0) {
+                        break;
+                    }
+                    position += unitSize;
+                }
+
+                mappedFile.setWrotePosition(position);
+                if (i < files.length - 1) {
+                    mappedFile.markFull();
+                }
+                maxOffset = mappedFile.getFileFromOffset() + position;
+            }
+
+            log.info("✅ MappedFileQueue 扫描恢复完成: path={}, files={}, maxOffset={}",
+                storePath, files.length, maxOffset);
+
+            return maxOffset;
+
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除第一个文件（用于清理已过期的数据，不会删除正在写入的文件）
+     *
+     * @return 是否删除
+     */
+    public boolean deleteFirstMappedFile() {
+        readWriteLock.writeLock().lock();
+        try {
+            Segments current = segments;
+            if (current.files.length <= 1) {
+                return false;
+            }
+
+            // 先发布新快照再删除文件：之后的查找不会再拿到被删除的文件，
+            // 还在读取旧快照的读取方 hold 着文件，等它们 release 后才关闭
+            MappedFile firstMappedFile = current.first();
+            segments = current.removeFirst();
+            firstMappedFile.destroy();
+            return true;
+
+        } finally {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        for (MappedFile mappedFile : segments.files) {
+            mappedFile.flush();
         }
     }
 
@@ -281,11 +431,11 @@ public class MappedFileQueue {
     public void shutdown() {
         readWriteLock.writeLock().lock();
         try {
-            for (MappedFile mappedFile : mappedFiles) {
+            MappedFile[] files = segments.files;
+            segments = Segments.EMPTY;
+            for (MappedFile mappedFile : files) {
                 mappedFile.shutdown();
             }
-            mappedFiles.clear();
-            currentWriteMappedFile = null;
 
             log.info("✅ MappedFileQueue 已关闭: {}", storePath);
 
@@ -294,18 +444,29 @@ public class MappedFileQueue {
         }
     }
 
+    public void setFallbackReader(FallbackReader fallbackReader) {
+        this.fallbackReader = fallbackReader;
+    }
+
     /**
      * 获取第一个 MappedFile
      */
     public MappedFile getFirstMappedFile() {
-        return mappedFiles.isEmpty() ? null : mappedFiles.get(0);
+        return segments.first();
+    }
+
+    /**
+     * 获取最后一个 MappedFile（只读，不会创建新文件）
+     */
+    public MappedFile getLastMappedFileIfExists() {
+        return segments.last();
     }
 
     /**
      * 获取最大偏移量
      */
     public long getMaxOffset() {
-        MappedFile lastMappedFile = getLastMappedFile();
+        MappedFile lastMappedFile = getLastMappedFileIfExists();
         if (lastMappedFile == null) {
             return 0;
         }
@@ -334,6 +495,77 @@ public class MappedFileQueue {
     }
 
     public int getMappedFileCount() {
-        return mappedFiles.size();
+        return segments.files.length;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 文件列表快照（不可变）：新增、删除文件时整体替换
+     */
+    private static final class Segments {
+
+        static final Segments EMPTY = new Segments(new MappedFile[0]);
+
+        // 按起始偏移量排序
+        final MappedFile[] files;
+
+        // 第一个文件的起始偏移量
+        final long baseOffset;
+
+        Segments(MappedFile[] files) {
+            this.files = files;
+            this.baseOffset = files.length == 0 ? 0 : files[0].getFileFromOffset();
+        }
+
+        MappedFile first() {
+            return files.length == 0 ? null : files[0];
+        }
+
+        MappedFile last() {
+            return files.length == 0 ? null : files[files.length - 1];
+        }
+
+        Segments append(MappedFile mappedFile) {
+            MappedFile[] appended = Arrays.copyOf(files, files.length + 1);
+            appended[files.length] = mappedFile;
+            return new Segments(appended);
+        }
+
+        Segments removeFirst() {
+            return new Segments(Arrays.copyOfRange(files, 1, files.length));
+        }
+    }
+
+    /**
+     * 热数据文件之外的读取（例如已归档到冷存储的 CommitLog 文件）
+     */
+    @FunctionalInterface
+    public interface FallbackReader {
+
+        /**
+         * 读取热数据文件之外的数据
+         *
+         * @param offset 全局物理偏移量
+         * @param size 读取大小
+         * @return 数据，不存在返回 null
+         */
+        ByteBuffer read(long offset, int size);
+    }
+
+    /**
+     * 存储单元校验器（重启恢复时使用）
+     */
+    @FunctionalInterface
+    public interface UnitChecker {
+
+        /**
+         * 校验 position 处的存储单元
+         *
+         * @param fileBuffer 整个文件的只读视图
+         * @param position 文件内的相对位置
+         * @return 存储单元大小，<= 0 表示该位置没有有效数据
+         */
+        int check(ByteBuffer fileBuffer, int position);
     }
 }
@@ -0,0 +1,480 @@
+package one.demo.challenge.level12;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CommitLog 记录编解码
+ *
+ * 单条消息：
+ * <pre>
+ * 长度(4) | 0xB1(1) | 标志(1) | 消息体长度(4) | [CRC32C(4)] | 消息体 | 元数据 JSON（不含消息体）
+ * </pre>
+ * 批量帧（同一 Topic-Queue 的一批消息，整体压缩）：
+ * <pre>
+ * 长度(4) | 0xB2(1) | 标志(1) | 消息条数(4) | [CRC32C(4)] | 载荷（若干条单条消息记录拼接，可压缩） | 0xB2(1)
+ * </pre>
+ * 兼容旧格式：长度(4) | 消息 JSON（以 { 开头）
+ *
+ * 标志带 FLAG_CRC 时头部后面跟 4 字节 CRC32C，覆盖除校验和本身以外的整条记录（含长度前缀），
+ * 只有顶层记录带校验和（批量帧内的单条记录由整帧的校验和覆盖）；之前写入的记录没有校验和，照常读取
+ *
+ * 消息体超过阈值才压缩，压缩后没有变小就保留原文。
+ * 单条消息读取时不解压，压缩的消息体交给 Level12Message，第一次 getBody 时才解压，
+ * Reput、时间轮、SQL 过滤这些只看元数据的路径完全不碰消息体
+ */
+@Slf4j
+public class MessageCodec {
+
+    // 单条消息记录
+    public static final byte MAGIC_MESSAGE = (byte) 0xB1;
+
+    // 批量帧
+    public static final byte MAGIC_BATCH = (byte) 0xB2;
+
+    // 消息体为 null（删除标记）
+    public static final int FLAG_BODY_NULL = 1;
+
+    // 消息体 / 批量载荷使用 Deflate 压缩
+    public static final int FLAG_DEFLATE = 1 << 1;
+
+    // 头部后带 CRC32C 校验和
+    public static final int FLAG_CRC = 1 << 2;
+
+    // 魔数(1) + 标志(1) + 长度或条数(4)
+    private static final int HEADER_SIZE = 6;
+
+    // CRC32C 校验和
+    private static final int CHECKSUM_SIZE = 4;
+
+    // 单条记录最大长度：ConsumeQueue 的 size 字段高位留给批量帧内的序号
+    public static final int MAX_RECORD_SIZE = ConsumeQueue.SIZE_MASK;
+
+    // 批量帧最多的消息条数
+    public static final int MAX_BATCH_MESSAGES = ConsumeQueue.MAX_BATCH_INDEX + 1;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private static final ThreadLocal<CRC32C> CHECKSUM = ThreadLocal.withInitial(CRC32C::new);
+
+    // 超过该字节数才压缩，<= 0 表示不压缩
+    private final int compressThreshold;
+
+    // Deflate 压缩级别
+    private final int compressLevel;
+
+    // 元数据序列化（忽略 body，不会触发延迟解压）
+    private final ObjectMapper metaMapper = new ObjectMapper()
+        .addMixIn(Level12Message.class, MetaMixIn.class)
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // 旧格式反序列化
+    private final ObjectMapper legacyMapper = new ObjectMapper();
+
+    // 统计
+    private final AtomicLong compressedCount = new AtomicLong(0);
+    private final AtomicLong rawBodyBytes = new AtomicLong(0);
+    private final AtomicLong storedBodyBytes = new AtomicLong(0);
+
+    /**
+     * 不压缩
+     */
+    public MessageCodec() {
+        this(0, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param compressThreshold 消息体（或批量载荷）超过该字节数才压缩，<= 0 表示不压缩
+     * @param compressLevel Deflate 压缩级别（1 最快，9 压缩率最高）
+     */
+    public MessageCodec(int compressThreshold, int compressLevel) {
+        this.compressThreshold = compressThreshold;
+        this.compressLevel = compressLevel;
+    }
+
+    // ==================== 编码 ====================
+
+    /**
+     * 编码单条消息
+     *
+     * @return 完整记录（含长度前缀），position = 0
+     */
+    public ByteBuffer encode(Level12Message message) throws IOException {
+        byte[] record = encodeRecord(message, true);
+        return ByteBuffer.wrap(record);
+    }
+
+    /**
+     * 编码批量帧：逐条编码（消息体不单独压缩）后整体压缩，重复的字段名、Topic 等压缩率更高
+     *
+     * @return 完整记录（含长度前缀），position = 0
+     */
+    public ByteBuffer encodeBatch(List<Level12Message> messages) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        for (Level12Message message : messages) {
+            payload.write(encodeRecord(message, false));
+        }
+
+        byte[] raw = payload.toByteArray();
+        byte[] stored = raw;
+        int flags = FLAG_CRC;
+        if (shouldCompress(raw.length)) {
+            byte[] compressed = deflate(raw, compressLevel);
+            if (compressed.length < raw.length) {
+                stored = compressed;
+                flags |= FLAG_DEFLATE;
+                compressedCount.incrementAndGet();
+            }
+        }
+        rawBodyBytes.addAndGet(raw.length);
+        storedBodyBytes.addAndGet(stored.length);
+
+        int length = HEADER_SIZE + CHECKSUM_SIZE + stored.length + 1;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put(MAGIC_BATCH);
+        buffer.put((byte) flags);
+        buffer.putInt(messages.size());
+        buffer.putInt(0);
+        buffer.put(stored);
+        buffer.put(MAGIC_BATCH);
+        buffer.putInt(4 + HEADER_SIZE, checksum(buffer, 0, 4 + length));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @param topLevel 顶层记录（可以单独压缩消息体、带校验和），false 表示批量帧内的记录
+     */
+    private byte[] encodeRecord(Level12Message message, boolean topLevel) throws IOException {
+        int flags = topLevel ? FLAG_CRC : 0;
+        byte[] body;
+
+        byte[] compressedBody = message.getCompressedBody();
+        if (compressedBody != null && topLevel) {
+            // 从 CommitLog 读出后没访问过 body（重试、定时投递），直接写回压缩数据
+            body = compressedBody;
+            flags |= FLAG_DEFLATE;
+            storedBodyBytes.addAndGet(body.length);
+        } else if (message.getBody() == null) {
+            body = new byte[0];
+            flags |= FLAG_BODY_NULL;
+        } else {
+            body = message.getBody().getBytes(StandardCharsets.UTF_8);
+            if (topLevel) {
+                rawBodyBytes.addAndGet(body.length);
+                if (shouldCompress(body.length)) {
+                    byte[] compressed = deflate(body, compressLevel);
+                    if (compressed.length < body.length) {
+                        body = compressed;
+                        flags |= FLAG_DEFLATE;
+                        compressedCount.incrementAndGet();
+                    }
+                }
+                storedBodyBytes.addAndGet(body.length);
+            }
+        }
+
+        byte[] meta = metaMapper.writeValueAsBytes(message);
+
+        int headerSize = headerSize(flags);
+        int length = headerSize + body.length + meta.length;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        buffer.put(MAGIC_MESSAGE);
+        buffer.put((byte) flags);
+        buffer.putInt(body.length);
+        if (topLevel) {
+            buffer.putInt(0);
+        }
+        buffer.put(body);
+        buffer.put(meta);
+        if (topLevel) {
+            buffer.putInt(4 + HEADER_SIZE, checksum(buffer, 0, 4 + length));
+        }
+        return buffer.array();
+    }
+
+    private boolean shouldCompress(int length) {
+        return compressThreshold > 0 && length >= compressThreshold;
+    }
+
+    // ==================== 解码 ====================
+
+    /**
+     * 解码一条记录中的第 batchIndex 条消息
+     *
+     * @param record 完整记录（含长度前缀）
+     * @param batchIndex 批量帧内的序号，单条消息为 0
+     * @return 消息，序号越界返回 null
+     */
+    public Level12Message decode(ByteBuffer record, int batchIndex) throws IOException {
+        byte magic = record.get(4);
+        if (magic != MAGIC_BATCH) {
+            return batchIndex == 0 ? decodeSingle(record, true) : null;
+        }
+
+        ByteBuffer payload = batchPayload(record);
+        for (int i = 0; payload.hasRemaining(); i++) {
+            int length = payload.getInt(payload.position());
+            if (i == batchIndex) {
+                ByteBuffer inner = payload.slice();
+                inner.limit(4 + length);
+                Level12Message message = decodeSingle(inner, true);
+                message.setBatchIndex(i);
+                return message;
+            }
+            payload.position(payload.position() + 4 + length);
+        }
+        return null;
+    }
+
+    /**
+     * 解码一条记录中的全部消息（单条消息返回一个元素）
+     *
+     * @param record 完整记录（含长度前缀）
+     */
+    public List<Level12Message> decodeAll(ByteBuffer record) throws IOException {
+        return decodeAll(record, true);
+    }
+
+    /**
+     * 解码一条记录中的全部消息
+     *
+     * @param record 完整记录（含长度前缀）
+     * @param withBody false 时只解码元数据，body 为 null（重建索引只需要元数据）
+     */
+    public List<Level12Message> decodeAll(ByteBuffer record, boolean withBody) throws IOException {
+        byte magic = record.get(4);
+        if (magic != MAGIC_BATCH) {
+            return Collections.singletonList(decodeSingle(record, withBody));
+        }
+
+        ByteBuffer payload = batchPayload(record);
+        List<Level12Message> messages = new ArrayList<>(record.getInt(6));
+        while (payload.hasRemaining()) {
+            int length = payload.getInt(payload.position());
+            ByteBuffer inner = payload.slice();
+            inner.limit(4 + length);
+            Level12Message message = decodeSingle(inner, withBody);
+            message.setBatchIndex(messages.size());
+            messages.add(message);
+            payload.position(payload.position() + 4 + length);
+        }
+        return messages;
+    }
+
+    private Level12Message decodeSingle(ByteBuffer record, boolean withBody) throws IOException {
+        int length = record.getInt(0);
+        byte magic = record.get(4);
+
+        if (magic != MAGIC_MESSAGE) {
+            byte[] json = new byte[length];
+            record.position(4);
+            record.get(json);
+            return legacyMapper.readValue(json, Level12Message.class);
+        }
+
+        int flags = record.get(5);
+        int bodyLength = record.getInt(6);
+        int headerSize = headerSize(flags);
+
+        byte[] meta = new byte[length - headerSize - bodyLength];
+        record.position(4 + headerSize + bodyLength);
+        record.get(meta);
+        Level12Message message = metaMapper.readValue(meta, Level12Message.class);
+
+        if ((flags & FLAG_BODY_NULL) != 0 || !withBody) {
+            message.setBody(null);
+        } else {
+            byte[] body = new byte[bodyLength];
+            record.position(4 + headerSize);
+            record.get(body);
+            if ((flags & FLAG_DEFLATE) != 0) {
+                message.setCompressedBody(body);
+            } else {
+                message.setBody(new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        return message;
+    }
+
+    private ByteBuffer batchPayload(ByteBuffer record) throws IOException {
+        int length = record.getInt(0);
+        int flags = record.get(5);
+        int headerSize = headerSize(flags);
+
+        byte[] stored = new byte[length - headerSize - 1];
+        record.position(4 + headerSize);
+        record.get(stored);
+
+        byte[] payload = (flags & FLAG_DEFLATE) != 0 ? inflate(stored) : stored;
+        return ByteBuffer.wrap(payload);
+    }
+
+    // ==================== 恢复校验 ====================
+
+    /**
+     * 校验 position 处是否是一条完整记录（CommitLog 重启恢复使用）
+     *
+     * @return 记录总长度（含长度前缀），无效返回 -1
+     */
+    public static int checkRecord(ByteBuffer buffer, int position) {
+        if (position + 4 > buffer.capacity()) {
+            return -1;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 1 || position + 4 + length > buffer.capacity()) {
+            return -1;
+        }
+
+        byte first = buffer.get(position + 4);
+        byte last = buffer.get(position + 4 + length - 1);
+        if (first == '{') {
+            // 旧格式：完整的 JSON 对象
+            return last == '}' ? 4 + length : -1;
+        }
+        if (first == MAGIC_MESSAGE) {
+            // 元数据 JSON 在末尾，写了一半的记录不会以 } 结尾
+            int headerSize = headerSize(buffer.get(position + 5));
+            int bodyLength = length > headerSize ? buffer.getInt(position + 6) : -1;
+            if (bodyLength < 0 || headerSize + bodyLength >= length) {
+                return -1;
+            }
+            return buffer.get(position + 4 + headerSize + bodyLength) == '{' && last == '}' ? 4 + length : -1;
+        }
+        if (first == MAGIC_BATCH) {
+            int count = length > headerSize(buffer.get(position + 5)) ? buffer.getInt(position + 6) : -1;
+            return count > 0 && count <= MAX_BATCH_MESSAGES && last == MAGIC_BATCH ? 4 + length : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * 校验 position 处记录的 CRC32C（记录结构需要先经过 checkRecord 校验）
+     *
+     * @param recordSize 记录总长度（含长度前缀）
+     * @return 没有校验和的旧记录返回 ABSENT
+     */
+    public static ChecksumResult verifyChecksum(ByteBuffer buffer, int position, int recordSize) {
+        byte first = buffer.get(position + 4);
+        if (first != MAGIC_MESSAGE && first != MAGIC_BATCH || (buffer.get(position + 5) & FLAG_CRC) == 0) {
+            return ChecksumResult.ABSENT;
+        }
+        int expected = buffer.getInt(position + 4 + HEADER_SIZE);
+        return checksum(buffer, position, recordSize) == expected ? ChecksumResult.OK : ChecksumResult.MISMATCH;
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int recordSize) {
+        CRC32C crc = CHECKSUM.get();
+        crc.reset();
+
+        ByteBuffer view = buffer.duplicate();
+        view.limit(position + 4 + HEADER_SIZE).position(position);
+        crc.update(view);
+        view.limit(position + recordSize).position(position + 4 + HEADER_SIZE + CHECKSUM_SIZE);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static int headerSize(int flags) {
+        return (flags & FLAG_CRC) != 0 ? HEADER_SIZE + CHECKSUM_SIZE : HEADER_SIZE;
+    }
+
+    // ==================== 压缩 ====================
+
+    static byte[] deflate(byte[] data, int level) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+        byte[] chunk = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("压缩数据不完整");
+                }
+                out.write(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("压缩数据损坏", e);
+        }
+        return out.toByteArray();
+    }
+
+    // Getters
+
+    public long getCompressedCount() {
+        return compressedCount.get();
+    }
+
+    public long getRawBodyBytes() {
+        return rawBodyBytes.get();
+    }
+
+    public long getStoredBodyBytes() {
+        return storedBodyBytes.get();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 校验和校验结果
+     */
+    public enum ChecksumResult {
+        // 校验通过
+        OK,
+        // 旧格式记录，没有校验和
+        ABSENT,
+        // 校验和不一致，记录已损坏
+        MISMATCH
+    }
+
+    /**
+     * 元数据序列化时忽略消息体（单独存放），批量序号读取时按位置计算
+     */
+    private abstract static class MetaMixIn {
+        @JsonIgnore
+        abstract String getBody();
+
+        @JsonIgnore
+        abstract int getBatchIndex();
+    }
+}
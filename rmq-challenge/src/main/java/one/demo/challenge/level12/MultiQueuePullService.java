@@ -0,0 +1,309 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi Queue Pull Service - 一次调用拉取多个队列
+ *
+ * 订阅了几百个队列的消费者逐个调用 getMessage，每个队列一次调用；前面的队列堆积很深时，
+ * 后面的队列要等前面的读完才轮得到。这里一次调用处理全部队列：
+ * 1. 分配额度：按权重做 DRR（Deficit Round Robin），每轮额度 = 剩余条数 / 活跃队列的权重和（至少 1 条），
+ *    读空的队列退出，剩下的额度在下一轮分给还有消息的队列；字节数超过 maxBytes 时停止
+ * 2. 下次调用从这次第一轮没有轮到的队列开始，队列数多于 totalMax 时后面的队列不会一直分不到额度
+ * 3. 读取消息：所有选中的索引按 CommitLog 物理偏移量排序后读取，顺序 IO，同一个批量帧只解码一次
+ * 4. 按请求顺序返回每个队列的结果和下次拉取的起始索引；某条记录读不出来（隔离、已删除）时，
+ *    和 getMessage 一样跳过这条记录，nextBeginOffset 照常越过它（停在这里重试也读不出来，只会让队列永远卡住），
+ *    unreadableOffset 给出第一条跳过的记录的索引，调用方据此告警或修复后重新拉取
+ *
+ * 字节数按 CommitLog 记录计算，批量帧按整帧计算一次；至少返回一条消息，单条记录超过 maxBytes 时也不会卡住
+ */
+@Slf4j
+public class MultiQueuePullService {
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 每次调用的起始队列
+    private final AtomicInteger startIndex = new AtomicInteger(0);
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     */
+    public MultiQueuePullService(Level12MessageStoreBest messageStore, CommitLog commitLog) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+    }
+
+    /**
+     * 拉取多个队列
+     *
+     * @param requests 每个队列的起始索引和权重
+     * @param totalMax 所有队列合计最多返回的消息数
+     * @param maxBytes 所有队列合计最多读取的字节数，<= 0 表示不限制
+     * @return 与 requests 一一对应的结果
+     */
+    public PullMultiResult pullMulti(List<QueueRequest> requests, int totalMax, int maxBytes) {
+        long startTime = System.currentTimeMillis();
+
+        // 1. 每个队列的读取状态
+        List<QueueCursor> cursors = new ArrayList<>(requests.size());
+        List<QueueResult> results = new ArrayList<>(requests.size());
+        for (QueueRequest request : requests) {
+            if (request.getWeight() <= 0) {
+                throw new IllegalArgumentException("权重必须大于 0: " + request);
+            }
+            // 只查找已有的队列，不存在的 Topic / Queue 不创建文件
+            ConsumeQueue consumeQueue = messageStore.getConsumeQueue(request.getTopic(), request.getQueueId());
+            QueueResult result = new QueueResult(request.getTopic(), request.getQueueId(), request.getOffset(),
+                request.getOffset(), 0, 0, new ArrayList<>(), -1);
+            results.add(result);
+            if (consumeQueue == null) {
+                continue;
+            }
+            result.setMinOffset(consumeQueue.getMinIndex());
+            result.setMaxOffset(consumeQueue.getMaxIndex());
+            // 起始索引已被清理时从最小索引开始
+            long offset = Math.max(request.getOffset(), consumeQueue.getMinIndex());
+            result.setNextBeginOffset(offset);
+            if (offset < consumeQueue.getMaxIndex()) {
+                cursors.add(new QueueCursor(results.size() - 1, consumeQueue, offset, request.getWeight()));
+            }
+        }
+
+        // 2. 按 DRR 分配额度，收集选中的索引
+        List<Selected> selected = new ArrayList<>();
+        Set<Long> countedRecords = new HashSet<>();
+        long remainingBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+        int remaining = totalMax;
+        int rounds = 0;
+        int start = cursors.isEmpty() ? 0 : Math.floorMod(startIndex.get(), cursors.size());
+        int firstRoundVisited = 0;
+
+        CQScanBuffer units = CQScanBuffer.threadLocal();
+        boolean bytesExhausted = false;
+        while (remaining > 0 && !bytesExhausted && !cursors.isEmpty()) {
+            rounds++;
+            int totalWeight = 0;
+            for (QueueCursor cursor : cursors) {
+                totalWeight += cursor.weight;
+            }
+            int quantum = Math.max(1, remaining / totalWeight);
+
+            List<QueueCursor> active = new ArrayList<>(cursors.size());
+            for (int i = 0; i < cursors.size(); i++) {
+                QueueCursor cursor = cursors.get((start + i) % cursors.size());
+                if (remaining <= 0 || bytesExhausted) {
+                    active.add(cursor);
+                    continue;
+                }
+
+                if (rounds == 1) {
+                    firstRoundVisited++;
+                }
+                cursor.deficit += (long) quantum * cursor.weight;
+                int want = (int) Math.min(cursor.deficit, remaining);
+                int found = cursor.consumeQueue.scan(cursor.offset, want, 0, units);
+
+                int taken = 0;
+                for (int u = 0; u < found; u++) {
+                    long commitLogOffset = units.getCommitLogOffset(u);
+                    long cost = countedRecords.contains(commitLogOffset) ? 0 : units.getSize(u);
+                    if (cost > remainingBytes && !selected.isEmpty()) {
+                        bytesExhausted = true;
+                        break;
+                    }
+                    if (cost > 0) {
+                        countedRecords.add(commitLogOffset);
+                        remainingBytes -= Math.min(cost, remainingBytes);
+                    }
+                    selected.add(new Selected(cursor.resultIndex, units.getQueueOffset(u), commitLogOffset,
+                        units.getSize(u), units.getBatchIndex(u)));
+                    taken++;
+                }
+                cursor.offset += taken;
+                cursor.deficit -= taken;
+                remaining -= taken;
+                results.get(cursor.resultIndex).setNextBeginOffset(cursor.offset);
+
+                // 读空的队列退出，剩下的额度不再保留
+                if (found >= want && cursor.offset < cursor.consumeQueue.getMaxIndex()) {
+                    active.add(cursor);
+                }
+            }
+            cursors = active;
+            start = 0;
+        }
+        // 下次从第一轮没有分到额度的队列开始
+        startIndex.addAndGet(Math.max(1, firstRoundVisited));
+
+        // 3. 按物理偏移量顺序读取 CommitLog，同一个批量帧只解码一次
+        selected.sort(Comparator.comparingLong((Selected s) -> s.commitLogOffset)
+            .thenComparingInt(s -> s.batchIndex));
+        Map<Long, List<Level12Message>> frameCache = new HashMap<>();
+        Level12Message[] messages = new Level12Message[selected.size()];
+        long readBytes = 0;
+        for (int i = 0; i < selected.size(); i++) {
+            Selected s = selected.get(i);
+            List<Level12Message> frame = frameCache.get(s.commitLogOffset);
+            if (frame == null && !frameCache.containsKey(s.commitLogOffset)) {
+                frame = commitLog.getMessages(s.commitLogOffset);
+                frameCache.put(s.commitLogOffset, frame);
+                readBytes += s.size;
+            }
+            if (frame != null && s.batchIndex < frame.size()) {
+                Level12Message message = frame.get(s.batchIndex);
+                message.setQueueOffset(s.queueOffset);
+                messages[i] = message;
+            }
+        }
+
+        // 4. 每个队列第一条读不出来的记录：跳过（与 getMessage 一致），只在结果中报告索引
+        long[] firstUnreadable = new long[results.size()];
+        Arrays.fill(firstUnreadable, Long.MAX_VALUE);
+        for (int i = 0; i < selected.size(); i++) {
+            if (messages[i] == null) {
+                Selected s = selected.get(i);
+                firstUnreadable[s.resultIndex] = Math.min(firstUnreadable[s.resultIndex], s.queueOffset);
+            }
+        }
+        for (int i = 0; i < firstUnreadable.length; i++) {
+            if (firstUnreadable[i] != Long.MAX_VALUE) {
+                QueueResult result = results.get(i);
+                result.setUnreadableOffset(firstUnreadable[i]);
+                log.warn("⚠️ [Best] 多队列拉取读取消息失败，跳过该记录: topic={}, queueId={}, queueOffset={}",
+                    result.getTopic(), result.getQueueId(), firstUnreadable[i]);
+            }
+        }
+
+        // 5. 按队列归还结果（同一个队列内物理偏移量随索引递增，排序后仍是索引顺序）
+        int messageCount = 0;
+        for (int i = 0; i < selected.size(); i++) {
+            Selected s = selected.get(i);
+            if (messages[i] != null) {
+                results.get(s.resultIndex).getMessages().add(messages[i]);
+                messageCount++;
+            }
+        }
+
+        long costTime = System.currentTimeMillis() - startTime;
+        messageStore.getStats().recordGet(costTime);
+
+        log.debug("📖 [Best] 多队列拉取: queues={}, messages={}, bytes={}, rounds={}, 耗时: {} ms",
+            requests.size(), messageCount, readBytes, rounds, costTime);
+
+        return new PullMultiResult(results, messageCount, readBytes, rounds, costTime);
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 单个队列的拉取请求
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QueueRequest {
+        private String topic;
+        private int queueId;
+        // 起始索引
+        private long offset;
+        // 权重，每轮按权重分配额度
+        private int weight = 1;
+
+        public QueueRequest(String topic, int queueId, long offset) {
+            this(topic, queueId, offset, 1);
+        }
+    }
+
+    /**
+     * 单个队列的拉取结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class QueueResult {
+        private String topic;
+        private int queueId;
+        // 请求的起始索引
+        private long offset;
+        // 下次拉取的起始索引
+        private long nextBeginOffset;
+        // 队列最小 / 最大索引（队列不存在时为 0）
+        private long minOffset;
+        private long maxOffset;
+        private List<Level12Message> messages;
+        // 第一条读不出来、已跳过的记录的索引（隔离、已删除），-1 表示全部读取成功
+        private long unreadableOffset;
+    }
+
+    /**
+     * 一次多队列拉取的结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class PullMultiResult {
+        // 与请求一一对应
+        private List<QueueResult> queues;
+        private int messageCount;
+        // 读取的 CommitLog 字节数（批量帧按整帧计算）
+        private long readBytes;
+        // DRR 分配轮数
+        private int rounds;
+        private long costTime;
+    }
+
+    /**
+     * 分配额度时的队列状态
+     */
+    private static class QueueCursor {
+        private final int resultIndex;
+        private final ConsumeQueue consumeQueue;
+        private final int weight;
+        private long offset;
+        private long deficit;
+
+        QueueCursor(int resultIndex, ConsumeQueue consumeQueue, long offset, int weight) {
+            this.resultIndex = resultIndex;
+            this.consumeQueue = consumeQueue;
+            this.offset = offset;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * 选中的索引
+     */
+    private static class Selected {
+        private final int resultIndex;
+        private final long queueOffset;
+        private final long commitLogOffset;
+        private final int size;
+        private final int batchIndex;
+
+        Selected(int resultIndex, long queueOffset, long commitLogOffset, int size, int batchIndex) {
+            this.resultIndex = resultIndex;
+            this.queueOffset = queueOffset;
+            this.commitLogOffset = commitLogOffset;
+            this.size = size;
+            this.batchIndex = batchIndex;
+        }
+    }
+}
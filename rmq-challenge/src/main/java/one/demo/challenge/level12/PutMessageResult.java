@@ -0,0 +1,69 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 写入结果（asyncPutMessage 使用）
+ *
+ * appendResult 为 CommitLog 追加结果，写入 CommitLog 之前就失败时为 null；重复消息时为原消息的位置
+ */
+@Data
+@AllArgsConstructor
+public class PutMessageResult {
+
+    private PutMessageStatus status;
+
+    private CommitLog.AppendMessageResult appendResult;
+
+    /**
+     * 写入成功，或者是已经写入过的重复消息
+     */
+    public boolean isOk() {
+        return status == PutMessageStatus.PUT_OK || status == PutMessageStatus.DUPLICATE_MESSAGE;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 写入状态
+     */
+    public enum PutMessageStatus {
+        PUT_OK,
+
+        /**
+         * 幂等键重复，没有再次写入：appendResult 为原消息的位置（wroteBytes 为 0）
+         */
+        DUPLICATE_MESSAGE,
+
+        /**
+         * 已写入 CommitLog，等待刷盘超时（数据还在 PageCache 中，宕机可能丢失）
+         */
+        FLUSH_DISK_TIMEOUT,
+
+        /**
+         * 已写入主节点，等待从节点确认超时（消息不会丢，但只有一个副本）
+         */
+        FLUSH_SLAVE_TIMEOUT,
+
+        /**
+         * 已写入主节点，没有可用的从节点（未连接或落后太多）
+         */
+        SLAVE_NOT_AVAILABLE,
+
+        /**
+         * 当前节点不接受写入（从节点）
+         */
+        SERVICE_NOT_AVAILABLE,
+
+        /**
+         * 写入繁忙，没有写入：当前写入持锁过久、排队过长或等待写入锁超时，
+         * 调用方应该立即降级（重试其他节点 / 丢弃 / 限流），而不是继续排队
+         */
+        OS_PAGE_CACHE_BUSY,
+
+        MESSAGE_ILLEGAL,
+
+        UNKNOWN_ERROR
+    }
+}
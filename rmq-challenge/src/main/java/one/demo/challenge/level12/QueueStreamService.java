@@ -0,0 +1,407 @@
+package one.demo.challenge.level12;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue Stream Service - 按 ConsumeQueue 区间流式输出消息
+ *
+ * 1. 按页读取 ConsumeQueue 索引（每页 CQ_PAGE_SIZE 条），同一个批量帧只读一次，内存占用与区间大小无关
+ * 2. BINARY：CommitLog 记录原样写出（长度(4) + 记录内容，见 MessageCodec），直接从 mmap 切片写到输出流，不解码
+ * 3. NDJSON：逐条解码，每条消息一行 JSON，便于 curl / jq 直接查看
+ * 4. 流控：输出流写满时阻塞（由 TCP 反压到这里），每页 flush 一次；可选按 MB/s 限速
+ * 5. 最后写一个结束帧，带上下次续传的起始索引和结束原因
+ *
+ * BINARY 帧格式：
+ * 队列索引(8) + 帧内起始序号(4) + 消息数(4) + 记录（长度(4) + 记录内容）
+ * 结束帧：下次续传的起始索引(8) + END_OF_STREAM(4) + 结束原因序号(4)，没有记录
+ *
+ * 批量帧整帧写出：帧内起始序号 / 消息数指出区间内的是哪几条
+ */
+@Slf4j
+public class QueueStreamService {
+
+    /**
+     * 结束帧的帧内起始序号
+     */
+    public static final int END_OF_STREAM = -1;
+
+    private static final int FRAME_HEADER_SIZE = 8 + 4 + 4;
+
+    // 每次读取的 ConsumeQueue 索引条数
+    private static final int CQ_PAGE_SIZE = 256;
+
+    // 每行一个 JSON，行之间不要默认的空格分隔
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .setRootValueSeparator(null);
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     */
+    public QueueStreamService(Level12MessageStoreBest messageStore, CommitLog commitLog) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+    }
+
+    /**
+     * 把 [fromOffset, toOffset) 区间的消息写到输出流
+     *
+     * 客户端断开时输出流抛出 IOException，流式输出随之结束
+     *
+     * @param topic Topic 名称
+     * @param queueId Queue ID
+     * @param fromOffset 起始索引（包含），小于队列最小索引时从最小索引开始
+     * @param toOffset 结束索引（不包含），< 0 表示到当前队列末尾
+     * @param maxCount 最多输出的消息数，<= 0 表示不限制
+     * @param format 输出格式
+     * @param rateMBps 输出速率上限（MB/s），<= 0 表示不限速
+     * @param out 输出流（不会被关闭）
+     * @return 输出结果
+     */
+    public StreamResult stream(String topic, int queueId, long fromOffset, long toOffset, long maxCount,
+                               Format format, int rateMBps, OutputStream out) throws IOException {
+        long startNanos = System.nanoTime();
+
+        ConsumeQueue consumeQueue = null;
+        for (ConsumeQueue candidate : messageStore.getConsumeQueues(topic)) {
+            if (candidate.getQueueId() == queueId) {
+                consumeQueue = candidate;
+                break;
+            }
+        }
+
+        FrameWriter writer = format == Format.NDJSON ? new JsonFrameWriter(out) : new BinaryFrameWriter(out);
+        Throttle throttle = new Throttle(rateMBps, startNanos);
+
+        long index = fromOffset;
+        long messageCount = 0;
+        EndReason reason;
+        if (consumeQueue == null) {
+            reason = EndReason.NO_QUEUE;
+        } else {
+            index = Math.max(fromOffset, consumeQueue.getMinIndex());
+            long end = toOffset < 0 ? Long.MAX_VALUE : toOffset;
+            if (maxCount > 0) {
+                end = Math.min(end, index + maxCount);
+            }
+            long to = Math.min(end, consumeQueue.getMaxIndex());
+            reason = to == end ? EndReason.END : EndReason.CAUGHT_UP;
+
+            page:
+            while (index < to) {
+                List<ConsumeQueue.CQUnit> units = consumeQueue.getIndexList(index, (int) Math.min(CQ_PAGE_SIZE, to - index));
+                if (units.isEmpty()) {
+                    reason = EndReason.CAUGHT_UP;
+                    break;
+                }
+
+                // 同一个批量帧的相邻索引合并成一帧
+                for (int i = 0; i < units.size(); ) {
+                    ConsumeQueue.CQUnit first = units.get(i);
+                    int count = 1;
+                    while (i + count < units.size()
+                        && units.get(i + count).getCommitLogOffset() == first.getCommitLogOffset()) {
+                        count++;
+                    }
+
+                    long offset = first.getCommitLogOffset();
+                    int written = commitLog.isQuarantined(offset) ? -1
+                        : writer.writeFrame(index, offset, first.getBatchIndex(), count);
+                    if (written < 0) {
+                        log.warn("⚠️ 流式输出在不可读的记录处停止: topic={}, queueId={}, queueOffset={}, offset={}",
+                            topic, queueId, index, offset);
+                        reason = EndReason.UNREADABLE;
+                        break page;
+                    }
+
+                    index += count;
+                    messageCount += count;
+                    i += count;
+                    throttle.acquire(written);
+                }
+                writer.flush();
+            }
+        }
+
+        writer.writeEnd(index, reason);
+        writer.flush();
+
+        long costTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.info("📡 流式输出结束: topic={}, queueId={}, from={}, next={}, messages={}, bytes={}, reason={}, 耗时: {} ms",
+            topic, queueId, fromOffset, index, messageCount, writer.getBytes(), reason, costTime);
+
+        return new StreamResult(index, messageCount, writer.getBytes(), reason, costTime);
+    }
+
+    // ==================== 帧输出 ====================
+
+    private abstract static class FrameWriter {
+
+        protected final OutputStream out;
+
+        protected long bytes;
+
+        FrameWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * 写出一个 CommitLog 记录中的 count 条消息
+         *
+         * @return 写出的字节数，记录不可读时返回 -1
+         */
+        abstract int writeFrame(long queueOffset, long commitLogOffset, int batchIndex, int count) throws IOException;
+
+        abstract void writeEnd(long nextOffset, EndReason reason) throws IOException;
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * 记录原样写出：mmap 切片直接写到输出流
+     */
+    private class BinaryFrameWriter extends FrameWriter {
+
+        private final WritableByteChannel channel;
+
+        private final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+
+        BinaryFrameWriter(OutputStream out) {
+            super(out);
+            this.channel = Channels.newChannel(out);
+        }
+
+        @Override
+        int writeFrame(long queueOffset, long commitLogOffset, int batchIndex, int count) throws IOException {
+            ByteBuffer record = commitLog.selectRawRecord(commitLogOffset);
+            if (record == null) {
+                return -1;
+            }
+
+            writeHeader(queueOffset, batchIndex, count);
+            int size = FRAME_HEADER_SIZE + record.remaining();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            bytes += size;
+            return size;
+        }
+
+        @Override
+        void writeEnd(long nextOffset, EndReason reason) throws IOException {
+            writeHeader(nextOffset, END_OF_STREAM, reason.ordinal());
+            bytes += FRAME_HEADER_SIZE;
+        }
+
+        private void writeHeader(long queueOffset, int batchIndex, int count) throws IOException {
+            header.clear();
+            header.putLong(queueOffset).putInt(batchIndex).putInt(count).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+    }
+
+    /**
+     * 逐条解码，每条消息一行 JSON
+     */
+    private class JsonFrameWriter extends FrameWriter {
+
+        private final CountingOutputStream counter;
+
+        private final JsonGenerator generator;
+
+        JsonFrameWriter(OutputStream out) throws IOException {
+            super(out);
+            this.counter = new CountingOutputStream(out);
+            this.generator = JSON_FACTORY.createGenerator(counter);
+        }
+
+        @Override
+        int writeFrame(long queueOffset, long commitLogOffset, int batchIndex, int count) throws IOException {
+            List<Level12Message> messages = commitLog.getMessages(commitLogOffset);
+            if (messages == null || batchIndex + count > messages.size()) {
+                return -1;
+            }
+
+            long before = counter.count;
+            for (int i = 0; i < count; i++) {
+                writeMessage(queueOffset + i, messages.get(batchIndex + i));
+            }
+            generator.flush();
+            bytes = counter.count;
+            return (int) (counter.count - before);
+        }
+
+        @Override
+        void writeEnd(long nextOffset, EndReason reason) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("nextOffset", nextOffset);
+            generator.writeStringField("end", reason.name());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            generator.flush();
+            bytes = counter.count;
+        }
+
+        private void writeMessage(long queueOffset, Level12Message message) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField("queueOffset", queueOffset);
+            generator.writeStringField("messageId", message.getMessageId());
+            generator.writeStringField("topic", message.getTopic());
+            generator.writeNumberField("queueId", message.getQueueId());
+            generator.writeStringField("tag", message.getTag());
+            generator.writeStringField("key", message.getKey());
+            generator.writeNumberField("storeTime", message.getStoreTime());
+            generator.writeNumberField("physicalOffset", message.getPhysicalOffset());
+            if (message.getProperties() != null && !message.getProperties().isEmpty()) {
+                generator.writeObjectFieldStart("properties");
+                for (Map.Entry<String, String> entry : message.getProperties().entrySet()) {
+                    generator.writeStringField(entry.getKey(), entry.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeStringField("body", message.getBody());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * 按已输出的字节数计算应该用掉的时间，超前就睡到预期时间
+     */
+    private static class Throttle {
+
+        private final long bytesPerSecond;
+
+        private final long startNanos;
+
+        private long passBytes;
+
+        Throttle(int rateMBps, long startNanos) {
+            this.bytesPerSecond = rateMBps <= 0 ? 0 : rateMBps * 1024L * 1024L;
+            this.startNanos = startNanos;
+        }
+
+        void acquire(int bytes) throws IOException {
+            if (bytesPerSecond == 0) {
+                return;
+            }
+            passBytes += bytes;
+            long aheadNanos = passBytes * 1_000_000_000L / bytesPerSecond - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("流式输出被中断");
+                }
+            }
+        }
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 输出格式
+     */
+    public enum Format {
+        /**
+         * 长度前缀的原始记录
+         */
+        BINARY,
+        /**
+         * 每行一条 JSON
+         */
+        NDJSON
+    }
+
+    /**
+     * 结束原因（BINARY 结束帧中为序号）
+     */
+    public enum EndReason {
+        /**
+         * 到达 toOffset 或 maxCount
+         */
+        END,
+        /**
+         * 到达队列当前末尾，稍后可从 nextOffset 继续
+         */
+        CAUGHT_UP,
+        /**
+         * 记录不可读（已清理 / 已隔离 / 解码失败），nextOffset 为该记录的索引
+         */
+        UNREADABLE,
+        /**
+         * Queue 不存在
+         */
+        NO_QUEUE
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class StreamResult {
+        private long nextOffset;
+        private long messageCount;
+        private long bytes;
+        private EndReason reason;
+        private long costTime;
+    }
+}
@@ -2,6 +2,7 @@ package one.demo.challenge.level12;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -9,7 +10,7 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * 核心职责：
  * 1. 从 CommitLog 读取消息
- * 2. 异步构建 ConsumeQueue 索引
+ * 2. 异步构建 ConsumeQueue 索引（未到投递时间的定时消息交给 TimerMessageStore）
  * 3. 记录已处理的偏移量，支持重启恢复
  */
 @Slf4j
@@ -24,6 +25,12 @@ public class ReputMessageService {
     // 已处理的 CommitLog 偏移量
     private final AtomicLong reputFromOffset = new AtomicLong(0);
 
+    // 最近一次分发的消息的存储时间，0 表示启动后还没有分发
+    private volatile long lastDispatchStoreTime = 0;
+
+    // 因落在隔离区间内而跳过、没有分发的字节数
+    private final AtomicLong skippedQuarantinedBytes = new AtomicLong(0);
+
     // 是否运行中
     private volatile boolean running = false;
 
@@ -42,9 +49,18 @@ public class ReputMessageService {
     }
 
     /**
-     * 启动服务
+     * 启动服务（从 CommitLog 起始位置开始构建）
      */
     public void start() {
+        start(commitLog.getMinOffset());
+    }
+
+    /**
+     * 启动服务
+     *
+     * @param startOffset 起始偏移量（重启时为已分发到的位置）
+     */
+    public void start(long startOffset) {
         if (running) {
             log.warn("⚠️ ReputMessageService 已经在运行中");
             return;
@@ -53,15 +69,14 @@ public class ReputMessageService {
         running = true;
 
         // 初始化偏移量
-        long minOffset = commitLog.getMinOffset();
-        reputFromOffset.set(minOffset);
+        reputFromOffset.set(startOffset);
 
         // 启动后台线程
         reputThread = new Thread(this::doReput, "ReputMessageService");
         reputThread.setDaemon(true);
         reputThread.start();
 
-        log.info("✅ ReputMessageService 已启动: startOffset={}", minOffset);
+        log.info("✅ ReputMessageService 已启动: startOffset={}", startOffset);
     }
 
     /**
@@ -100,23 +115,36 @@ public class ReputMessageService {
                     continue;
                 }
 
-                // 读取消息
-                Level12Message message = commitLog.getMessage(currentOffset);
-                if (message == null) {
+                // 当前文件已写满，跳到下一个文件
+                if (commitLog.isEndOfFile(currentOffset)) {
+                    reputFromOffset.set(commitLog.rollNextFile(currentOffset));
+                    continue;
+                }
+
+                // 隔离的损坏区间读不出来，跳过整个区间，不让整个存储的分发卡在这里
+                if (skipQuarantined(currentOffset)) {
+                    continue;
+                }
+
+                // 读取消息（批量帧一次读出帧内全部消息）
+                List<Level12Message> messages = commitLog.getMessages(currentOffset);
+                if (messages == null || messages.isEmpty()) {
                     log.warn("⚠️ 读取消息失败: offset={}", currentOffset);
                     Thread.sleep(100);
                     continue;
                 }
 
                 // 构建 ConsumeQueue 索引
-                dispatchToConsumeQueue(message);
+                for (Level12Message message : messages) {
+                    dispatch(message);
+                }
 
-                // 更新偏移量（消息长度 = 4 字节长度 + 消息体长度）
-                int messageLength = 4 + message.getBody().getBytes().length;
-                reputFromOffset.addAndGet(messageLength);
+                // 更新偏移量（记录长度 = 4 字节长度 + 记录内容长度）
+                reputFromOffset.addAndGet(messages.get(0).getLen());
+                lastDispatchStoreTime = messages.get(0).getStoreTime();
 
-                log.debug("🔄 索引构建成功: topic={}, offset={}, nextOffset={}",
-                    message.getTopic(), currentOffset, reputFromOffset.get());
+                log.debug("🔄 索引构建成功: topic={}, offset={}, count={}, nextOffset={}",
+                    messages.get(0).getTopic(), currentOffset, messages.size(), reputFromOffset.get());
 
             } catch (InterruptedException e) {
                 log.info("ReputMessageService 被中断");
@@ -134,6 +162,46 @@ public class ReputMessageService {
         log.info("🔄 ReputMessageService 已退出");
     }
 
+    /**
+     * 当前位置落在隔离区间内时，分发位置移到区间结束处（区间结束于文件末尾时，下一轮再滚动到下一个文件）
+     *
+     * 区间内的消息不会进入 ConsumeQueue，修复文件、解除隔离后需要重建 ConsumeQueue 才能补上
+     *
+     * @return 是否跳过了隔离区间
+     */
+    private boolean skipQuarantined(long currentOffset) {
+        long quarantineEnd = commitLog.getQuarantineEnd(currentOffset);
+        if (quarantineEnd < 0) {
+            return false;
+        }
+        reputFromOffset.set(quarantineEnd);
+        skippedQuarantinedBytes.addAndGet(quarantineEnd - currentOffset);
+        log.error("❌ 分发跳过隔离区间: [{}, {}), bytes={}", currentOffset, quarantineEnd, quarantineEnd - currentOffset);
+        return true;
+    }
+
+    /**
+     * 分发消息：未到投递时间的定时消息进入时间轮，其余写入 ConsumeQueue
+     *
+     * 按秒比较，时间轮到期重新写入的消息存储时间不早于投递时间所在的秒，不会再次进入时间轮
+     *
+     * @param message 消息
+     */
+    private void dispatch(Level12Message message) {
+        if (isTimerPending(message)) {
+            messageStore.getTimerMessageStore().putTimer(message);
+            return;
+        }
+        dispatchToConsumeQueue(message);
+    }
+
+    /**
+     * 是否是未到投递时间的定时消息（进入时间轮，不写 ConsumeQueue）
+     */
+    static boolean isTimerPending(Level12Message message) {
+        return message.getDeliverTime() / 1000 > message.getStoreTime() / 1000;
+    }
+
     /**
      * 分发到 ConsumeQueue
      *
@@ -143,12 +211,23 @@ public class ReputMessageService {
         String topic = message.getTopic();
         int queueId = message.getQueueId();
         long commitLogOffset = message.getPhysicalOffset();
-        int size = message.getBody().getBytes().length + 4; // 4 字节长度 + 消息体
+        // 4 字节长度 + 记录内容，批量帧内的消息在高位带上帧内序号
+        int size = ConsumeQueue.encodeSize(message.getLen(), message.getBatchIndex());
         long tagsCode = message.getTag() != null ? message.getTag().hashCode() : 0;
 
         // 获取或创建 ConsumeQueue
         ConsumeQueue consumeQueue = messageStore.findConsumeQueue(topic, queueId);
 
+        // Topic 有 SQL 过滤时，顺带计算每个消费组的匹配位图，拉取时不用再读 CommitLog
+        ConsumerFilterManager.TopicFilters topicFilters =
+            messageStore.getConsumerFilterManager().getTopicFilters(topic);
+        if (topicFilters != null && !topicFilters.getFilters().isEmpty()) {
+            consumeQueue.enableExt();
+            consumeQueue.putMessagePositionInfo(commitLogOffset, size, tagsCode,
+                topicFilters.getVersion(), topicFilters.computeBitMap(message));
+            return;
+        }
+
         // 添加索引
         consumeQueue.putMessagePositionInfo(commitLogOffset, size, tagsCode);
     }
@@ -166,22 +245,34 @@ public class ReputMessageService {
                 return;
             }
 
+            if (commitLog.isEndOfFile(currentOffset)) {
+                reputFromOffset.set(commitLog.rollNextFile(currentOffset));
+                log.info("ℹ️ 当前文件已写满，跳到下一个文件: offset={}", reputFromOffset.get());
+                return;
+            }
+
+            if (skipQuarantined(currentOffset)) {
+                return;
+            }
+
             // 读取消息
-            Level12Message message = commitLog.getMessage(currentOffset);
-            if (message == null) {
+            List<Level12Message> messages = commitLog.getMessages(currentOffset);
+            if (messages == null || messages.isEmpty()) {
                 log.warn("⚠️ 读取消息失败: offset={}", currentOffset);
                 return;
             }
 
             // 构建索引
-            dispatchToConsumeQueue(message);
+            for (Level12Message message : messages) {
+                dispatch(message);
+            }
 
             // 更新偏移量
-            int messageLength = 4 + message.getBody().getBytes().length;
-            reputFromOffset.addAndGet(messageLength);
+            reputFromOffset.addAndGet(messages.get(0).getLen());
+            lastDispatchStoreTime = messages.get(0).getStoreTime();
 
-            log.info("✅ 手动构建索引成功: topic={}, offset={}",
-                message.getTopic(), currentOffset);
+            log.info("✅ 手动构建索引成功: topic={}, offset={}, count={}",
+                messages.get(0).getTopic(), currentOffset, messages.size());
 
         } catch (Exception e) {
             log.error("❌ 手动构建索引失败", e);
@@ -194,6 +285,34 @@ public class ReputMessageService {
         return reputFromOffset.get();
     }
 
+    /**
+     * 还没有分发的 CommitLog 字节数
+     */
+    public long getDispatchBehindBytes() {
+        return Math.max(0, commitLog.getMaxOffset() - reputFromOffset.get());
+    }
+
+    /**
+     * 分发落后的时长（毫秒）：最近一次写入时间 - 最近一次分发的消息的存储时间，已追上时为 0
+     *
+     * 启动后还没有分发过消息时无法估算，返回 0（落后字节数仍然准确）
+     */
+    public long getDispatchBehindMs() {
+        long dispatchStoreTime = lastDispatchStoreTime;
+        if (dispatchStoreTime == 0 || getDispatchBehindBytes() == 0) {
+            return 0;
+        }
+        return Math.max(0, commitLog.getLastAppendTime() - dispatchStoreTime);
+    }
+
+    public long getSkippedQuarantinedBytes() {
+        return skippedQuarantinedBytes.get();
+    }
+
+    public long getLastDispatchStoreTime() {
+        return lastDispatchStoreTime;
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -0,0 +1,141 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Send Message Back Service - 消费失败重试
+ *
+ * 核心流程：
+ * 1. 消费者处理失败后调用 sendMessageBack，立即返回 CompletableFuture，不阻塞消费线程
+ * 2. 后台线程把消息复制一份写入 %RETRY%{group}，reconsumeTimes + 1，
+ *    按退避表设置 deliverTime，借助时间轮延迟投递，原队列的消费进度照常推进
+ * 3. reconsumeTimes 超过 maxReconsumeTimes 后写入 %DLQ%{group}，不再自动重试
+ *
+ * 消费者需要同时消费原 Topic 和 %RETRY%{group}
+ */
+@Slf4j
+public class SendMessageBackService {
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // 回退线程：与消费线程隔离，重试风暴时只会在这里排队
+    private final ExecutorService sendBackExecutor;
+
+    // 统计
+    private final AtomicLong retryCount = new AtomicLong(0);
+    private final AtomicLong dlqCount = new AtomicLong(0);
+    private final AtomicLong failCount = new AtomicLong(0);
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param storeConfig 存储配置
+     */
+    public SendMessageBackService(Level12MessageStoreBest messageStore, Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.storeConfig = storeConfig;
+        this.sendBackExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "SendMessageBackService");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * 消费失败，把消息回退到重试队列（或死信队列）
+     *
+     * @param group 消费组
+     * @param message 消费失败的消息（原 Topic 或重试 Topic 中读出的消息）
+     * @return 写入结果，true 表示进入重试队列，false 表示进入死信队列；
+     *         写入失败时以 IllegalStateException 异常完成，消费者不能推进这条消息的消费进度
+     */
+    public CompletableFuture<Boolean> sendMessageBack(String group, Level12Message message) {
+        return CompletableFuture.supplyAsync(() -> doSendMessageBack(group, message), sendBackExecutor);
+    }
+
+    private boolean doSendMessageBack(String group, Level12Message message) {
+        Level12Message retry = message.copy();
+        int reconsumeTimes = message.getReconsumeTimes() + 1;
+        retry.setReconsumeTimes(reconsumeTimes);
+        retry.setQueueId(0);
+        if (retry.getOriginTopic() == null) {
+            retry.setOriginTopic(message.getTopic());
+        }
+
+        if (reconsumeTimes > storeConfig.getMaxReconsumeTimes()) {
+            retry.setTopic(Level12Constants.getDLQTopic(group));
+            retry.setDeliverTime(0);
+            checkPut(group, message, messageStore.putMessageInternal(retry));
+            dlqCount.incrementAndGet();
+
+            log.warn("💀 超过最大重试次数，进入死信队列: group={}, messageId={}, originTopic={}, reconsumeTimes={}",
+                group, message.getMessageId(), retry.getOriginTopic(), message.getReconsumeTimes());
+            return false;
+        }
+
+        long[] delayLevels = storeConfig.getRetryDelayLevelsMs();
+        long delay = delayLevels[Math.min(reconsumeTimes, delayLevels.length) - 1];
+        retry.setTopic(Level12Constants.getRetryTopic(group));
+        retry.setDeliverTime(System.currentTimeMillis() + delay);
+        checkPut(group, message, messageStore.putMessageInternal(retry));
+        retryCount.incrementAndGet();
+
+        log.debug("🔁 消息进入重试队列: group={}, messageId={}, reconsumeTimes={}, delay={} ms",
+            group, message.getMessageId(), reconsumeTimes, delay);
+        return true;
+    }
+
+    private void checkPut(String group, Level12Message message, PutMessageResult result) {
+        if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+            failCount.incrementAndGet();
+            log.warn("⚠️ 回退消息写入失败: group={}, messageId={}, status={}",
+                group, message.getMessageId(), result.getStatus());
+            throw new IllegalStateException("回退消息写入失败: messageId=" + message.getMessageId()
+                + ", status=" + result.getStatus());
+        }
+    }
+
+    /**
+     * 停止服务（已提交的回退请求会执行完）
+     */
+    public void shutdown() {
+        sendBackExecutor.shutdown();
+        try {
+            if (!sendBackExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("⚠️ SendMessageBackService 关闭超时，丢弃未执行的回退请求");
+                sendBackExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            sendBackExecutor.shutdownNow();
+        }
+
+        log.info("✅ SendMessageBackService 已停止: retry={}, dlq={}", retryCount.get(), dlqCount.get());
+    }
+
+    // Getters
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getDlqCount() {
+        return dlqCount.get();
+    }
+
+    public long getFailCount() {
+        return failCount.get();
+    }
+}
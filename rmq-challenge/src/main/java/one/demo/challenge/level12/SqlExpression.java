@@ -0,0 +1,538 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQL92 过滤表达式
+ *
+ * 支持的语法（与 Broker 的 SQL92 过滤子集一致）：
+ * - 逻辑：AND、OR、NOT、括号
+ * - 比较：=、<>、!=、<、<=、>、>=
+ * - 范围：[NOT] BETWEEN a AND b、[NOT] IN ('a', 'b')
+ * - 空值：IS NULL、IS NOT NULL
+ * - 常量：'字符串'、数字、TRUE、FALSE
+ * - 标识符：用户属性名，TAGS 表示消息 Tag
+ *
+ * 属性值都是字符串，与数字比较时按数字解析。属性不存在或无法比较时结果为 UNKNOWN（SQL 三值逻辑），
+ * 最终 UNKNOWN 视为不匹配，例如 amount > 100 不会匹配没有 amount 属性的消息
+ *
+ * 编译一次，多线程并发 match
+ */
+public final class SqlExpression {
+
+    private final String expression;
+
+    private final Node root;
+
+    private SqlExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * 编译表达式
+     *
+     * @param expression SQL92 表达式，例如 region = 'beijing' AND amount > 100
+     * @return 编译结果
+     * @throws IllegalArgumentException 表达式不合法
+     */
+    public static SqlExpression compile(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("SQL 表达式不能为空");
+        }
+
+        Parser parser = new Parser(expression, tokenize(expression));
+        Node root = parser.parseOr();
+        parser.expectEnd();
+
+        if (!root.isBoolean()) {
+            throw new IllegalArgumentException("SQL 表达式的结果必须是布尔值: " + expression);
+        }
+
+        return new SqlExpression(expression, root);
+    }
+
+    /**
+     * 消息是否匹配
+     */
+    public boolean match(Level12Message message) {
+        return Boolean.TRUE.equals(root.evaluate(message));
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    // ==================== 词法分析 ====================
+
+    private enum TokenType {
+        IDENTIFIER, STRING, NUMBER, OPERATOR, LPAREN, RPAREN, COMMA, KEYWORD
+    }
+
+    @AllArgsConstructor
+    private static class Token {
+
+        private final TokenType type;
+        private final String text;
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.KEYWORD && text.equals(keyword);
+        }
+    }
+
+    private static final List<String> KEYWORDS =
+        List.of("AND", "OR", "NOT", "BETWEEN", "IN", "IS", "NULL", "TRUE", "FALSE");
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = expression.length();
+
+        while (i < length) {
+            char c = expression.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RPAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                tokens.add(new Token(TokenType.COMMA, ","));
+                i++;
+            } else if (c == '\'') {
+                // 字符串常量，'' 表示一个单引号
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("字符串缺少结束引号: " + expression);
+                    }
+                    char ch = expression.charAt(i);
+                    if (ch == '\'') {
+                        if (i + 1 < length && expression.charAt(i + 1) == '\'') {
+                            sb.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    sb.append(ch);
+                    i++;
+                }
+                tokens.add(new Token(TokenType.STRING, sb.toString()));
+            } else if (Character.isDigit(c) || (c == '-' && i + 1 < length && Character.isDigit(expression.charAt(i + 1)))) {
+                int start = i++;
+                while (i < length && (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, expression.substring(start, i)));
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                String op = i + 1 < length ? expression.substring(i, i + 2) : "";
+                if (op.equals("<>") || op.equals("!=") || op.equals("<=") || op.equals(">=")) {
+                    tokens.add(new Token(TokenType.OPERATOR, op));
+                    i += 2;
+                } else if (c != '!') {
+                    tokens.add(new Token(TokenType.OPERATOR, String.valueOf(c)));
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("不支持的运算符 '!': " + expression);
+                }
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i++;
+                while (i < length && (Character.isLetterOrDigit(expression.charAt(i))
+                    || expression.charAt(i) == '_' || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                String word = expression.substring(start, i);
+                String upper = word.toUpperCase(Locale.ROOT);
+                tokens.add(KEYWORDS.contains(upper)
+                    ? new Token(TokenType.KEYWORD, upper)
+                    : new Token(TokenType.IDENTIFIER, word));
+            } else {
+                throw new IllegalArgumentException("无法识别的字符 '" + c + "': " + expression);
+            }
+        }
+
+        return tokens;
+    }
+
+    // ==================== 语法分析 ====================
+
+    /**
+     * 递归下降：or := and (OR and)*，and := not (AND not)*，not := NOT not | predicate
+     */
+    private static class Parser {
+
+        private final String expression;
+        private final List<Token> tokens;
+        private int pos;
+
+        Parser(String expression, List<Token> tokens) {
+            this.expression = expression;
+            this.tokens = tokens;
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (acceptKeyword("OR")) {
+                left = new Or(requireBoolean(left), requireBoolean(parseAnd()));
+            }
+            return left;
+        }
+
+        Node parseAnd() {
+            Node left = parseNot();
+            while (acceptKeyword("AND")) {
+                left = new And(requireBoolean(left), requireBoolean(parseNot()));
+            }
+            return left;
+        }
+
+        Node parseNot() {
+            if (acceptKeyword("NOT")) {
+                return new Not(requireBoolean(parseNot()));
+            }
+            return parsePredicate();
+        }
+
+        Node parsePredicate() {
+            if (peek() != null && peek().type == TokenType.LPAREN) {
+                pos++;
+                Node inner = parseOr();
+                expect(TokenType.RPAREN);
+                return inner;
+            }
+
+            Node left = parseOperand();
+
+            if (acceptKeyword("IS")) {
+                boolean negated = acceptKeyword("NOT");
+                expectKeyword("NULL");
+                return new IsNull(left, negated);
+            }
+
+            boolean negated = acceptKeyword("NOT");
+
+            if (acceptKeyword("BETWEEN")) {
+                Node low = parseOperand();
+                expectKeyword("AND");
+                Node high = parseOperand();
+                Node between = new And(new Compare(">=", left, low), new Compare("<=", left, high));
+                return negated ? new Not(between) : between;
+            }
+
+            if (acceptKeyword("IN")) {
+                expect(TokenType.LPAREN);
+                List<Node> values = new ArrayList<>();
+                do {
+                    values.add(parseOperand());
+                } while (accept(TokenType.COMMA));
+                expect(TokenType.RPAREN);
+                Node in = new In(left, values);
+                return negated ? new Not(in) : in;
+            }
+
+            if (negated) {
+                throw error("NOT 之后需要 BETWEEN 或 IN");
+            }
+
+            Token token = peek();
+            if (token != null && token.type == TokenType.OPERATOR) {
+                pos++;
+                return new Compare(token.text, left, parseOperand());
+            }
+
+            return left;
+        }
+
+        Node parseOperand() {
+            Token token = next();
+            switch (token.type) {
+                case IDENTIFIER:
+                    return new Property(token.text);
+                case STRING:
+                    return new Literal(token.text);
+                case NUMBER:
+                    try {
+                        return new Literal(new BigDecimal(token.text));
+                    } catch (NumberFormatException e) {
+                        throw error("数字格式错误: " + token.text);
+                    }
+                case KEYWORD:
+                    if (token.text.equals("TRUE")) {
+                        return new Literal(Boolean.TRUE);
+                    }
+                    if (token.text.equals("FALSE")) {
+                        return new Literal(Boolean.FALSE);
+                    }
+                    throw error("此处不能使用关键字 " + token.text);
+                default:
+                    throw error("此处需要属性名或常量，实际为 '" + token.text + "'");
+            }
+        }
+
+        void expectEnd() {
+            if (pos < tokens.size()) {
+                throw error("多余的内容 '" + tokens.get(pos).text + "'");
+            }
+        }
+
+        private Node requireBoolean(Node node) {
+            if (!node.isBoolean()) {
+                throw error("AND / OR / NOT 的操作数必须是条件表达式");
+            }
+            return node;
+        }
+
+        private Token peek() {
+            return pos < tokens.size() ? tokens.get(pos) : null;
+        }
+
+        private Token next() {
+            if (pos >= tokens.size()) {
+                throw error("表达式不完整");
+            }
+            return tokens.get(pos++);
+        }
+
+        private boolean accept(TokenType type) {
+            if (peek() != null && peek().type == type) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (peek() != null && peek().isKeyword(keyword)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(TokenType type) {
+            if (!accept(type)) {
+                throw error("此处需要 " + type);
+            }
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw error("此处需要 " + keyword);
+            }
+        }
+
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("SQL 表达式不合法（" + reason + "）: " + expression);
+        }
+    }
+
+    // ==================== 语法树 ====================
+
+    private interface Node {
+
+        /**
+         * 求值：条件节点返回 Boolean（null 表示 UNKNOWN），操作数节点返回 String / BigDecimal / Boolean / null
+         */
+        Object evaluate(Level12Message message);
+
+        default boolean isBoolean() {
+            return false;
+        }
+    }
+
+    private interface Condition extends Node {
+
+        @Override
+        default boolean isBoolean() {
+            return true;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Literal implements Node {
+
+        private final Object value;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            return value;
+        }
+
+        @Override
+        public boolean isBoolean() {
+            return value instanceof Boolean;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Property implements Node {
+
+        private final String name;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            return "TAGS".equals(name) ? message.getTag() : message.getProperty(name);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class And implements Condition {
+
+        private final Node left;
+        private final Node right;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            Object l = left.evaluate(message);
+            if (Boolean.FALSE.equals(l)) {
+                return false;
+            }
+            Object r = right.evaluate(message);
+            if (Boolean.FALSE.equals(r)) {
+                return false;
+            }
+            return l == null || r == null ? null : Boolean.TRUE;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Or implements Condition {
+
+        private final Node left;
+        private final Node right;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            Object l = left.evaluate(message);
+            if (Boolean.TRUE.equals(l)) {
+                return true;
+            }
+            Object r = right.evaluate(message);
+            if (Boolean.TRUE.equals(r)) {
+                return true;
+            }
+            return l == null || r == null ? null : Boolean.FALSE;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Not implements Condition {
+
+        private final Node inner;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            Object value = inner.evaluate(message);
+            return value == null ? null : !((Boolean) value);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class IsNull implements Condition {
+
+        private final Node operand;
+        private final boolean negated;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            return (operand.evaluate(message) == null) != negated;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class In implements Condition {
+
+        private final Node operand;
+        private final List<Node> values;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            Object value = operand.evaluate(message);
+            if (value == null) {
+                return null;
+            }
+            for (Node node : values) {
+                Integer result = compareValues(value, node.evaluate(message));
+                if (result != null && result == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Compare implements Condition {
+
+        private final String operator;
+        private final Node left;
+        private final Node right;
+
+        @Override
+        public Object evaluate(Level12Message message) {
+            Integer result = compareValues(left.evaluate(message), right.evaluate(message));
+            if (result == null) {
+                return null;
+            }
+            return switch (operator) {
+                case "=" -> result == 0;
+                case "<>", "!=" -> result != 0;
+                case "<" -> result < 0;
+                case "<=" -> result <= 0;
+                case ">" -> result > 0;
+                case ">=" -> result >= 0;
+                default -> null;
+            };
+        }
+    }
+
+    /**
+     * 比较两个值：一侧是数字时另一侧按数字解析，一侧是布尔值时另一侧按布尔解析
+     *
+     * @return 比较结果，无法比较时返回 null（UNKNOWN）
+     */
+    private static Integer compareValues(Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+
+        if (left instanceof BigDecimal || right instanceof BigDecimal) {
+            BigDecimal l = toNumber(left);
+            BigDecimal r = toNumber(right);
+            return l == null || r == null ? null : l.compareTo(r);
+        }
+
+        if (left instanceof Boolean || right instanceof Boolean) {
+            return Boolean.compare(Boolean.parseBoolean(left.toString()), Boolean.parseBoolean(right.toString()));
+        }
+
+        return left.toString().compareTo(right.toString());
+    }
+
+    private static BigDecimal toNumber(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
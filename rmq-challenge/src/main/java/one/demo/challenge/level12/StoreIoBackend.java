@@ -0,0 +1,298 @@
+package one.demo.challenge.level12;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 存储文件的 I/O 方式（MappedFile 内部使用）
+ *
+ * - MMAP：读写都走内存映射，写入是一次内存拷贝，没有系统调用，但缺页和脏页回写由内核决定
+ * - CHANNEL：写入先攒到按块对齐的直接内存缓冲区，攒满后按整块写到 FileChannel（写后缓冲），
+ *   读取走 FileChannel 的定位读，需要拷贝到堆内存
+ * - HYBRID：写入同 CHANNEL，读取走内存映射（同一个文件共享 PageCache，提交到文件后可见）
+ *
+ * 哪种更快取决于内核、消息大小和并发度，用 rmq-challenge-bench 的 MappedFileBenchmark / CommitLogBenchmark 实测后选择
+ *
+ * 写入由 CommitLog 的锁串行化，读取只读取 wrotePosition 之前的数据；
+ * CHANNEL / HYBRID 的读取、刷盘会先把写入缓冲中还没提交的数据写到文件，这部分和写入互斥
+ */
+public interface StoreIoBackend {
+
+    /**
+     * 在文件内 position 处写入数据（写完后 data 的 position 到达 limit）
+     */
+    void write(int position, ByteBuffer data) throws IOException;
+
+    /**
+     * 读取文件内 [position, position + size) 的数据
+     */
+    ByteBuffer read(int position, int size) throws IOException;
+
+    /**
+     * 刷盘
+     */
+    void flush() throws IOException;
+
+    /**
+     * 整个文件的只读视图（重启恢复、归档时顺序扫描）
+     */
+    ByteBuffer readOnlyView() throws IOException;
+
+    /**
+     * 把写入缓冲中还没提交的数据写到文件（不刷盘）
+     *
+     * 绕过 I/O 实现直接访问文件通道（零拷贝发送）、文件写满封存之前调用，没有写入缓冲的实现什么都不做
+     */
+    default void commit() throws IOException {
+    }
+
+    /**
+     * 创建文件的 I/O 实现
+     *
+     * @param type I/O 方式
+     * @param fileChannel 文件通道（已打开，读写模式）
+     * @param fileSize 文件大小（文件按该大小预分配）
+     */
+    static StoreIoBackend open(Type type, FileChannel fileChannel, int fileSize) throws IOException {
+        switch (type) {
+            case CHANNEL:
+                return new ChannelBackend(fileChannel, fileSize);
+            case HYBRID:
+                return new HybridBackend(fileChannel, fileSize);
+            case MMAP:
+            default:
+                return new MmapBackend(fileChannel, fileSize);
+        }
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * I/O 方式
+     */
+    enum Type {
+        MMAP,
+        CHANNEL,
+        HYBRID
+    }
+
+    /**
+     * 读写都走内存映射
+     */
+    class MmapBackend implements StoreIoBackend {
+        private final MappedByteBuffer mappedByteBuffer;
+
+        MmapBackend(FileChannel fileChannel, int fileSize) throws IOException {
+            this.mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+
+        @Override
+        public void write(int position, ByteBuffer data) {
+            ByteBuffer slice = mappedByteBuffer.slice();
+            slice.position(position);
+            slice.put(data);
+        }
+
+        @Override
+        public ByteBuffer read(int position, int size) {
+            ByteBuffer slice = mappedByteBuffer.slice();
+            slice.position(position);
+            slice.limit(position + size);
+            return slice.slice();
+        }
+
+        @Override
+        public void flush() {
+            mappedByteBuffer.force();
+        }
+
+        @Override
+        public ByteBuffer readOnlyView() {
+            return mappedByteBuffer.asReadOnlyBuffer().slice();
+        }
+    }
+
+    /**
+     * 写入走按块对齐的直接内存缓冲区，读取走 FileChannel 定位读
+     *
+     * CommitLog 是顺序追加，一条消息一次 pwrite 会产生大量小的、不对齐的系统调用（还要先从堆内存拷贝到临时直接内存）。
+     * 这里把写入先拷贝到 WRITE_BUFFER_SIZE 大小、起始地址按 BLOCK_SIZE 对齐的直接内存缓冲区，
+     * 缓冲区对应文件中按块对齐的一段，攒满后一次写出整段；读取、刷盘、封存时才把未提交的部分写出
+     * （从所在块的起点开始写，已经写过的块头部数据不变）。
+     *
+     * 缓冲区中的数据提交前只在进程内存里：进程崩溃最多丢失一个缓冲区的数据，和 MMAP 写入后未刷盘的风险相同，
+     * 同步刷盘的写入在刷盘前会先提交，不受影响
+     */
+    class ChannelBackend implements StoreIoBackend {
+        // 文件系统块大小（对齐单位）
+        static final int BLOCK_SIZE = 4096;
+
+        // 写入缓冲区大小（BLOCK_SIZE 的整数倍）
+        static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+        protected final FileChannel fileChannel;
+        protected final int fileSize;
+
+        // 写入缓冲区（直接内存，起始地址按 BLOCK_SIZE 对齐）
+        private final ByteBuffer writeBuffer;
+
+        // 写入缓冲区第 0 个字节对应的文件位置（按 BLOCK_SIZE 对齐）
+        private long bufferFilePosition = 0;
+
+        // 已经写到文件的位置（之前的数据读取时不需要再提交）
+        private volatile long committedFilePosition = 0;
+
+        // 缓冲区中是否有未提交的数据
+        private volatile boolean dirty = false;
+
+        ChannelBackend(FileChannel fileChannel, int fileSize) throws IOException {
+            this.fileChannel = fileChannel;
+            this.fileSize = fileSize;
+            this.writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE + BLOCK_SIZE).alignedSlice(BLOCK_SIZE);
+            this.writeBuffer.limit(WRITE_BUFFER_SIZE);
+
+            // 与 mmap 一样预分配到固定大小，文件布局、加载和恢复逻辑不变
+            if (fileChannel.size() < fileSize) {
+                fileChannel.write(ByteBuffer.wrap(new byte[1]), fileSize - 1);
+            }
+        }
+
+        @Override
+        public synchronized void write(int position, ByteBuffer data) throws IOException {
+            if (position != bufferFilePosition + writeBuffer.position()) {
+                // 不是接着上次写入（首次写入 / 重启后恢复到新的写入位置）：提交当前缓冲区，从 position 所在的块重新开始
+                commitBuffer();
+                rebase(position);
+            }
+
+            while (data.hasRemaining()) {
+                int length = Math.min(data.remaining(), writeBuffer.remaining());
+                ByteBuffer chunk = data.slice();
+                chunk.limit(length);
+                writeBuffer.put(chunk);
+                data.position(data.position() + length);
+                dirty = true;
+
+                if (!writeBuffer.hasRemaining()) {
+                    // 攒满一整段：写出后缓冲区对应文件的下一段
+                    commitBuffer();
+                    bufferFilePosition += WRITE_BUFFER_SIZE;
+                    writeBuffer.clear();
+                    writeBuffer.limit(WRITE_BUFFER_SIZE);
+                }
+            }
+
+            if (bufferFilePosition + writeBuffer.position() >= fileSize) {
+                // 写到文件末尾不会再有后续写入，直接提交
+                commitBuffer();
+            }
+        }
+
+        @Override
+        public ByteBuffer read(int position, int size) throws IOException {
+            commitIfNeeded(position + size);
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("读取超出文件末尾: position=" + position + ", size=" + size);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            commit();
+            fileChannel.force(false);
+        }
+
+        @Override
+        public ByteBuffer readOnlyView() throws IOException {
+            commit();
+            // 顺序扫描整个文件时用只读映射，避免把整个文件读进堆内存
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        @Override
+        public synchronized void commit() throws IOException {
+            commitBuffer();
+        }
+
+        /**
+         * 读取范围超过已提交的位置时先提交（读取已提交的数据不加锁）
+         */
+        protected void commitIfNeeded(long endPosition) throws IOException {
+            if (dirty && endPosition > committedFilePosition) {
+                commit();
+            }
+        }
+
+        /**
+         * 把缓冲区中未提交的数据写到文件：从未提交数据所在块的起点写到缓冲区当前位置
+         */
+        private void commitBuffer() throws IOException {
+            long end = bufferFilePosition + writeBuffer.position();
+            if (!dirty || end <= committedFilePosition) {
+                return;
+            }
+
+            int from = (int) (Math.max(committedFilePosition - bufferFilePosition, 0) / BLOCK_SIZE * BLOCK_SIZE);
+            ByteBuffer pending = writeBuffer.duplicate();
+            pending.position(from);
+            pending.limit(writeBuffer.position());
+            long pos = bufferFilePosition + from;
+            while (pending.hasRemaining()) {
+                pos += fileChannel.write(pending, pos);
+            }
+            committedFilePosition = end;
+            dirty = false;
+        }
+
+        /**
+         * 让缓冲区从 position 所在的块开始，读回块内 position 之前已有的数据，提交时整块写回不会覆盖它们
+         */
+        private void rebase(int position) throws IOException {
+            bufferFilePosition = (long) position / BLOCK_SIZE * BLOCK_SIZE;
+            writeBuffer.clear();
+            writeBuffer.limit(position - (int) bufferFilePosition);
+            while (writeBuffer.hasRemaining()) {
+                if (fileChannel.read(writeBuffer, bufferFilePosition + writeBuffer.position()) < 0) {
+                    break;
+                }
+            }
+            writeBuffer.position(position - (int) bufferFilePosition);
+            writeBuffer.limit(WRITE_BUFFER_SIZE);
+            committedFilePosition = position;
+        }
+    }
+
+    /**
+     * 写入同 ChannelBackend（写后缓冲），读取走内存映射
+     */
+    class HybridBackend extends ChannelBackend {
+        private final MappedByteBuffer readBuffer;
+
+        HybridBackend(FileChannel fileChannel, int fileSize) throws IOException {
+            super(fileChannel, fileSize);
+            this.readBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        @Override
+        public ByteBuffer read(int position, int size) throws IOException {
+            commitIfNeeded(position + size);
+            ByteBuffer slice = readBuffer.slice();
+            slice.position(position);
+            slice.limit(position + size);
+            return slice.slice();
+        }
+
+        @Override
+        public ByteBuffer readOnlyView() throws IOException {
+            commit();
+            return readBuffer.slice();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Store Lag Metrics - 分发堆积与消费堆积指标
+ *
+ * 所有指标都由内存中的水位直接算出，不扫描文件，可以高频拉取：
+ * 1. 分发堆积：CommitLog 最大偏移量 - Reput 已分发偏移量；时长 = 最近一次写入时间 - 最近一次分发的消息的存储时间
+ * 2. 队列水位：每个 ConsumeQueue 的最小 / 最大索引
+ * 3. 消费堆积：队列最大索引 - 消费组已提交进度（ConsumerOffsetManager）
+ * 4. 最早未消费消息的时长：现在 - 已提交进度处那条消息的存储时间
+ *
+ * 第 4 项需要读一条索引和一条消息，按（消费组, Queue）缓存，进度不变就不再读取
+ *
+ * 文本格式与 Prometheus exposition format 0.0.4 兼容，可以直接配置为抓取目标
+ */
+public class StoreLagMetrics {
+
+    private static final String PREFIX = "level12_";
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // 消费进度
+    private final ConsumerOffsetManager consumerOffsetManager;
+
+    // Topic@Group#QueueId -> 已提交进度处那条消息的存储时间
+    private final ConcurrentMap<String, OldestMessage> oldestMessageCache = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param consumerOffsetManager 消费进度
+     */
+    public StoreLagMetrics(Level12MessageStoreBest messageStore, ConsumerOffsetManager consumerOffsetManager) {
+        this.messageStore = messageStore;
+        this.consumerOffsetManager = consumerOffsetManager;
+    }
+
+    /**
+     * 采集当前指标
+     */
+    public LagSnapshot collect() {
+        long now = System.currentTimeMillis();
+        ReputMessageService reputMessageService = messageStore.getReputMessageService();
+
+        List<QueueGauge> queues = new ArrayList<>();
+        Map<String, ConsumeQueue> queueIndex = new HashMap<>();
+        for (String topic : messageStore.getAllTopics()) {
+            for (ConsumeQueue consumeQueue : messageStore.getConsumeQueues(topic)) {
+                queues.add(new QueueGauge(topic, consumeQueue.getQueueId(),
+                    consumeQueue.getMinIndex(), consumeQueue.getMaxIndex()));
+                queueIndex.put(topic + "#" + consumeQueue.getQueueId(), consumeQueue);
+            }
+        }
+        queues.sort(Comparator.comparing(QueueGauge::getTopic).thenComparingInt(QueueGauge::getQueueId));
+
+        List<GroupGauge> groups = new ArrayList<>();
+        for (Map.Entry<String, ConcurrentMap<Integer, Long>> entry : consumerOffsetManager.getOffsetTable().entrySet()) {
+            String topic = ConsumerOffsetManager.topicOf(entry.getKey());
+            String group = ConsumerOffsetManager.groupOf(entry.getKey());
+            for (Map.Entry<Integer, Long> queueOffset : entry.getValue().entrySet()) {
+                int queueId = queueOffset.getKey();
+                long committed = queueOffset.getValue();
+                ConsumeQueue consumeQueue = queueIndex.get(topic + "#" + queueId);
+
+                long maxOffset = consumeQueue == null ? 0 : consumeQueue.getMaxIndex();
+                // 已过期删除的消息不算堆积
+                long from = consumeQueue == null ? committed : Math.max(committed, consumeQueue.getMinIndex());
+                long lag = Math.max(0, maxOffset - from);
+                long oldestAgeMs = lag == 0 ? 0
+                    : Math.max(0, now - oldestStoreTime(entry.getKey() + "#" + queueId, consumeQueue, from, now));
+
+                groups.add(new GroupGauge(group, topic, queueId, committed, maxOffset, lag, oldestAgeMs));
+            }
+        }
+        groups.sort(Comparator.comparing(GroupGauge::getGroup).thenComparing(GroupGauge::getTopic)
+            .thenComparingInt(GroupGauge::getQueueId));
+
+        return new LagSnapshot(now, messageStore.getCommitLog().getMaxOffset(), reputMessageService.getReputFromOffset(),
+            reputMessageService.getDispatchBehindBytes(), reputMessageService.getDispatchBehindMs(), queues, groups);
+    }
+
+    /**
+     * 已提交进度处那条消息的存储时间，读不到（已清理 / 已隔离）时按现在计算
+     */
+    private long oldestStoreTime(String cacheKey, ConsumeQueue consumeQueue, long offset, long now) {
+        OldestMessage cached = oldestMessageCache.get(cacheKey);
+        if (cached != null && cached.getOffset() == offset) {
+            return cached.getStoreTime();
+        }
+
+        List<ConsumeQueue.CQUnit> units = consumeQueue.getIndexList(offset, 1);
+        if (units.isEmpty()) {
+            return now;
+        }
+        ConsumeQueue.CQUnit unit = units.get(0);
+        Level12Message message = messageStore.getCommitLog().getMessage(unit.getCommitLogOffset(), unit.getBatchIndex());
+        if (message == null) {
+            return now;
+        }
+
+        oldestMessageCache.put(cacheKey, new OldestMessage(offset, message.getStoreTime()));
+        return message.getStoreTime();
+    }
+
+    /**
+     * 输出 Prometheus 文本格式
+     */
+    public static String formatPrometheus(LagSnapshot snapshot) {
+        StringBuilder sb = new StringBuilder(4096);
+
+        gauge(sb, "commitlog_max_offset", "CommitLog 最大物理偏移量", snapshot.getCommitLogMaxOffset());
+        gauge(sb, "reput_offset", "Reput 已分发到的物理偏移量", snapshot.getReputOffset());
+        gauge(sb, "reput_lag_bytes", "还没有分发到 ConsumeQueue 的 CommitLog 字节数", snapshot.getReputLagBytes());
+        gauge(sb, "reput_lag_ms", "分发落后的时长（毫秒）", snapshot.getReputLagMs());
+
+        header(sb, "queue_min_offset", "ConsumeQueue 最小索引");
+        for (QueueGauge queue : snapshot.getQueues()) {
+            sample(sb, "queue_min_offset", queue.getMinOffset(), "topic", queue.getTopic(), "queue", queue.getQueueId());
+        }
+        header(sb, "queue_max_offset", "ConsumeQueue 最大索引（下一条消息的索引）");
+        for (QueueGauge queue : snapshot.getQueues()) {
+            sample(sb, "queue_max_offset", queue.getMaxOffset(), "topic", queue.getTopic(), "queue", queue.getQueueId());
+        }
+
+        header(sb, "consumer_committed_offset", "消费组已提交的进度");
+        for (GroupGauge group : snapshot.getGroups()) {
+            sample(sb, "consumer_committed_offset", group.getCommittedOffset(),
+                "group", group.getGroup(), "topic", group.getTopic(), "queue", group.getQueueId());
+        }
+        header(sb, "consumer_lag", "消费堆积消息数");
+        for (GroupGauge group : snapshot.getGroups()) {
+            sample(sb, "consumer_lag", group.getLag(),
+                "group", group.getGroup(), "topic", group.getTopic(), "queue", group.getQueueId());
+        }
+        header(sb, "consumer_oldest_unconsumed_age_ms", "最早一条未消费消息已存储的时长（毫秒），没有堆积为 0");
+        for (GroupGauge group : snapshot.getGroups()) {
+            sample(sb, "consumer_oldest_unconsumed_age_ms", group.getOldestUnconsumedAgeMs(),
+                "group", group.getGroup(), "topic", group.getTopic(), "queue", group.getQueueId());
+        }
+
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help);
+        sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+    }
+
+    /**
+     * labels 为 名称, 值, 名称, 值 ...
+     */
+    private static void sample(StringBuilder sb, String name, long value, Object... labels) {
+        sb.append(PREFIX).append(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String labelValue = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < labelValue.length(); j++) {
+                char c = labelValue.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    // ==================== 内部类 ====================
+
+    @Data
+    @AllArgsConstructor
+    private static class OldestMessage {
+        private long offset;
+        private long storeTime;
+    }
+
+    /**
+     * 一次采集的结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class LagSnapshot {
+        private long timestamp;
+        private long commitLogMaxOffset;
+        private long reputOffset;
+        private long reputLagBytes;
+        private long reputLagMs;
+        private List<QueueGauge> queues;
+        private List<GroupGauge> groups;
+    }
+
+    /**
+     * 队列水位
+     */
+    @Data
+    @AllArgsConstructor
+    public static class QueueGauge {
+        private String topic;
+        private int queueId;
+        private long minOffset;
+        private long maxOffset;
+    }
+
+    /**
+     * 消费组在一个 Queue 上的堆积
+     */
+    @Data
+    @AllArgsConstructor
+    public static class GroupGauge {
+        private String group;
+        private String topic;
+        private int queueId;
+        private long committedOffset;
+        private long maxOffset;
+        private long lag;
+        private long oldestUnconsumedAgeMs;
+    }
+}
@@ -0,0 +1,154 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TimerLog - 定时消息日志
+ *
+ * 核心特性：
+ * 1. 顺序追加写入，每条记录固定 32 字节，只存位置信息，消息本身仍在 CommitLog
+ * 2. 同一个时间轮槽位的记录通过 prevPos 串成单向链表（从新到旧），槽位只需记录链表尾部
+ * 3. 记录格式：类型(4) + 消息大小(4) + 投递时间(8) + CommitLog Offset(8) + 上一条记录位置(8)
+ *
+ * 记录类型：
+ * - ORIGINAL：消息第一次进入时间轮（重启重建时间轮时只使用这类记录）
+ * - CASCADE：小时轮降级到秒级轮、或重建时间轮时追加的记录
+ */
+@Slf4j
+public class TimerLog {
+
+    // 每条记录的大小：32 字节
+    public static final int UNIT_SIZE = 32;
+
+    public static final int TYPE_ORIGINAL = 1;
+
+    public static final int TYPE_CASCADE = 2;
+
+    // MappedFile 队列
+    private final MappedFileQueue mappedFileQueue;
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param fileSize 单个文件大小（按记录大小向下取整，保证记录不会跨文件）
+     */
+    public TimerLog(String storePath, int fileSize) {
+        this.mappedFileQueue = new MappedFileQueue(storePath + "/timerlog", fileSize - fileSize % UNIT_SIZE);
+    }
+
+    /**
+     * 追加记录
+     *
+     * @return 记录位置，-1 表示失败
+     */
+    public long append(int type, long deliverTime, long commitLogOffset, int size, long prevPos) {
+        ByteBuffer buffer = ByteBuffer.allocate(UNIT_SIZE);
+        buffer.putInt(type);
+        buffer.putInt(size);
+        buffer.putLong(deliverTime);
+        buffer.putLong(commitLogOffset);
+        buffer.putLong(prevPos);
+        buffer.flip();
+
+        return mappedFileQueue.append(buffer);
+    }
+
+    /**
+     * 读取记录
+     *
+     * @param pos 记录位置
+     * @return 记录，读取失败返回 null
+     */
+    public Unit read(long pos) {
+        ByteBuffer buffer = mappedFileQueue.getData(pos, UNIT_SIZE);
+        if (buffer == null) {
+            return null;
+        }
+
+        int type = buffer.getInt();
+        int size = buffer.getInt();
+        long deliverTime = buffer.getLong();
+        long commitLogOffset = buffer.getLong();
+        long prevPos = buffer.getLong();
+
+        return new Unit(pos, type, size, deliverTime, commitLogOffset, prevPos);
+    }
+
+    /**
+     * 扫描文件恢复写入位置（重启后调用），类型无效的位置视为日志结束
+     *
+     * @return 有效数据的最大偏移量
+     */
+    public long recover() {
+        return mappedFileQueue.recover((buffer, position) -> {
+            if (position + UNIT_SIZE > buffer.capacity()) {
+                return -1;
+            }
+            int type = buffer.getInt(position);
+            if (type != TYPE_ORIGINAL && type != TYPE_CASCADE) {
+                return -1;
+            }
+            return UNIT_SIZE;
+        });
+    }
+
+    /**
+     * 删除最早的文件
+     */
+    public boolean deleteFirstFile() {
+        return mappedFileQueue.deleteFirstMappedFile();
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        mappedFileQueue.flush();
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        mappedFileQueue.shutdown();
+    }
+
+    // Getters
+
+    public long getMinOffset() {
+        return mappedFileQueue.getMinOffset();
+    }
+
+    public long getMaxOffset() {
+        return mappedFileQueue.getMaxOffset();
+    }
+
+    public int getFileSize() {
+        return mappedFileQueue.getMappedFileSize();
+    }
+
+    public int getFileCount() {
+        return mappedFileQueue.getMappedFileCount();
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * TimerLog 记录
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Unit {
+        private long pos;
+        private int type;
+        private int size;
+        private long deliverTime;
+        private long commitLogOffset;
+        private long prevPos;
+    }
+}
@@ -0,0 +1,566 @@
+package one.demo.challenge.level12;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Timer Message Store - 定时消息（时间轮）
+ *
+ * 核心流程：
+ * 1. ReputMessageService 发现 deliverTime 晚于存储时间的消息，不写 ConsumeQueue，交给 putTimer
+ * 2. putTimer 追加一条 TimerLog 记录，挂到对应的时间轮槽位
+ * 3. 后台线程逐秒推进：整点时把小时槽降级到秒级轮，再把到期的秒级槽位中的消息重新写入 CommitLog，
+ *    此时存储时间已不早于投递时间，由 ReputMessageService 正常分发到真实 Topic 的 ConsumeQueue
+ *
+ * 崩溃恢复：
+ * - checkpoint 记录已投递到的时间（秒）和是否正常关闭
+ * - 正常关闭：直接使用内存映射的时间轮
+ * - 非正常关闭：清空时间轮，用 TimerLog 中未到期的 ORIGINAL 记录重建（至少投递一次，可能重复）
+ *
+ * 存储结构：
+ * timer/
+ *   ├── timerlog/        # 定时消息日志
+ *   ├── timerwheel       # 两级时间轮
+ *   └── checkpoint       # 投递进度
+ */
+@Slf4j
+public class TimerMessageStore {
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int SECONDS_PER_HOUR = 3600;
+
+    // 追赶积压时每推进多少秒写一次 checkpoint
+    private static final int CHECKPOINT_INTERVAL_SECONDS = 60;
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // timer 目录
+    private final String storePath;
+
+    // 定时消息日志
+    private final TimerLog timerLog;
+
+    // 两级时间轮
+    private final TimerWheel timerWheel;
+
+    // 保护时间轮、TimerLog 追加和 currReadTimeSec
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // TimerLog 文件起始位置 -> 文件内记录最晚被处理的时间（秒），用于清理过期文件
+    private final TreeMap<Long, Long> fileExpireTable = new TreeMap<>();
+
+    // 下一个要扫描的秒
+    private long currReadTimeSec;
+
+    // 已投递完成的秒（不含），写入 checkpoint
+    private volatile long committedReadTimeSec;
+
+    // 上次写 checkpoint 时的 committedReadTimeSec（只在扫描线程中访问）
+    private long lastCheckpointSec;
+
+    // ORIGINAL 记录对应消息在 CommitLog 中的最大结束位置，用于重启后确定 Reput 起始位置
+    private volatile long maxDispatchedPhysicalOffset = -1;
+
+    // 统计
+    private final AtomicLong enqueueCount = new AtomicLong(0);
+    private final AtomicLong deliverCount = new AtomicLong(0);
+    private final AtomicLong cascadeCount = new AtomicLong(0);
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 后台线程
+    private Thread timerThread;
+
+    /**
+     * 构造函数（会恢复 TimerLog 和时间轮）
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public TimerMessageStore(Level12MessageStoreBest messageStore, CommitLog commitLog, Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+        this.storePath = messageStore.getStorePath() + "/timer";
+        this.timerLog = new TimerLog(storePath, storeConfig.getTimerLogFileSize());
+        try {
+            this.timerWheel = new TimerWheel(storePath, storeConfig.getTimerWheelHours());
+        } catch (IOException e) {
+            throw new IllegalStateException("创建时间轮失败: " + storePath, e);
+        }
+
+        load();
+    }
+
+    /**
+     * 加载：恢复 TimerLog 写入位置，读取 checkpoint，必要时重建时间轮
+     */
+    private void load() {
+        long startTime = System.currentTimeMillis();
+
+        // 1. 恢复 TimerLog 写入位置
+        long maxOffset = timerLog.recover();
+
+        // 2. 读取 checkpoint
+        Properties checkpoint = readCheckpoint();
+        boolean needRebuild;
+        // 重建时从这一秒开始的 ORIGINAL 记录视为未投递
+        long rebuildFromSec;
+        if (checkpoint == null) {
+            // 没有 checkpoint（丢失）：不知道投递到了哪里，TimerLog 中的记录全部重新入轮（可能重复投递，不会丢）
+            currReadTimeSec = System.currentTimeMillis() / 1000;
+            rebuildFromSec = 0;
+            needRebuild = maxOffset > timerLog.getMinOffset();
+        } else {
+            currReadTimeSec = Long.parseLong(checkpoint.getProperty("currReadTimeSec"));
+            boolean clean = Boolean.parseBoolean(checkpoint.getProperty("clean"));
+            int wheelHours = Integer.parseInt(checkpoint.getProperty("timerWheelHours"));
+            needRebuild = !clean || wheelHours != timerWheel.getHourSlots();
+            rebuildFromSec = currReadTimeSec;
+        }
+        committedReadTimeSec = currReadTimeSec;
+        lastCheckpointSec = currReadTimeSec;
+
+        // 3. 扫描 TimerLog，重建文件过期表和 Reput 位置
+        //    已过期的记录可能挂在 currReadTimeSec 对应的槽位上，过期时间至少取 currReadTimeSec
+        for (long pos = timerLog.getMinOffset(); pos < maxOffset; pos += TimerLog.UNIT_SIZE) {
+            TimerLog.Unit unit = timerLog.read(pos);
+            if (unit == null) {
+                // 已写满文件尾部的空闲空间
+                pos = pos - pos % timerLog.getFileSize() + timerLog.getFileSize() - TimerLog.UNIT_SIZE;
+                continue;
+            }
+            fileExpireTable.merge(fileOf(pos), Math.max(unit.getDeliverTime() / 1000, currReadTimeSec), Math::max);
+            if (unit.getType() == TimerLog.TYPE_ORIGINAL) {
+                maxDispatchedPhysicalOffset = Math.max(maxDispatchedPhysicalOffset,
+                    unit.getCommitLogOffset() + unit.getSize());
+            }
+        }
+
+        // 4. 非正常关闭时重建时间轮
+        if (needRebuild) {
+            rebuild(maxOffset, rebuildFromSec);
+        }
+
+        // 运行期间 checkpoint 一律标记为非正常关闭，只有 shutdown 才会改回来
+        writeCheckpoint(false);
+
+        log.info("✅ TimerMessageStore 加载完成: currReadTimeSec={}, timerLog=[{}, {}), rebuild={}, 耗时={} ms",
+            currReadTimeSec, timerLog.getMinOffset(), maxOffset, needRebuild, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 用 TimerLog 中未投递的 ORIGINAL 记录重建时间轮
+     *
+     * ORIGINAL 记录的 deliverTime 是它实际挂到的秒（入轮时已过期的记录按入轮时的 currReadTimeSec 记录，见 addTimer），
+     * 不早于 fromSec 的记录所在的秒还没有投递完成，重新入轮，已过期的由 addTimer 挂到下一个要扫描的秒
+     *
+     * @param maxOffset 重建前 TimerLog 的结束位置（重建过程中追加的记录不再扫描）
+     * @param fromSec 已投递完成的秒（不含）
+     */
+    private void rebuild(long maxOffset, long fromSec) {
+        lock.lock();
+        try {
+            timerWheel.reset();
+
+            long rebuilt = 0;
+            for (long pos = timerLog.getMinOffset(); pos < maxOffset; pos += TimerLog.UNIT_SIZE) {
+                TimerLog.Unit unit = timerLog.read(pos);
+                if (unit == null) {
+                    pos = pos - pos % timerLog.getFileSize() + timerLog.getFileSize() - TimerLog.UNIT_SIZE;
+                    continue;
+                }
+                if (unit.getType() == TimerLog.TYPE_ORIGINAL && unit.getDeliverTime() / 1000 >= fromSec) {
+                    addTimer(TimerLog.TYPE_CASCADE, unit.getDeliverTime(), unit.getCommitLogOffset(), unit.getSize());
+                    rebuilt++;
+                }
+            }
+
+            log.warn("⚠️ TimerMessageStore 非正常关闭，已从 TimerLog 重建时间轮: pending={}", rebuilt);
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 启动服务
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ TimerMessageStore 已经在运行中");
+            return;
+        }
+
+        running = true;
+
+        timerThread = new Thread(this::doScan, "TimerMessageStore");
+        timerThread.setDaemon(true);
+        timerThread.start();
+
+        log.info("✅ TimerMessageStore 已启动: currReadTimeSec={}", currReadTimeSec);
+    }
+
+    /**
+     * 停止服务，并标记为正常关闭
+     */
+    public void shutdown() {
+        running = false;
+
+        if (timerThread != null) {
+            try {
+                timerThread.interrupt();
+                timerThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 TimerMessageStore 失败", e);
+            }
+        }
+
+        lock.lock();
+        try {
+            timerLog.flush();
+            timerWheel.flush();
+            writeCheckpoint(true);
+            timerLog.shutdown();
+            timerWheel.shutdown();
+        } finally {
+            lock.unlock();
+        }
+
+        log.info("✅ TimerMessageStore 已停止: committedReadTimeSec={}", committedReadTimeSec);
+    }
+
+    /**
+     * 定时消息入轮（由 ReputMessageService 调用）
+     *
+     * @param message 从 CommitLog 读出的定时消息
+     */
+    public void putTimer(Level12Message message) {
+        lock.lock();
+        try {
+            addTimer(TimerLog.TYPE_ORIGINAL, message.getDeliverTime(), message.getPhysicalOffset(), message.getLen());
+            maxDispatchedPhysicalOffset = Math.max(maxDispatchedPhysicalOffset,
+                message.getPhysicalOffset() + message.getLen());
+        } finally {
+            lock.unlock();
+        }
+
+        enqueueCount.incrementAndGet();
+
+        log.debug("⏰ 定时消息入轮: topic={}, messageId={}, deliverTime={}",
+            message.getTopic(), message.getMessageId(), message.getDeliverTime());
+    }
+
+    /**
+     * 追加 TimerLog 记录并挂到槽位（调用方持有锁）
+     *
+     * - 当前小时内（或已过期）：挂到秒级轮，已过期的挂到下一个要扫描的秒
+     * - 之后的小时：挂到小时轮，超出小时轮范围的挂到最后一个槽位
+     *
+     * 已过期的记录在 TimerLog 中记为挂到的那一秒（投递时从 CommitLog 读取原消息，不使用这个时间），
+     * 崩溃重建时据此判断记录是否已经投递
+     */
+    private void addTimer(int type, long deliverTime, long commitLogOffset, int size) {
+        long targetSec = Math.max(deliverTime / 1000, currReadTimeSec);
+        long currHour = currReadTimeSec / SECONDS_PER_HOUR;
+
+        boolean inCurrentHour = targetSec / SECONDS_PER_HOUR == currHour;
+        long hour = Math.min(targetSec / SECONDS_PER_HOUR, currHour + timerWheel.getHourSlots() - 1);
+
+        TimerWheel.Slot slot = inCurrentHour ? timerWheel.getSecondSlot(targetSec) : timerWheel.getHourSlot(hour);
+        long pos = timerLog.append(type, Math.max(deliverTime, targetSec * 1000), commitLogOffset, size, slot.getLastPos());
+        if (pos == -1) {
+            throw new IllegalStateException("写入 TimerLog 失败");
+        }
+
+        if (inCurrentHour) {
+            timerWheel.putSecondSlot(targetSec, pos, slot.getNum() + 1);
+        } else {
+            timerWheel.putHourSlot(hour, pos, slot.getNum() + 1);
+        }
+
+        // 记录在 targetSec 之前一定会被投递或降级，之后才允许删除所在文件
+        fileExpireTable.merge(fileOf(pos), targetSec, Math::max);
+    }
+
+    /**
+     * 逐秒推进时间轮
+     */
+    private void doScan() {
+        log.info("⏰ TimerMessageStore 开始扫描");
+
+        while (running) {
+            try {
+                long nowSec = System.currentTimeMillis() / 1000;
+                if (currReadTimeSec > nowSec) {
+                    // 已追上当前时间
+                    if (committedReadTimeSec != lastCheckpointSec) {
+                        timerLog.flush();
+                        writeCheckpoint(false);
+                        lastCheckpointSec = committedReadTimeSec;
+                    }
+                    cleanExpiredFiles();
+                    Thread.sleep(100);
+                    continue;
+                }
+
+                scanOneSecond();
+
+                if (committedReadTimeSec - lastCheckpointSec >= CHECKPOINT_INTERVAL_SECONDS) {
+                    timerLog.flush();
+                    writeCheckpoint(false);
+                    lastCheckpointSec = committedReadTimeSec;
+                }
+
+            } catch (InterruptedException e) {
+                log.info("TimerMessageStore 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ TimerMessageStore 处理失败", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    break;
+                }
+            }
+        }
+
+        log.info("⏰ TimerMessageStore 已退出");
+    }
+
+    /**
+     * 处理一秒：整点先降级小时槽，再投递秒级槽
+     */
+    private void scanOneSecond() {
+        TimerWheel.Slot slot;
+        long second;
+
+        lock.lock();
+        try {
+            second = currReadTimeSec;
+            if (second % SECONDS_PER_HOUR == 0) {
+                cascade(second / SECONDS_PER_HOUR);
+            }
+
+            slot = timerWheel.getSecondSlot(second);
+            timerWheel.clearSecondSlot(second);
+
+            // 取走槽位的同时推进时间，之后到达的过期消息会挂到下一秒，不会丢
+            currReadTimeSec = second + 1;
+        } finally {
+            lock.unlock();
+        }
+
+        // 锁外沿链表投递，不阻塞入轮
+        long pos = slot.getLastPos();
+        for (int i = 0; i < slot.getNum() && pos >= 0; i++) {
+            TimerLog.Unit unit = timerLog.read(pos);
+            if (unit == null) {
+                log.error("❌ 读取 TimerLog 失败: pos={}, second={}", pos, second);
+                break;
+            }
+            deliver(unit, second);
+            pos = unit.getPrevPos();
+        }
+
+        committedReadTimeSec = second + 1;
+    }
+
+    /**
+     * 把小时槽中的消息降级到秒级轮（调用方持有锁）
+     */
+    private void cascade(long hour) {
+        TimerWheel.Slot slot = timerWheel.getHourSlot(hour);
+        timerWheel.clearHourSlot(hour);
+        if (slot.getNum() == 0) {
+            return;
+        }
+
+        long pos = slot.getLastPos();
+        for (int i = 0; i < slot.getNum() && pos >= 0; i++) {
+            TimerLog.Unit unit = timerLog.read(pos);
+            if (unit == null) {
+                log.error("❌ 读取 TimerLog 失败: pos={}, hour={}", pos, hour);
+                break;
+            }
+            addTimer(TimerLog.TYPE_CASCADE, unit.getDeliverTime(), unit.getCommitLogOffset(), unit.getSize());
+            pos = unit.getPrevPos();
+        }
+
+        cascadeCount.addAndGet(slot.getNum());
+
+        log.info("⏬ 小时轮降级: hour={}, count={}", hour, slot.getNum());
+    }
+
+    /**
+     * 投递到期消息：原样重新写入 CommitLog，写入失败（异常或非 PUT_OK）时挂到下一秒重试
+     */
+    private void deliver(TimerLog.Unit unit, long second) {
+        try {
+            Level12Message message = commitLog.getMessage(unit.getCommitLogOffset());
+            if (message == null) {
+                log.error("❌ 定时消息已不存在: commitLogOffset={}", unit.getCommitLogOffset());
+                return;
+            }
+
+            // 幂等键已在第一次写入时生效，到期投递不能被当成重复
+            message.setIdempotencyKey(null);
+            PutMessageResult result = messageStore.putMessageInternal(message);
+            if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+                log.warn("⚠️ 定时消息投递未成功，下一秒重试: commitLogOffset={}, status={}",
+                    unit.getCommitLogOffset(), result.getStatus());
+                retryNextSecond(unit, second);
+                return;
+            }
+            deliverCount.incrementAndGet();
+
+            log.debug("⏰ 定时消息到期投递: topic={}, messageId={}, deliverTime={}, second={}",
+                message.getTopic(), message.getMessageId(), message.getDeliverTime(), second);
+
+        } catch (Exception e) {
+            log.error("❌ 定时消息投递失败，下一秒重试: commitLogOffset={}", unit.getCommitLogOffset(), e);
+            retryNextSecond(unit, second);
+        }
+    }
+
+    private void retryNextSecond(TimerLog.Unit unit, long second) {
+        lock.lock();
+        try {
+            // 以 ORIGINAL 写入，重试记录在崩溃重建时同样会被恢复
+            addTimer(TimerLog.TYPE_ORIGINAL, (second + 1) * 1000, unit.getCommitLogOffset(), unit.getSize());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除记录全部处理完的 TimerLog 文件（不删除正在写入的文件）
+     */
+    private void cleanExpiredFiles() {
+        lock.lock();
+        try {
+            while (fileExpireTable.size() > 1) {
+                Map.Entry<Long, Long> first = fileExpireTable.firstEntry();
+                if (first.getValue() >= committedReadTimeSec || first.getKey() != timerLog.getMinOffset()) {
+                    break;
+                }
+                if (!timerLog.deleteFirstFile()) {
+                    break;
+                }
+                fileExpireTable.pollFirstEntry();
+                log.info("🗑️ 清理过期 TimerLog 文件: offset={}", first.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long fileOf(long pos) {
+        return pos - pos % timerLog.getFileSize();
+    }
+
+    private Properties readCheckpoint() {
+        Path path = Paths.get(storePath, CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            return properties;
+        } catch (IOException e) {
+            throw new IllegalStateException("读取 timer checkpoint 失败: " + path, e);
+        }
+    }
+
+    /**
+     * 写入 checkpoint（先写临时文件再原子替换）
+     */
+    private void writeCheckpoint(boolean clean) {
+        Properties properties = new Properties();
+        properties.setProperty("currReadTimeSec", String.valueOf(committedReadTimeSec));
+        properties.setProperty("timerWheelHours", String.valueOf(timerWheel.getHourSlots()));
+        properties.setProperty("clean", String.valueOf(clean));
+
+        Path target = Paths.get(storePath, CHECKPOINT_FILE);
+        Path tmp = Paths.get(storePath, CHECKPOINT_FILE + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "timer checkpoint");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入 timer checkpoint 失败: " + target, e);
+        }
+    }
+
+    /**
+     * 等待投递的定时消息数量（遍历所有有效槽位）
+     */
+    public long getPendingCount() {
+        lock.lock();
+        try {
+            long pending = 0;
+            long currHour = currReadTimeSec / SECONDS_PER_HOUR;
+            for (long second = currReadTimeSec; second < (currHour + 1) * SECONDS_PER_HOUR; second++) {
+                pending += timerWheel.getSecondSlot(second).getNum();
+            }
+            for (long hour = currHour + 1; hour < currHour + timerWheel.getHourSlots(); hour++) {
+                pending += timerWheel.getHourSlot(hour).getNum();
+            }
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Getters
+
+    public long getMaxDispatchedPhysicalOffset() {
+        return maxDispatchedPhysicalOffset;
+    }
+
+    public long getCommittedReadTimeSec() {
+        return committedReadTimeSec;
+    }
+
+    public long getEnqueueCount() {
+        return enqueueCount.get();
+    }
+
+    public long getDeliverCount() {
+        return deliverCount.get();
+    }
+
+    public long getCascadeCount() {
+        return cascadeCount.get();
+    }
+
+    public int getTimerLogFileCount() {
+        return timerLog.getFileCount();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
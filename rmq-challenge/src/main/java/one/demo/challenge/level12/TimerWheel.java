@@ -0,0 +1,178 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * TimerWheel - 两级时间轮（内存映射）
+ *
+ * 核心特性：
+ * 1. 秒级轮：3600 个槽位，覆盖当前小时，精度 1 秒
+ * 2. 小时轮：timerWheelHours 个槽位，更远的消息先挂在小时轮，到点后整槽降级到秒级轮
+ * 3. 槽位只记录 TimerLog 链表尾部位置和条数，百万级定时消息也不占用堆内存
+ * 4. 槽位格式：时间(8) + 链表尾部位置(8) + 条数(4) + 保留(4)
+ *
+ * 槽位是循环复用的，时间字段记录槽位当前对应的绝对时间（秒级轮为秒、小时轮为小时），
+ * 读取时与期望时间不一致视为空槽
+ *
+ * 线程安全：不加锁，由 TimerMessageStore 统一加锁访问
+ */
+@Slf4j
+public class TimerWheel {
+
+    // 每个槽位的大小：24 字节
+    private static final int SLOT_SIZE = 24;
+
+    // 秒级轮槽位数
+    public static final int SECOND_SLOTS = 3600;
+
+    // 小时轮槽位数
+    private final int hourSlots;
+
+    // 文件路径
+    private final String fileName;
+
+    // 文件通道
+    private final FileChannel fileChannel;
+
+    // 内存映射缓冲区
+    private final MappedByteBuffer mappedByteBuffer;
+
+    /**
+     * 构造函数
+     *
+     * @param storePath 存储路径
+     * @param hourSlots 小时轮槽位数
+     */
+    public TimerWheel(String storePath, int hourSlots) throws IOException {
+        this.hourSlots = hourSlots;
+        this.fileName = storePath + File.separator + "timerwheel";
+
+        File file = new File(fileName);
+        file.getParentFile().mkdirs();
+
+        int fileSize = (SECOND_SLOTS + hourSlots) * SLOT_SIZE;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        this.fileChannel = randomAccessFile.getChannel();
+        this.mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+        log.info("✅ TimerWheel 初始化完成: {}, secondSlots={}, hourSlots={}", fileName, SECOND_SLOTS, hourSlots);
+    }
+
+    /**
+     * 读取秒级槽位
+     *
+     * @param second 绝对时间（秒）
+     */
+    public Slot getSecondSlot(long second) {
+        return getSlot(secondSlotIndex(second), second);
+    }
+
+    public void putSecondSlot(long second, long lastPos, int num) {
+        putSlot(secondSlotIndex(second), second, lastPos, num);
+    }
+
+    public void clearSecondSlot(long second) {
+        putSlot(secondSlotIndex(second), 0, -1, 0);
+    }
+
+    /**
+     * 读取小时槽位
+     *
+     * @param hour 绝对时间（小时）
+     */
+    public Slot getHourSlot(long hour) {
+        return getSlot(hourSlotIndex(hour), hour);
+    }
+
+    public void putHourSlot(long hour, long lastPos, int num) {
+        putSlot(hourSlotIndex(hour), hour, lastPos, num);
+    }
+
+    public void clearHourSlot(long hour) {
+        putSlot(hourSlotIndex(hour), 0, -1, 0);
+    }
+
+    /**
+     * 清空所有槽位（重建时间轮前调用）
+     */
+    public void reset() {
+        for (int i = 0; i < SECOND_SLOTS + hourSlots; i++) {
+            putSlot(i, 0, -1, 0);
+        }
+    }
+
+    private int secondSlotIndex(long second) {
+        return (int) (second % SECOND_SLOTS);
+    }
+
+    private int hourSlotIndex(long hour) {
+        return SECOND_SLOTS + (int) (hour % hourSlots);
+    }
+
+    private Slot getSlot(int index, long expectedTime) {
+        int position = index * SLOT_SIZE;
+        long time = mappedByteBuffer.getLong(position);
+        int num = mappedByteBuffer.getInt(position + 16);
+        if (time != expectedTime || num <= 0) {
+            return new Slot(expectedTime, -1, 0);
+        }
+        return new Slot(time, mappedByteBuffer.getLong(position + 8), num);
+    }
+
+    private void putSlot(int index, long time, long lastPos, int num) {
+        int position = index * SLOT_SIZE;
+        mappedByteBuffer.putLong(position, time);
+        mappedByteBuffer.putLong(position + 8, lastPos);
+        mappedByteBuffer.putInt(position + 16, num);
+    }
+
+    /**
+     * 刷盘
+     */
+    public void flush() {
+        mappedByteBuffer.force();
+    }
+
+    /**
+     * 关闭
+     */
+    public void shutdown() {
+        try {
+            flush();
+            fileChannel.close();
+            log.info("✅ TimerWheel 已关闭: {}", fileName);
+        } catch (IOException e) {
+            log.error("❌ 关闭 TimerWheel 失败: {}", fileName, e);
+        }
+    }
+
+    // Getters
+
+    public int getHourSlots() {
+        return hourSlots;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 时间轮槽位
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Slot {
+        // 绝对时间（秒级轮为秒、小时轮为小时）
+        private long time;
+        // TimerLog 链表尾部位置，-1 表示空
+        private long lastPos;
+        // 链表长度
+        private int num;
+    }
+}
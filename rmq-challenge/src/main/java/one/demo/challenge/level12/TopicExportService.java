@@ -0,0 +1,402 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Topic Export Service - Topic / Queue 区间导出导入
+ *
+ * 导出：
+ * 1. 按 ConsumeQueue 区间找到消息在 CommitLog 中的记录，同一个批量帧只导出一次
+ * 2. CommitLog 中相邻的记录合并成连续区间，用 FileChannel.transferTo 直接从 CommitLog 文件拷到导出文件，
+ *    不解码、不经过堆内存；已归档到冷存储的记录逐条读出后写入
+ * 3. 记录原样导出（长度(4) + 记录内容，见 MessageCodec），导出文件与存储的压缩方式、文件大小无关
+ *
+ * 导入：按索引分块读出记录，校验后批量追加到 CommitLog（一次写入锁追加一块），由 Reput 重建 ConsumeQueue
+ *
+ * 导出文件：
+ * {target}.data   记录依次拼接
+ * {target}.index  魔数(4) + 版本(4) + Topic 长度(2) + Topic + 起始索引(8) + 结束索引(8) + 记录数(4) + 消息数(8) + 数据长度(8)，
+ *                 之后每条记录：在 .data 中的位置(8) + 长度(4) + QueueId(4) + 第一条消息的队列索引(8) + 消息数(4)
+ *
+ * 索引最后写入（先写临时文件再原子替换），存在即表示 .data 完整
+ */
+@Slf4j
+public class TopicExportService {
+
+    private static final int INDEX_MAGIC = 0x4C31324E;
+
+    private static final int INDEX_VERSION = 1;
+
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 8 + 4;
+
+    // 每次读取的 ConsumeQueue 索引条数
+    private static final int CQ_BATCH_SIZE = 1024;
+
+    // 导入时每块的最大字节数（一次写入锁追加一块）
+    private static final int IMPORT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    /**
+     * 构造函数
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     */
+    public TopicExportService(Level12MessageStoreBest messageStore, CommitLog commitLog) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+    }
+
+    /**
+     * 导出 Topic 的 ConsumeQueue 区间
+     *
+     * 批量帧整体导出：区间边界落在帧中间时，整帧都会被导出
+     *
+     * @param topic Topic 名称
+     * @param queueId Queue ID，< 0 表示全部 Queue（依次导出）
+     * @param fromIndex 起始索引（包含）
+     * @param toIndex 结束索引（不包含），< 0 表示到队列末尾
+     * @param target 导出文件路径（不含扩展名）
+     * @return 导出结果
+     */
+    public ExportResult export(String topic, int queueId, long fromIndex, long toIndex, String target) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        List<ConsumeQueue> consumeQueues = new ArrayList<>();
+        for (ConsumeQueue consumeQueue : messageStore.getConsumeQueues(topic)) {
+            if (queueId < 0 || consumeQueue.getQueueId() == queueId) {
+                consumeQueues.add(consumeQueue);
+            }
+        }
+        consumeQueues.sort((a, b) -> Integer.compare(a.getQueueId(), b.getQueueId()));
+
+        Path dataPath = Paths.get(target + ".data");
+        Path indexPath = Paths.get(target + ".index");
+        if (dataPath.getParent() != null) {
+            Files.createDirectories(dataPath.getParent());
+        }
+
+        List<RecordEntry> entries = new ArrayList<>();
+        long messageCount = 0;
+        long transferredBytes = 0;
+        int spanCount = 0;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            SpanWriter writer = new SpanWriter(channel);
+
+            for (ConsumeQueue consumeQueue : consumeQueues) {
+                long from = Math.max(fromIndex, consumeQueue.getMinIndex());
+                long to = toIndex < 0 ? consumeQueue.getMaxIndex() : Math.min(toIndex, consumeQueue.getMaxIndex());
+
+                RecordEntry last = null;
+                for (long index = from; index < to; ) {
+                    List<ConsumeQueue.CQUnit> units = consumeQueue.getIndexList(index, (int) Math.min(CQ_BATCH_SIZE, to - index));
+                    if (units.isEmpty()) {
+                        break;
+                    }
+
+                    for (ConsumeQueue.CQUnit unit : units) {
+                        if (last != null && last.getCommitLogOffset() == unit.getCommitLogOffset()) {
+                            // 同一个批量帧内的后续消息
+                            last.setMessageCount(last.getMessageCount() + 1);
+                        } else {
+                            last = new RecordEntry(writer.add(unit.getCommitLogOffset(), unit.getSize()), unit.getSize(),
+                                consumeQueue.getQueueId(), index, 1, unit.getCommitLogOffset());
+                            entries.add(last);
+                        }
+                        messageCount++;
+                        index++;
+                    }
+                }
+            }
+
+            writer.flushSpan();
+            channel.force(true);
+            transferredBytes = writer.getPosition();
+            spanCount = writer.getSpanCount();
+        }
+
+        writeIndex(indexPath, topic, fromIndex, toIndex, entries, messageCount, transferredBytes);
+
+        long costTime = System.currentTimeMillis() - startTime;
+        log.info("📤 导出完成: topic={}, queueId={}, records={}, messages={}, bytes={}, spans={}, 耗时: {} ms",
+            topic, queueId, entries.size(), messageCount, transferredBytes, spanCount, costTime);
+
+        return new ExportResult(target, entries.size(), messageCount, transferredBytes, spanCount, costTime);
+    }
+
+    /**
+     * 导入导出文件：记录原样追加到 CommitLog，由 Reput 重建索引
+     *
+     * 消息保留原来的 Topic、QueueId、MessageId 和存储时间；队列索引按当前存储重新分配
+     *
+     * @param source 导出文件路径（不含扩展名）
+     * @return 导入结果
+     */
+    public ImportResult importSegment(String source) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        Path dataPath = Paths.get(source + ".data");
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(Paths.get(source + ".index")));
+        if (index.getInt() != INDEX_MAGIC || index.getInt() != INDEX_VERSION) {
+            throw new IOException("不是有效的导出索引文件: " + source + ".index");
+        }
+        byte[] topicBytes = new byte[index.getShort()];
+        index.get(topicBytes);
+        String topic = new String(topicBytes, StandardCharsets.UTF_8);
+        index.getLong();
+        index.getLong();
+        int recordCount = index.getInt();
+        long messageCount = index.getLong();
+        long dataSize = index.getLong();
+
+        long importedBytes = 0;
+        int chunkCount = 0;
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            if (channel.size() < dataSize) {
+                throw new IOException("导出数据文件不完整: size=" + channel.size() + ", expected=" + dataSize);
+            }
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(IMPORT_CHUNK_SIZE);
+            int entryIndex = 0;
+            while (entryIndex < recordCount) {
+                // 按索引凑一块连续的记录（单条记录超过块大小时单独一块）
+                long chunkFrom = index.getLong(index.position());
+                long chunkEnd = chunkFrom;
+                while (entryIndex < recordCount) {
+                    long position = index.getLong(index.position());
+                    int size = index.getInt(index.position() + 8);
+                    if (chunkEnd > chunkFrom && position + size - chunkFrom > IMPORT_CHUNK_SIZE) {
+                        break;
+                    }
+                    chunkEnd = position + size;
+                    index.position(index.position() + INDEX_ENTRY_SIZE);
+                    entryIndex++;
+                }
+
+                int length = (int) (chunkEnd - chunkFrom);
+                if (chunk.capacity() < length) {
+                    chunk = ByteBuffer.allocateDirect(length);
+                }
+                chunk.clear();
+                chunk.limit(length);
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, chunkFrom + chunk.position()) < 0) {
+                        throw new IOException("读取导出数据失败: position=" + chunkFrom);
+                    }
+                }
+                chunk.flip();
+
+                ByteBuffer records = chunk.slice();
+                for (int pos = 0; pos < length; ) {
+                    int recordSize = MessageCodec.checkRecord(records, pos);
+                    if (recordSize < 0
+                        || MessageCodec.verifyChecksum(records, pos, recordSize) == MessageCodec.ChecksumResult.MISMATCH) {
+                        throw new IOException("导出数据损坏: position=" + (chunkFrom + pos));
+                    }
+                    pos += recordSize;
+                }
+
+                if (commitLog.appendRawRecords(records) < 0) {
+                    throw new IOException("追加 CommitLog 失败: position=" + chunkFrom);
+                }
+                importedBytes += length;
+                chunkCount++;
+            }
+        }
+
+        long costTime = System.currentTimeMillis() - startTime;
+        log.info("📥 导入完成: topic={}, records={}, messages={}, bytes={}, chunks={}, 耗时: {} ms",
+            topic, recordCount, messageCount, importedBytes, chunkCount, costTime);
+
+        return new ImportResult(topic, recordCount, messageCount, importedBytes, chunkCount, costTime);
+    }
+
+    private void writeIndex(Path indexPath, String topic, long fromIndex, long toIndex, List<RecordEntry> entries,
+                            long messageCount, long dataSize) throws IOException {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer index = ByteBuffer.allocate(4 + 4 + 2 + topicBytes.length + 8 + 8 + 4 + 8 + 8
+            + entries.size() * INDEX_ENTRY_SIZE);
+        index.putInt(INDEX_MAGIC);
+        index.putInt(INDEX_VERSION);
+        index.putShort((short) topicBytes.length);
+        index.put(topicBytes);
+        index.putLong(fromIndex);
+        index.putLong(toIndex);
+        index.putInt(entries.size());
+        index.putLong(messageCount);
+        index.putLong(dataSize);
+        for (RecordEntry entry : entries) {
+            index.putLong(entry.getPosition());
+            index.putInt(entry.getSize());
+            index.putInt(entry.getQueueId());
+            index.putLong(entry.getQueueIndex());
+            index.putInt(entry.getMessageCount());
+        }
+        index.flip();
+
+        Path tmp = Paths.get(indexPath + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 把 CommitLog 中相邻的记录合并成连续区间后写入导出文件
+     */
+    private class SpanWriter {
+        private final FileChannel target;
+        private final int mappedFileSize;
+
+        // 当前区间在 CommitLog 中的起止位置
+        private long spanFrom = -1;
+        private long spanEnd = -1;
+
+        // 导出文件的写入位置（包括还没写出的区间）
+        private long position = 0;
+        private int spanCount = 0;
+
+        SpanWriter(FileChannel target) {
+            this.target = target;
+            this.mappedFileSize = commitLog.getMappedFileQueue().getMappedFileSize();
+        }
+
+        /**
+         * 加入一条记录
+         *
+         * @return 记录在导出文件中的位置
+         */
+        long add(long commitLogOffset, int size) throws IOException {
+            // 与当前区间相邻、且在同一个 CommitLog 文件内才合并
+            boolean adjacent = commitLogOffset == spanEnd && commitLogOffset / mappedFileSize == spanFrom / mappedFileSize;
+            if (!adjacent) {
+                flushSpan();
+                spanFrom = commitLogOffset;
+                spanEnd = commitLogOffset;
+            }
+            spanEnd += size;
+
+            long recordPosition = position;
+            position += size;
+            return recordPosition;
+        }
+
+        void flushSpan() throws IOException {
+            if (spanFrom < 0 || spanEnd == spanFrom) {
+                return;
+            }
+
+            long targetPosition = target.position();
+            int size = (int) (spanEnd - spanFrom);
+            MappedFile mappedFile = commitLog.getMappedFileQueue().findMappedFileByOffset(spanFrom);
+            if (mappedFile != null && spanEnd <= mappedFile.getFileFromOffset() + mappedFile.getWrotePosition()
+                && mappedFile.hold()) {
+                try {
+                    mappedFile.transferTo(spanFrom, size, target);
+                } finally {
+                    mappedFile.release();
+                }
+            } else {
+                // 热数据文件已删除（归档到冷存储），经 CommitLog 读出后写入
+                writeFromCommitLog(spanFrom, spanEnd);
+            }
+            if (target.position() != targetPosition + size) {
+                throw new IOException("导出数据长度不一致: offset=" + spanFrom + ", size=" + size);
+            }
+
+            spanCount++;
+            spanFrom = -1;
+            spanEnd = -1;
+        }
+
+        private void writeFromCommitLog(long from, long end) throws IOException {
+            for (long offset = from; offset < end; ) {
+                ByteBuffer record = commitLog.selectRawRecord(offset);
+                if (record == null) {
+                    throw new IOException("读取 CommitLog 记录失败: offset=" + offset);
+                }
+                int size = record.remaining();
+                while (record.hasRemaining()) {
+                    target.write(record);
+                }
+                offset += size;
+            }
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        int getSpanCount() {
+            return spanCount;
+        }
+    }
+
+    /**
+     * 导出文件中的一条记录
+     */
+    @Data
+    @AllArgsConstructor
+    private static class RecordEntry {
+        private long position;
+        private int size;
+        private int queueId;
+        private long queueIndex;
+        private int messageCount;
+        private long commitLogOffset;
+    }
+
+    /**
+     * 导出结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ExportResult {
+        private String target;
+        private int recordCount;
+        private long messageCount;
+        private long bytes;
+        private int spanCount;
+        private long costTime;
+    }
+
+    /**
+     * 导入结果
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ImportResult {
+        private String topic;
+        private int recordCount;
+        private long messageCount;
+        private long bytes;
+        private int chunkCount;
+        private long costTime;
+    }
+}
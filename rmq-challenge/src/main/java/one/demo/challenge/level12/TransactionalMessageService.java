@@ -0,0 +1,505 @@
+package one.demo.challenge.level12;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional Message Service - 事务消息（半消息 + op 记录）
+ *
+ * 核心流程：
+ * 1. prepareMessage：消息改写到内部半消息 Topic，真实 Topic 记在 realTopic，消费者不可见
+ * 2. endTransaction：
+ *    - COMMIT：把半消息原样写入真实 Topic，再追加一条 op 记录
+ *    - ROLLBACK：只追加一条 op 记录
+ *    两者都是 CommitLog 顺序追加，不修改半消息本身
+ * 3. 后台回查：按顺序扫描半消息队列，用 op 队列判断是否已结束；
+ *    超过 transactionTimeoutMs 仍未结束的调用 LocalTransactionChecker，
+ *    返回 UNKNOWN 时把半消息以定时消息的方式重新写入半消息队列（退避），原位置继续向后扫描
+ *
+ * op 记录：Topic 为内部 op Topic，body 为事务 ID（半消息的重试副本共用同一个事务 ID）
+ *
+ * 存储结构：
+ * transaction/
+ *   └── checkpoint       # 半消息扫描进度、op 队列重放位置
+ */
+@Slf4j
+public class TransactionalMessageService {
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // op 记录的 Tag
+    private static final String OP_REMOVE_TAG = "d";
+
+    // 每次从 ConsumeQueue 读取的索引数量
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    // 消息存储
+    private final Level12MessageStoreBest messageStore;
+
+    // CommitLog
+    private final CommitLog commitLog;
+
+    // 存储配置
+    private final Level12StoreConfig storeConfig;
+
+    // transaction 目录
+    private final String storePath;
+
+    // 本地事务回查
+    private volatile LocalTransactionChecker checker;
+
+    // 半消息队列的扫描位置
+    private volatile long halfCheckOffset;
+
+    // op 队列的读取位置
+    private long opCheckOffset;
+
+    // 已读取、尚未匹配到半消息的 op 记录：事务 ID -> op 记录
+    private final Map<String, OpRecord> opTable = new HashMap<>();
+
+    // 统计
+    private final AtomicLong prepareCount = new AtomicLong(0);
+    private final AtomicLong commitCount = new AtomicLong(0);
+    private final AtomicLong rollbackCount = new AtomicLong(0);
+    private final AtomicLong checkCount = new AtomicLong(0);
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 后台线程
+    private Thread checkThread;
+
+    /**
+     * 构造函数（会读取回查进度）
+     *
+     * @param messageStore 消息存储
+     * @param commitLog CommitLog
+     * @param storeConfig 存储配置
+     */
+    public TransactionalMessageService(Level12MessageStoreBest messageStore, CommitLog commitLog,
+                                       Level12StoreConfig storeConfig) {
+        this.messageStore = messageStore;
+        this.commitLog = commitLog;
+        this.storeConfig = storeConfig;
+        this.storePath = messageStore.getStorePath() + "/transaction";
+
+        new File(storePath).mkdirs();
+        loadCheckpoint();
+    }
+
+    /**
+     * 写入半消息
+     *
+     * @param message 消息（topic、queueId 为真实值）
+     * @return 半消息，physicalOffset 用于 endTransaction
+     * @throws IllegalStateException 半消息写入失败（写入繁忙、从节点等）
+     */
+    public Level12Message prepareMessage(Level12Message message) {
+        if (message.getDeliverTime() > 0) {
+            throw new IllegalArgumentException("事务消息不支持定时投递: messageId=" + message.getMessageId());
+        }
+
+        if (message.getTransactionId() == null) {
+            message.setTransactionId(message.getMessageId());
+        }
+        message.setRealTopic(message.getTopic());
+        message.setRealQueueId(message.getQueueId());
+        message.setTopic(Level12Constants.TRANS_HALF_TOPIC);
+        message.setQueueId(0);
+
+        PutMessageResult result = messageStore.putMessage(message);
+        if (!result.isOk()) {
+            throw new IllegalStateException("半消息写入失败: transactionId=" + message.getTransactionId()
+                + ", status=" + result.getStatus());
+        }
+        prepareCount.incrementAndGet();
+
+        log.debug("📝 半消息已写入: transactionId={}, realTopic={}, halfOffset={}",
+            message.getTransactionId(), message.getRealTopic(), message.getPhysicalOffset());
+
+        return message;
+    }
+
+    /**
+     * 提交或回滚事务
+     *
+     * @param halfOffset 半消息的物理偏移量
+     * @param resolution COMMIT / ROLLBACK，UNKNOWN 不做处理，等待回查
+     * @return 半消息是否存在（写入真实消息或 op 记录失败时半消息保留，由回查重试）
+     */
+    public boolean endTransaction(long halfOffset, LocalTransactionChecker.Resolution resolution) {
+        Level12Message halfMessage = commitLog.getMessage(halfOffset);
+        if (halfMessage == null || !Level12Constants.TRANS_HALF_TOPIC.equals(halfMessage.getTopic())) {
+            log.warn("⚠️ 半消息不存在: halfOffset={}", halfOffset);
+            return false;
+        }
+
+        resolve(halfMessage, resolution);
+        return true;
+    }
+
+    /**
+     * 提交或回滚半消息：真实消息写入成功后才写 op 记录，op 记录写入成功才算结束
+     *
+     * 任何一步失败都不写 op 记录，半消息保持未结束，由回查重试（真实消息已写入、op 记录失败时，
+     * 重试会再写一次真实消息，与回查的至少一次语义一致）
+     *
+     * @return 是否已结束（UNKNOWN 返回 false）
+     */
+    private boolean resolve(Level12Message halfMessage, LocalTransactionChecker.Resolution resolution) {
+        switch (resolution) {
+            case COMMIT:
+                PutMessageResult result = messageStore.putMessageInternal(toRealMessage(halfMessage));
+                if (!result.isOk()) {
+                    log.warn("⚠️ 事务提交写入真实消息失败，等待回查重试: transactionId={}, status={}",
+                        halfMessage.getTransactionId(), result.getStatus());
+                    return false;
+                }
+                if (!putOpRecord(halfMessage)) {
+                    return false;
+                }
+                commitCount.incrementAndGet();
+                log.debug("✅ 事务提交: transactionId={}, realTopic={}",
+                    halfMessage.getTransactionId(), halfMessage.getRealTopic());
+                return true;
+            case ROLLBACK:
+                if (!putOpRecord(halfMessage)) {
+                    return false;
+                }
+                rollbackCount.incrementAndGet();
+                log.debug("↩️ 事务回滚: transactionId={}", halfMessage.getTransactionId());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean putOpRecord(Level12Message halfMessage) {
+        Level12Message op = new Level12Message();
+        op.setMessageId(halfMessage.getTransactionId() + "-op");
+        op.setTopic(Level12Constants.TRANS_OP_HALF_TOPIC);
+        op.setQueueId(0);
+        op.setTag(OP_REMOVE_TAG);
+        op.setBody(halfMessage.getTransactionId());
+        op.setCreateTime(System.currentTimeMillis());
+        PutMessageResult result = messageStore.putMessageInternal(op);
+        if (!result.isOk()) {
+            log.warn("⚠️ 写入 op 记录失败，半消息保持未结束: transactionId={}, status={}",
+                halfMessage.getTransactionId(), result.getStatus());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 启动服务
+     */
+    public void start() {
+        if (running) {
+            log.warn("⚠️ TransactionalMessageService 已经在运行中");
+            return;
+        }
+
+        running = true;
+
+        checkThread = new Thread(this::doCheck, "TransactionalMessageService");
+        checkThread.setDaemon(true);
+        checkThread.start();
+
+        log.info("✅ TransactionalMessageService 已启动: halfCheckOffset={}, opCheckOffset={}",
+            halfCheckOffset, opCheckOffset);
+    }
+
+    /**
+     * 停止服务
+     */
+    public void shutdown() {
+        running = false;
+
+        if (checkThread != null) {
+            try {
+                checkThread.interrupt();
+                checkThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止 TransactionalMessageService 失败", e);
+            }
+        }
+
+        synchronized (this) {
+            writeCheckpoint();
+        }
+
+        log.info("✅ TransactionalMessageService 已停止");
+    }
+
+    private void doCheck() {
+        while (running) {
+            try {
+                Thread.sleep(storeConfig.getTransactionCheckIntervalMs());
+                check();
+            } catch (InterruptedException e) {
+                log.info("TransactionalMessageService 被中断");
+                break;
+            } catch (Exception e) {
+                log.error("❌ TransactionalMessageService 处理失败", e);
+            }
+        }
+
+        log.info("🔍 TransactionalMessageService 已退出");
+    }
+
+    /**
+     * 执行一轮回查（也可手动触发）
+     *
+     * @return 本轮调用回查的半消息数量
+     */
+    public synchronized int check() {
+        long now = System.currentTimeMillis();
+
+        // 1. 读取新的 op 记录
+        readOpRecords();
+
+        // 2. 顺序扫描半消息
+        ConsumeQueue halfQueue = messageStore.findConsumeQueue(Level12Constants.TRANS_HALF_TOPIC, 0);
+        long maxIndex = halfQueue.getMaxIndex();
+        int checked = 0;
+
+        scan:
+        while (halfCheckOffset < maxIndex) {
+            List<ConsumeQueue.CQUnit> units = halfQueue.getIndexList(halfCheckOffset, SCAN_BATCH_SIZE);
+            if (units.isEmpty()) {
+                break;
+            }
+
+            for (ConsumeQueue.CQUnit unit : units) {
+                Level12Message halfMessage = commitLog.getMessage(unit.getCommitLogOffset());
+                if (halfMessage == null) {
+                    log.error("❌ 读取半消息失败: offset={}", unit.getCommitLogOffset());
+                    break scan;
+                }
+
+                // 已提交或回滚
+                if (opTable.remove(halfMessage.getTransactionId()) != null) {
+                    halfCheckOffset++;
+                    continue;
+                }
+
+                // 首次回查前给生产者留出主动结束的时间；重试副本已经过退避，直接回查
+                if (halfMessage.getTransactionCheckTimes() == 0
+                    && now - halfMessage.getStoreTime() < storeConfig.getTransactionTimeoutMs()) {
+                    break scan;
+                }
+
+                LocalTransactionChecker localChecker = checker;
+                if (localChecker == null) {
+                    log.debug("ℹ️ 没有注册本地事务回查，跳过本轮");
+                    break scan;
+                }
+
+                checked++;
+                if (!checkHalfMessage(localChecker, halfMessage, now)) {
+                    // 写入失败，停在这条半消息上，下一轮重新回查
+                    break scan;
+                }
+                halfCheckOffset++;
+            }
+        }
+
+        // 3. 清理长期匹配不到半消息的 op 记录（例如回滚后生产者又提交）
+        Iterator<OpRecord> iterator = opTable.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getStoreTime() > storeConfig.getTransactionOpRetentionMs()) {
+                iterator.remove();
+            }
+        }
+
+        writeCheckpoint();
+
+        if (checked > 0) {
+            log.info("🔍 事务回查完成: checked={}, halfCheckOffset={}, pendingOps={}",
+                checked, halfCheckOffset, opTable.size());
+        }
+
+        return checked;
+    }
+
+    private void readOpRecords() {
+        ConsumeQueue opQueue = messageStore.findConsumeQueue(Level12Constants.TRANS_OP_HALF_TOPIC, 0);
+        long maxIndex = opQueue.getMaxIndex();
+
+        while (opCheckOffset < maxIndex) {
+            List<ConsumeQueue.CQUnit> units = opQueue.getIndexList(opCheckOffset, SCAN_BATCH_SIZE);
+            if (units.isEmpty()) {
+                break;
+            }
+
+            for (ConsumeQueue.CQUnit unit : units) {
+                Level12Message op = commitLog.getMessage(unit.getCommitLogOffset());
+                if (op == null) {
+                    log.error("❌ 读取 op 记录失败: offset={}", unit.getCommitLogOffset());
+                    return;
+                }
+                opTable.put(op.getBody(), new OpRecord(opCheckOffset, op.getStoreTime()));
+                opCheckOffset++;
+            }
+        }
+    }
+
+    /**
+     * 回查一条半消息
+     *
+     * @return 是否处理完（已结束或已重新写入退避副本），写入失败返回 false
+     */
+    private boolean checkHalfMessage(LocalTransactionChecker localChecker, Level12Message halfMessage, long now) {
+        LocalTransactionChecker.Resolution resolution;
+        try {
+            resolution = localChecker.check(halfMessage);
+        } catch (Exception e) {
+            log.warn("⚠️ 本地事务回查异常，按 UNKNOWN 处理: transactionId={}", halfMessage.getTransactionId(), e);
+            resolution = LocalTransactionChecker.Resolution.UNKNOWN;
+        }
+        checkCount.incrementAndGet();
+
+        if (resolution != LocalTransactionChecker.Resolution.UNKNOWN) {
+            return resolve(halfMessage, resolution);
+        }
+
+        int checkTimes = halfMessage.getTransactionCheckTimes() + 1;
+        if (checkTimes >= storeConfig.getTransactionCheckMaxTimes()) {
+            log.warn("⚠️ 超过最大回查次数，按回滚处理: transactionId={}, checkTimes={}",
+                halfMessage.getTransactionId(), checkTimes);
+            return resolve(halfMessage, LocalTransactionChecker.Resolution.ROLLBACK);
+        }
+
+        // 退避：作为定时消息重新写入半消息队列，到期后才会被再次扫描到
+        long backoff = Math.min(storeConfig.getTransactionCheckBackoffMs() << Math.min(checkTimes - 1, 20),
+            storeConfig.getTransactionCheckMaxBackoffMs());
+        Level12Message retry = halfMessage.copy();
+        retry.setTransactionCheckTimes(checkTimes);
+        retry.setDeliverTime(now + backoff);
+        PutMessageResult result = messageStore.putMessageInternal(retry);
+        if (!result.isOk()) {
+            log.warn("⚠️ 重新写入半消息失败，下一轮再次回查: transactionId={}, status={}",
+                halfMessage.getTransactionId(), result.getStatus());
+            return false;
+        }
+
+        log.debug("⏳ 事务状态未知，{} ms 后再次回查: transactionId={}, checkTimes={}",
+            backoff, halfMessage.getTransactionId(), checkTimes);
+        return true;
+    }
+
+    private Level12Message toRealMessage(Level12Message halfMessage) {
+        Level12Message message = halfMessage.copy();
+        message.setTopic(halfMessage.getRealTopic());
+        message.setQueueId(halfMessage.getRealQueueId());
+        message.setRealTopic(null);
+        message.setRealQueueId(0);
+        message.setTransactionCheckTimes(0);
+        message.setDeliverTime(0);
+        return message;
+    }
+
+    private void loadCheckpoint() {
+        Path path = Paths.get(storePath, CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取事务 checkpoint 失败: " + path, e);
+        }
+
+        halfCheckOffset = Long.parseLong(properties.getProperty("halfCheckOffset"));
+        // op 表只在内存中，重启后从最早一条未匹配的 op 记录开始重放
+        opCheckOffset = Long.parseLong(properties.getProperty("opReplayOffset"));
+    }
+
+    /**
+     * 写入 checkpoint（先写临时文件再原子替换）
+     */
+    private void writeCheckpoint() {
+        long opReplayOffset = opCheckOffset;
+        for (OpRecord opRecord : opTable.values()) {
+            opReplayOffset = Math.min(opReplayOffset, opRecord.getQueueOffset());
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("halfCheckOffset", String.valueOf(halfCheckOffset));
+        properties.setProperty("opReplayOffset", String.valueOf(opReplayOffset));
+
+        Path target = Paths.get(storePath, CHECKPOINT_FILE);
+        Path tmp = Paths.get(storePath, CHECKPOINT_FILE + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "transaction checkpoint");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("写入事务 checkpoint 失败: " + target, e);
+        }
+    }
+
+    public void setChecker(LocalTransactionChecker checker) {
+        this.checker = checker;
+    }
+
+    // Getters
+
+    public long getPrepareCount() {
+        return prepareCount.get();
+    }
+
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    public long getRollbackCount() {
+        return rollbackCount.get();
+    }
+
+    public long getCheckCount() {
+        return checkCount.get();
+    }
+
+    public long getHalfCheckOffset() {
+        return halfCheckOffset;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 尚未匹配到半消息的 op 记录
+     */
+    @Data
+    @AllArgsConstructor
+    private static class OpRecord {
+        // op 队列中的位置
+        private long queueOffset;
+        private long storeTime;
+    }
+}
@@ -0,0 +1,574 @@
+package one.demo.challenge.level12.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+import one.demo.challenge.level12.ConsumeQueue;
+import one.demo.challenge.level12.GetMessageResult;
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.Level12Message;
+import one.demo.challenge.level12.Level12MessageStoreBest;
+import one.demo.challenge.level12.PutMessageResult;
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.FilterExpressionType;
+import org.apache.rocketmq.client.apis.message.Message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded Broker - 进程内 Broker
+ *
+ * 激活 embedded profile 后，RocketMQ v5 客户端（Producer / PushConsumer / SimpleConsumer）不再连接 Proxy，
+ * 直接读写本进程内的 Level12MessageStoreBest，Level 1 ~ 11 的生产者、@RocketMQMessageListener 消费者不用改代码，
+ * 可以在没有网络的环境（CI、压测自己的业务代码）里运行
+ *
+ * 消费语义与 5.x 的 Pop 消费一致：
+ * 1. 同一个消费组的所有消费者共享队列，收到的消息在不可见时间内对其他消费者不可见
+ * 2. ack 之后不再投递；不可见时间到期还没有 ack 的消息重新投递，deliveryAttempt + 1
+ * 3. 投递次数超过 maxReconsumeTimes + 1 后写入 %DLQ%{group}，不再投递
+ * 4. 带 messageGroup 的消息（顺序消息）：同一个消息组前一条没有 ack 之前，队列里后面的消息不投递
+ * 5. 消费进度 = 队列里最早一条未 ack 的消息的索引，通过 ConsumerOffsetManager 持久化，重启后继续消费
+ *
+ * 与真实 Broker 的差异：
+ * - 消息体按 UTF-8 字符串存储（Level12Message 的消息体是 String），二进制消息体会失真
+ * - 不可见状态只在内存中，重启后未 ack 的消息从已提交的进度重新投递
+ * - 新的消费组从队列最早的消息开始消费
+ */
+@Slf4j
+public class EmbeddedBroker {
+
+    // 激活进程内 Broker 的 Spring profile
+    public static final String PROFILE = "embedded";
+
+    // 消息组（顺序消息）在消息属性中的 Key，与 RocketMQ 一致
+    static final String PROPERTY_MESSAGE_GROUP = "__SHARDINGKEY";
+
+    // 多个 Key 拼接到 Level12Message.key 时的分隔符，与 RocketMQ 一致
+    static final String KEY_SEPARATOR = " ";
+
+    // 全局实例（未激活时为 null）
+    private static volatile EmbeddedBroker instance;
+
+    // 存储路径
+    private final String storePath;
+
+    // 每个 Topic 的写入队列数
+    private final int queueNums;
+
+    // 没有新消息时消费者的轮询间隔
+    private final long pollIntervalMs;
+
+    // 消息存储（第一次创建客户端时初始化）
+    private volatile Level12MessageStoreBest messageStore;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // Topic@Group#QueueId -> 队列消费状态
+    private final ConcurrentMap<String, QueueState> queueStateTable = new ConcurrentHashMap<>();
+
+    // Topic -> 普通消息的轮询写入计数
+    private final ConcurrentMap<String, AtomicInteger> queueSelectors = new ConcurrentHashMap<>();
+
+    // 每次拉取从不同的队列开始，避免总是先读 Queue 0
+    private final AtomicInteger receiveSequence = new AtomicInteger(0);
+
+    // 每次投递分配新的 receiptHandle，旧的 receiptHandle 随即失效
+    private final AtomicLong receiptHandleSequence = new AtomicLong(0);
+
+    // 异步接口（receiveAsync / ackAsync）的执行线程
+    private final ThreadPoolExecutor asyncExecutor;
+
+    // 统计
+    private final AtomicLong redeliverCount = new AtomicLong(0);
+    private final AtomicLong dlqCount = new AtomicLong(0);
+
+    private EmbeddedBroker(String storePath, int queueNums, long pollIntervalMs) {
+        this.storePath = storePath;
+        this.queueNums = queueNums;
+        this.pollIntervalMs = pollIntervalMs;
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.asyncExecutor = new ThreadPoolExecutor(0, 64, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "EmbeddedBrokerAsync-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 激活进程内 Broker（由 EmbeddedBrokerEnvironmentPostProcessor 在创建任何 Bean 之前调用）
+     *
+     * @param storePath 存储路径
+     * @param queueNums 每个 Topic 的写入队列数
+     * @param pollIntervalMs 没有新消息时消费者的轮询间隔
+     */
+    public static synchronized void enable(String storePath, int queueNums, long pollIntervalMs) {
+        if (instance != null) {
+            return;
+        }
+        instance = new EmbeddedBroker(storePath, queueNums, pollIntervalMs);
+        log.info("✅ 进程内 Broker 已激活: storePath={}, queueNums={}", storePath, queueNums);
+    }
+
+    /**
+     * 是否已激活
+     */
+    public static boolean isEnabled() {
+        return instance != null;
+    }
+
+    /**
+     * 全局实例，第一次调用时初始化消息存储
+     *
+     * @throws IllegalStateException 没有激活
+     */
+    public static EmbeddedBroker getInstance() {
+        EmbeddedBroker broker = instance;
+        if (broker == null) {
+            throw new IllegalStateException("进程内 Broker 没有激活，请使用 " + PROFILE + " profile 启动");
+        }
+        broker.start();
+        return broker;
+    }
+
+    /**
+     * 关闭全局实例（消费进度写入磁盘）
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    private synchronized void start() {
+        // 已经停止的不再重新打开
+        if (messageStore != null) {
+            return;
+        }
+        messageStore = new Level12MessageStoreBest(storePath);
+        running = true;
+        log.info("✅ 进程内 Broker 已启动: {}", storePath);
+    }
+
+    private synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        asyncExecutor.shutdown();
+        messageStore.shutdown();
+        log.info("✅ 进程内 Broker 已停止: redeliver={}, dlq={}", redeliverCount.get(), dlqCount.get());
+    }
+
+    // ==================== 生产 ====================
+
+    /**
+     * 发送消息
+     *
+     * @return 消息 ID
+     */
+    CompletableFuture<String> send(Message message) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new ClientException("进程内 Broker 已停止"));
+        }
+
+        Level12Message storeMessage = toStoreMessage(message);
+        return messageStore.asyncPutMessage(storeMessage).thenCompose(result -> {
+            if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+                return CompletableFuture.failedFuture(new ClientException(
+                    "消息写入失败: topic=" + message.getTopic() + ", status=" + result.getStatus()));
+            }
+            return CompletableFuture.completedFuture(storeMessage.getMessageId());
+        });
+    }
+
+    /**
+     * 写入事务半消息
+     *
+     * @return 半消息（physicalOffset 用于提交 / 回滚）
+     */
+    Level12Message prepare(Message message) throws ClientException {
+        if (!running) {
+            throw new ClientException("进程内 Broker 已停止");
+        }
+
+        try {
+            return messageStore.prepareMessage(toStoreMessage(message));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new ClientException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 客户端消息转换为存储消息，普通消息轮询选择队列，顺序消息按消息组选择队列
+     */
+    private Level12Message toStoreMessage(Message message) {
+        Level12Message storeMessage = new Level12Message();
+        storeMessage.setMessageId(UUID.randomUUID().toString());
+        storeMessage.setTopic(message.getTopic());
+        storeMessage.setTag(message.getTag().orElse(null));
+        Collection<String> keys = message.getKeys();
+        storeMessage.setKey(keys.isEmpty() ? null : String.join(KEY_SEPARATOR, keys));
+
+        ByteBuffer body = message.getBody().duplicate();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        storeMessage.setBody(new String(bytes, StandardCharsets.UTF_8));
+
+        storeMessage.setCreateTime(System.currentTimeMillis());
+        storeMessage.setDeliverTime(message.getDeliveryTimestamp().orElse(0L));
+        for (Map.Entry<String, String> property : message.getProperties().entrySet()) {
+            storeMessage.putProperty(property.getKey(), property.getValue());
+        }
+
+        String messageGroup = message.getMessageGroup().orElse(null);
+        if (messageGroup != null) {
+            storeMessage.putProperty(PROPERTY_MESSAGE_GROUP, messageGroup);
+            storeMessage.setQueueId(Math.floorMod(messageGroup.hashCode(), queueNums));
+        } else {
+            AtomicInteger selector = queueSelectors.computeIfAbsent(message.getTopic(), k -> new AtomicInteger(0));
+            storeMessage.setQueueId(Math.floorMod(selector.getAndIncrement(), queueNums));
+        }
+        return storeMessage;
+    }
+
+    // ==================== 消费 ====================
+
+    /**
+     * 注册订阅，SQL92 表达式注册到存储，Reput 时预计算位图
+     */
+    void subscribe(String group, String topic, FilterExpression filterExpression) throws ClientException {
+        if (filterExpression.getFilterExpressionType() != FilterExpressionType.SQL92) {
+            return;
+        }
+        try {
+            messageStore.subscribeSql(group, topic, filterExpression.getExpression());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new ClientException("SQL92 表达式注册失败: " + filterExpression.getExpression(), e);
+        }
+    }
+
+    /**
+     * 取消订阅，已投递未 ack 的消息到期后投递给同组的其他消费者
+     */
+    void unsubscribe(String group, String topic) {
+        messageStore.unsubscribeSql(group, topic);
+    }
+
+    /**
+     * 拉取消息：先重新投递不可见时间已到期的消息，再读取新消息
+     *
+     * @param group 消费组
+     * @param topic Topic
+     * @param filterExpression 过滤表达式
+     * @param maxMessageNum 最多返回的消息数
+     * @param invisibleMs 不可见时间
+     * @return 消息列表，没有消息返回空列表
+     */
+    List<EmbeddedMessageView> receive(String group, String topic, FilterExpression filterExpression,
+                                      int maxMessageNum, long invisibleMs) {
+        List<EmbeddedMessageView> result = new ArrayList<>();
+        if (!running) {
+            return result;
+        }
+
+        List<ConsumeQueue> consumeQueues = new ArrayList<>(messageStore.getConsumeQueues(topic));
+        if (consumeQueues.isEmpty()) {
+            return result;
+        }
+
+        Set<String> tags = parseTags(filterExpression);
+        int start = Math.floorMod(receiveSequence.getAndIncrement(), consumeQueues.size());
+        for (int i = 0; i < consumeQueues.size() && result.size() < maxMessageNum; i++) {
+            ConsumeQueue consumeQueue = consumeQueues.get((start + i) % consumeQueues.size());
+            QueueState queueState = queueStateTable.computeIfAbsent(stateKey(group, topic, consumeQueue.getQueueId()),
+                k -> new QueueState(group, topic, consumeQueue.getQueueId()));
+            synchronized (queueState) {
+                queueState.poll(consumeQueue, tags, maxMessageNum - result.size(), invisibleMs, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 确认消费成功
+     *
+     * @throws ClientException receiptHandle 已失效（消息已重新投递或已 ack）
+     */
+    void ack(EmbeddedMessageView messageView) throws ClientException {
+        QueueState queueState = findQueueState(messageView);
+        synchronized (queueState) {
+            InFlight inFlight = queueState.checkReceiptHandle(messageView);
+            queueState.inFlightTable.remove(inFlight.queueOffset);
+            queueState.commitOffset();
+        }
+    }
+
+    /**
+     * 修改不可见时间，返回新的 receiptHandle
+     *
+     * @throws ClientException receiptHandle 已失效
+     */
+    void changeInvisibleDuration(EmbeddedMessageView messageView, long invisibleMs) throws ClientException {
+        QueueState queueState = findQueueState(messageView);
+        synchronized (queueState) {
+            InFlight inFlight = queueState.checkReceiptHandle(messageView);
+            inFlight.invisibleUntil = System.currentTimeMillis() + invisibleMs;
+            inFlight.receiptHandle = receiptHandleSequence.incrementAndGet();
+            messageView.setReceiptHandle(inFlight.receiptHandle);
+        }
+    }
+
+    /**
+     * 消费失败，按重试间隔（retryDelayLevelsMs）延迟后重新投递
+     *
+     * @throws ClientException receiptHandle 已失效
+     */
+    void nack(EmbeddedMessageView messageView) throws ClientException {
+        long[] delayLevels = messageStore.getStoreConfig().getRetryDelayLevelsMs();
+        long delay = delayLevels[Math.min(messageView.getDeliveryAttempt(), delayLevels.length) - 1];
+        changeInvisibleDuration(messageView, delay);
+    }
+
+    private QueueState findQueueState(EmbeddedMessageView messageView) throws ClientException {
+        QueueState queueState = queueStateTable.get(
+            stateKey(messageView.getConsumerGroup(), messageView.getTopic(), messageView.getQueueId()));
+        if (queueState == null) {
+            throw new ClientException("消息不是由进程内 Broker 投递的: messageId=" + messageView.getMessageId());
+        }
+        return queueState;
+    }
+
+    /**
+     * 解析 Tag 表达式（tagA || tagB），订阅全部时返回 null
+     */
+    private static Set<String> parseTags(FilterExpression filterExpression) {
+        if (filterExpression.getFilterExpressionType() != FilterExpressionType.TAG) {
+            return null;
+        }
+        String expression = filterExpression.getExpression();
+        if (expression == null || expression.isBlank() || "*".equals(expression.trim())) {
+            return null;
+        }
+        Set<String> tags = new HashSet<>();
+        for (String tag : expression.split("\\|\\|")) {
+            if (!tag.isBlank()) {
+                tags.add(tag.trim());
+            }
+        }
+        return tags;
+    }
+
+    private static String stateKey(String group, String topic, int queueId) {
+        return topic + "@" + group + "#" + queueId;
+    }
+
+    // Getters
+    public Level12MessageStoreBest getMessageStore() {
+        return messageStore;
+    }
+
+    public long getPollIntervalMs() {
+        return pollIntervalMs;
+    }
+
+    public long getRedeliverCount() {
+        return redeliverCount.get();
+    }
+
+    public long getDlqCount() {
+        return dlqCount.get();
+    }
+
+    ThreadPoolExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 消费组在一个 Queue 上的消费状态，调用方持有对象锁
+     */
+    private class QueueState {
+        private final String group;
+        private final String topic;
+        private final int queueId;
+
+        // 下一条要读取的新消息的索引，-1 表示还没有初始化
+        private long pullOffset = -1;
+
+        // 已提交的进度
+        private long committedOffset = -1;
+
+        // 已投递未 ack 的消息：队列索引 -> 投递状态
+        private final TreeMap<Long, InFlight> inFlightTable = new TreeMap<>();
+
+        QueueState(String group, String topic, int queueId) {
+            this.group = group;
+            this.topic = topic;
+            this.queueId = queueId;
+        }
+
+        void poll(ConsumeQueue consumeQueue, Set<String> tags, int maxMessageNum, long invisibleMs,
+                  List<EmbeddedMessageView> result) {
+            long now = System.currentTimeMillis();
+            int maxDeliveryAttempts = messageStore.getStoreConfig().getMaxReconsumeTimes() + 1;
+
+            // 1. 不可见时间到期的消息重新投递，超过最大投递次数的进入死信队列
+            Set<String> blockedGroups = new HashSet<>();
+            Iterator<InFlight> iterator = inFlightTable.values().iterator();
+            while (iterator.hasNext()) {
+                InFlight inFlight = iterator.next();
+                if (inFlight.invisibleUntil <= now && result.size() < maxMessageNum) {
+                    if (inFlight.deliveryAttempt >= maxDeliveryAttempts) {
+                        if (sendToDlq(inFlight)) {
+                            iterator.remove();
+                            continue;
+                        }
+                        // 死信写入失败：保留在途记录，过一个不可见时间后再写
+                        inFlight.invisibleUntil = now + invisibleMs;
+                    } else {
+                        inFlight.deliveryAttempt++;
+                        result.add(deliver(inFlight, now, invisibleMs));
+                        redeliverCount.incrementAndGet();
+                    }
+                }
+                if (inFlight.messageGroup != null) {
+                    blockedGroups.add(inFlight.messageGroup);
+                }
+            }
+
+            // 2. 读取新消息
+            if (pullOffset < 0) {
+                long offset = messageStore.queryConsumerOffset(group, topic, queueId);
+                pullOffset = offset < 0 ? consumeQueue.getMinIndex() : offset;
+            }
+            pullOffset = Math.max(pullOffset, consumeQueue.getMinIndex());
+
+            // Tag 不匹配的消息跳过，单次最多扫描 filterMaxScanUnits 条索引，避免长时间持有队列锁
+            int maxScanUnits = messageStore.getStoreConfig().getFilterMaxScanUnits();
+            int scanned = 0;
+            while (result.size() < maxMessageNum && pullOffset < consumeQueue.getMaxIndex() && scanned < maxScanUnits) {
+                GetMessageResult getResult = messageStore.getMessageByFilter(group, topic, queueId, pullOffset,
+                    maxMessageNum - result.size());
+                scanned += getResult.getScannedCount();
+                boolean blocked = false;
+                for (Level12Message message : getResult.getMessages()) {
+                    String messageGroup = message.getProperty(PROPERTY_MESSAGE_GROUP);
+                    // 同一个消息组前一条还没有 ack，后面的消息先不读取
+                    if (messageGroup != null && blockedGroups.contains(messageGroup)) {
+                        pullOffset = message.getQueueOffset();
+                        blocked = true;
+                        break;
+                    }
+                    if (tags == null || tags.contains(message.getTag())) {
+                        InFlight inFlight = new InFlight(message, messageGroup);
+                        inFlightTable.put(inFlight.queueOffset, inFlight);
+                        result.add(deliver(inFlight, now, invisibleMs));
+                        if (messageGroup != null) {
+                            blockedGroups.add(messageGroup);
+                        }
+                    }
+                }
+                if (blocked) {
+                    break;
+                }
+                if (getResult.getNextBeginOffset() <= pullOffset) {
+                    break;
+                }
+                pullOffset = getResult.getNextBeginOffset();
+            }
+
+            commitOffset();
+        }
+
+        private EmbeddedMessageView deliver(InFlight inFlight, long now, long invisibleMs) {
+            inFlight.invisibleUntil = now + invisibleMs;
+            inFlight.receiptHandle = receiptHandleSequence.incrementAndGet();
+            return new EmbeddedMessageView(inFlight.message, group, queueId, inFlight.queueOffset,
+                inFlight.deliveryAttempt, inFlight.receiptHandle);
+        }
+
+        /**
+         * @return 是否已写入死信队列
+         */
+        private boolean sendToDlq(InFlight inFlight) {
+            Level12Message dlq = inFlight.message.copy();
+            dlq.setTopic(Level12Constants.getDLQTopic(group));
+            dlq.setOriginTopic(topic);
+            dlq.setQueueId(0);
+            dlq.setDeliverTime(0);
+            dlq.setReconsumeTimes(inFlight.deliveryAttempt - 1);
+            PutMessageResult result = messageStore.putMessageInternal(dlq);
+            if (result.getStatus() != PutMessageResult.PutMessageStatus.PUT_OK) {
+                log.warn("⚠️ 死信写入失败，稍后重试: group={}, topic={}, messageId={}, status={}",
+                    group, topic, inFlight.message.getMessageId(), result.getStatus());
+                return false;
+            }
+            dlqCount.incrementAndGet();
+
+            log.warn("💀 超过最大投递次数，进入死信队列: group={}, topic={}, messageId={}, deliveryAttempt={}",
+                group, topic, inFlight.message.getMessageId(), inFlight.deliveryAttempt);
+            return true;
+        }
+
+        InFlight checkReceiptHandle(EmbeddedMessageView messageView) throws ClientException {
+            InFlight inFlight = inFlightTable.get(messageView.getQueueOffset());
+            if (inFlight == null || inFlight.receiptHandle != messageView.getReceiptHandle()) {
+                throw new ClientException("receiptHandle 已失效（消息已重新投递或已确认）: messageId="
+                    + messageView.getMessageId() + ", deliveryAttempt=" + messageView.getDeliveryAttempt());
+            }
+            return inFlight;
+        }
+
+        /**
+         * 进度 = 最早一条未 ack 的消息，没有未 ack 的消息时为下一条要读取的消息
+         */
+        void commitOffset() {
+            long offset = inFlightTable.isEmpty() ? pullOffset : inFlightTable.firstKey();
+            if (offset >= 0 && offset != committedOffset) {
+                messageStore.commitConsumerOffset(group, topic, queueId, offset);
+                committedOffset = offset;
+            }
+        }
+    }
+
+    /**
+     * 已投递未 ack 的消息
+     */
+    private static class InFlight {
+        private final Level12Message message;
+        private final long queueOffset;
+        private final String messageGroup;
+        private int deliveryAttempt = 1;
+        private long invisibleUntil;
+        private long receiptHandle;
+
+        InFlight(Level12Message message, String messageGroup) {
+            this.message = message;
+            this.queueOffset = message.getQueueOffset();
+            this.messageGroup = messageGroup;
+        }
+    }
+}
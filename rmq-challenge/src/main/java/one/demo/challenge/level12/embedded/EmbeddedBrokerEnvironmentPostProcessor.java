@@ -0,0 +1,33 @@
+package one.demo.challenge.level12.embedded;
+
+import one.demo.challenge.level12.Level12Constants;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Profiles;
+
+/**
+ * 激活 embedded profile 时启用进程内 Broker
+ *
+ * 在 Environment 准备好之后、创建任何 Bean 之前执行（通过 META-INF/spring.factories 注册），
+ * 保证 @RocketMQMessageListener 容器、RocketMQClientTemplate 和各 Level 在 @PostConstruct 中创建的客户端都走进程内 Broker
+ *
+ * 配置项：
+ * - level12.embedded.store-path：存储路径，默认 store/level12/embedded
+ * - level12.embedded.queue-nums：每个 Topic 的写入队列数，默认 4
+ * - level12.embedded.poll-interval-ms：没有新消息时消费者的轮询间隔，默认 5ms
+ */
+public class EmbeddedBrokerEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!environment.acceptsProfiles(Profiles.of(EmbeddedBroker.PROFILE))) {
+            return;
+        }
+
+        EmbeddedBroker.enable(
+            environment.getProperty("level12.embedded.store-path", Level12Constants.EMBEDDED_STORE_PATH),
+            environment.getProperty("level12.embedded.queue-nums", Integer.class, 4),
+            environment.getProperty("level12.embedded.poll-interval-ms", Long.class, 5L));
+    }
+}
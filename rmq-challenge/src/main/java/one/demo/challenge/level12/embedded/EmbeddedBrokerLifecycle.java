@@ -0,0 +1,20 @@
+package one.demo.challenge.level12.embedded;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * 应用关闭时停止进程内 Broker（消费进度、存储刷盘）
+ *
+ * 之后才关闭的客户端不会再读写存储：发送返回失败，拉取返回空
+ */
+@Component
+@Profile(EmbeddedBroker.PROFILE)
+public class EmbeddedBrokerLifecycle {
+
+    @PreDestroy
+    public void shutdown() {
+        EmbeddedBroker.shutdownInstance();
+    }
+}
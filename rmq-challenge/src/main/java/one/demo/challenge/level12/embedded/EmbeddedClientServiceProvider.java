@@ -0,0 +1,61 @@
+package one.demo.challenge.level12.embedded;
+
+import org.apache.rocketmq.client.apis.ClientServiceProvider;
+import org.apache.rocketmq.client.apis.consumer.PushConsumerBuilder;
+import org.apache.rocketmq.client.apis.consumer.SimpleConsumerBuilder;
+import org.apache.rocketmq.client.apis.message.MessageBuilder;
+import org.apache.rocketmq.client.apis.producer.ProducerBuilder;
+
+import java.util.ServiceLoader;
+
+/**
+ * Embedded Client Service Provider - 客户端入口
+ *
+ * 通过 META-INF/services 注册，项目自己的 classes 在 classpath 中排在依赖 jar 前面，
+ * 所以 ClientServiceProvider.loadService()（业务代码和 rocketmq-v5-client-spring-boot-starter 都通过它创建客户端）
+ * 拿到的是这个类：
+ * 1. 激活了 embedded profile：Producer / PushConsumer / SimpleConsumer 由进程内 Broker 实现
+ * 2. 没有激活：全部委托给 rocketmq-client-java 的实现，行为与原来完全一样
+ *
+ * MessageBuilder 始终使用 rocketmq-client-java 的实现（只是构建消息对象，不涉及网络）
+ */
+public class EmbeddedClientServiceProvider implements ClientServiceProvider {
+
+    // rocketmq-client-java 的实现（第一次使用时查找）
+    private static volatile ClientServiceProvider delegate;
+
+    @Override
+    public ProducerBuilder newProducerBuilder() {
+        return EmbeddedBroker.isEnabled() ? new EmbeddedProducer.Builder() : delegate().newProducerBuilder();
+    }
+
+    @Override
+    public MessageBuilder newMessageBuilder() {
+        return delegate().newMessageBuilder();
+    }
+
+    @Override
+    public PushConsumerBuilder newPushConsumerBuilder() {
+        return EmbeddedBroker.isEnabled() ? new EmbeddedPushConsumer.Builder() : delegate().newPushConsumerBuilder();
+    }
+
+    @Override
+    public SimpleConsumerBuilder newSimpleConsumerBuilder() {
+        return EmbeddedBroker.isEnabled() ? new EmbeddedSimpleConsumer.Builder() : delegate().newSimpleConsumerBuilder();
+    }
+
+    private static ClientServiceProvider delegate() {
+        ClientServiceProvider provider = delegate;
+        if (provider != null) {
+            return provider;
+        }
+
+        for (ClientServiceProvider candidate : ServiceLoader.load(ClientServiceProvider.class)) {
+            if (!(candidate instanceof EmbeddedClientServiceProvider)) {
+                delegate = candidate;
+                return candidate;
+            }
+        }
+        throw new UnsupportedOperationException("classpath 中没有 rocketmq-client-java 的 ClientServiceProvider 实现");
+    }
+}
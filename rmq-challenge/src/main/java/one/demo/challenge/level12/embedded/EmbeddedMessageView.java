@@ -0,0 +1,207 @@
+package one.demo.challenge.level12.embedded;
+
+import one.demo.challenge.level12.Level12Message;
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Embedded Message View - 进程内 Broker 投递给消费者的消息
+ *
+ * 除了 MessageView 的只读视图，还带着 ack / changeInvisibleDuration 需要的投递信息：
+ * 消费组、Queue、队列索引、receiptHandle（每次投递或修改不可见时间都会更新）
+ */
+public class EmbeddedMessageView implements MessageView {
+
+    // 进程内 Broker 投递的消息都算本机发送
+    private static final String BORN_HOST = localHost();
+
+    private final Level12Message message;
+
+    private final EmbeddedMessageId messageId;
+
+    private final String consumerGroup;
+
+    private final int queueId;
+
+    private final long queueOffset;
+
+    private final int deliveryAttempt;
+
+    private volatile long receiptHandle;
+
+    // 消息体（UTF-8 编码后缓存，getBody 每次返回新的只读视图）
+    private byte[] body;
+
+    EmbeddedMessageView(Level12Message message, String consumerGroup, int queueId, long queueOffset,
+                        int deliveryAttempt, long receiptHandle) {
+        this.message = message;
+        this.messageId = new EmbeddedMessageId(message.getMessageId());
+        this.consumerGroup = consumerGroup;
+        this.queueId = queueId;
+        this.queueOffset = queueOffset;
+        this.deliveryAttempt = deliveryAttempt;
+        this.receiptHandle = receiptHandle;
+    }
+
+    /**
+     * 把存储中的事务半消息包装成回查用的视图（Topic 为真实 Topic）
+     */
+    static EmbeddedMessageView ofHalfMessage(Level12Message halfMessage) {
+        Level12Message message = halfMessage.copy();
+        message.setTopic(halfMessage.getRealTopic());
+        message.setQueueId(halfMessage.getRealQueueId());
+        return new EmbeddedMessageView(message, null, message.getQueueId(), -1,
+            halfMessage.getTransactionCheckTimes() + 1, 0);
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return messageId;
+    }
+
+    @Override
+    public String getTopic() {
+        return message.getTopic();
+    }
+
+    @Override
+    public ByteBuffer getBody() {
+        if (body == null) {
+            String text = message.getBody();
+            body = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        }
+        return ByteBuffer.wrap(body).asReadOnlyBuffer();
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        if (message.getProperties() == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> properties = new HashMap<>(message.getProperties());
+        properties.remove(EmbeddedBroker.PROPERTY_MESSAGE_GROUP);
+        return Collections.unmodifiableMap(properties);
+    }
+
+    @Override
+    public Optional<String> getTag() {
+        return Optional.ofNullable(message.getTag());
+    }
+
+    @Override
+    public Collection<String> getKeys() {
+        String key = message.getKey();
+        if (key == null || key.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(key.split(EmbeddedBroker.KEY_SEPARATOR));
+    }
+
+    @Override
+    public Optional<String> getMessageGroup() {
+        return Optional.ofNullable(message.getProperty(EmbeddedBroker.PROPERTY_MESSAGE_GROUP));
+    }
+
+    @Override
+    public Optional<Long> getDeliveryTimestamp() {
+        return message.getDeliverTime() > 0 ? Optional.of(message.getDeliverTime()) : Optional.empty();
+    }
+
+    @Override
+    public String getBornHost() {
+        return BORN_HOST;
+    }
+
+    @Override
+    public long getBornTimestamp() {
+        return message.getCreateTime();
+    }
+
+    @Override
+    public int getDeliveryAttempt() {
+        return deliveryAttempt;
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedMessageView{messageId=" + messageId + ", topic=" + getTopic() + ", tag=" + message.getTag()
+            + ", queueId=" + queueId + ", queueOffset=" + queueOffset + ", deliveryAttempt=" + deliveryAttempt + "}";
+    }
+
+    private static String localHost() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    // Getters
+    String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    int getQueueId() {
+        return queueId;
+    }
+
+    long getQueueOffset() {
+        return queueOffset;
+    }
+
+    long getReceiptHandle() {
+        return receiptHandle;
+    }
+
+    void setReceiptHandle(long receiptHandle) {
+        this.receiptHandle = receiptHandle;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 消息 ID（存储中的 messageId 原样返回）
+     */
+    static class EmbeddedMessageId implements MessageId {
+
+        // 与 RocketMQ 5.x 客户端生成的消息 ID 版本号一致
+        private static final String VERSION = "01";
+
+        private final String id;
+
+        EmbeddedMessageId(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getVersion() {
+            return VERSION;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EmbeddedMessageId && id.equals(((EmbeddedMessageId) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package one.demo.challenge.level12.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+import one.demo.challenge.level12.Level12Message;
+import one.demo.challenge.level12.LocalTransactionChecker;
+import org.apache.rocketmq.client.apis.ClientConfiguration;
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.message.Message;
+import org.apache.rocketmq.client.apis.message.MessageId;
+import org.apache.rocketmq.client.apis.producer.Producer;
+import org.apache.rocketmq.client.apis.producer.ProducerBuilder;
+import org.apache.rocketmq.client.apis.producer.SendReceipt;
+import org.apache.rocketmq.client.apis.producer.Transaction;
+import org.apache.rocketmq.client.apis.producer.TransactionChecker;
+import org.apache.rocketmq.client.apis.producer.TransactionResolution;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Embedded Producer - 进程内 Broker 的生产者
+ *
+ * send / sendAsync 直接调用 Level12MessageStoreBest.asyncPutMessage，没有网络往返，
+ * 事务消息写入半消息，commit / rollback 对应存储的 commitTransaction / rollbackTransaction，
+ * 设置了 TransactionChecker 时由存储的事务回查调用
+ */
+@Slf4j
+public class EmbeddedProducer implements Producer {
+
+    private final EmbeddedBroker broker;
+
+    private volatile boolean closed = false;
+
+    EmbeddedProducer(EmbeddedBroker broker) {
+        this.broker = broker;
+    }
+
+    @Override
+    public SendReceipt send(Message message) throws ClientException {
+        checkOpen();
+        try {
+            return sendAsync(message).join();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    @Override
+    public SendReceipt send(Message message, Transaction transaction) throws ClientException {
+        checkOpen();
+        if (!(transaction instanceof EmbeddedTransaction)) {
+            throw new ClientException("事务不是由进程内 Broker 的生产者创建的");
+        }
+
+        Level12Message halfMessage = broker.prepare(message);
+        ((EmbeddedTransaction) transaction).add(halfMessage);
+        return new EmbeddedSendReceipt(new EmbeddedMessageView.EmbeddedMessageId(halfMessage.getMessageId()));
+    }
+
+    @Override
+    public CompletableFuture<SendReceipt> sendAsync(Message message) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new ClientException("生产者已关闭"));
+        }
+        return broker.send(message)
+            .thenApply(messageId -> new EmbeddedSendReceipt(new EmbeddedMessageView.EmbeddedMessageId(messageId)));
+    }
+
+    @Override
+    public Transaction beginTransaction() throws ClientException {
+        checkOpen();
+        return new EmbeddedTransaction();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+
+    private void checkOpen() throws ClientException {
+        if (closed) {
+            throw new ClientException("生产者已关闭");
+        }
+    }
+
+    private static ClientException unwrap(CompletionException e) {
+        if (e.getCause() instanceof ClientException) {
+            return (ClientException) e.getCause();
+        }
+        return new ClientException("消息发送失败", e.getCause());
+    }
+
+    private static LocalTransactionChecker.Resolution toResolution(TransactionResolution resolution) {
+        if (resolution == TransactionResolution.COMMIT) {
+            return LocalTransactionChecker.Resolution.COMMIT;
+        }
+        if (resolution == TransactionResolution.ROLLBACK) {
+            return LocalTransactionChecker.Resolution.ROLLBACK;
+        }
+        return LocalTransactionChecker.Resolution.UNKNOWN;
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 生产者构建器：endpoints、topics、maxAttempts 对进程内 Broker 没有意义，直接忽略
+     */
+    public static class Builder implements ProducerBuilder {
+
+        private TransactionChecker transactionChecker;
+
+        @Override
+        public ProducerBuilder setClientConfiguration(ClientConfiguration clientConfiguration) {
+            return this;
+        }
+
+        @Override
+        public ProducerBuilder setTopics(String... topics) {
+            return this;
+        }
+
+        @Override
+        public ProducerBuilder setMaxAttempts(int maxAttempts) {
+            return this;
+        }
+
+        @Override
+        public ProducerBuilder setTransactionChecker(TransactionChecker checker) {
+            this.transactionChecker = checker;
+            return this;
+        }
+
+        @Override
+        public Producer build() throws ClientException {
+            EmbeddedBroker broker = EmbeddedBroker.getInstance();
+            if (transactionChecker != null) {
+                // 存储只有一个回查入口，多个事务生产者时以最后创建的为准
+                TransactionChecker checker = transactionChecker;
+                broker.getMessageStore().setTransactionChecker(
+                    halfMessage -> toResolution(checker.check(EmbeddedMessageView.ofHalfMessage(halfMessage))));
+            }
+            log.info("✅ 进程内 Producer 已创建: transactional={}", transactionChecker != null);
+            return new EmbeddedProducer(broker);
+        }
+    }
+
+    /**
+     * 发送结果
+     */
+    private static class EmbeddedSendReceipt implements SendReceipt {
+
+        private final MessageId messageId;
+
+        EmbeddedSendReceipt(MessageId messageId) {
+            this.messageId = messageId;
+        }
+
+        @Override
+        public MessageId getMessageId() {
+            return messageId;
+        }
+
+        @Override
+        public String toString() {
+            return "EmbeddedSendReceipt{messageId=" + messageId + "}";
+        }
+    }
+
+    /**
+     * 事务：记录本事务写入的半消息，提交 / 回滚时逐条结束
+     */
+    private class EmbeddedTransaction implements Transaction {
+
+        private final List<Level12Message> halfMessages = new ArrayList<>();
+
+        private boolean ended = false;
+
+        synchronized void add(Level12Message halfMessage) throws ClientException {
+            if (ended) {
+                throw new ClientException("事务已结束");
+            }
+            halfMessages.add(halfMessage);
+        }
+
+        @Override
+        public synchronized void commit() throws ClientException {
+            end(true);
+        }
+
+        @Override
+        public synchronized void rollback() throws ClientException {
+            end(false);
+        }
+
+        private void end(boolean commit) throws ClientException {
+            if (ended) {
+                throw new ClientException("事务已结束");
+            }
+            ended = true;
+
+            for (Level12Message halfMessage : halfMessages) {
+                boolean exists = commit
+                    ? broker.getMessageStore().commitTransaction(halfMessage.getPhysicalOffset())
+                    : broker.getMessageStore().rollbackTransaction(halfMessage.getPhysicalOffset());
+                if (!exists) {
+                    // 回查已经先一步结束了这条半消息
+                    log.warn("⚠️ 半消息已结束: transactionId={}, commit={}", halfMessage.getTransactionId(), commit);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package one.demo.challenge.level12.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.apis.ClientConfiguration;
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.consumer.ConsumeResult;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.MessageListener;
+import org.apache.rocketmq.client.apis.consumer.PushConsumer;
+import org.apache.rocketmq.client.apis.consumer.PushConsumerBuilder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded Push Consumer - 进程内 Broker 的 Push 消费者
+ *
+ * 一个拉取线程按订阅轮流从进程内 Broker 拉取消息，交给消费线程池执行 MessageListener：
+ * 1. 返回 SUCCESS 时 ack；返回 FAILURE 或抛出异常时按重试间隔延迟重新投递
+ * 2. 本地缓存（已拉取未消费完）的消息数不超过 maxCacheMessageCount，消费慢时拉取线程等待
+ * 3. 没有新消息时按 pollIntervalMs 轮询
+ *
+ * 消费时间超过 invisibleDurationMs 的消息会被重新投递，原来那次消费的 ack 失败并打印警告
+ */
+@Slf4j
+public class EmbeddedPushConsumer implements PushConsumer {
+
+    // 消费中的消息的不可见时间
+    private static final long INVISIBLE_DURATION_MS = 60_000;
+
+    // 单次拉取的最大消息数
+    private static final int MAX_BATCH_SIZE = 32;
+
+    private final EmbeddedBroker broker;
+
+    private final String consumerGroup;
+
+    private final MessageListener messageListener;
+
+    // Topic -> 过滤表达式
+    private final ConcurrentMap<String, FilterExpression> subscriptionExpressions = new ConcurrentHashMap<>();
+
+    // 本地缓存的消息数
+    private final Semaphore cachePermits;
+
+    // 消费线程池
+    private final ThreadPoolExecutor consumptionExecutor;
+
+    // 是否运行中
+    private volatile boolean running = false;
+
+    // 拉取线程
+    private Thread pullThread;
+
+    private EmbeddedPushConsumer(EmbeddedBroker broker, String consumerGroup, MessageListener messageListener,
+                                 int maxCacheMessageCount, int consumptionThreadCount) {
+        this.broker = broker;
+        this.consumerGroup = consumerGroup;
+        this.messageListener = messageListener;
+        this.cachePermits = new Semaphore(maxCacheMessageCount);
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.consumptionExecutor = new ThreadPoolExecutor(consumptionThreadCount, consumptionThreadCount,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "EmbeddedConsumption-" + consumerGroup + "-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    private void start() {
+        running = true;
+
+        pullThread = new Thread(this::doPull, "EmbeddedPushConsumer-" + consumerGroup);
+        pullThread.setDaemon(true);
+        pullThread.start();
+
+        log.info("✅ 进程内 PushConsumer 已启动: group={}, subscriptions={}", consumerGroup, subscriptionExpressions.keySet());
+    }
+
+    private void doPull() {
+        while (running) {
+            try {
+                int received = 0;
+                for (Map.Entry<String, FilterExpression> subscription : subscriptionExpressions.entrySet()) {
+                    int batchSize = Math.min(cachePermits.availablePermits(), MAX_BATCH_SIZE);
+                    if (batchSize == 0) {
+                        break;
+                    }
+                    List<EmbeddedMessageView> messageViews = broker.receive(consumerGroup, subscription.getKey(),
+                        subscription.getValue(), batchSize, INVISIBLE_DURATION_MS);
+                    for (EmbeddedMessageView messageView : messageViews) {
+                        cachePermits.acquire();
+                        consumptionExecutor.execute(() -> consume(messageView));
+                    }
+                    received += messageViews.size();
+                }
+
+                if (received == 0) {
+                    Thread.sleep(broker.getPollIntervalMs());
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("❌ 进程内 PushConsumer 拉取失败: group={}", consumerGroup, e);
+            }
+        }
+    }
+
+    private void consume(EmbeddedMessageView messageView) {
+        try {
+            ConsumeResult result;
+            try {
+                result = messageListener.consume(messageView);
+            } catch (Throwable t) {
+                log.error("❌ 消费异常，按消费失败处理: group={}, messageId={}", consumerGroup, messageView.getMessageId(), t);
+                result = ConsumeResult.FAILURE;
+            }
+
+            if (result == ConsumeResult.SUCCESS) {
+                broker.ack(messageView);
+            } else {
+                broker.nack(messageView);
+            }
+        } catch (ClientException e) {
+            log.warn("⚠️ 消费结果提交失败: group={}, {}", consumerGroup, e.getMessage());
+        } finally {
+            cachePermits.release();
+        }
+    }
+
+    @Override
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    @Override
+    public Map<String, FilterExpression> getSubscriptionExpressions() {
+        return new HashMap<>(subscriptionExpressions);
+    }
+
+    @Override
+    public PushConsumer subscribe(String topic, FilterExpression filterExpression) throws ClientException {
+        broker.subscribe(consumerGroup, topic, filterExpression);
+        subscriptionExpressions.put(topic, filterExpression);
+        return this;
+    }
+
+    @Override
+    public PushConsumer unsubscribe(String topic) throws ClientException {
+        subscriptionExpressions.remove(topic);
+        broker.unsubscribe(consumerGroup, topic);
+        return this;
+    }
+
+    /**
+     * 停止拉取，等待消费中的消息处理完；没有 ack 的消息到期后投递给同组的其他消费者
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+
+        if (pullThread != null) {
+            try {
+                pullThread.interrupt();
+                pullThread.join(5000);
+            } catch (InterruptedException e) {
+                log.error("❌ 停止进程内 PushConsumer 失败", e);
+            }
+        }
+
+        consumptionExecutor.shutdown();
+        try {
+            if (!consumptionExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                consumptionExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            consumptionExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        log.info("✅ 进程内 PushConsumer 已停止: group={}", consumerGroup);
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * Push 消费者构建器：endpoints、maxCacheMessageSizeInBytes 对进程内 Broker 没有意义，直接忽略
+     */
+    public static class Builder implements PushConsumerBuilder {
+
+        private String consumerGroup;
+
+        private Map<String, FilterExpression> subscriptionExpressions = Collections.emptyMap();
+
+        private MessageListener messageListener;
+
+        private int maxCacheMessageCount = 1024;
+
+        private int consumptionThreadCount = 20;
+
+        @Override
+        public PushConsumerBuilder setClientConfiguration(ClientConfiguration clientConfiguration) {
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setConsumerGroup(String consumerGroup) {
+            this.consumerGroup = consumerGroup;
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setSubscriptionExpressions(Map<String, FilterExpression> subscriptionExpressions) {
+            this.subscriptionExpressions = subscriptionExpressions;
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setMessageListener(MessageListener listener) {
+            this.messageListener = listener;
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setMaxCacheMessageCount(int count) {
+            this.maxCacheMessageCount = count;
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setMaxCacheMessageSizeInBytes(int bytes) {
+            return this;
+        }
+
+        @Override
+        public PushConsumerBuilder setConsumptionThreadCount(int count) {
+            this.consumptionThreadCount = count;
+            return this;
+        }
+
+        @Override
+        public PushConsumer build() throws ClientException {
+            if (consumerGroup == null || consumerGroup.isBlank()) {
+                throw new IllegalArgumentException("consumerGroup 不能为空");
+            }
+            if (messageListener == null) {
+                throw new IllegalArgumentException("messageListener 不能为空");
+            }
+            if (maxCacheMessageCount <= 0 || consumptionThreadCount <= 0) {
+                throw new IllegalArgumentException("maxCacheMessageCount、consumptionThreadCount 必须大于 0");
+            }
+
+            EmbeddedPushConsumer consumer = new EmbeddedPushConsumer(EmbeddedBroker.getInstance(), consumerGroup,
+                messageListener, maxCacheMessageCount, consumptionThreadCount);
+            for (Map.Entry<String, FilterExpression> subscription : subscriptionExpressions.entrySet()) {
+                consumer.subscribe(subscription.getKey(), subscription.getValue());
+            }
+            consumer.start();
+            return consumer;
+        }
+    }
+}
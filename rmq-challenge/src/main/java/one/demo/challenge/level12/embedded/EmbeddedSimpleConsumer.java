@@ -0,0 +1,229 @@
+package one.demo.challenge.level12.embedded;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.apis.ClientConfiguration;
+import org.apache.rocketmq.client.apis.ClientException;
+import org.apache.rocketmq.client.apis.consumer.FilterExpression;
+import org.apache.rocketmq.client.apis.consumer.SimpleConsumer;
+import org.apache.rocketmq.client.apis.consumer.SimpleConsumerBuilder;
+import org.apache.rocketmq.client.apis.message.MessageView;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded Simple Consumer - 进程内 Broker 的 Simple 消费者
+ *
+ * receive 按订阅轮流拉取，没有消息时在 awaitDuration 内轮询等待（对应 Proxy 的长轮询）；
+ * 收到的消息在 invisibleDuration 内没有 ack 会重新投递，可以用 changeInvisibleDuration 延长
+ */
+@Slf4j
+public class EmbeddedSimpleConsumer implements SimpleConsumer {
+
+    private final EmbeddedBroker broker;
+
+    private final String consumerGroup;
+
+    private final Duration awaitDuration;
+
+    // Topic -> 过滤表达式
+    private final ConcurrentMap<String, FilterExpression> subscriptionExpressions = new ConcurrentHashMap<>();
+
+    // 每次 receive 从不同的订阅开始
+    private final AtomicInteger topicIndex = new AtomicInteger(0);
+
+    private volatile boolean closed = false;
+
+    private EmbeddedSimpleConsumer(EmbeddedBroker broker, String consumerGroup, Duration awaitDuration) {
+        this.broker = broker;
+        this.consumerGroup = consumerGroup;
+        this.awaitDuration = awaitDuration;
+    }
+
+    @Override
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    @Override
+    public SimpleConsumer subscribe(String topic, FilterExpression filterExpression) throws ClientException {
+        broker.subscribe(consumerGroup, topic, filterExpression);
+        subscriptionExpressions.put(topic, filterExpression);
+        return this;
+    }
+
+    @Override
+    public SimpleConsumer unsubscribe(String topic) throws ClientException {
+        subscriptionExpressions.remove(topic);
+        broker.unsubscribe(consumerGroup, topic);
+        return this;
+    }
+
+    @Override
+    public Map<String, FilterExpression> getSubscriptionExpressions() throws ClientException {
+        return new HashMap<>(subscriptionExpressions);
+    }
+
+    @Override
+    public List<MessageView> receive(int maxMessageNum, Duration invisibleDuration) throws ClientException {
+        if (closed) {
+            throw new ClientException("消费者已关闭");
+        }
+        if (maxMessageNum <= 0) {
+            throw new IllegalArgumentException("maxMessageNum 必须大于 0");
+        }
+
+        long deadline = System.currentTimeMillis() + awaitDuration.toMillis();
+        while (true) {
+            List<MessageView> messageViews = receiveOnce(maxMessageNum, invisibleDuration.toMillis());
+            if (!messageViews.isEmpty() || closed || System.currentTimeMillis() >= deadline) {
+                return messageViews;
+            }
+            try {
+                Thread.sleep(broker.getPollIntervalMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return messageViews;
+            }
+        }
+    }
+
+    /**
+     * 按订阅轮流拉取一次，凑够 maxMessageNum 或所有订阅都拉过一遍就返回
+     */
+    private List<MessageView> receiveOnce(int maxMessageNum, long invisibleMs) {
+        List<MessageView> result = new ArrayList<>();
+        List<Map.Entry<String, FilterExpression>> subscriptions = new ArrayList<>(subscriptionExpressions.entrySet());
+        if (subscriptions.isEmpty()) {
+            return result;
+        }
+
+        int start = Math.floorMod(topicIndex.getAndIncrement(), subscriptions.size());
+        for (int i = 0; i < subscriptions.size() && result.size() < maxMessageNum; i++) {
+            Map.Entry<String, FilterExpression> subscription = subscriptions.get((start + i) % subscriptions.size());
+            result.addAll(broker.receive(consumerGroup, subscription.getKey(), subscription.getValue(),
+                maxMessageNum - result.size(), invisibleMs));
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<List<MessageView>> receiveAsync(int maxMessageNum, Duration invisibleDuration) {
+        CompletableFuture<List<MessageView>> future = new CompletableFuture<>();
+        broker.getAsyncExecutor().execute(() -> {
+            try {
+                future.complete(receive(maxMessageNum, invisibleDuration));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void ack(MessageView messageView) throws ClientException {
+        broker.ack(toEmbedded(messageView));
+    }
+
+    @Override
+    public CompletableFuture<Void> ackAsync(MessageView messageView) {
+        try {
+            ack(messageView);
+            return CompletableFuture.completedFuture(null);
+        } catch (ClientException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void changeInvisibleDuration(MessageView messageView, Duration invisibleDuration) throws ClientException {
+        broker.changeInvisibleDuration(toEmbedded(messageView), invisibleDuration.toMillis());
+    }
+
+    @Override
+    public CompletableFuture<Void> changeInvisibleDurationAsync(MessageView messageView, Duration invisibleDuration) {
+        try {
+            changeInvisibleDuration(messageView, invisibleDuration);
+            return CompletableFuture.completedFuture(null);
+        } catch (ClientException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static EmbeddedMessageView toEmbedded(MessageView messageView) throws ClientException {
+        if (!(messageView instanceof EmbeddedMessageView)) {
+            throw new ClientException("消息不是由进程内 Broker 投递的: messageId=" + messageView.getMessageId());
+        }
+        return (EmbeddedMessageView) messageView;
+    }
+
+    /**
+     * 关闭后 receive 不再返回消息，没有 ack 的消息到期后投递给同组的其他消费者
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        log.info("✅ 进程内 SimpleConsumer 已停止: group={}", consumerGroup);
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * Simple 消费者构建器：endpoints 对进程内 Broker 没有意义，直接忽略
+     */
+    public static class Builder implements SimpleConsumerBuilder {
+
+        private String consumerGroup;
+
+        private Map<String, FilterExpression> subscriptionExpressions = Collections.emptyMap();
+
+        private Duration awaitDuration = Duration.ofSeconds(30);
+
+        @Override
+        public SimpleConsumerBuilder setClientConfiguration(ClientConfiguration clientConfiguration) {
+            return this;
+        }
+
+        @Override
+        public SimpleConsumerBuilder setConsumerGroup(String consumerGroup) {
+            this.consumerGroup = consumerGroup;
+            return this;
+        }
+
+        @Override
+        public SimpleConsumerBuilder setSubscriptionExpressions(Map<String, FilterExpression> subscriptionExpressions) {
+            this.subscriptionExpressions = subscriptionExpressions;
+            return this;
+        }
+
+        @Override
+        public SimpleConsumerBuilder setAwaitDuration(Duration awaitDuration) {
+            this.awaitDuration = awaitDuration;
+            return this;
+        }
+
+        @Override
+        public SimpleConsumer build() throws ClientException {
+            if (consumerGroup == null || consumerGroup.isBlank()) {
+                throw new IllegalArgumentException("consumerGroup 不能为空");
+            }
+
+            EmbeddedSimpleConsumer consumer = new EmbeddedSimpleConsumer(EmbeddedBroker.getInstance(),
+                consumerGroup, awaitDuration);
+            for (Map.Entry<String, FilterExpression> subscription : subscriptionExpressions.entrySet()) {
+                consumer.subscribe(subscription.getKey(), subscription.getValue());
+            }
+            log.info("✅ 进程内 SimpleConsumer 已创建: group={}, subscriptions={}", consumerGroup, subscriptionExpressions.keySet());
+            return consumer;
+        }
+    }
+}
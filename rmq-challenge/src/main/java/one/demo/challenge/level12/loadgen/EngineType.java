@@ -0,0 +1,146 @@
+package one.demo.challenge.level12.loadgen;
+
+import one.demo.challenge.level12.Level12Constants;
+import one.demo.challenge.level12.Level12Message;
+import one.demo.challenge.level12.Level12MessageStoreBest;
+import one.demo.challenge.level12.Level12MessageStoreBuggy;
+import one.demo.challenge.level12.Level12MessageStoreFixed;
+import one.demo.challenge.level12.PutMessageResult;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测引擎类型，作为 JMH @Param 和 LoadGenerator 的引擎参数使用
+ */
+public enum EngineType {
+
+    BUGGY {
+        @Override
+        public StoreEngine open(Path storeDir, int commitLogFileSize) {
+            Level12MessageStoreBuggy store = new Level12MessageStoreBuggy(storeDir.toString());
+            return new StoreEngine() {
+                @Override
+                public boolean put(Level12Message message) {
+                    store.putMessage(message);
+                    return true;
+                }
+
+                @Override
+                public Level12Message get(Level12Message written) {
+                    return store.getMessage(written.getTopic(), written.getPhysicalOffset());
+                }
+
+                @Override
+                public Level12Message queryByMessageId(String messageId) {
+                    return store.queryByMessageId(messageId);
+                }
+
+                @Override
+                public int queryByTag(String topic, int queueId, String tag, int maxMsgNums) {
+                    return store.queryByTag(topic, tag).size();
+                }
+
+                @Override
+                public void close() {
+                    store.shutdown();
+                }
+            };
+        }
+    },
+
+    FIXED {
+        @Override
+        public StoreEngine open(Path storeDir, int commitLogFileSize) {
+            Level12MessageStoreFixed store = new Level12MessageStoreFixed(storeDir.toString());
+            return new StoreEngine() {
+                @Override
+                public boolean put(Level12Message message) {
+                    store.putMessage(message);
+                    return true;
+                }
+
+                @Override
+                public Level12Message get(Level12Message written) {
+                    return store.getMessage(written.getMessageId(), (int) written.getPhysicalOffset());
+                }
+
+                @Override
+                public Level12Message queryByMessageId(String messageId) {
+                    return store.queryByMessageId(messageId);
+                }
+
+                @Override
+                public int queryByTag(String topic, int queueId, String tag, int maxMsgNums) {
+                    return store.queryByTag(topic, tag).size();
+                }
+
+                @Override
+                public void close() {
+                    store.shutdown();
+                }
+            };
+        }
+    },
+
+    BEST {
+        @Override
+        public StoreEngine open(Path storeDir, int commitLogFileSize) {
+            Level12MessageStoreBest store = new Level12MessageStoreBest(
+                storeDir.toString(), commitLogFileSize);
+            return new StoreEngine() {
+                @Override
+                public boolean put(Level12Message message) {
+                    return store.putMessage(message).getStatus() == PutMessageResult.PutMessageStatus.PUT_OK;
+                }
+
+                @Override
+                public Level12Message get(Level12Message written) {
+                    List<Level12Message> messages = store.getMessage(
+                        written.getTopic(), written.getQueueId(), written.getQueueOffset(), 1);
+                    return messages.isEmpty() ? null : messages.get(0);
+                }
+
+                @Override
+                public Level12Message queryByMessageId(String messageId) {
+                    return store.queryByMessageId(messageId);
+                }
+
+                @Override
+                public int queryByTag(String topic, int queueId, String tag, int maxMsgNums) {
+                    return store.queryByTag(topic, queueId, tag, 0, maxMsgNums).size();
+                }
+
+                @Override
+                public void awaitDispatched() {
+                    long maxOffset = store.getCommitLog().getMaxOffset();
+                    while (store.getReputMessageService().getReputFromOffset() < maxOffset) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                }
+
+                @Override
+                public void close() {
+                    store.shutdown();
+                }
+            };
+        }
+    };
+
+    /**
+     * 在指定目录打开一个存储引擎（CommitLog 使用默认文件大小）
+     */
+    public StoreEngine open(Path storeDir) {
+        return open(storeDir, Level12Constants.COMMITLOG_FILE_SIZE);
+    }
+
+    /**
+     * 在指定目录打开一个存储引擎
+     *
+     * @param storeDir 存储目录
+     * @param commitLogFileSize CommitLog 单个文件大小（只有 Best 版本使用，压测时调小以免单轮写出多个 1GB 文件）
+     */
+    public abstract StoreEngine open(Path storeDir, int commitLogFileSize);
+}
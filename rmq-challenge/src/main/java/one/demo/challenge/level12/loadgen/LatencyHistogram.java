@@ -0,0 +1,146 @@
+package one.demo.challenge.level12.loadgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency Histogram - 延迟直方图（纳秒，对数-线性分桶）
+ *
+ * 与 HdrHistogram 的分桶方式相同：小于 128ns 每纳秒一个桶，之后每个 2 的幂区间平分成 64 个桶，
+ * 相对误差不超过 1/64（约 1.6%），固定 2304 个桶即可覆盖到约 36 分钟。
+ * 多线程直接记录（每个桶一个原子计数），百分位取桶的上界，宁可报高不报低。
+ */
+public class LatencyHistogram {
+
+    // 线性区间的桶数
+    private static final int LINEAR_BUCKETS = 128;
+
+    // 每个 2 的幂区间的桶数
+    private static final int SUB_BUCKETS = 64;
+
+    // 最大可记录值：2^41 - 1 纳秒，超过按最大值记录
+    private static final long MAX_VALUE = (1L << 41) - 1;
+
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    // 报告中列出的百分位
+    private static final double[] REPORT_PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99, 100};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong totalCount = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * 记录一次延迟
+     *
+     * @param nanos 延迟（纳秒），负数按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 百分位延迟（纳秒）
+     *
+     * @param percentile 0 ~ 100
+     * @return 落在该百分位的桶的上界，没有记录时返回 0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        if (percentile >= 100) {
+            return maxNanos.get();
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * 合并另一个直方图
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+    }
+
+    /**
+     * 百分位分布（毫秒），每行：百分位、延迟、累计次数
+     */
+    public String formatPercentiles() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("  %9s %12s %12s%n", "百分位", "延迟(ms)", "累计次数"));
+        long total = totalCount.get();
+        for (double percentile : REPORT_PERCENTILES) {
+            long cumulative = percentile >= 100 ? total : (long) Math.ceil(total * percentile / 100.0);
+            sb.append(String.format("  %9s %12.3f %,12d%n",
+                formatPercentile(percentile), getValueAtPercentile(percentile) / 1_000_000.0, cumulative));
+        }
+        return sb.toString();
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile)
+            ? String.format("p%d", (long) percentile)
+            : "p" + percentile;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // value >> shift 落在 [64, 128)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >> shift) - SUB_BUCKETS;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    // Getters
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * 平均延迟（纳秒）
+     */
+    public double getMeanNanos() {
+        long total = totalCount.get();
+        return total == 0 ? 0 : (double) totalNanos.get() / total;
+    }
+}
@@ -0,0 +1,255 @@
+package one.demo.challenge.level12.loadgen;
+
+import lombok.extern.slf4j.Slf4j;
+import one.demo.challenge.level12.Level12Message;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load Generator - 开环压测（按计划时间发送，延迟从计划时间算起）
+ *
+ * concurrentWrite 这类闭环压测是 N 个线程尽快发送：存储停顿时发送线程也跟着停，停顿期间本该发出的请求
+ * 根本没有发出，延迟统计里只有停顿的那一次慢请求（coordinated omission），报出来的延迟系统性偏低。
+ * 这里按固定节奏发送：
+ * 1. 第 i 个操作的计划时间 = 开始时间 + i / 目标速率，与存储是否跟得上无关
+ * 2. 发送线程从共享计数器领取下一个操作，计划时间没到就等，到了（或已经晚了）立即发送
+ * 3. 延迟 = 完成时间 - 计划时间，存储停顿期间积压的请求都会带着排队时间计入；同时记录服务时间用于对比
+ * 4. 读操作随机读取压测前预先写入的数据集，写操作按大小分布写入随机的 Topic / Queue
+ *
+ * 存储明显跟不上目标速率时，超过计划结束时间一倍仍未发出的操作不再发送，计入 droppedOps，报告标记为不可信
+ */
+@Slf4j
+public class LoadGenerator {
+
+    // 读写消息使用的 Tag
+    private static final String TAG = "load";
+
+    // 计划时间前最后这段时间不再休眠，改为让出 CPU 等待（parkNanos 的精度通常在 50us 以上）
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // 负载描述
+    private final LoadProfile profile;
+
+    // 消息大小分布
+    private final LoadProfile.SizeDistribution sizeDistribution;
+
+    // 每种大小的消息体（预先生成，避免压测时构造字符串）
+    private final Map<Integer, String> bodies = new HashMap<>();
+
+    /**
+     * 构造函数
+     *
+     * @param profile 负载描述
+     * @throws IllegalArgumentException 负载参数不合法
+     */
+    public LoadGenerator(LoadProfile profile) {
+        profile.validate();
+        this.profile = profile;
+        this.sizeDistribution = LoadProfile.SizeDistribution.parse(profile.getMessageSizes());
+        for (int size : sizeDistribution.getSizes()) {
+            bodies.computeIfAbsent(size, LoadGenerator::randomBody);
+        }
+    }
+
+    /**
+     * 在空目录中打开引擎并压测，结束后关闭引擎
+     *
+     * @param engineType 引擎类型
+     * @param storeDir 空的存储目录（读数据集的队列偏移量按空队列计算）
+     */
+    public LoadReport run(EngineType engineType, Path storeDir) throws InterruptedException {
+        try (StoreEngine store = engineType.open(storeDir)) {
+            return run(engineType.name(), store);
+        }
+    }
+
+    /**
+     * 对已打开的引擎压测
+     *
+     * @param engineName 报告中的引擎名称
+     * @param store 空的存储引擎
+     */
+    public LoadReport run(String engineName, StoreEngine store) throws InterruptedException {
+        LoadReport report = new LoadReport();
+        report.setEngine(engineName);
+        report.setProfile(profile);
+
+        // 1. 写入读数据集，等待索引构建完成
+        Level12Message[] dataset = prefill(store);
+        log.info("📊 [LoadGen] {} 读数据集已写入: {} 条", engineName, dataset.length);
+
+        // 2. 按计划时间发送
+        long totalOps = profile.getTotalOps();
+        double intervalNanos = profile.getIntervalNanos();
+        long warmupOps = (long) profile.getTargetRate() * profile.getWarmupSeconds();
+        report.setScheduledOps(totalOps - warmupOps);
+
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        long measureStartNanos = startNanos + (long) (warmupOps * intervalNanos);
+        long deadlineNanos = startNanos + 2 * (long) (totalOps * intervalNanos);
+
+        AtomicLong nextOp = new AtomicLong(0);
+        AtomicLong dropped = new AtomicLong(0);
+        AtomicLong errors = new AtomicLong(0);
+        AtomicLong readMisses = new AtomicLong(0);
+        AtomicLong maxSendLag = new AtomicLong(0);
+        AtomicLong lastEndNanos = new AtomicLong(measureStartNanos);
+
+        Runnable worker = () -> {
+            long op;
+            while ((op = nextOp.getAndIncrement()) < totalOps) {
+                long intended = startNanos + (long) (op * intervalNanos);
+                awaitNanos(intended);
+
+                long begin = System.nanoTime();
+                if (begin > deadlineNanos) {
+                    dropped.incrementAndGet();
+                    continue;
+                }
+
+                // 操作内容只由 seed 和序号决定，不同引擎的操作序列相同
+                SplittableRandom random = new SplittableRandom(profile.getSeed() * 0x9E3779B97F4A7C15L + op);
+                boolean read = random.nextDouble() < profile.getReadRatio();
+                boolean hit = true;
+                boolean failed = false;
+                try {
+                    if (read) {
+                        hit = store.get(dataset[random.nextInt(dataset.length)]) != null;
+                    } else if (!store.put(newMessage(engineName + "-" + op, random))) {
+                        // 写入被拒绝（繁忙 / 刷盘超时等）不是成功的写入，不计入写入延迟
+                        failed = true;
+                        if (errors.get() < 10) {
+                            log.warn("⚠️ [LoadGen] 写入未成功: op={}", op);
+                        }
+                    }
+                } catch (Exception | OutOfMemoryError e) {
+                    // Buggy 版本并发读写共用文件位置，会读到错误的长度并尝试分配超大缓冲区，同样按失败计数，发送线程不退出
+                    failed = true;
+                    if (errors.get() < 10) {
+                        log.warn("⚠️ [LoadGen] 操作失败: op={}, read={}", op, read, e);
+                    }
+                }
+                long end = System.nanoTime();
+
+                if (op < warmupOps) {
+                    continue;
+                }
+                maxSendLag.accumulateAndGet(begin - intended, Math::max);
+                lastEndNanos.accumulateAndGet(end, Math::max);
+                if (failed) {
+                    // 失败的操作只计数，不进入延迟直方图
+                    errors.incrementAndGet();
+                    continue;
+                }
+                (read ? report.getGetLatency() : report.getPutLatency()).record(end - intended);
+                report.getServiceTime().record(end - begin);
+                if (!hit) {
+                    readMisses.incrementAndGet();
+                }
+            }
+        };
+
+        Thread[] threads = new Thread[profile.getThreads()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(worker, "LoadGenerator-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report.setDroppedOps(dropped.get());
+        report.setErrorCount(errors.get());
+        report.setReadMissCount(readMisses.get());
+        report.setMaxSendLagNanos(maxSendLag.get());
+        report.setMeasuredNanos(Math.max(0, lastEndNanos.get() - measureStartNanos));
+
+        log.info("📊 [LoadGen] {} 压测完成: rate={}/{} ops/s, put p99={} us, get p99={} us, dropped={}",
+            engineName, String.format("%.0f", report.getAchievedRate()), profile.getTargetRate(),
+            report.getPutLatency().getValueAtPercentile(99) / 1000,
+            report.getGetLatency().getValueAtPercentile(99) / 1000,
+            report.getDroppedOps());
+        return report;
+    }
+
+    /**
+     * 写入读数据集：按 Topic / Queue 轮流写入，Best 版本的队列偏移量按写入顺序计算
+     */
+    private Level12Message[] prefill(StoreEngine store) {
+        int count = profile.getReadRatio() > 0 ? profile.getPrefillCount() : 0;
+        int queues = profile.getTopics() * profile.getQueuesPerTopic();
+        Level12Message[] dataset = new Level12Message[count];
+        SplittableRandom random = new SplittableRandom(profile.getSeed());
+        for (int i = 0; i < count; i++) {
+            int queue = i % queues;
+            Level12Message message = newMessage("PREFILL-" + i, queue / profile.getQueuesPerTopic(),
+                queue % profile.getQueuesPerTopic(), sizeDistribution.sample(random));
+            message.setQueueOffset(i / queues);
+            if (!store.put(message)) {
+                // 读数据集的队列偏移量按写入顺序计算，漏写一条后面全部错位
+                throw new IllegalStateException("预写入读数据集失败: " + message.getMessageId());
+            }
+            dataset[i] = message;
+        }
+        store.awaitDispatched();
+        return dataset;
+    }
+
+    private Level12Message newMessage(String id, SplittableRandom random) {
+        return newMessage(id, random.nextInt(profile.getTopics()), random.nextInt(profile.getQueuesPerTopic()),
+            sizeDistribution.sample(random));
+    }
+
+    private Level12Message newMessage(String id, int topic, int queueId, int size) {
+        Level12Message message = new Level12Message();
+        message.setMessageId("LOAD-" + id);
+        message.setTopic(topicName(topic));
+        message.setTag(TAG);
+        message.setKey("KEY-" + id);
+        message.setBody(bodies.get(size));
+        message.setCreateTime(System.currentTimeMillis());
+        message.setQueueId(queueId);
+        return message;
+    }
+
+    /**
+     * 压测使用的 Topic 名称
+     */
+    public static String topicName(int index) {
+        return "LOAD_TOPIC_" + index;
+    }
+
+    /**
+     * 等到计划时间：远时休眠，最后一小段让出 CPU 等待
+     */
+    private static void awaitNanos(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * 生成指定大小的消息体（小写字母，与 Level12TestController 一致）
+     */
+    private static String randomBody(int size) {
+        Random random = new Random(size);
+        StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package one.demo.challenge.level12.loadgen;
+
+import lombok.Data;
+
+import java.util.SplittableRandom;
+
+/**
+ * 开环压测的负载描述
+ *
+ * 相同的 LoadProfile（包括 seed）在不同引擎上生成完全相同的操作序列：
+ * 第 i 个操作的计划时间、读写类型、消息大小、Topic / Queue 都只由 seed 和 i 决定，结果可以直接对比
+ */
+@Data
+public class LoadProfile {
+
+    /**
+     * 目标速率（次/秒），读写合计
+     */
+    private int targetRate = 1000;
+
+    /**
+     * 压测时长（秒，不含预热）
+     */
+    private int durationSeconds = 10;
+
+    /**
+     * 预热时长（秒），预热期间照常发送，但不记录延迟
+     */
+    private int warmupSeconds = 2;
+
+    /**
+     * 发送线程数：计划时间到了但所有线程都在等存储返回时，后面的操作只能晚发，
+     * 晚发的时间计入延迟（不会因为线程不够而少算），线程数只需要覆盖并发的慢请求
+     */
+    private int threads = 16;
+
+    /**
+     * 读操作占比（0 ~ 1）
+     */
+    private double readRatio = 0.5;
+
+    /**
+     * Topic 数量
+     */
+    private int topics = 5;
+
+    /**
+     * 每个 Topic 的队列数
+     */
+    private int queuesPerTopic = 4;
+
+    /**
+     * 消息大小分布："大小:权重,大小:权重"，例如 "256:70,1024:25,4096:5"
+     */
+    private String messageSizes = "256:70,1024:25,4096:5";
+
+    /**
+     * 读操作的数据集：压测前预先写入的消息数，读操作随机读其中一条
+     */
+    private int prefillCount = 10000;
+
+    /**
+     * 随机种子
+     */
+    private long seed = 12;
+
+    /**
+     * 计划的操作总数（含预热）
+     */
+    public long getTotalOps() {
+        return (long) targetRate * (durationSeconds + warmupSeconds);
+    }
+
+    /**
+     * 相邻两个操作的计划间隔（纳秒）
+     */
+    public double getIntervalNanos() {
+        return 1_000_000_000.0 / targetRate;
+    }
+
+    /**
+     * 校验参数
+     *
+     * @throws IllegalArgumentException 参数不合法
+     */
+    public void validate() {
+        if (targetRate <= 0 || durationSeconds <= 0 || warmupSeconds < 0 || threads <= 0) {
+            throw new IllegalArgumentException("targetRate、durationSeconds、threads 必须大于 0，warmupSeconds 不能小于 0");
+        }
+        if (readRatio < 0 || readRatio > 1) {
+            throw new IllegalArgumentException("readRatio 必须在 0 ~ 1 之间: " + readRatio);
+        }
+        if (topics <= 0 || queuesPerTopic <= 0) {
+            throw new IllegalArgumentException("topics、queuesPerTopic 必须大于 0");
+        }
+        if (readRatio > 0 && prefillCount <= 0) {
+            throw new IllegalArgumentException("有读操作时 prefillCount 必须大于 0");
+        }
+        SizeDistribution.parse(messageSizes);
+    }
+
+    // ==================== 内部类 ====================
+
+    /**
+     * 消息大小分布（按权重抽样）
+     */
+    public static class SizeDistribution {
+        private final int[] sizes;
+        // 累计权重
+        private final int[] cumulativeWeights;
+
+        private SizeDistribution(int[] sizes, int[] cumulativeWeights) {
+            this.sizes = sizes;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        /**
+         * 解析 "大小:权重,大小:权重"，省略权重时为 1
+         *
+         * @throws IllegalArgumentException 格式不正确
+         */
+        public static SizeDistribution parse(String spec) {
+            if (spec == null || spec.isBlank()) {
+                throw new IllegalArgumentException("消息大小分布不能为空");
+            }
+            String[] parts = spec.split(",");
+            int[] sizes = new int[parts.length];
+            int[] cumulativeWeights = new int[parts.length];
+            int total = 0;
+            for (int i = 0; i < parts.length; i++) {
+                String[] pair = parts[i].trim().split(":");
+                try {
+                    sizes[i] = Integer.parseInt(pair[0].trim());
+                    int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+                    if (sizes[i] <= 0 || weight <= 0) {
+                        throw new IllegalArgumentException("消息大小和权重必须大于 0: " + parts[i]);
+                    }
+                    total += weight;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("消息大小分布格式错误: " + spec, e);
+                }
+                cumulativeWeights[i] = total;
+            }
+            return new SizeDistribution(sizes, cumulativeWeights);
+        }
+
+        /**
+         * 按权重抽取一个大小
+         */
+        public int sample(SplittableRandom random) {
+            int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (r < cumulativeWeights[i]) {
+                    return sizes[i];
+                }
+            }
+            return sizes[sizes.length - 1];
+        }
+
+        public int[] getSizes() {
+            return sizes.clone();
+        }
+    }
+}
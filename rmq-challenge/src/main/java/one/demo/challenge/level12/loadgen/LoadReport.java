@@ -0,0 +1,140 @@
+package one.demo.challenge.level12.loadgen;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一次开环压测的结果
+ *
+ * 写入 / 读取延迟从计划时间算起（包含排队、发送滞后），服务时间从实际发出算起（闭环压测报告的就是它）。
+ * 两者差得越多，说明存储的停顿让后面的请求排了队，闭环压测会把这部分藏起来
+ */
+@Data
+public class LoadReport {
+
+    // 引擎名称
+    private String engine;
+
+    // 负载描述
+    private LoadProfile profile;
+
+    // 成功写入的延迟（从计划时间算起）
+    private LatencyHistogram putLatency = new LatencyHistogram();
+
+    // 成功读取的延迟（从计划时间算起）
+    private LatencyHistogram getLatency = new LatencyHistogram();
+
+    // 成功操作的服务时间（从实际发出算起，读写合计）
+    private LatencyHistogram serviceTime = new LatencyHistogram();
+
+    // 计划的操作数（不含预热）
+    private long scheduledOps;
+
+    // 存储跟不上、超过截止时间还没发出的操作数（含预热）
+    private long droppedOps;
+
+    // 失败的操作数：抛出异常，或者写入没有返回 PUT_OK（不计入延迟）
+    private long errorCount;
+
+    // 读取返回空的次数
+    private long readMissCount;
+
+    // 实际发出时间比计划时间晚的最大值（纳秒）
+    private long maxSendLagNanos;
+
+    // 测量阶段的实际耗时（纳秒，从预热结束到最后一个操作返回）
+    private long measuredNanos;
+
+    /**
+     * 实际完成速率（次/秒）
+     */
+    public double getAchievedRate() {
+        long completed = putLatency.getTotalCount() + getLatency.getTotalCount();
+        return measuredNanos == 0 ? 0 : completed * 1_000_000_000.0 / measuredNanos;
+    }
+
+    /**
+     * 结果是否可信：有操作没发出时，延迟分布缺了最慢的那部分
+     */
+    public boolean isValid() {
+        return droppedOps == 0;
+    }
+
+    /**
+     * 格式化输出
+     */
+    public String format() {
+        return String.format("""
+                📊 开环压测结果 - %s
+
+                负载：
+                - 目标速率: %,d ops/s，读占比 %.0f%%
+                - 时长: %d s（另有 %d s 预热）
+                - 发送线程: %d
+                - Topic × Queue: %d × %d
+                - 消息大小分布: %s
+                - 读数据集: %,d 条
+
+                执行结果：
+                - 计划操作: %,d
+                - 完成写入: %,d
+                - 完成读取: %,d（未命中 %,d）
+                - 错误: %,d
+                - 未发出: %,d%s
+                - 实际速率: %,.0f ops/s
+                - 最大发送滞后: %.3f ms
+
+                写入延迟（从计划时间算起）：
+                %s
+                读取延迟（从计划时间算起）：
+                %s
+                服务时间（从实际发出算起，闭环压测报告的是它）：
+                %s""",
+            engine,
+            profile.getTargetRate(), profile.getReadRatio() * 100,
+            profile.getDurationSeconds(), profile.getWarmupSeconds(),
+            profile.getThreads(),
+            profile.getTopics(), profile.getQueuesPerTopic(),
+            profile.getMessageSizes(),
+            profile.getPrefillCount(),
+            scheduledOps,
+            putLatency.getTotalCount(),
+            getLatency.getTotalCount(), readMissCount,
+            errorCount,
+            droppedOps, isValid() ? "" : "（⚠️ 存储跟不上目标速率，延迟分布缺了最慢的部分，请降低速率）",
+            getAchievedRate(),
+            maxSendLagNanos / 1_000_000.0,
+            putLatency.formatPercentiles(),
+            getLatency.formatPercentiles(),
+            serviceTime.formatPercentiles());
+    }
+
+    /**
+     * 多个引擎在同一负载下的对比表（毫秒）
+     */
+    public static String formatComparison(List<LoadReport> reports) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-8s %-4s %10s %10s %10s %10s %10s %12s%n",
+            "引擎", "操作", "p50", "p99", "p99.9", "p99.99", "max", "实际速率"));
+        for (LoadReport report : reports) {
+            appendRow(sb, report.getEngine(), "写入", report.getPutLatency(), report.getAchievedRate());
+            appendRow(sb, report.getEngine(), "读取", report.getGetLatency(), report.getAchievedRate());
+            if (!report.isValid()) {
+                sb.append(String.format("%-8s ⚠️ 未发出 %,d 个操作，结果不可信%n", report.getEngine(), report.getDroppedOps()));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String engine, String op, LatencyHistogram histogram, double rate) {
+        sb.append(String.format("%-8s %-4s %10.3f %10.3f %10.3f %10.3f %10.3f %,12.0f%n",
+            engine, op,
+            histogram.getValueAtPercentile(50) / 1_000_000.0,
+            histogram.getValueAtPercentile(99) / 1_000_000.0,
+            histogram.getValueAtPercentile(99.9) / 1_000_000.0,
+            histogram.getValueAtPercentile(99.99) / 1_000_000.0,
+            histogram.getMaxNanos() / 1_000_000.0,
+            rate));
+    }
+}
@@ -0,0 +1,45 @@
+package one.demo.challenge.level12.loadgen;
+
+import one.demo.challenge.level12.Level12Message;
+
+/**
+ * 三个存储引擎（Buggy / Fixed / Best）的统一压测接口
+ *
+ * 三个版本的读写 API 签名并不一致，这里只做适配，不改变各自的实现逻辑。
+ * JMH 压测（rmq-challenge-bench）和开环压测（LoadGenerator）共用
+ */
+public interface StoreEngine extends AutoCloseable {
+
+    /**
+     * 写入消息
+     *
+     * @return 是否写入成功（Buggy / Fixed 写入失败直接抛异常，Best 版本只有 PUT_OK 算成功）
+     */
+    boolean put(Level12Message message);
+
+    /**
+     * 读回一条之前写入的消息
+     *
+     * @param written put 之后的消息对象（Buggy / Fixed 使用物理偏移量，Best 使用队列偏移量）
+     */
+    Level12Message get(Level12Message written);
+
+    /**
+     * 按 MessageId 查询
+     */
+    Level12Message queryByMessageId(String messageId);
+
+    /**
+     * 按 Tag 过滤，返回命中数量
+     */
+    int queryByTag(String topic, int queueId, String tag, int maxMsgNums);
+
+    /**
+     * 等待异步索引构建完成（只有 Best 版本需要）
+     */
+    default void awaitDispatched() {
+    }
+
+    @Override
+    void close();
+}